@@ -80,7 +80,7 @@ public class AbstractConfig {
         // the path that was signed (which invalidates the signature and causes a 403)
         // this change is necessary to keep the behavior consistent, since we did not previously reject
         // double-slashes (that would be the appropriate behavior)
-        path = path.replaceAll("//", "/");
+        if (path.contains("//")) path = path.replaceAll("//", "/");
 
         return resolveHost(path, query);
     }
@@ -91,8 +91,10 @@ public class AbstractConfig {
         try {
             URI uri = new URI(endpoint.getScheme(), null, endpoint.getHost(), endpoint.getPort(),
                     absolutePath, query, null);
-            l4j.debug("raw path & query: " + absolutePath + "?" + query);
-            l4j.debug("encoded URI: " + uri);
+            if (l4j.isDebugEnabled()) {
+                l4j.debug("raw path & query: " + absolutePath + "?" + query);
+                l4j.debug("encoded URI: " + uri);
+            }
             return uri;
         } catch (URISyntaxException e) {
             throw new RuntimeException("Invalid URI syntax", e);
@@ -0,0 +1,180 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Round-robin implementation that stops sending requests to endpoints that are failing. After
+ * <code>failureThreshold</code> consecutive failures, an endpoint is ejected (the circuit is opened) for
+ * <code>coolDownMillis</code>. Once the cool-down has passed, a single probe request is allowed through (half-open);
+ * if it succeeds, the endpoint is restored, otherwise it is ejected for another cool-down period. If every endpoint is
+ * ejected, requests are distributed round-robin as usual rather than failing outright.
+ * <p/>
+ * Failures are reported by the client through {@link EndpointHealthListener}. This class is thread-safe, so a single
+ * instance can be shared by all threads using the same config.
+ */
+public class CircuitBreakerAlgorithm implements LoadBalancingAlgorithm, EndpointHealthListener {
+    private static final Logger l4j = LoggerFactory.getLogger( CircuitBreakerAlgorithm.class );
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final long DEFAULT_COOL_DOWN_MILLIS = 30000;
+
+    private final AtomicInteger callCount = new AtomicInteger();
+    private final ConcurrentMap<String, EndpointState> states = new ConcurrentHashMap<String, EndpointState>();
+    private volatile int failureThreshold;
+    private volatile long coolDownMillis;
+
+    public CircuitBreakerAlgorithm() {
+        this( DEFAULT_FAILURE_THRESHOLD, DEFAULT_COOL_DOWN_MILLIS );
+    }
+
+    /**
+     * @param failureThreshold the number of consecutive failures after which an endpoint is ejected
+     * @param coolDownMillis   how long (in ms) an ejected endpoint is skipped before a probe request is sent to it
+     */
+    public CircuitBreakerAlgorithm( int failureThreshold, long coolDownMillis ) {
+        this.failureThreshold = failureThreshold;
+        this.coolDownMillis = coolDownMillis;
+    }
+
+    @Override
+    public URI getNextEndpoint( URI[] endpoints ) {
+        int start = (callCount.getAndIncrement() & Integer.MAX_VALUE) % endpoints.length;
+        long now = System.currentTimeMillis();
+        for ( int i = 0; i < endpoints.length; i++ ) {
+            URI endpoint = endpoints[(start + i) % endpoints.length];
+            if ( getState( endpoint ).allowRequest( now ) ) return endpoint;
+        }
+
+        // all endpoints are ejected; better to try one than to fail every request
+        return endpoints[start];
+    }
+
+    @Override
+    public void endpointSucceeded( URI endpoint ) {
+        getState( endpoint ).success();
+    }
+
+    @Override
+    public void endpointFailed( URI endpoint ) {
+        getState( endpoint ).failure( System.currentTimeMillis() );
+    }
+
+    /**
+     * Returns whether the specified endpoint is currently ejected (its circuit is open or half-open).
+     */
+    public boolean isEjected( URI endpoint ) {
+        return getState( endpoint ).openedAt != 0;
+    }
+
+    protected EndpointState getState( URI endpoint ) {
+        String key = endpoint.getScheme() + "://" + endpoint.getHost() + ":" + endpoint.getPort();
+        EndpointState state = states.get( key );
+        if ( state == null ) {
+            state = new EndpointState( key );
+            EndpointState existing = states.putIfAbsent( key, state );
+            if ( existing != null ) state = existing;
+        }
+        return state;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * Sets the number of consecutive failures after which an endpoint is ejected. Default is 3.
+     */
+    public void setFailureThreshold( int failureThreshold ) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public long getCoolDownMillis() {
+        return coolDownMillis;
+    }
+
+    /**
+     * Sets how long (in ms) an ejected endpoint is skipped before a probe request is sent to it. Default is 30000 (30
+     * seconds).
+     */
+    public void setCoolDownMillis( long coolDownMillis ) {
+        this.coolDownMillis = coolDownMillis;
+    }
+
+    protected class EndpointState {
+        private final String key;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicLong lastProbeAt = new AtomicLong();
+        private volatile long openedAt = 0; // 0 means the circuit is closed
+
+        public EndpointState( String key ) {
+            this.key = key;
+        }
+
+        public boolean allowRequest( long now ) {
+            long opened = openedAt;
+            if ( opened == 0 ) return true;
+
+            // half-open; let one probe through per cool-down period
+            long lastProbe = lastProbeAt.get();
+            return now - Math.max( opened, lastProbe ) >= coolDownMillis && lastProbeAt.compareAndSet( lastProbe, now );
+        }
+
+        public void success() {
+            consecutiveFailures.set( 0 );
+            if ( openedAt != 0 ) {
+                openedAt = 0;
+                l4j.info( "endpoint " + key + " is responding again; restoring it" );
+            }
+        }
+
+        public void failure( long now ) {
+            int failures = consecutiveFailures.incrementAndGet();
+            if ( openedAt != 0 ) {
+                openedAt = now; // failed probe; start another cool-down
+            } else if ( failures >= failureThreshold ) {
+                openedAt = now;
+                l4j.warn( "endpoint " + key + " failed " + failures + " consecutive requests; ejecting it for "
+                          + coolDownMillis + "ms" );
+            }
+        }
+    }
+}
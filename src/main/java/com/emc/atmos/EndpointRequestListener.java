@@ -0,0 +1,55 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos;
+
+import java.net.URI;
+
+/**
+ * Implemented by load balancing algorithms that track load on each endpoint. If the configured
+ * {@link LoadBalancingAlgorithm} implements this interface, the client will call {@link #requestStarted(URI)} before
+ * every HTTP attempt (including retries) and {@link #requestFinished(URI, long, boolean)} when the response headers
+ * are received or the attempt fails. Every call to <code>requestStarted</code> is matched by exactly one call to
+ * <code>requestFinished</code>.
+ * <p/>
+ * As with {@link EndpointHealthListener}, the endpoint is the scheme, host and port the request was sent to.
+ */
+public interface EndpointRequestListener {
+    void requestStarted( URI endpoint );
+
+    /**
+     * @param latencyNanos how long the endpoint took to respond (or fail)
+     * @param failed       true if the request could not complete or the endpoint responded with a server error
+     *                     (HTTP 5xx)
+     */
+    void requestFinished( URI endpoint, long latencyNanos, boolean failed );
+}
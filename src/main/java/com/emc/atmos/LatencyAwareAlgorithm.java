@@ -0,0 +1,197 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos;
+
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends requests to the endpoints that are responding fastest. For each endpoint, this class keeps an exponentially
+ * weighted moving average (EWMA) of response latency and a count of in-flight requests; the cost of an endpoint is
+ * its average latency multiplied by its in-flight requests plus one. By default, two endpoints are picked at random and
+ * the one with the lower cost is used (power-of-two-choices), which avoids every client piling onto the same
+ * "best" node. If <code>powerOfTwoChoices</code> is disabled, the endpoint with the lowest cost overall is used.
+ * <p/>
+ * Endpoints that have not responded yet have no latency history and are preferred until a request is in flight to
+ * them, so every endpoint gets sampled.
+ * Failed requests are recorded as taking at least <code>failurePenaltyMillis</code>, so a node that fails fast is not
+ * mistaken for a fast node.
+ * <p/>
+ * Latency and load are reported by the client through {@link EndpointRequestListener}. This class is thread-safe, so
+ * a single instance can be shared by all threads using the same config.
+ */
+public class LatencyAwareAlgorithm implements LoadBalancingAlgorithm, EndpointRequestListener {
+    public static final double DEFAULT_SMOOTHING = 0.3;
+    public static final long DEFAULT_FAILURE_PENALTY_MILLIS = 10000;
+
+    private static final double UNSAMPLED_COST = 1e15; // higher than any real latency (in ns)
+
+    private final ConcurrentMap<String, EndpointLoad> loads = new ConcurrentHashMap<String, EndpointLoad>();
+    private final Random random = new Random();
+    private volatile double smoothing = DEFAULT_SMOOTHING;
+    private volatile long failurePenaltyMillis = DEFAULT_FAILURE_PENALTY_MILLIS;
+    private volatile boolean powerOfTwoChoices = true;
+
+    @Override
+    public URI getNextEndpoint( URI[] endpoints ) {
+        if ( endpoints.length == 1 ) return endpoints[0];
+
+        if ( powerOfTwoChoices ) {
+            int first = random.nextInt( endpoints.length );
+            int second = random.nextInt( endpoints.length - 1 );
+            if ( second >= first ) second++;
+            return getLoad( endpoints[second] ).getCost() < getLoad( endpoints[first] ).getCost()
+                   ? endpoints[second] : endpoints[first];
+        }
+
+        // start at a random index so ties are spread evenly
+        int start = random.nextInt( endpoints.length );
+        URI best = null;
+        double bestCost = Double.MAX_VALUE;
+        for ( int i = 0; i < endpoints.length; i++ ) {
+            URI endpoint = endpoints[(start + i) % endpoints.length];
+            double cost = getLoad( endpoint ).getCost();
+            if ( best == null || cost < bestCost ) {
+                best = endpoint;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void requestStarted( URI endpoint ) {
+        getLoad( endpoint ).inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void requestFinished( URI endpoint, long latencyNanos, boolean failed ) {
+        EndpointLoad load = getLoad( endpoint );
+        load.inFlight.decrementAndGet();
+        if ( failed ) latencyNanos = Math.max( latencyNanos, failurePenaltyMillis * 1000000L );
+        load.addSample( latencyNanos );
+    }
+
+    /**
+     * Returns the current average latency (in ms) of the specified endpoint, or 0 if it has not responded yet.
+     */
+    public double getAverageLatencyMillis( URI endpoint ) {
+        return getLoad( endpoint ).getEwmaNanos() / 1000000d;
+    }
+
+    /**
+     * Returns the number of requests currently in flight to the specified endpoint.
+     */
+    public int getInFlight( URI endpoint ) {
+        return getLoad( endpoint ).inFlight.get();
+    }
+
+    protected EndpointLoad getLoad( URI endpoint ) {
+        String key = endpoint.getScheme() + "://" + endpoint.getHost() + ":" + endpoint.getPort();
+        EndpointLoad load = loads.get( key );
+        if ( load == null ) {
+            load = new EndpointLoad();
+            EndpointLoad existing = loads.putIfAbsent( key, load );
+            if ( existing != null ) load = existing;
+        }
+        return load;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    /**
+     * Sets the weight (between 0 and 1) given to each new latency sample. Higher values react to changes faster but
+     * are noisier. Default is 0.3.
+     */
+    public void setSmoothing( double smoothing ) {
+        if ( smoothing <= 0 || smoothing > 1 ) throw new IllegalArgumentException( "smoothing must be in (0, 1]" );
+        this.smoothing = smoothing;
+    }
+
+    public long getFailurePenaltyMillis() {
+        return failurePenaltyMillis;
+    }
+
+    /**
+     * Sets the minimum latency (in ms) recorded for a failed request. Default is 10000 (10 seconds).
+     */
+    public void setFailurePenaltyMillis( long failurePenaltyMillis ) {
+        this.failurePenaltyMillis = failurePenaltyMillis;
+    }
+
+    public boolean isPowerOfTwoChoices() {
+        return powerOfTwoChoices;
+    }
+
+    /**
+     * Sets whether to compare two random endpoints (true) or all endpoints (false) when choosing the least loaded.
+     * Default is true.
+     */
+    public void setPowerOfTwoChoices( boolean powerOfTwoChoices ) {
+        this.powerOfTwoChoices = powerOfTwoChoices;
+    }
+
+    protected class EndpointLoad {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong ewmaBits = new AtomicLong( Double.doubleToLongBits( 0 ) );
+
+        public double getEwmaNanos() {
+            return Double.longBitsToDouble( ewmaBits.get() );
+        }
+
+        public double getCost() {
+            double ewma = getEwmaNanos();
+            int requests = inFlight.get();
+
+            // no history yet; prefer this endpoint only until its first request is in flight
+            if ( ewma == 0 ) return requests == 0 ? 0 : UNSAMPLED_COST * requests;
+
+            return ewma * (requests + 1);
+        }
+
+        public void addSample( long latencyNanos ) {
+            while ( true ) {
+                long bits = ewmaBits.get();
+                double ewma = Double.longBitsToDouble( bits );
+                double updated = ewma == 0 ? latencyNanos : ewma + smoothing * (latencyNanos - ewma);
+                if ( ewmaBits.compareAndSet( bits, Double.doubleToLongBits( updated ) ) ) return;
+            }
+        }
+    }
+}
@@ -27,15 +27,16 @@
 package com.emc.atmos;
 
 import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Simple implementation that returns subsequent endpoints for each call.
+ * Simple implementation that returns subsequent endpoints for each call. This class is thread-safe.
  */
 public class RoundRobinAlgorithm implements LoadBalancingAlgorithm {
-    private int callCount = 0;
+    private final AtomicInteger callCount = new AtomicInteger();
 
     @Override
     public URI getNextEndpoint( URI[] endpoints ) {
-        return endpoints[callCount++ % endpoints.length];
+        return endpoints[(callCount.getAndIncrement() & Integer.MAX_VALUE) % endpoints.length];
     }
 }
@@ -29,22 +29,20 @@ package com.emc.atmos.api;
 import com.emc.atmos.AbstractJerseyClient;
 import com.emc.atmos.api.bean.GetAccessTokenResponse;
 import com.emc.atmos.api.request.*;
-import com.emc.util.HttpUtil;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
-import java.net.URI;
 import java.net.URL;
-import java.util.Arrays;
 import java.util.Date;
-import java.util.List;
-import java.util.Map;
 
 public abstract class AbstractAtmosApi extends AbstractJerseyClient<AtmosConfig> implements AtmosApi {
     public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
 
+    protected UrlSigner urlSigner;
+
     public AbstractAtmosApi( AtmosConfig config ) {
         super( config );
+        this.urlSigner = new UrlSigner( config );
     }
 
     @Override
@@ -87,29 +85,7 @@ public abstract class AbstractAtmosApi extends AbstractJerseyClient<AtmosConfig>
     @Override
     public URL getShareableUrl( ObjectIdentifier identifier, Date expirationDate, String disposition )
             throws MalformedURLException {
-        if ( identifier instanceof ObjectKey )
-            throw new IllegalArgumentException( "You cannot create shareable URLs using a key; try using the object ID" );
-
-        URI uri = config.resolveHostAndPath( identifier.getRelativeResourcePath(), null );
-        String path = uri.getPath().toLowerCase();
-        long expiresTime = expirationDate.getTime() / 1000;
-
-        String hashString = "GET\n"
-                            + path + '\n'
-                            + config.getTokenId() + '\n'
-                            + expiresTime;
-        if ( disposition != null )
-            hashString += '\n' + disposition;
-
-        String hash = RestUtil.sign( hashString, config.getSecretKey() );
-
-        String query = "uid=" + HttpUtil.encodeUtf8( config.getTokenId() ) + "&expires=" + expiresTime
-                       + "&signature=" + HttpUtil.encodeUtf8( hash );
-        if ( disposition != null )
-            query += "&disposition=" + HttpUtil.encodeUtf8( disposition );
-
-        // we must manually append the query string to ensure the equals sign in the signature gets encoded properly
-        return new URL( uri + "?" + query );
+        return urlSigner.getShareableUrl( identifier, expirationDate, disposition );
     }
 
     @Override
@@ -124,25 +100,6 @@ public abstract class AbstractAtmosApi extends AbstractJerseyClient<AtmosConfig>
 
     @Override
     public PreSignedRequest preSignRequest( Request request, Date expiration ) throws MalformedURLException {
-        URI uri = config.resolveHostAndPath( request.getServiceRelativePath(), request.getQuery() );
-        Map<String, List<Object>> headers = request.generateHeaders( config.isEncodeUtf8() );
-
-        String contentType = null;
-        if ( request instanceof ContentRequest ) contentType = ((ContentRequest) request).getContentType();
-        // workaround for clients that set a default content-type for POSTs
-        if ( "POST".equals( request.getMethod() ) ) contentType = RestUtil.TYPE_DEFAULT;
-
-        // add expiration header
-        headers.put( RestUtil.XHEADER_EXPIRES, Arrays.asList( (Object) expiration.getTime() ) );
-
-        RestUtil.signRequest( request.getMethod(),
-                              uri.getPath(),
-                              uri.getQuery(),
-                              headers,
-                              config.getTokenId(),
-                              config.getSecretKey(),
-                              config.getServerClockSkew() );
-
-        return new PreSignedRequest( uri.toURL(), request.getMethod(), contentType, headers, expiration );
+        return urlSigner.preSignRequest( request, expiration );
     }
 }
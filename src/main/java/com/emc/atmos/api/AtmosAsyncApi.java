@@ -0,0 +1,245 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api;
+
+import com.emc.atmos.api.bean.*;
+import com.emc.atmos.api.request.*;
+import com.emc.util.BasicResponse;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * Asynchronous counterpart to {@link AtmosApi}. Each method submits the equivalent synchronous operation and returns
+ * immediately with a {@link Future} that completes when the operation does. Any exception thrown by the operation
+ * (i.e. an {@link AtmosException}) is reported as the cause of the {@link java.util.concurrent.ExecutionException}
+ * thrown by {@link Future#get()}.
+ * <p/>
+ * Operations that do not touch the network (i.e. {@link AtmosApi#getShareableUrl(ObjectIdentifier, java.util.Date)}
+ * and {@link AtmosApi#preSignRequest(Request, java.util.Date)}) are not mirrored here; call them on the synchronous
+ * API returned by {@link #getApi()}.
+ *
+ * @see AtmosApi
+ */
+public interface AtmosAsyncApi {
+    /**
+     * Returns the synchronous API that backs this instance.
+     */
+    AtmosApi getApi();
+
+    Future<ServiceInformation> getServiceInformation();
+
+    /**
+     * @see AtmosApi#createObject(Object, String)
+     */
+    Future<ObjectId> createObject( Object content, String contentType );
+
+    /**
+     * @see AtmosApi#createObject(ObjectIdentifier, Object, String)
+     */
+    Future<ObjectId> createObject( ObjectIdentifier identifier, Object content, String contentType );
+
+    /**
+     * @see AtmosApi#createObject(CreateObjectRequest)
+     */
+    Future<CreateObjectResponse> createObject( CreateObjectRequest request );
+
+    /**
+     * @see AtmosApi#readObject(ObjectIdentifier, Class)
+     */
+    <T> Future<T> readObject( ObjectIdentifier identifier, Class<T> objectType );
+
+    /**
+     * @see AtmosApi#readObject(ObjectIdentifier, Range, Class)
+     */
+    <T> Future<T> readObject( ObjectIdentifier identifier, Range range, Class<T> objectType );
+
+    /**
+     * @see AtmosApi#readObject(ReadObjectRequest, Class)
+     */
+    <T> Future<ReadObjectResponse<T>> readObject( ReadObjectRequest request, Class<T> objectType );
+
+    /**
+     * Completes once the response headers are received. Be sure to close the stream when finished with it.
+     *
+     * @see AtmosApi#readObjectStream(ObjectIdentifier, Range)
+     */
+    Future<ReadObjectResponse<InputStream>> readObjectStream( ObjectIdentifier identifier, Range range );
+
+    /**
+     * @see AtmosApi#updateObject(ObjectIdentifier, Object)
+     */
+    Future<Void> updateObject( ObjectIdentifier identifier, Object content );
+
+    /**
+     * @see AtmosApi#updateObject(ObjectIdentifier, Object, Range)
+     */
+    Future<Void> updateObject( ObjectIdentifier identifier, Object content, Range range );
+
+    /**
+     * @see AtmosApi#updateObject(UpdateObjectRequest)
+     */
+    Future<BasicResponse> updateObject( UpdateObjectRequest request );
+
+    /**
+     * @see AtmosApi#delete(ObjectIdentifier)
+     */
+    Future<Void> delete( ObjectIdentifier identifier );
+
+    /**
+     * @see AtmosApi#createDirectory(ObjectPath)
+     */
+    Future<ObjectId> createDirectory( ObjectPath path );
+
+    /**
+     * @see AtmosApi#createDirectory(ObjectPath, Acl, Metadata...)
+     */
+    Future<ObjectId> createDirectory( ObjectPath path, Acl acl, Metadata... metadata );
+
+    /**
+     * @see AtmosApi#listDirectory(ListDirectoryRequest)
+     */
+    Future<ListDirectoryResponse> listDirectory( ListDirectoryRequest request );
+
+    /**
+     * @see AtmosApi#move(ObjectPath, ObjectPath, boolean)
+     */
+    Future<Void> move( ObjectPath oldPath, ObjectPath newPath, boolean overwrite );
+
+    /**
+     * @see AtmosApi#getUserMetadataNames(ObjectIdentifier)
+     */
+    Future<Map<String, Boolean>> getUserMetadataNames( ObjectIdentifier identifier );
+
+    /**
+     * @see AtmosApi#getUserMetadata(ObjectIdentifier, String...)
+     */
+    Future<Map<String, Metadata>> getUserMetadata( ObjectIdentifier identifier, String... metadataNames );
+
+    /**
+     * @see AtmosApi#getSystemMetadata(ObjectIdentifier, String...)
+     */
+    Future<Map<String, Metadata>> getSystemMetadata( ObjectIdentifier identifier, String... metadataNames );
+
+    /**
+     * @see AtmosApi#objectExists(ObjectIdentifier)
+     */
+    Future<Boolean> objectExists( ObjectIdentifier identifier );
+
+    /**
+     * @see AtmosApi#getObjectMetadata(ObjectIdentifier)
+     */
+    Future<ObjectMetadata> getObjectMetadata( ObjectIdentifier identifier );
+
+    /**
+     * @see AtmosApi#setUserMetadata(ObjectIdentifier, Metadata...)
+     */
+    Future<Void> setUserMetadata( ObjectIdentifier identifier, Metadata... metadata );
+
+    /**
+     * @see AtmosApi#deleteUserMetadata(ObjectIdentifier, String...)
+     */
+    Future<Void> deleteUserMetadata( ObjectIdentifier identifier, String... names );
+
+    /**
+     * @see AtmosApi#listMetadata(String)
+     */
+    Future<Set<String>> listMetadata( String metadataName );
+
+    /**
+     * @see AtmosApi#listObjects(ListObjectsRequest)
+     */
+    Future<ListObjectsResponse> listObjects( ListObjectsRequest request );
+
+    /**
+     * @see AtmosApi#getAcl(ObjectIdentifier)
+     */
+    Future<Acl> getAcl( ObjectIdentifier identifier );
+
+    /**
+     * @see AtmosApi#setAcl(ObjectIdentifier, Acl)
+     */
+    Future<Void> setAcl( ObjectIdentifier identifier, Acl acl );
+
+    /**
+     * @see AtmosApi#getObjectInfo(ObjectIdentifier)
+     */
+    Future<ObjectInfo> getObjectInfo( ObjectIdentifier identifier );
+
+    /**
+     * @see AtmosApi#createVersion(ObjectIdentifier)
+     */
+    Future<ObjectId> createVersion( ObjectIdentifier identifier );
+
+    /**
+     * @see AtmosApi#listVersions(ListVersionsRequest)
+     */
+    Future<ListVersionsResponse> listVersions( ListVersionsRequest request );
+
+    /**
+     * @see AtmosApi#restoreVersion(ObjectId, ObjectId)
+     */
+    Future<Void> restoreVersion( ObjectId objectId, ObjectId versionId );
+
+    /**
+     * @see AtmosApi#deleteVersion(ObjectId)
+     */
+    Future<Void> deleteVersion( ObjectId versionId );
+
+    /**
+     * @see AtmosApi#createAccessToken(CreateAccessTokenRequest)
+     */
+    Future<CreateAccessTokenResponse> createAccessToken( CreateAccessTokenRequest request );
+
+    /**
+     * @see AtmosApi#getAccessToken(String)
+     */
+    Future<GetAccessTokenResponse> getAccessToken( String accessTokenId );
+
+    /**
+     * @see AtmosApi#deleteAccessToken(String)
+     */
+    Future<Void> deleteAccessToken( String accessTokenId );
+
+    /**
+     * @see AtmosApi#listAccessTokens(ListAccessTokensRequest)
+     */
+    Future<ListAccessTokensResponse> listAccessTokens( ListAccessTokensRequest request );
+
+    /**
+     * @see AtmosApi#execute(PreSignedRequest, Class, Object)
+     */
+    <T> Future<GenericResponse<T>> execute( PreSignedRequest request, Class<T> resultType, Object content );
+}
@@ -0,0 +1,483 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api;
+
+import com.emc.atmos.api.bean.*;
+import com.emc.atmos.api.request.*;
+import com.emc.util.BasicResponse;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Implements {@link AtmosAsyncApi} by running the operations of a synchronous {@link AtmosApi} on an
+ * {@link ExecutorService}. Because every call goes through the wrapped API, requests are signed, retried and
+ * error-checked exactly as they would be synchronously (i.e. by the filters of
+ * {@link com.emc.atmos.api.jersey.AtmosApiClient}).
+ * <p/>
+ * The number of calls that can be in flight at once is bounded by the executor, so size it (and the connection pool;
+ * see {@link AtmosConfig#setMaxConnectionsPerEndpoint(int)}) for the concurrency you need. Calls submitted beyond that
+ * are queued.
+ * <p/>
+ * Example:
+ * <pre>
+ * AtmosAsyncApi async = new AtmosAsyncApiClient(new AtmosApiClient(config), 32);
+ * List&lt;Future&lt;ObjectMetadata&gt;&gt; futures = new ArrayList&lt;Future&lt;ObjectMetadata&gt;&gt;();
+ * for (ObjectId id : ids) futures.add(async.getObjectMetadata(id));
+ * for (Future&lt;ObjectMetadata&gt; future : futures) process(future.get());
+ * </pre>
+ */
+public class AtmosAsyncApiClient implements AtmosAsyncApi {
+    private AtmosApi api;
+    private ExecutorService executor;
+    private boolean ownExecutor;
+
+    /**
+     * Creates an async client backed by a fixed pool of <code>threads</code> daemon threads. The pool is owned by
+     * this instance and is stopped by {@link #shutdown()}.
+     */
+    public AtmosAsyncApiClient( AtmosApi api, int threads ) {
+        this( api, Executors.newFixedThreadPool( threads, new DaemonThreadFactory( "atmos-async" ) ) );
+        this.ownExecutor = true;
+    }
+
+    /**
+     * Creates an async client that submits operations to the specified executor. The caller remains responsible for
+     * shutting down the executor.
+     */
+    public AtmosAsyncApiClient( AtmosApi api, ExecutorService executor ) {
+        if ( api == null ) throw new IllegalArgumentException( "api cannot be null" );
+        if ( executor == null ) throw new IllegalArgumentException( "executor cannot be null" );
+        this.api = api;
+        this.executor = executor;
+    }
+
+    /**
+     * Stops accepting new operations. Operations already submitted will still complete. Only shuts down the executor
+     * if it was created by this instance.
+     */
+    public void shutdown() {
+        if ( ownExecutor ) executor.shutdown();
+    }
+
+    @Override
+    public AtmosApi getApi() {
+        return api;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public Future<ServiceInformation> getServiceInformation() {
+        return executor.submit( new Callable<ServiceInformation>() {
+            @Override
+            public ServiceInformation call() throws Exception {
+                return api.getServiceInformation();
+            }
+        } );
+    }
+
+    @Override
+    public Future<ObjectId> createObject( final Object content, final String contentType ) {
+        return executor.submit( new Callable<ObjectId>() {
+            @Override
+            public ObjectId call() throws Exception {
+                return api.createObject( content, contentType );
+            }
+        } );
+    }
+
+    @Override
+    public Future<ObjectId> createObject( final ObjectIdentifier identifier, final Object content, final String contentType ) {
+        return executor.submit( new Callable<ObjectId>() {
+            @Override
+            public ObjectId call() throws Exception {
+                return api.createObject( identifier, content, contentType );
+            }
+        } );
+    }
+
+    @Override
+    public Future<CreateObjectResponse> createObject( final CreateObjectRequest request ) {
+        return executor.submit( new Callable<CreateObjectResponse>() {
+            @Override
+            public CreateObjectResponse call() throws Exception {
+                return api.createObject( request );
+            }
+        } );
+    }
+
+    @Override
+    public <T> Future<T> readObject( final ObjectIdentifier identifier, final Class<T> objectType ) {
+        return executor.submit( new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return api.readObject( identifier, objectType );
+            }
+        } );
+    }
+
+    @Override
+    public <T> Future<T> readObject( final ObjectIdentifier identifier, final Range range, final Class<T> objectType ) {
+        return executor.submit( new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return api.readObject( identifier, range, objectType );
+            }
+        } );
+    }
+
+    @Override
+    public <T> Future<ReadObjectResponse<T>> readObject( final ReadObjectRequest request, final Class<T> objectType ) {
+        return executor.submit( new Callable<ReadObjectResponse<T>>() {
+            @Override
+            public ReadObjectResponse<T> call() throws Exception {
+                return api.readObject( request, objectType );
+            }
+        } );
+    }
+
+    @Override
+    public Future<ReadObjectResponse<InputStream>> readObjectStream( final ObjectIdentifier identifier, final Range range ) {
+        return executor.submit( new Callable<ReadObjectResponse<InputStream>>() {
+            @Override
+            public ReadObjectResponse<InputStream> call() throws Exception {
+                return api.readObjectStream( identifier, range );
+            }
+        } );
+    }
+
+    @Override
+    public Future<Void> updateObject( final ObjectIdentifier identifier, final Object content ) {
+        return executor.submit( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                api.updateObject( identifier, content );
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public Future<Void> updateObject( final ObjectIdentifier identifier, final Object content, final Range range ) {
+        return executor.submit( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                api.updateObject( identifier, content, range );
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public Future<BasicResponse> updateObject( final UpdateObjectRequest request ) {
+        return executor.submit( new Callable<BasicResponse>() {
+            @Override
+            public BasicResponse call() throws Exception {
+                return api.updateObject( request );
+            }
+        } );
+    }
+
+    @Override
+    public Future<Void> delete( final ObjectIdentifier identifier ) {
+        return executor.submit( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                api.delete( identifier );
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public Future<ObjectId> createDirectory( final ObjectPath path ) {
+        return executor.submit( new Callable<ObjectId>() {
+            @Override
+            public ObjectId call() throws Exception {
+                return api.createDirectory( path );
+            }
+        } );
+    }
+
+    @Override
+    public Future<ObjectId> createDirectory( final ObjectPath path, final Acl acl, final Metadata... metadata ) {
+        return executor.submit( new Callable<ObjectId>() {
+            @Override
+            public ObjectId call() throws Exception {
+                return api.createDirectory( path, acl, metadata );
+            }
+        } );
+    }
+
+    @Override
+    public Future<ListDirectoryResponse> listDirectory( final ListDirectoryRequest request ) {
+        return executor.submit( new Callable<ListDirectoryResponse>() {
+            @Override
+            public ListDirectoryResponse call() throws Exception {
+                return api.listDirectory( request );
+            }
+        } );
+    }
+
+    @Override
+    public Future<Void> move( final ObjectPath oldPath, final ObjectPath newPath, final boolean overwrite ) {
+        return executor.submit( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                api.move( oldPath, newPath, overwrite );
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public Future<Map<String, Boolean>> getUserMetadataNames( final ObjectIdentifier identifier ) {
+        return executor.submit( new Callable<Map<String, Boolean>>() {
+            @Override
+            public Map<String, Boolean> call() throws Exception {
+                return api.getUserMetadataNames( identifier );
+            }
+        } );
+    }
+
+    @Override
+    public Future<Map<String, Metadata>> getUserMetadata( final ObjectIdentifier identifier, final String... metadataNames ) {
+        return executor.submit( new Callable<Map<String, Metadata>>() {
+            @Override
+            public Map<String, Metadata> call() throws Exception {
+                return api.getUserMetadata( identifier, metadataNames );
+            }
+        } );
+    }
+
+    @Override
+    public Future<Map<String, Metadata>> getSystemMetadata( final ObjectIdentifier identifier, final String... metadataNames ) {
+        return executor.submit( new Callable<Map<String, Metadata>>() {
+            @Override
+            public Map<String, Metadata> call() throws Exception {
+                return api.getSystemMetadata( identifier, metadataNames );
+            }
+        } );
+    }
+
+    @Override
+    public Future<Boolean> objectExists( final ObjectIdentifier identifier ) {
+        return executor.submit( new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return api.objectExists( identifier );
+            }
+        } );
+    }
+
+    @Override
+    public Future<ObjectMetadata> getObjectMetadata( final ObjectIdentifier identifier ) {
+        return executor.submit( new Callable<ObjectMetadata>() {
+            @Override
+            public ObjectMetadata call() throws Exception {
+                return api.getObjectMetadata( identifier );
+            }
+        } );
+    }
+
+    @Override
+    public Future<Void> setUserMetadata( final ObjectIdentifier identifier, final Metadata... metadata ) {
+        return executor.submit( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                api.setUserMetadata( identifier, metadata );
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public Future<Void> deleteUserMetadata( final ObjectIdentifier identifier, final String... names ) {
+        return executor.submit( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                api.deleteUserMetadata( identifier, names );
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public Future<Set<String>> listMetadata( final String metadataName ) {
+        return executor.submit( new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() throws Exception {
+                return api.listMetadata( metadataName );
+            }
+        } );
+    }
+
+    @Override
+    public Future<ListObjectsResponse> listObjects( final ListObjectsRequest request ) {
+        return executor.submit( new Callable<ListObjectsResponse>() {
+            @Override
+            public ListObjectsResponse call() throws Exception {
+                return api.listObjects( request );
+            }
+        } );
+    }
+
+    @Override
+    public Future<Acl> getAcl( final ObjectIdentifier identifier ) {
+        return executor.submit( new Callable<Acl>() {
+            @Override
+            public Acl call() throws Exception {
+                return api.getAcl( identifier );
+            }
+        } );
+    }
+
+    @Override
+    public Future<Void> setAcl( final ObjectIdentifier identifier, final Acl acl ) {
+        return executor.submit( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                api.setAcl( identifier, acl );
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public Future<ObjectInfo> getObjectInfo( final ObjectIdentifier identifier ) {
+        return executor.submit( new Callable<ObjectInfo>() {
+            @Override
+            public ObjectInfo call() throws Exception {
+                return api.getObjectInfo( identifier );
+            }
+        } );
+    }
+
+    @Override
+    public Future<ObjectId> createVersion( final ObjectIdentifier identifier ) {
+        return executor.submit( new Callable<ObjectId>() {
+            @Override
+            public ObjectId call() throws Exception {
+                return api.createVersion( identifier );
+            }
+        } );
+    }
+
+    @Override
+    public Future<ListVersionsResponse> listVersions( final ListVersionsRequest request ) {
+        return executor.submit( new Callable<ListVersionsResponse>() {
+            @Override
+            public ListVersionsResponse call() throws Exception {
+                return api.listVersions( request );
+            }
+        } );
+    }
+
+    @Override
+    public Future<Void> restoreVersion( final ObjectId objectId, final ObjectId versionId ) {
+        return executor.submit( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                api.restoreVersion( objectId, versionId );
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public Future<Void> deleteVersion( final ObjectId versionId ) {
+        return executor.submit( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                api.deleteVersion( versionId );
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public Future<CreateAccessTokenResponse> createAccessToken( final CreateAccessTokenRequest request ) {
+        return executor.submit( new Callable<CreateAccessTokenResponse>() {
+            @Override
+            public CreateAccessTokenResponse call() throws Exception {
+                return api.createAccessToken( request );
+            }
+        } );
+    }
+
+    @Override
+    public Future<GetAccessTokenResponse> getAccessToken( final String accessTokenId ) {
+        return executor.submit( new Callable<GetAccessTokenResponse>() {
+            @Override
+            public GetAccessTokenResponse call() throws Exception {
+                return api.getAccessToken( accessTokenId );
+            }
+        } );
+    }
+
+    @Override
+    public Future<Void> deleteAccessToken( final String accessTokenId ) {
+        return executor.submit( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                api.deleteAccessToken( accessTokenId );
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public Future<ListAccessTokensResponse> listAccessTokens( final ListAccessTokensRequest request ) {
+        return executor.submit( new Callable<ListAccessTokensResponse>() {
+            @Override
+            public ListAccessTokensResponse call() throws Exception {
+                return api.listAccessTokens( request );
+            }
+        } );
+    }
+
+    @Override
+    public <T> Future<GenericResponse<T>> execute( final PreSignedRequest request, final Class<T> resultType, final Object content ) {
+        return executor.submit( new Callable<GenericResponse<T>>() {
+            @Override
+            public GenericResponse<T> call() throws Exception {
+                return api.execute( request, resultType, content );
+            }
+        } );
+    }
+}
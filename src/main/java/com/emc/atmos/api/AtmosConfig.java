@@ -27,8 +27,10 @@
 package com.emc.atmos.api;
 
 import com.emc.atmos.AbstractConfig;
+import com.emc.atmos.api.metrics.MetricsRegistry;
 
 import javax.xml.bind.DatatypeConverter;
+import java.io.File;
 import java.net.URI;
 
 /**
@@ -39,16 +41,40 @@ public class AtmosConfig extends AbstractConfig {
 
     private String tokenId;
     private byte[] secretKey;
-    private long serverClockSkew;
+    private volatile long serverClockSkew;
+    private boolean enableClockSkewTracking = false;
     private boolean enableRetry = true;
+    private boolean enableFailover = false;
     private int retryDelayMillis = 0;
     private int maxRetries = 2;
     private int retryBufferSize = 1048576; // 1MB default
+    private boolean enableRetrySpill = false;
+    private long retrySpillLimit = 0;
+    private File retrySpillDirectory;
+    private boolean exponentialBackoff = false;
+    private int maxRetryDelayMillis = 30000;
+    private boolean retryJitter = false;
+    private double retryBudgetRatio = 0;
+    private int retryBudgetMinRetries = 10;
+    private long retryBudgetWindowMillis = 10000;
     private boolean enableExpect100Continue = true;
+    private long expect100ContinueThreshold = 0;
     private URI proxyUri;
     private String proxyUser;
     private String proxyPassword;
     private boolean encodeUtf8 = true;
+    private int maxConnections = 200;
+    private int maxConnectionsPerEndpoint = 200;
+    private long connectionIdleTimeout = 0;
+    private long connectionTimeToLive = 0;
+    private long connectionLeaseTimeout = 0;
+    private long connectionReaperInterval = 5000;
+    private boolean staleConnectionCheck = true;
+    private boolean enableAdaptiveConcurrency = false;
+    private long adaptiveConcurrencyTimeoutMillis = 60000;
+    private int chunkedUploadSize = 4 * 1024 * 1024; // 4MB default
+    private boolean pipelineChunkedUploads = false;
+    private MetricsRegistry metricsRegistry;
 
     /**
      * Creates a new instance with default parameters. tokenId, secretKey and at least one endpoint must be provided
@@ -86,6 +112,24 @@ public class AtmosConfig extends AbstractConfig {
         this.enableExpect100Continue = enableExpect100Continue;
     }
 
+    /**
+     * Returns the minimum content size (in bytes) of a write request that will use the Expect: 100-continue header.
+     */
+    public long getExpect100ContinueThreshold() {
+        return expect100ContinueThreshold;
+    }
+
+    /**
+     * Sets the minimum content size (in bytes) of a write request that will use the Expect: 100-continue header (when
+     * enableExpect100Continue is true). Smaller writes are sent in one shot, since the extra round-trip costs more
+     * than sending a small payload that might be rejected. Writes whose size cannot be determined up front always use
+     * Expect: 100-continue.
+     * Default is 0 (all object writes).
+     */
+    public void setExpect100ContinueThreshold( long expect100ContinueThreshold ) {
+        this.expect100ContinueThreshold = expect100ContinueThreshold;
+    }
+
     /**
      * Returns whether 500 errors and IOExceptions should be automatically retried.
      */
@@ -95,13 +139,32 @@ public class AtmosConfig extends AbstractConfig {
 
     /**
      * Sets whether 500 errors and IOExceptions should be automatically retried. When enabled, these requests will be
-     * retried up to maxRetries times with a retryDelayMillis ms delay between retry attempts.
+     * retried up to maxRetries times with a retryDelayMillis ms delay between retry attempts (see also
+     * exponentialBackoff, retryJitter and retryBudgetRatio).
      * Default is true.
      */
     public void setEnableRetry( boolean enableRetry ) {
         this.enableRetry = enableRetry;
     }
 
+    /**
+     * Returns whether retries are sent to a different endpoint than the attempt that failed.
+     */
+    public boolean isEnableFailover() {
+        return enableFailover;
+    }
+
+    /**
+     * Sets whether retries are sent to a different endpoint than the attempt that failed. When enabled, each retry
+     * asks the load balancing algorithm for an endpoint that has not been tried yet for the request (once all
+     * endpoints have been tried, any endpoint may be used again) and re-signs the request. Has no effect unless retry
+     * is enabled and more than one endpoint is configured.
+     * Default is false.
+     */
+    public void setEnableFailover( boolean enableFailover ) {
+        this.enableFailover = enableFailover;
+    }
+
     /**
      * Returns the maximum number of retry attempts before bubbling the exception back to calling code.
      */
@@ -129,13 +192,62 @@ public class AtmosConfig extends AbstractConfig {
      * amount of data transferred surpasses this number, the request can no longer be retried. The implementation may
      * be
      * as simple as calling inputStream.mark( bufferSize ), so input streams that do not support mark might not be
-     * retried.
+     * retried (see enableRetrySpill to lift both restrictions).
      * Default is 1MB.
      */
     public void setRetryBufferSize( int retryBufferSize ) {
         this.retryBufferSize = retryBufferSize;
     }
 
+    /**
+     * Returns whether upload streams are buffered to disk so they can be retried regardless of size.
+     */
+    public boolean isEnableRetrySpill() {
+        return enableRetrySpill;
+    }
+
+    /**
+     * Sets whether upload streams are buffered to disk so they can be retried regardless of size. When enabled, input
+     * stream content is recorded as it is sent: the first retryBufferSize bytes in memory and the rest in a temp file
+     * (up to retrySpillLimit bytes), which is deleted when the request completes. Streams that do not support mark
+     * can then be retried as well.
+     * Default is false.
+     */
+    public void setEnableRetrySpill( boolean enableRetrySpill ) {
+        this.enableRetrySpill = enableRetrySpill;
+    }
+
+    /**
+     * Returns the maximum number of bytes per request buffered to disk when enableRetrySpill is set.
+     */
+    public long getRetrySpillLimit() {
+        return retrySpillLimit;
+    }
+
+    /**
+     * Sets the maximum number of bytes per request buffered to disk when enableRetrySpill is set. Requests larger
+     * than retryBufferSize + retrySpillLimit cannot be retried once that much has been sent.
+     * Default is 0 (no limit).
+     */
+    public void setRetrySpillLimit( long retrySpillLimit ) {
+        this.retrySpillLimit = retrySpillLimit;
+    }
+
+    /**
+     * Returns the directory in which retry spill files are created.
+     */
+    public File getRetrySpillDirectory() {
+        return retrySpillDirectory;
+    }
+
+    /**
+     * Sets the directory in which retry spill files are created.
+     * Default is null (the system temp directory).
+     */
+    public void setRetrySpillDirectory( File retrySpillDirectory ) {
+        this.retrySpillDirectory = retrySpillDirectory;
+    }
+
     /**
      * Returns the delay in milliseconds to wait between retry attempts.
      */
@@ -151,6 +263,103 @@ public class AtmosConfig extends AbstractConfig {
         this.retryDelayMillis = retryDelayMillis;
     }
 
+    /**
+     * Returns whether the retry delay doubles with each retry attempt.
+     */
+    public boolean isExponentialBackoff() {
+        return exponentialBackoff;
+    }
+
+    /**
+     * Sets whether the retry delay doubles with each retry attempt. When enabled, the first retry waits
+     * retryDelayMillis (or 100ms if retryDelayMillis is 0), the second waits twice that, and so on up to
+     * maxRetryDelayMillis. Default is false (every retry waits retryDelayMillis).
+     */
+    public void setExponentialBackoff( boolean exponentialBackoff ) {
+        this.exponentialBackoff = exponentialBackoff;
+    }
+
+    /**
+     * Returns the maximum delay in milliseconds between retry attempts when using exponential backoff.
+     */
+    public int getMaxRetryDelayMillis() {
+        return maxRetryDelayMillis;
+    }
+
+    /**
+     * Sets the maximum delay in milliseconds between retry attempts when using exponential backoff.
+     * Default is 30000 (30 seconds).
+     */
+    public void setMaxRetryDelayMillis( int maxRetryDelayMillis ) {
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+    }
+
+    /**
+     * Returns whether a random jitter is applied to the retry delay.
+     */
+    public boolean isRetryJitter() {
+        return retryJitter;
+    }
+
+    /**
+     * Sets whether a random jitter is applied to the retry delay. When enabled, each retry waits a random time between
+     * 0 and the calculated delay ("full jitter"), so that many threads failing at once do not retry in lock-step.
+     * Default is false.
+     */
+    public void setRetryJitter( boolean retryJitter ) {
+        this.retryJitter = retryJitter;
+    }
+
+    /**
+     * Returns the ratio of retries to requests allowed within the retry budget window.
+     */
+    public double getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    /**
+     * Sets the ratio of retries to requests allowed within the retry budget window (i.e. 0.1 allows 1 retry for every
+     * 10 requests, plus retryBudgetMinRetries). Once the budget is spent, failed requests are not retried until the
+     * window moves on. This keeps retries from multiplying load on a cluster that is already struggling. The budget
+     * applies to all threads using the same client.
+     * Default is 0 (no budget; every request may be retried up to maxRetries times).
+     */
+    public void setRetryBudgetRatio( double retryBudgetRatio ) {
+        this.retryBudgetRatio = retryBudgetRatio;
+    }
+
+    /**
+     * Returns the number of retries always allowed within the retry budget window, regardless of request volume.
+     */
+    public int getRetryBudgetMinRetries() {
+        return retryBudgetMinRetries;
+    }
+
+    /**
+     * Sets the number of retries always allowed within the retry budget window, regardless of request volume. Only
+     * applies when retryBudgetRatio is set.
+     * Default is 10.
+     */
+    public void setRetryBudgetMinRetries( int retryBudgetMinRetries ) {
+        this.retryBudgetMinRetries = retryBudgetMinRetries;
+    }
+
+    /**
+     * Returns the length in milliseconds of the sliding window over which the retry budget is calculated.
+     */
+    public long getRetryBudgetWindowMillis() {
+        return retryBudgetWindowMillis;
+    }
+
+    /**
+     * Sets the length in milliseconds of the sliding window over which the retry budget is calculated. Only applies
+     * when retryBudgetRatio is set.
+     * Default is 10000 (10 seconds).
+     */
+    public void setRetryBudgetWindowMillis( long retryBudgetWindowMillis ) {
+        this.retryBudgetWindowMillis = retryBudgetWindowMillis;
+    }
+
     /**
      * Returns the secret key as a byte array.
      */
@@ -188,6 +397,25 @@ public class AtmosConfig extends AbstractConfig {
         this.serverClockSkew = serverClockSkew;
     }
 
+    /**
+     * Returns whether the server clock skew is updated automatically from responses.
+     */
+    public boolean isEnableClockSkewTracking() {
+        return enableClockSkewTracking;
+    }
+
+    /**
+     * Sets whether the server clock skew is updated automatically from the Date header of every response. When
+     * enabled, there is no need to call {@link com.emc.atmos.api.AtmosApi#calculateServerClockSkew()}, and a request
+     * rejected with a timestamp or signature error (codes 1031 and 1032) is re-signed and retried once if the
+     * estimated skew has changed since it was signed. Note that a proxy that rewrites the Date header will cause the
+     * proxy's clock to be tracked instead of the server's.
+     * Default is false.
+     */
+    public void setEnableClockSkewTracking( boolean enableClockSkewTracking ) {
+        this.enableClockSkewTracking = enableClockSkewTracking;
+    }
+
     /**
      * Returns the full Atmos token ID
      */
@@ -258,4 +486,203 @@ public class AtmosConfig extends AbstractConfig {
     public void setEncodeUtf8(boolean encodeUtf8) {
         this.encodeUtf8 = encodeUtf8;
     }
+
+    /**
+     * Returns the maximum number of pooled connections across all endpoints.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of pooled connections across all endpoints. Requests that cannot lease a connection
+     * will wait up to connectionLeaseTimeout ms for one to become available.
+     * Default is 200.
+     */
+    public void setMaxConnections( int maxConnections ) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Returns the maximum number of pooled connections to any single endpoint.
+     */
+    public int getMaxConnectionsPerEndpoint() {
+        return maxConnectionsPerEndpoint;
+    }
+
+    /**
+     * Sets the maximum number of pooled connections to any single endpoint (route). When using multiple endpoints,
+     * this is typically set to maxConnections divided by the number of endpoints.
+     * Default is 200.
+     */
+    public void setMaxConnectionsPerEndpoint( int maxConnectionsPerEndpoint ) {
+        this.maxConnectionsPerEndpoint = maxConnectionsPerEndpoint;
+    }
+
+    /**
+     * Returns the time in milliseconds a pooled connection may sit idle before it is evicted.
+     */
+    public long getConnectionIdleTimeout() {
+        return connectionIdleTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds a pooled connection may sit idle before it is evicted by the background connection
+     * reaper. Set this below the idle timeout of the Atmos nodes (or any load balancer in between) to avoid reusing
+     * sockets the server has already closed.
+     * Default is 0 (idle connections are never evicted).
+     */
+    public void setConnectionIdleTimeout( long connectionIdleTimeout ) {
+        this.connectionIdleTimeout = connectionIdleTimeout;
+    }
+
+    /**
+     * Returns the maximum lifetime in milliseconds of a pooled connection.
+     */
+    public long getConnectionTimeToLive() {
+        return connectionTimeToLive;
+    }
+
+    /**
+     * Sets the maximum lifetime in milliseconds of a pooled connection. Connections older than this will not be
+     * reused, regardless of activity.
+     * Default is 0 (no limit).
+     */
+    public void setConnectionTimeToLive( long connectionTimeToLive ) {
+        this.connectionTimeToLive = connectionTimeToLive;
+    }
+
+    /**
+     * Returns the time in milliseconds a request will wait to lease a connection from the pool.
+     */
+    public long getConnectionLeaseTimeout() {
+        return connectionLeaseTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds a request will wait to lease a connection from the pool before failing. If this
+     * timeout is reached, the request will fail with a ConnectionPoolTimeoutException.
+     * Default is 0 (wait indefinitely).
+     */
+    public void setConnectionLeaseTimeout( long connectionLeaseTimeout ) {
+        this.connectionLeaseTimeout = connectionLeaseTimeout;
+    }
+
+    /**
+     * Returns the interval in milliseconds at which the background reaper evicts idle and expired connections.
+     */
+    public long getConnectionReaperInterval() {
+        return connectionReaperInterval;
+    }
+
+    /**
+     * Sets the interval in milliseconds at which the background reaper evicts idle and expired connections. The reaper
+     * only runs if connectionIdleTimeout or connectionTimeToLive is set.
+     * Default is 5000 (5 seconds).
+     */
+    public void setConnectionReaperInterval( long connectionReaperInterval ) {
+        this.connectionReaperInterval = connectionReaperInterval;
+    }
+
+    /**
+     * Returns whether pooled connections are checked for staleness before they are reused.
+     */
+    public boolean isStaleConnectionCheck() {
+        return staleConnectionCheck;
+    }
+
+    /**
+     * Sets whether pooled connections are checked for staleness before they are reused. The check costs up to 30ms
+     * per request, so high-throughput clients may disable it and rely on connectionIdleTimeout instead.
+     * Default is true.
+     */
+    public void setStaleConnectionCheck( boolean staleConnectionCheck ) {
+        this.staleConnectionCheck = staleConnectionCheck;
+    }
+
+    /**
+     * Returns whether the number of concurrent requests to each endpoint adapts to server load.
+     */
+    public boolean isEnableAdaptiveConcurrency() {
+        return enableAdaptiveConcurrency;
+    }
+
+    /**
+     * Sets whether the number of concurrent requests to each endpoint adapts to server load. When enabled, the limit
+     * starts at maxConnectionsPerEndpoint, is halved whenever an endpoint responds with Atmos error 1040 (server busy)
+     * or HTTP 503, and slowly grows back as requests succeed. Requests over the limit wait up to
+     * adaptiveConcurrencyTimeoutMillis for a slot.
+     * Default is false.
+     */
+    public void setEnableAdaptiveConcurrency( boolean enableAdaptiveConcurrency ) {
+        this.enableAdaptiveConcurrency = enableAdaptiveConcurrency;
+    }
+
+    /**
+     * Returns how long in milliseconds a request will wait for a slot when adaptive concurrency is enabled.
+     */
+    public long getAdaptiveConcurrencyTimeoutMillis() {
+        return adaptiveConcurrencyTimeoutMillis;
+    }
+
+    /**
+     * Sets how long in milliseconds a request will wait for a slot when adaptive concurrency is enabled. If the
+     * timeout expires, an AtmosException is thrown (and the request is not retried). 0 means wait indefinitely.
+     * Default is 60000 (1 minute).
+     */
+    public void setAdaptiveConcurrencyTimeoutMillis( long adaptiveConcurrencyTimeoutMillis ) {
+        this.adaptiveConcurrencyTimeoutMillis = adaptiveConcurrencyTimeoutMillis;
+    }
+
+    /**
+     * Returns the size in bytes of each chunk when uploading an InputStream of unknown length.
+     */
+    public int getChunkedUploadSize() {
+        return chunkedUploadSize;
+    }
+
+    /**
+     * Sets the size in bytes of each chunk when uploading an InputStream of unknown length (a content-length less than
+     * zero). Such a stream is sent as one create (or full update) request with the first chunk, followed by an append
+     * for each remaining chunk. Larger chunks mean fewer requests but more memory per upload.
+     * Default is 4194304 (4MB).
+     */
+    public void setChunkedUploadSize( int chunkedUploadSize ) {
+        this.chunkedUploadSize = chunkedUploadSize;
+    }
+
+    /**
+     * Returns whether the next chunk of an upload of unknown length is read while the previous one is being sent.
+     */
+    public boolean isPipelineChunkedUploads() {
+        return pipelineChunkedUploads;
+    }
+
+    /**
+     * Sets whether the next chunk of an upload of unknown length is read (on a background thread) while the previous
+     * one is being sent. This helps when the source stream is slow to produce data (i.e. a compression pipeline), at
+     * the cost of a second chunk buffer per upload.
+     * Default is false.
+     */
+    public void setPipelineChunkedUploads( boolean pipelineChunkedUploads ) {
+        this.pipelineChunkedUploads = pipelineChunkedUploads;
+    }
+
+    /**
+     * Returns the registry that receives the metrics of each request, or null if metrics are disabled.
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * Sets the registry that receives the metrics of each request (operation type, endpoint, latency, bytes sent and
+     * received, retries and error codes). Use a {@link com.emc.atmos.api.metrics.DefaultMetricsRegistry} to keep
+     * latency histograms in memory and expose them over JMX, or implement {@link MetricsRegistry} to forward them
+     * elsewhere. Must be set before the client is created.
+     * Default is null (no metrics).
+     */
+    public void setMetricsRegistry( MetricsRegistry metricsRegistry ) {
+        this.metricsRegistry = metricsRegistry;
+    }
 }
@@ -27,6 +27,7 @@
 package com.emc.atmos.api;
 
 import com.emc.atmos.ChecksumError;
+import com.emc.util.BufferPool;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -77,17 +78,22 @@ public class ChecksummedInputStream extends InputStream {
     }
 
     private int skip(int n) throws IOException {
-        byte[] bytes = new byte[1024 * 64]; // 32K
+        int bufferSize = 1024 * 64; // 64K
+        byte[] bytes = BufferPool.getDefault().lease(bufferSize);
         int toRead, read, total = 0;
-        while (total < n) {
-            toRead = Math.min(n - total, bytes.length);
-            read = delegate.read(bytes, 0, toRead);
-            if (read < 0) {
-                finish();
-                break;
+        try {
+            while (total < n) {
+                toRead = Math.min(n - total, bufferSize);
+                read = delegate.read(bytes, 0, toRead);
+                if (read < 0) {
+                    finish();
+                    break;
+                }
+                update(bytes, 0, read);
+                total += read;
             }
-            update(bytes, 0, read);
-            total += read;
+        } finally {
+            BufferPool.getDefault().release(bytes);
         }
         return total;
     }
@@ -0,0 +1,448 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.ChecksumError;
+import com.emc.atmos.api.bean.Metadata;
+import com.emc.atmos.api.bean.ObjectMetadata;
+import com.emc.util.StreamUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Downloads objects by reading fixed-size ranges concurrently, the counterpart to {@link ParallelUploader}.
+ * <p/>
+ * The object size (and ws-checksum, if any) is read with {@link AtmosApi#getObjectMetadata(ObjectIdentifier)}, then the
+ * object is split into ranges of {@link #getPartSize()} bytes that are fetched by up to {@link #getThreads()}
+ * concurrent requests. A range that fails is retried on its own up to {@link #getPartRetries()} times.
+ * <ul>
+ * <li>When downloading to a {@link File}, each range is streamed straight to its offset in the file, so memory use
+ * does not depend on the part size.</li>
+ * <li>When downloading to a {@link WritableByteChannel}, ranges must be written in order, so ranges that arrive early
+ * are buffered. The number of buffered ranges is limited by {@link #getMaxBufferedBytes()}.</li>
+ * </ul>
+ * If the object has a ws-checksum and {@link #isVerifyChecksum()} is true, the downloaded content is verified against
+ * it. For channels this is done as the content is written; for files, the file is read back once the download is
+ * complete (ranges arrive out of order and the digest cannot be computed piecewise).
+ * <p/>
+ * Make sure the connection pool allows at least <code>threads</code> connections per endpoint (see
+ * {@link AtmosConfig#setMaxConnectionsPerEndpoint(int)}).
+ */
+public class ParallelDownloader {
+    private static final Logger l4j = LoggerFactory.getLogger( ParallelDownloader.class );
+
+    public static final int DEFAULT_PART_SIZE = 4 * 1024 * 1024; // 4MB
+    public static final int DEFAULT_THREADS = 8;
+    public static final int DEFAULT_PART_RETRIES = 3;
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = 64 * 1024 * 1024; // 64MB
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private AtmosApi api;
+    private ExecutorService executor;
+    private int partSize = DEFAULT_PART_SIZE;
+    private int threads = DEFAULT_THREADS;
+    private int partRetries = DEFAULT_PART_RETRIES;
+    private long partRetryDelay = 1000;
+    private long maxBufferedBytes = DEFAULT_MAX_BUFFERED_BYTES;
+    private boolean verifyChecksum = true;
+
+    /**
+     * Creates a downloader that starts a pool of daemon threads for each download.
+     */
+    public ParallelDownloader( AtmosApi api ) {
+        this( api, null );
+    }
+
+    /**
+     * Creates a downloader that reads ranges using the specified executor (if not null). The number of concurrent
+     * reads per download is still limited to {@link #getThreads()}. The caller remains responsible for shutting down
+     * the executor.
+     */
+    public ParallelDownloader( AtmosApi api, ExecutorService executor ) {
+        if ( api == null ) throw new IllegalArgumentException( "api cannot be null" );
+        this.api = api;
+        this.executor = executor;
+    }
+
+    /**
+     * Downloads the object to <code>file</code>, which is created or truncated to the size of the object.
+     *
+     * @return the size of the object
+     */
+    public long download( ObjectIdentifier identifier, File file ) throws IOException {
+        ObjectMetadata metadata = api.getObjectMetadata( identifier );
+        long size = getSize( identifier, metadata );
+
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try {
+            raf.setLength( size );
+            FileChannel channel = raf.getChannel();
+
+            writeRanges( identifier, size, channel );
+
+            ChecksumValue wsChecksum = metadata.getWsChecksum();
+            if ( shouldVerify( wsChecksum, size ) ) {
+                RunningChecksum checksum = newChecksum( wsChecksum );
+                ByteBuffer buffer = ByteBuffer.allocate( COPY_BUFFER_SIZE );
+                long position = 0;
+                int read;
+                while ( (read = channel.read( buffer, position )) > 0 ) {
+                    checksum.update( buffer.array(), 0, read );
+                    position += read;
+                    buffer.clear();
+                }
+                verify( wsChecksum, checksum );
+            }
+        } finally {
+            raf.close();
+        }
+        return size;
+    }
+
+    /**
+     * Downloads the object to <code>channel</code>, writing the content in order. The channel is not closed.
+     *
+     * @return the size of the object
+     */
+    public long download( ObjectIdentifier identifier, WritableByteChannel channel ) throws IOException {
+        ObjectMetadata metadata = api.getObjectMetadata( identifier );
+        long size = getSize( identifier, metadata );
+
+        ChecksumValue wsChecksum = metadata.getWsChecksum();
+        RunningChecksum checksum = shouldVerify( wsChecksum, size ) ? newChecksum( wsChecksum ) : null;
+
+        ExecutorService partExecutor = startExecutor();
+        LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+        int window = (int) Math.max( 1, Math.min( threads, maxBufferedBytes / partSize ) );
+        try {
+            long offset = 0;
+            while ( offset < size || !pending.isEmpty() ) {
+                // keep up to [window] ranges in flight; each holds a part-sized buffer until written
+                while ( offset < size && pending.size() < window ) {
+                    Range range = new Range( offset, Math.min( offset + partSize, size ) - 1 );
+                    pending.add( partExecutor.submit( new BufferedRangeReader( identifier, range ) ) );
+                    offset = range.getLast() + 1;
+                }
+
+                byte[] part = pending.removeFirst().get();
+                if ( checksum != null ) checksum.update( part, 0, part.length );
+                ByteBuffer byteBuffer = ByteBuffer.wrap( part );
+                while ( byteBuffer.hasRemaining() ) {
+                    channel.write( byteBuffer );
+                }
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new AtmosException( "Interrupted during parallel download", e );
+        } catch ( ExecutionException e ) {
+            throw unwrap( e );
+        } finally {
+            for ( Future<byte[]> future : pending ) {
+                future.cancel( true );
+            }
+            if ( executor == null ) partExecutor.shutdownNow();
+        }
+
+        if ( checksum != null ) verify( wsChecksum, checksum );
+        return size;
+    }
+
+    protected long getSize( ObjectIdentifier identifier, ObjectMetadata metadata ) {
+        Metadata sizeMeta = metadata.getMetadata() == null ? null : metadata.getMetadata().get( "size" );
+        if ( sizeMeta == null ) {
+            Map<String, Metadata> systemMetadata = api.getSystemMetadata( identifier, "size" );
+            sizeMeta = systemMetadata.get( "size" );
+        }
+        if ( sizeMeta == null ) throw new AtmosException( "Could not determine the size of " + identifier );
+        return Long.parseLong( sizeMeta.getValue() );
+    }
+
+    /**
+     * Fetches every range of the object concurrently and writes each to its offset in <code>channel</code>.
+     */
+    private void writeRanges( ObjectIdentifier identifier, long size, FileChannel channel ) throws IOException {
+        ExecutorService partExecutor = startExecutor();
+        LinkedList<Future<Void>> futures = new LinkedList<Future<Void>>();
+        try {
+            // bound the number of queued ranges so a shared executor is not flooded
+            for ( long offset = 0; offset < size; offset += partSize ) {
+                if ( futures.size() >= threads ) futures.removeFirst().get();
+                Range range = new Range( offset, Math.min( offset + partSize, size ) - 1 );
+                futures.add( partExecutor.submit( new FileRangeWriter( identifier, range, channel ) ) );
+            }
+            while ( !futures.isEmpty() ) {
+                futures.removeFirst().get();
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new AtmosException( "Interrupted during parallel download", e );
+        } catch ( ExecutionException e ) {
+            throw unwrap( e );
+        } finally {
+            for ( Future<Void> future : futures ) {
+                future.cancel( true );
+            }
+            if ( executor == null ) partExecutor.shutdownNow();
+        }
+    }
+
+    private ExecutorService startExecutor() {
+        if ( executor != null ) return executor;
+        return Executors.newFixedThreadPool( threads, new DaemonThreadFactory( "atmos-download" ) );
+    }
+
+    private RuntimeException unwrap( ExecutionException e ) throws IOException {
+        Throwable cause = e.getCause();
+        if ( cause instanceof IOException ) throw (IOException) cause;
+        if ( cause instanceof RuntimeException ) return (RuntimeException) cause;
+        if ( cause instanceof Error ) throw (Error) cause;
+        return new AtmosException( "Error during parallel download", cause );
+    }
+
+    /**
+     * A ws-checksum only covers the object if it was written entirely by appends (otherwise its offset will not match
+     * the size).
+     */
+    private boolean shouldVerify( ChecksumValue wsChecksum, long size ) {
+        if ( !verifyChecksum || wsChecksum == null ) return false;
+        if ( wsChecksum.getOffset() != size ) {
+            l4j.info( "ws-checksum offset (" + wsChecksum.getOffset() + ") does not match object size (" + size
+                      + "); skipping verification" );
+            return false;
+        }
+        return true;
+    }
+
+    private RunningChecksum newChecksum( ChecksumValue wsChecksum ) {
+        try {
+            return new RunningChecksum( wsChecksum.getAlgorithm() );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    private void verify( ChecksumValue expected, RunningChecksum actual ) {
+        if ( !expected.getValue().equals( actual.getValue() ) )
+            throw new ChecksumError( "Checksum failure after parallel download", expected.getValue(),
+                                     actual.getValue() );
+    }
+
+    /**
+     * Returns the size in bytes of each range. Default is 4MB.
+     */
+    public int getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Sets the size in bytes of each range. Default is 4MB.
+     */
+    public void setPartSize( int partSize ) {
+        if ( partSize < 1 ) throw new IllegalArgumentException( "partSize must be at least 1" );
+        this.partSize = partSize;
+    }
+
+    /**
+     * Returns the maximum number of ranges read concurrently for each download. Default is 8.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the maximum number of ranges read concurrently for each download. Default is 8.
+     */
+    public void setThreads( int threads ) {
+        if ( threads < 1 ) throw new IllegalArgumentException( "threads must be at least 1" );
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the number of times a failed range is retried before the download is abandoned. Default is 3.
+     */
+    public int getPartRetries() {
+        return partRetries;
+    }
+
+    /**
+     * Sets the number of times a failed range is retried before the download is abandoned. These retries are in
+     * addition to any performed by the client itself (see {@link AtmosConfig#setEnableRetry(boolean)}). Default is 3.
+     */
+    public void setPartRetries( int partRetries ) {
+        this.partRetries = partRetries;
+    }
+
+    /**
+     * Returns the delay in milliseconds before a failed range is retried. Default is 1000.
+     */
+    public long getPartRetryDelay() {
+        return partRetryDelay;
+    }
+
+    /**
+     * Sets the delay in milliseconds before a failed range is retried. The delay is multiplied by the attempt number.
+     * Default is 1000.
+     */
+    public void setPartRetryDelay( long partRetryDelay ) {
+        this.partRetryDelay = partRetryDelay;
+    }
+
+    /**
+     * Returns the maximum number of bytes buffered when downloading to a channel. Default is 64MB.
+     */
+    public long getMaxBufferedBytes() {
+        return maxBufferedBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes buffered when downloading to a channel. This limits the number of ranges in
+     * flight to <code>maxBufferedBytes / partSize</code> (but at least one and at most <code>threads</code>). Has no
+     * effect when downloading to a file. Default is 64MB.
+     */
+    public void setMaxBufferedBytes( long maxBufferedBytes ) {
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    /**
+     * Returns whether downloads are verified against the object's ws-checksum (if it has one). Default is true.
+     */
+    public boolean isVerifyChecksum() {
+        return verifyChecksum;
+    }
+
+    /**
+     * Sets whether downloads are verified against the object's ws-checksum (if it has one). Default is true.
+     */
+    public void setVerifyChecksum( boolean verifyChecksum ) {
+        this.verifyChecksum = verifyChecksum;
+    }
+
+    /**
+     * Reads a single range, retrying it from the beginning if it fails.
+     */
+    private abstract class RangeReader<T> implements Callable<T> {
+        protected ObjectIdentifier identifier;
+        protected Range range;
+
+        RangeReader( ObjectIdentifier identifier, Range range ) {
+            this.identifier = identifier;
+            this.range = range;
+        }
+
+        @Override
+        public T call() throws Exception {
+            for ( int attempt = 0; ; attempt++ ) {
+                try {
+                    InputStream stream = api.readObjectStream( identifier, range ).getObject();
+                    try {
+                        return read( stream );
+                    } finally {
+                        stream.close();
+                    }
+                } catch ( IOException e ) {
+                    if ( attempt >= partRetries ) throw e;
+                    l4j.info( "range " + range + " failed (attempt " + (attempt + 1) + "); retrying", e );
+                } catch ( RuntimeException e ) {
+                    if ( attempt >= partRetries ) throw e;
+                    l4j.info( "range " + range + " failed (attempt " + (attempt + 1) + "); retrying", e );
+                }
+                Thread.sleep( partRetryDelay * (attempt + 1) );
+            }
+        }
+
+        protected abstract T read( InputStream stream ) throws IOException;
+
+        protected long length() {
+            return range.getLast() - range.getFirst() + 1;
+        }
+    }
+
+    /**
+     * Streams a range straight to its offset in a file.
+     */
+    private class FileRangeWriter extends RangeReader<Void> {
+        private FileChannel channel;
+
+        FileRangeWriter( ObjectIdentifier identifier, Range range, FileChannel channel ) {
+            super( identifier, range );
+            this.channel = channel;
+        }
+
+        @Override
+        protected Void read( InputStream stream ) throws IOException {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long position = range.getFirst(), end = range.getLast() + 1;
+            int read;
+            while ( position < end
+                    && (read = stream.read( buffer, 0, (int) Math.min( buffer.length, end - position ) )) != -1 ) {
+                ByteBuffer byteBuffer = ByteBuffer.wrap( buffer, 0, read );
+                while ( byteBuffer.hasRemaining() ) {
+                    position += channel.write( byteBuffer, position );
+                }
+            }
+            if ( position < end ) throw new AtmosException( "Premature end of stream reading range " + range );
+            return null;
+        }
+    }
+
+    /**
+     * Reads a range into memory.
+     */
+    private class BufferedRangeReader extends RangeReader<byte[]> {
+        BufferedRangeReader( ObjectIdentifier identifier, Range range ) {
+            super( identifier, range );
+        }
+
+        @Override
+        protected byte[] read( InputStream stream ) throws IOException {
+            byte[] buffer = new byte[(int) length()];
+            if ( StreamUtil.readFully( stream, buffer, 0, buffer.length ) < buffer.length )
+                throw new AtmosException( "Premature end of stream reading range " + range );
+            return buffer;
+        }
+    }
+}
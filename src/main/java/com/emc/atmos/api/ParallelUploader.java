@@ -0,0 +1,414 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.ChecksumError;
+import com.emc.atmos.api.bean.CreateObjectResponse;
+import com.emc.atmos.api.request.CreateObjectRequest;
+import com.emc.atmos.api.request.PutObjectRequest;
+import com.emc.atmos.api.request.UpdateObjectRequest;
+import com.emc.util.BasicResponse;
+import com.emc.util.StreamUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Uploads large objects by writing fixed-size ranges concurrently. A single TCP stream rarely saturates a fast link;
+ * splitting the content into parts and writing them in parallel (each on its own pooled connection) does.
+ * <p/>
+ * The object is created with the first part as its content, then the remaining parts are written with
+ * {@link UpdateObjectRequest#range(Range)} by up to {@link #getThreads()} concurrent requests. Content is read
+ * sequentially from the source, so at most <code>threads</code> parts are held in memory at once. A part that fails is
+ * retried on its own up to {@link #getPartRetries()} times. If a part still fails, the remaining parts are abandoned
+ * and the partially written object is deleted.
+ * <p/>
+ * If a checksum algorithm is set via {@link #setVerifyChecksum(ChecksumAlgorithm)}, the server is asked to generate a
+ * checksum for every write and each one is compared to the checksum of the part that was sent. A mismatch counts as
+ * a failure of that part (and is retried). Note that a ws-checksum cannot be used here, because it requires the content
+ * to be written in order.
+ * <p/>
+ * Make sure the connection pool allows at least <code>threads</code> connections per endpoint (see
+ * {@link AtmosConfig#setMaxConnectionsPerEndpoint(int)}).
+ * <p/>
+ * Example:
+ * <pre>
+ * ParallelUploader uploader = new ParallelUploader(atmos);
+ * uploader.setThreads(16);
+ * ObjectId id = uploader.upload(new CreateObjectRequest().identifier(path), new File("backup.tar"));
+ * </pre>
+ */
+public class ParallelUploader {
+    private static final Logger l4j = LoggerFactory.getLogger( ParallelUploader.class );
+
+    public static final int DEFAULT_PART_SIZE = 4 * 1024 * 1024; // 4MB
+    public static final int DEFAULT_THREADS = 8;
+    public static final int DEFAULT_PART_RETRIES = 3;
+
+    private AtmosApi api;
+    private ExecutorService executor;
+    private int partSize = DEFAULT_PART_SIZE;
+    private int threads = DEFAULT_THREADS;
+    private int partRetries = DEFAULT_PART_RETRIES;
+    private long partRetryDelay = 1000;
+    private ChecksumAlgorithm verifyChecksum;
+
+    /**
+     * Creates an uploader that starts a pool of daemon threads for each upload.
+     */
+    public ParallelUploader( AtmosApi api ) {
+        this( api, null );
+    }
+
+    /**
+     * Creates an uploader that writes parts using the specified executor (if not null). The number of concurrent writes
+     * per upload is still limited to {@link #getThreads()}. The caller remains responsible for shutting down the
+     * executor.
+     */
+    public ParallelUploader( AtmosApi api, ExecutorService executor ) {
+        if ( api == null ) throw new IllegalArgumentException( "api cannot be null" );
+        this.api = api;
+        this.executor = executor;
+    }
+
+    /**
+     * Uploads the contents of <code>file</code> to a new object.
+     *
+     * @see #upload(CreateObjectRequest, InputStream)
+     */
+    public ObjectId upload( CreateObjectRequest request, File file ) throws IOException {
+        InputStream stream = new FileInputStream( file );
+        try {
+            return upload( request, stream );
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Uploads the contents of <code>stream</code> to a new object. The identifier, metadata, ACL and content-type of
+     * <code>request</code> are used to create the object; its content and content-length are overwritten. The stream is
+     * read to the end but not closed.
+     *
+     * @return the ID of the new object
+     */
+    public ObjectId upload( CreateObjectRequest request, InputStream stream ) throws IOException {
+        return createObject( request, stream ).getObjectId();
+    }
+
+    /**
+     * Same as {@link #upload(CreateObjectRequest, InputStream)}, but returns the response of the create request.
+     */
+    public CreateObjectResponse createObject( CreateObjectRequest request, InputStream stream ) throws IOException {
+        byte[] buffer = new byte[partSize];
+        int length = StreamUtil.readFully( stream, buffer, 0, partSize );
+
+        // the first part creates the object; this also covers objects that fit in a single part
+        request.content( new BufferSegment( buffer, 0, length ) ).contentLength( length );
+        if ( verifyChecksum != null ) request.setServerGeneratedChecksumAlgorithm( verifyChecksum );
+        CreateObjectResponse response = api.createObject( request );
+        ObjectId objectId = response.getObjectId();
+
+        boolean success = false;
+        try {
+            verify( request, response, 0 );
+            if ( length == partSize ) writeParts( objectId, stream, buffer, length );
+            success = true;
+            return response;
+        } finally {
+            if ( !success ) {
+                try {
+                    api.delete( objectId );
+                } catch ( RuntimeException e ) {
+                    l4j.warn( "could not delete partially uploaded object " + objectId, e );
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the content of an existing object with the contents of <code>stream</code>. The first part is sent with
+     * <code>request</code> (along with its metadata, ACL and content-type) and truncates the object; the remaining
+     * parts are written concurrently. <code>request</code> must not specify a range. The stream is read to the end but
+     * not closed.
+     * <p/>
+     * Unlike a new object, the object is not deleted if a part fails, so it may be left with partial content.
+     */
+    public BasicResponse updateObject( UpdateObjectRequest request, InputStream stream ) throws IOException {
+        if ( request.getRange() != null ) throw new IllegalArgumentException( "request cannot specify a range" );
+
+        byte[] buffer = new byte[partSize];
+        int length = StreamUtil.readFully( stream, buffer, 0, partSize );
+
+        request.content( new BufferSegment( buffer, 0, length ) ).contentLength( length );
+        if ( verifyChecksum != null ) request.setServerGeneratedChecksumAlgorithm( verifyChecksum );
+        BasicResponse response = api.updateObject( request );
+        verify( request, response, 0 );
+
+        if ( length == partSize ) writeParts( request.getIdentifier(), stream, buffer, length );
+        return response;
+    }
+
+    private void writeParts( ObjectIdentifier identifier, InputStream stream, byte[] firstBuffer, int firstLength )
+            throws IOException {
+        ExecutorService partExecutor = executor;
+        if ( partExecutor == null )
+            partExecutor = Executors.newFixedThreadPool( threads, new DaemonThreadFactory( "atmos-upload" ) );
+        try {
+            new Upload( identifier, stream, partExecutor ).run( firstBuffer, firstLength );
+        } finally {
+            if ( executor == null ) partExecutor.shutdownNow();
+        }
+    }
+
+    protected void verify( PutObjectRequest<?> request, BasicResponse response, long offset ) {
+        if ( verifyChecksum == null ) return;
+
+        List<String> values = response.getHeaders().get( RestUtil.XHEADER_CONTENT_CHECKSUM );
+        if ( values == null || values.isEmpty() )
+            throw new AtmosException( "Server did not generate a checksum (is it supported by this Atmos version?)" );
+        ChecksumValue serverChecksum = new ChecksumValueImpl( values.get( 0 ) );
+
+        BufferSegment segment = (BufferSegment) request.getContent();
+        try {
+            RunningChecksum checksum = new RunningChecksum( verifyChecksum );
+            checksum.update( segment );
+            if ( !checksum.getValue().equalsIgnoreCase( serverChecksum.getValue() ) )
+                throw new ChecksumError( "Checksum mismatch for part at offset " + offset,
+                                         checksum.getValue(), serverChecksum.getValue() );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Returns the size in bytes of each part. Default is 4MB.
+     */
+    public int getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Sets the size in bytes of each part. Larger parts mean fewer requests; smaller parts mean less memory
+     * (<code>partSize * threads</code> is held at once) and less to resend when a part fails. Default is 4MB.
+     */
+    public void setPartSize( int partSize ) {
+        if ( partSize < 1 ) throw new IllegalArgumentException( "partSize must be at least 1" );
+        this.partSize = partSize;
+    }
+
+    /**
+     * Returns the maximum number of parts written concurrently for each upload. Default is 8.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the maximum number of parts written concurrently for each upload. Default is 8.
+     */
+    public void setThreads( int threads ) {
+        if ( threads < 1 ) throw new IllegalArgumentException( "threads must be at least 1" );
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the number of times a failed part is retried before the upload is abandoned. Default is 3.
+     */
+    public int getPartRetries() {
+        return partRetries;
+    }
+
+    /**
+     * Sets the number of times a failed part is retried before the upload is abandoned. These retries are in addition
+     * to any performed by the client itself (see {@link AtmosConfig#setEnableRetry(boolean)}). Default is 3.
+     */
+    public void setPartRetries( int partRetries ) {
+        this.partRetries = partRetries;
+    }
+
+    /**
+     * Returns the delay in milliseconds before a failed part is retried. Default is 1000.
+     */
+    public long getPartRetryDelay() {
+        return partRetryDelay;
+    }
+
+    /**
+     * Sets the delay in milliseconds before a failed part is retried. The delay is multiplied by the attempt number.
+     * Default is 1000.
+     */
+    public void setPartRetryDelay( long partRetryDelay ) {
+        this.partRetryDelay = partRetryDelay;
+    }
+
+    /**
+     * Returns the algorithm used to verify each write, or null if writes are not verified. Default is null.
+     */
+    public ChecksumAlgorithm getVerifyChecksum() {
+        return verifyChecksum;
+    }
+
+    /**
+     * Sets the algorithm used to verify each write against a server-generated checksum (Atmos 2.1+), or null to
+     * disable verification. Default is null.
+     */
+    public void setVerifyChecksum( ChecksumAlgorithm verifyChecksum ) {
+        this.verifyChecksum = verifyChecksum;
+    }
+
+    /**
+     * State of a single upload. Buffers are recycled through <code>freeBuffers</code>, which also limits the number of
+     * parts in flight.
+     */
+    private class Upload {
+        private ObjectIdentifier identifier;
+        private InputStream stream;
+        private ExecutorService executor;
+        private BlockingQueue<byte[]> freeBuffers = new LinkedBlockingQueue<byte[]>();
+        private int buffersCreated = 1; // the first part's buffer
+        private List<Future<?>> futures = new ArrayList<Future<?>>();
+        private volatile RuntimeException failure;
+
+        Upload( ObjectIdentifier identifier, InputStream stream, ExecutorService executor ) {
+            this.identifier = identifier;
+            this.stream = stream;
+            this.executor = executor;
+        }
+
+        void run( byte[] firstBuffer, long firstLength ) throws IOException {
+            freeBuffers.add( firstBuffer );
+            long offset = firstLength;
+            try {
+                while ( failure == null ) {
+                    byte[] buffer = nextBuffer();
+                    int length = StreamUtil.readFully( stream, buffer, 0, partSize );
+                    if ( length == 0 ) break;
+
+                    futures.add( executor.submit( new PartWriter( buffer, length, offset ) ) );
+                    offset += length;
+
+                    if ( length < partSize ) break;
+                }
+
+                for ( Future<?> future : futures ) {
+                    future.get();
+                }
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new AtmosException( "Interrupted during parallel upload", e );
+            } catch ( ExecutionException e ) {
+                // the failure field normally holds the original exception, but not if the part threw an Error
+                if ( failure == null ) {
+                    Throwable cause = e.getCause();
+                    failure = cause instanceof RuntimeException ? (RuntimeException) cause
+                                                                : new AtmosException( "Part upload failed", cause );
+                }
+            } finally {
+                if ( failure != null || Thread.currentThread().isInterrupted() ) {
+                    for ( Future<?> future : futures ) {
+                        future.cancel( true );
+                    }
+                }
+            }
+            if ( failure != null ) throw failure;
+        }
+
+        private byte[] nextBuffer() throws InterruptedException {
+            byte[] buffer = freeBuffers.poll();
+            if ( buffer == null ) {
+                if ( buffersCreated < threads ) {
+                    buffersCreated++;
+                    buffer = new byte[partSize];
+                } else {
+                    buffer = freeBuffers.take();
+                }
+            }
+            return buffer;
+        }
+
+        private class PartWriter implements Runnable {
+            private byte[] buffer;
+            private int length;
+            private long offset;
+
+            PartWriter( byte[] buffer, int length, long offset ) {
+                this.buffer = buffer;
+                this.length = length;
+                this.offset = offset;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    UpdateObjectRequest request = new UpdateObjectRequest().identifier( identifier );
+                    request.range( new Range( offset, offset + length - 1 ) );
+                    request.content( new BufferSegment( buffer, 0, length ) ).contentLength( length );
+                    if ( verifyChecksum != null ) request.setServerGeneratedChecksumAlgorithm( verifyChecksum );
+
+                    for ( int attempt = 0; ; attempt++ ) {
+                        if ( failure != null ) return;
+                        try {
+                            verify( request, api.updateObject( request ), offset );
+                            return;
+                        } catch ( RuntimeException e ) {
+                            if ( attempt >= partRetries ) {
+                                if ( failure == null ) failure = e;
+                                throw e;
+                            }
+                            l4j.info( "part at offset " + offset + " failed (attempt " + (attempt + 1) + "); retrying",
+                                      e );
+                            Thread.sleep( partRetryDelay * (attempt + 1) );
+                        }
+                    }
+                } catch ( InterruptedException e ) {
+                    // the part was not written, so the upload must not succeed
+                    if ( failure == null )
+                        failure = new AtmosException( "Interrupted while writing part at offset " + offset, e );
+                    Thread.currentThread().interrupt();
+                } finally {
+                    freeBuffers.add( buffer );
+                }
+            }
+        }
+    }
+}
@@ -102,26 +102,34 @@ public final class RestUtil {
 
     private static final Pattern OBJECTID_PATTERN = Pattern.compile( "/\\w+/objects/([0-9a-f-]{44,})" );
 
+    /**
+     * Per-thread signing state. Initializing a Mac is expensive relative to computing a signature, so each thread
+     * keeps one initialized with the last key it used, along with buffers reused for every request.
+     */
+    private static final ThreadLocal<SigningContext> signingContext = new ThreadLocal<SigningContext>() {
+        @Override
+        protected SigningContext initialValue() {
+            return new SigningContext();
+        }
+    };
+
     public static String sign( String string, byte[] hashKey ) {
         try {
             // Compute the signature hash
-            l4j.debug( "Hashing: \n" + string );
+            if ( l4j.isDebugEnabled() ) l4j.debug( "Hashing: \n" + string );
 
             byte[] input = string.getBytes( "UTF-8" );
 
-            Mac mac = Mac.getInstance( "HmacSHA1" );
-            SecretKeySpec key = new SecretKeySpec( hashKey, "HmacSHA1" );
-            mac.init( key );
-
-            byte[] hashBytes = mac.doFinal( input );
+            byte[] hashBytes = signingContext.get().getMac( hashKey ).doFinal( input );
 
             // Encode the hash in Base64.
-            String hash = DatatypeConverter.printBase64Binary(hashBytes);
+            String hash = DatatypeConverter.printBase64Binary( hashBytes );
 
-            l4j.debug( "Hash: " + hash );
+            if ( l4j.isDebugEnabled() ) l4j.debug( "Hash: " + hash );
 
             return hash;
         } catch ( Exception e ) {
+            signingContext.remove(); // the Mac may be in an unknown state
             throw new RuntimeException( "Error signing string:\n" + string + "\n", e );
         }
     }
@@ -148,14 +156,16 @@ public final class RestUtil {
             headers.put( XHEADER_UID, Arrays.asList( (Object) uid ) );
 
         // Build the string to hash.
-        StringBuilder builder = new StringBuilder();
+        SigningContext context = signingContext.get();
+        StringBuilder builder = context.builder;
+        builder.setLength( 0 );
 
         builder.append( method ).append( "\n" );
 
         // Add the following header values or blank lines if they aren't present
-        builder.append( generateHashLine( headers, HttpUtil.HEADER_CONTENT_TYPE ) );
-        builder.append( generateHashLine( headers, HttpUtil.HEADER_RANGE ) );
-        builder.append( generateHashLine( headers, HttpUtil.HEADER_DATE ) );
+        appendHashLine( builder, headers, HttpUtil.HEADER_CONTENT_TYPE );
+        appendHashLine( builder, headers, HttpUtil.HEADER_RANGE );
+        appendHashLine( builder, headers, HttpUtil.HEADER_DATE );
 
         // Add the resource
         builder.append( path.toLowerCase() );
@@ -164,17 +174,28 @@ public final class RestUtil {
 
         // Do the 'x-emc' headers. The headers must be hashed in alphabetic
         // order and the values must be stripped of whitespace and newlines.
-        // TreeMap will automatically sort by key.
-        Map<String, String> emcHeaders = new TreeMap<String, String>();
+        // The sort is stable, so if two keys differ only in case, the last one wins (as it would in a map).
+        List<String> emcKeys = context.keys;
+        emcKeys.clear();
         for ( String key : headers.keySet() ) {
-            String lowerKey = key.toLowerCase();
-            if ( lowerKey.indexOf( "x-emc" ) == 0 )
-                emcHeaders.put( lowerKey, join( headers.get( key ), "," ) );
+            if ( key.regionMatches( true, 0, "x-emc", 0, 5 ) ) emcKeys.add( key );
         }
-        for ( Iterator<String> i = emcHeaders.keySet().iterator(); i.hasNext(); ) {
-            String key = i.next();
-            builder.append( key ).append( ':' ).append( normalizeSpace( emcHeaders.get( key ) ) );
-            if ( i.hasNext() ) builder.append( "\n" );
+        Collections.sort( emcKeys, String.CASE_INSENSITIVE_ORDER );
+        boolean first = true;
+        for ( int i = 0; i < emcKeys.size(); i++ ) {
+            String key = emcKeys.get( i );
+            if ( i + 1 < emcKeys.size() && key.equalsIgnoreCase( emcKeys.get( i + 1 ) ) ) continue;
+
+            if ( !first ) builder.append( '\n' );
+            first = false;
+            for ( int j = 0; j < key.length(); j++ ) {
+                builder.append( Character.toLowerCase( key.charAt( j ) ) );
+            }
+            builder.append( ':' );
+            StringBuilder value = context.value;
+            value.setLength( 0 );
+            appendJoined( value, headers.get( key ), "," );
+            appendNormalized( builder, value );
         }
 
         String hash = sign( builder.toString(), hashKey );
@@ -184,13 +205,29 @@ public final class RestUtil {
     }
 
     public static String normalizeSpace( String str ) {
-        int length;
-        do {
-            length = str.length();
-            str = str.replace( "  ", " " );
-        } while ( length != str.length() );
+        StringBuilder builder = new StringBuilder( str.length() );
+        appendNormalized( builder, str );
+        return builder.toString();
+    }
 
-        return str.replace( "\n", "" ).trim();
+    /**
+     * Appends value to builder with runs of spaces collapsed to one, newlines removed and leading/trailing whitespace
+     * trimmed, in a single pass. Equivalent to appending {@link #normalizeSpace(String)}.
+     */
+    private static void appendNormalized( StringBuilder builder, CharSequence value ) {
+        int start = builder.length();
+        char previous = 0;
+        for ( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt( i );
+            boolean skip = c == '\n' || (c == ' ' && previous == ' ');
+            previous = c;
+            if ( skip ) continue;
+            if ( c <= ' ' && builder.length() == start ) continue; // leading whitespace
+            builder.append( c );
+        }
+        int end = builder.length();
+        while ( end > start && builder.charAt( end - 1 ) <= ' ' ) end--; // trailing whitespace
+        builder.setLength( end );
     }
 
     public static String join( Iterable<?> list, String delimiter ) {
@@ -265,11 +302,38 @@ public final class RestUtil {
         return acl;
     }
 
-    private static String generateHashLine( Map<String, List<Object>> headers, String headerName ) {
-        String value = join( headers.get( headerName ), "," );
-        l4j.debug( headerName + ": " + value );
-        if ( value != null ) return value + "\n";
-        return "\n";
+    private static void appendHashLine( StringBuilder builder, Map<String, List<Object>> headers, String headerName ) {
+        List<Object> values = headers.get( headerName );
+        int start = builder.length();
+        appendJoined( builder, values, "," );
+        if ( l4j.isDebugEnabled() )
+            l4j.debug( headerName + ": " + (values == null ? null : builder.substring( start )) );
+        builder.append( "\n" );
+    }
+
+    private static void appendJoined( StringBuilder builder, List<Object> values, String delimiter ) {
+        if ( values == null ) return;
+        for ( int i = 0; i < values.size(); i++ ) {
+            if ( i > 0 ) builder.append( delimiter );
+            builder.append( values.get( i ) );
+        }
+    }
+
+    private static class SigningContext {
+        private final StringBuilder builder = new StringBuilder( 512 );
+        private final StringBuilder value = new StringBuilder( 128 );
+        private final List<String> keys = new ArrayList<String>();
+        private byte[] key;
+        private Mac mac;
+
+        Mac getMac( byte[] hashKey ) throws Exception {
+            if ( mac == null || !Arrays.equals( key, hashKey ) ) {
+                mac = Mac.getInstance( "HmacSHA1" );
+                mac.init( new SecretKeySpec( hashKey, "HmacSHA1" ) );
+                key = hashKey.clone();
+            }
+            return mac;
+        }
     }
 
     private RestUtil() {
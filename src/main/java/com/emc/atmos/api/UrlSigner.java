@@ -0,0 +1,302 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api;
+
+import com.emc.atmos.api.request.ContentRequest;
+import com.emc.atmos.api.request.PreSignedRequest;
+import com.emc.atmos.api.request.Request;
+import com.emc.util.HttpUtil;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Generates shareable URLs and pre-signed requests, either one at a time or in bulk. When generating shareable URLs in
+ * bulk, the parts of the URL and signature that are shared by every object (token ID, expiration and disposition) are
+ * built and encoded only once. If an executor is provided, bulk operations are split into batches of
+ * {@link #getBatchSize()} and signed in parallel; results are always returned in the same order as the input.
+ * <p/>
+ * Instances are thread-safe as long as the executor is.
+ * <p/>
+ * Example:
+ * <pre>
+ * UrlSigner signer = new UrlSigner(atmosConfig, executor);
+ * List&lt;URL&gt; urls = signer.getShareableUrls(objectIds, expiration, null);
+ * </pre>
+ *
+ * @see AtmosApi#getShareableUrl(ObjectIdentifier, java.util.Date, String)
+ * @see AtmosApi#preSignRequest(com.emc.atmos.api.request.Request, java.util.Date)
+ */
+public class UrlSigner {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private AtmosConfig config;
+    private ExecutorService executor;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public UrlSigner( AtmosConfig config ) {
+        this( config, null );
+    }
+
+    /**
+     * @param config   the configuration providing endpoints and credentials
+     * @param executor (optional) used to sign bulk requests in parallel. If null, bulk requests are signed on the
+     *                 calling thread. The executor is not shut down by this class
+     */
+    public UrlSigner( AtmosConfig config, ExecutorService executor ) {
+        this.config = config;
+        this.executor = executor;
+    }
+
+    /**
+     * @see AtmosApi#getShareableUrl(ObjectIdentifier, java.util.Date, String)
+     */
+    public URL getShareableUrl( ObjectIdentifier identifier, Date expirationDate, String disposition )
+            throws MalformedURLException {
+        return new ShareableUrlTemplate( expirationDate, disposition ).sign( identifier, new StringBuilder() );
+    }
+
+    /**
+     * Constructs shareable URLs for many objects at once, all expiring at the same time and using the same
+     * content-disposition. This is considerably cheaper than calling
+     * {@link #getShareableUrl(ObjectIdentifier, java.util.Date, String)} for each object.
+     *
+     * @param identifiers    The identifiers of the objects. Can be any ObjectIdentifier except ObjectKey.
+     * @param expirationDate The date at which the generated URLs will no longer be valid.
+     * @param disposition    (optional) the value of the Content-Disposition header
+     *
+     * @return A list of public URLs in the same order as <code>identifiers</code>.
+     *
+     * @throws MalformedURLException if the configured Atmos endpoint is syntactically invalid.
+     */
+    public List<URL> getShareableUrls( List<? extends ObjectIdentifier> identifiers, Date expirationDate,
+                                       final String disposition ) throws MalformedURLException {
+        final ShareableUrlTemplate template = new ShareableUrlTemplate( expirationDate, disposition );
+        return signAll( identifiers, new Signer<ObjectIdentifier, URL>() {
+            @Override
+            public URL sign( ObjectIdentifier identifier, StringBuilder builder ) throws MalformedURLException {
+                return template.sign( identifier, builder );
+            }
+        } );
+    }
+
+    /**
+     * @see AtmosApi#preSignRequest(com.emc.atmos.api.request.Request, java.util.Date)
+     */
+    public PreSignedRequest preSignRequest( Request request, Date expiration ) throws MalformedURLException {
+        return preSignRequest( request, expiration, expiration.getTime() );
+    }
+
+    private PreSignedRequest preSignRequest( Request request, Date expiration, Object expires )
+            throws MalformedURLException {
+        URI uri = config.resolveHostAndPath( request.getServiceRelativePath(), request.getQuery() );
+        Map<String, List<Object>> headers = request.generateHeaders( config.isEncodeUtf8() );
+
+        String contentType = null;
+        if ( request instanceof ContentRequest ) contentType = ((ContentRequest) request).getContentType();
+        // workaround for clients that set a default content-type for POSTs
+        if ( "POST".equals( request.getMethod() ) ) contentType = RestUtil.TYPE_DEFAULT;
+
+        // add expiration header
+        headers.put( RestUtil.XHEADER_EXPIRES, Arrays.asList( expires ) );
+
+        RestUtil.signRequest( request.getMethod(),
+                              uri.getPath(),
+                              uri.getQuery(),
+                              headers,
+                              config.getTokenId(),
+                              config.getSecretKey(),
+                              config.getServerClockSkew() );
+
+        return new PreSignedRequest( uri.toURL(), request.getMethod(), contentType, headers, expiration );
+    }
+
+    /**
+     * Pre-signs many requests at once, all expiring at the same time. Unlike shareable URLs, each request has its own
+     * headers and is signed separately, so only the expiration is shared; the benefit over calling
+     * {@link #preSignRequest(Request, java.util.Date)} for each request comes mostly from signing in parallel.
+     *
+     * @param requests   the requests to pre-sign
+     * @param expiration the date at which the pre-signed requests become invalid
+     *
+     * @return a list of pre-signed requests in the same order as <code>requests</code>
+     *
+     * @throws java.net.MalformedURLException if the configured Atmos endpoint is syntactically invalid.
+     */
+    public List<PreSignedRequest> preSignRequests( List<? extends Request> requests, final Date expiration )
+            throws MalformedURLException {
+        final Object expires = expiration.getTime();
+        return signAll( requests, new Signer<Request, PreSignedRequest>() {
+            @Override
+            public PreSignedRequest sign( Request request, StringBuilder builder ) throws MalformedURLException {
+                return preSignRequest( request, expiration, expires );
+            }
+        } );
+    }
+
+    private <I, O> List<O> signAll( List<? extends I> inputs, final Signer<I, O> signer )
+            throws MalformedURLException {
+        if ( executor == null || inputs.size() <= batchSize ) return signBatch( inputs, signer );
+
+        List<Future<List<O>>> futures = new ArrayList<Future<List<O>>>();
+        for ( int start = 0; start < inputs.size(); start += batchSize ) {
+            final List<? extends I> batch = inputs.subList( start, Math.min( start + batchSize, inputs.size() ) );
+            futures.add( executor.submit( new Callable<List<O>>() {
+                @Override
+                public List<O> call() throws Exception {
+                    return signBatch( batch, signer );
+                }
+            } ) );
+        }
+
+        List<O> results = new ArrayList<O>( inputs.size() );
+        try {
+            for ( Future<List<O>> future : futures ) {
+                results.addAll( future.get() );
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while signing", e );
+        } catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof MalformedURLException ) throw (MalformedURLException) cause;
+            if ( cause instanceof RuntimeException ) throw (RuntimeException) cause;
+            if ( cause instanceof Error ) throw (Error) cause;
+            throw new RuntimeException( cause );
+        } finally {
+            for ( Future<List<O>> future : futures ) {
+                future.cancel( false );
+            }
+        }
+        return results;
+    }
+
+    private <I, O> List<O> signBatch( List<? extends I> inputs, Signer<I, O> signer ) throws MalformedURLException {
+        StringBuilder builder = new StringBuilder( 256 );
+        List<O> results = new ArrayList<O>( inputs.size() );
+        for ( I input : inputs ) {
+            results.add( signer.sign( input, builder ) );
+        }
+        return results;
+    }
+
+    /**
+     * Returns the number of items signed by each parallel task. Default is 1000.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of items signed by each parallel task. Has no effect if no executor was provided. Default is
+     * 1000.
+     */
+    public void setBatchSize( int batchSize ) {
+        if ( batchSize < 1 ) throw new IllegalArgumentException( "batchSize must be at least 1" );
+        this.batchSize = batchSize;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    private interface Signer<I, O> {
+        O sign( I input, StringBuilder builder ) throws MalformedURLException;
+    }
+
+    /**
+     * Holds the pre-built portions of a shareable URL that do not depend on the object.
+     */
+    private class ShareableUrlTemplate {
+        private String tokenId;
+        private byte[] secretKey;
+        private String hashSuffix;
+        private String queryPrefix;
+        private String querySuffix;
+
+        ShareableUrlTemplate( Date expirationDate, String disposition ) {
+            tokenId = config.getTokenId();
+            secretKey = config.getSecretKey();
+            long expiresTime = expirationDate.getTime() / 1000;
+
+            String hashSuffix = "\n" + tokenId + '\n' + expiresTime;
+            if ( disposition != null ) hashSuffix += '\n' + disposition;
+            this.hashSuffix = hashSuffix;
+
+            queryPrefix = "?uid=" + HttpUtil.encodeUtf8( tokenId ) + "&expires=" + expiresTime + "&signature=";
+            querySuffix = (disposition == null) ? "" : "&disposition=" + HttpUtil.encodeUtf8( disposition );
+        }
+
+        URL sign( ObjectIdentifier identifier, StringBuilder builder ) throws MalformedURLException {
+            if ( identifier instanceof ObjectKey )
+                throw new IllegalArgumentException( "You cannot create shareable URLs using a key; try using the object ID" );
+
+            URI uri = config.resolveHostAndPath( identifier.getRelativeResourcePath(), null );
+
+            builder.setLength( 0 );
+            builder.append( "GET\n" ).append( uri.getPath().toLowerCase() ).append( hashSuffix );
+            String hash = RestUtil.sign( builder.toString(), secretKey );
+
+            // we must manually append the query string to ensure the equals sign in the signature gets encoded properly
+            builder.setLength( 0 );
+            builder.append( uri ).append( queryPrefix );
+            appendEncodedBase64( builder, hash );
+            builder.append( querySuffix );
+            return new URL( builder.toString() );
+        }
+    }
+
+    /**
+     * Equivalent to {@link HttpUtil#encodeUtf8(String)} for base64 values, which only contain three characters that
+     * need escaping.
+     */
+    private static void appendEncodedBase64( StringBuilder builder, String base64 ) {
+        for ( int i = 0; i < base64.length(); i++ ) {
+            char c = base64.charAt( i );
+            if ( c == '+' ) builder.append( "%2B" );
+            else if ( c == '/' ) builder.append( "%2F" );
+            else if ( c == '=' ) builder.append( "%3D" );
+            else builder.append( c );
+        }
+    }
+}
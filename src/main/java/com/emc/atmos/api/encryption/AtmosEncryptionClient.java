@@ -37,19 +37,27 @@ import com.emc.atmos.api.*;
 import com.emc.atmos.api.bean.*;
 import com.emc.atmos.api.request.*;
 import com.emc.util.BasicResponse;
+import com.emc.util.BufferPool;
+import com.emc.util.StreamUtil;
 import com.emc.vipr.transform.*;
 import com.emc.vipr.transform.encryption.DoesNotNeedRekeyException;
 import com.emc.vipr.transform.encryption.EncryptionTransformFactory;
+import com.emc.vipr.transform.encryption.KeyUtils;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 
+import javax.crypto.SecretKey;
+
 /**
  * Implements client-side "Envelope Encryption" on top of the Atmos API.  With envelope
  * encryption, a master asymmetric (RSA) key is used to encrypt and decrypt a per-object
@@ -115,7 +123,8 @@ import java.util.*;
  * After you have your AtmosEncryptionClient constructed, you may use it like any other
  * AtmosApi instance with the following limitations:
  * <ul>
- * <li>Byte range (partial) reads are not supported
+ * <li>Byte range (partial) reads are only supported for objects that are encrypted
+ * (AES/CBC) and not compressed, and only a single range may be requested.
  * <li>Byte range (partial) updates including appends are not supported.
  * <li>Shareable URLs and access tokens are not supported because there is no way to
  * decompress and/or decrypt the content for the receiver.
@@ -132,10 +141,18 @@ public class AtmosEncryptionClient implements AtmosApi {
             + "byte[] content are supported";
 
     private static final int DEFAULT_BUFFER_SIZE = 4096*1024;
+    private static final int AES_BLOCK_SIZE = 16;
+    private static final int DEFAULT_READ_PRESIZE_LIMIT = 16 * DEFAULT_BUFFER_SIZE;
+    private static final int UNKNOWN_SIZE_BUFFER = 64 * 1024;
+    // some VMs reserve header words in arrays
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
     
     private AtmosApi delegate;
     private TreeSet<TransformFactory<?, ?>> factories;
+    private EncryptionConfig encryptionConfig;
     private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int uploadThreads = 1;
+    private int readPresizeLimit = DEFAULT_READ_PRESIZE_LIMIT;
 
     /**
      * Creates a new AtmosEncryptionClient.
@@ -150,6 +167,8 @@ public class AtmosEncryptionClient implements AtmosApi {
             CompressionConfig compressionConfig) {
         this.delegate = delegate;
         
+        this.encryptionConfig = encryptionConfig;
+        
         factories = new TreeSet<TransformFactory<?,?>>();
         if(encryptionConfig != null) {
             factories.add(encryptionConfig.getFactory());
@@ -185,7 +204,8 @@ public class AtmosEncryptionClient implements AtmosApi {
      * current master key and is used to implement key rotation.  Note that when you
      * create a new master key, your EncryptionConfig should keep all of the old master
      * key(s) until you have rekeyed all of the objects so you can decrypt the old
-     * objects.
+     * objects.  If a {@link ContentKeyCache} is configured, the object's key is removed
+     * from it.
      * @param identifier the object to be rekeyed.
      * @throws DoesNotNeedRekeyException if the object is already using the current master
      * encryption key.
@@ -197,7 +217,7 @@ public class AtmosEncryptionClient implements AtmosApi {
         // Look for transform mode(s)
         String transformModes = rawMeta.get(TransformConstants.META_TRANSFORM_MODE);
         
-        if(transformModes == null) {
+        if(transformModes == null || transformModes.length() == 0) {
             throw new DoesNotNeedRekeyException("Object is not encrypted");
         }
         
@@ -221,9 +241,14 @@ public class AtmosEncryptionClient implements AtmosApi {
             for(TransformFactory<?, ?> f : factories) {
                 if(f instanceof EncryptionTransformFactory<?,?> && f.canDecode(mode, rawMeta)) {
                     EncryptionTransformFactory<?,?> ef = (EncryptionTransformFactory<?, ?>) f;
+                    String wrappedKey = rawMeta.get(TransformConstants.META_ENCRYPTION_OBJECT_KEY);
                     try {
                         rawMeta = ef.rekey(rawMeta);
                         rekeyed = true;
+                        if(wrappedKey != null && encryptionConfig != null 
+                                && encryptionConfig.getContentKeyCache() != null) {
+                            encryptionConfig.getContentKeyCache().invalidate(wrappedKey);
+                        }
                     } catch (DoesNotNeedRekeyException e) {
                         throw e;
                     } catch (TransformException e) {
@@ -347,55 +372,69 @@ public class AtmosEncryptionClient implements AtmosApi {
         // Create the object
         int c = 0;
         int pos = 0;
-        byte[] buffer = new byte[bufferSize];
-        
-        // Read the first chunk and send it with the create request.
+        byte[] buffer = null;
+        CreateObjectResponse resp;
         try {
-            c = fillBuffer(buffer, in);
-        } catch (IOException e) {
-            throw new AtmosException("Error reading input data: " + e, e);
-        }
-        if(c == -1) {
-            // EOF already
-            request.setContent(null);
+            if(uploadThreads > 1) {
+                // Transform the next chunk on this thread while the previous ones are written
+                try {
+                    resp = createUploader().createObject(request, in);
+                } catch (IOException e) {
+                    throw new AtmosException("Error reading input data: " + e, e);
+                }
+            } else {
+                buffer = BufferPool.getDefault().lease(bufferSize);
+                // Read the first chunk and send it with the create request.
+                try {
+                    c = fillBuffer(buffer, bufferSize, in);
+                } catch (IOException e) {
+                    throw new AtmosException("Error reading input data: " + e, e);
+                }
+                if(c == -1) {
+                    // EOF already
+                    request.setContent(null);
             
-            // Optmization -- send metadata now with create request and return
-            try {
-                in.close();
-            } catch (IOException e) {
-                throw new AtmosException("Error closing input: " + e, e);
-            }
-            for(OutputTransform ot : appliedTransforms) {
-                mMeta.putAll(ot.getEncodedMetadata());
-            }
-            Set<Metadata> metadata = request.getUserMetadata();
-            if(metadata == null) {
-                metadata = new HashSet<Metadata>();
-            }
-            updateMetadata(mMeta, metadata);
-            request.setUserMetadata(metadata);
+                    // Optmization -- send metadata now with create request and return
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        throw new AtmosException("Error closing input: " + e, e);
+                    }
+                    for(OutputTransform ot : appliedTransforms) {
+                        mMeta.putAll(ot.getEncodedMetadata());
+                    }
+                    Set<Metadata> metadata = request.getUserMetadata();
+                    if(metadata == null) {
+                        metadata = new HashSet<Metadata>();
+                    }
+                    updateMetadata(mMeta, metadata);
+                    request.setUserMetadata(metadata);
             
-            return delegate.createObject(request);
-        } else {
-            request.setContent(new BufferSegment(buffer, 0, c));
-        }
-        CreateObjectResponse resp = delegate.createObject(request);
+                    return delegate.createObject(request);
+                } else {
+                    request.setContent(new BufferSegment(buffer, 0, c));
+                }
+                resp = delegate.createObject(request);
         
-        pos = c;
+                pos = c;
         
-        // Append until EOF.
-        try {
-            while((c = fillBuffer(buffer, in)) != -1) {
-                UpdateObjectRequest uor = new UpdateObjectRequest();
-                uor.setIdentifier(resp.getObjectId());
-                uor.setContentType(request.getContentType());
-                uor.setRange(new Range(pos, pos+c-1));
-                uor.setContent(new BufferSegment(buffer, 0, c));
-                pos += c;
-                delegate.updateObject(uor);
+                // Append until EOF.
+                try {
+                    while((c = fillBuffer(buffer, bufferSize, in)) != -1) {
+                        UpdateObjectRequest uor = new UpdateObjectRequest();
+                        uor.setIdentifier(resp.getObjectId());
+                        uor.setContentType(request.getContentType());
+                        uor.setRange(new Range(pos, pos+c-1));
+                        uor.setContent(new BufferSegment(buffer, 0, c));
+                        pos += c;
+                        delegate.updateObject(uor);
+                    }
+                } catch (IOException e) {
+                    throw new AtmosException("Error reading input data: " + e, e);
+                }
             }
-        } catch (IOException e) {
-            throw new AtmosException("Error reading input data: " + e, e);
+        } finally {
+            BufferPool.getDefault().release(buffer);
         }
         
         try {
@@ -408,12 +447,19 @@ public class AtmosEncryptionClient implements AtmosApi {
         // Update the object with the transformed metadata.
         for(OutputTransform ot : appliedTransforms) {
             mMeta.putAll(ot.getEncodedMetadata());
+            // A transform that decided not to encode the data (e.g. compression of
+            // incompressible data) has no config.
+            if(ot.getTransformConfig() == null) {
+                continue;
+            }
             if(transformConfig.length() != 0) {
                 transformConfig += "|";
             }
             transformConfig += ot.getTransformConfig();
         }
-        mMeta.put(TransformConstants.META_TRANSFORM_MODE, transformConfig);
+        if(transformConfig.length() != 0) {
+            mMeta.put(TransformConstants.META_TRANSFORM_MODE, transformConfig);
+        }
         
         Set<Metadata> metadata = request.getUserMetadata();
         if(metadata == null) {
@@ -430,14 +476,15 @@ public class AtmosEncryptionClient implements AtmosApi {
      * Reading from a cipher stream only returns one block at a time.  Keep reading
      * until the buffer is full.
      * @param buffer the buffer to fill
+     * @param length the number of bytes to fill (the buffer may be larger)
      * @param in the input stream to read from
      * @return a buffer as full as possible
      * @throws IOException if an error occurs reading from the stream.
      */
-    private int fillBuffer(byte[] buffer, InputStream in) throws IOException{
+    private int fillBuffer(byte[] buffer, int length, InputStream in) throws IOException{
         int read = 0;
-        while(read < buffer.length) {
-            int c = in.read(buffer, read, buffer.length-read);
+        while(read < length) {
+            int c = in.read(buffer, read, length-read);
             if(c == -1 && read == 0) {
                 // EOF on first read
                 return -1;
@@ -516,8 +563,8 @@ public class AtmosEncryptionClient implements AtmosApi {
     public <T> ReadObjectResponse<T> readObject(ReadObjectRequest request,
             Class<T> objectType) throws IOException {
         
-        // Partial reads not currently supported.
-        if(request.getRanges() != null && request.getRanges().size() > 0) {
+        // Only a single range is supported.
+        if(request.getRanges() != null && request.getRanges().size() > 1) {
             throw new UnsupportedOperationException(PARTIAL_READ_MSG);            
         }
         
@@ -529,25 +576,34 @@ public class AtmosEncryptionClient implements AtmosApi {
             throw new IllegalArgumentException(UNSUPPORTED_TYPE_MSG);
         }
         
+        if(request.getRanges() != null && request.getRanges().size() == 1) {
+            return readRange(request.getIdentifier(), request.getRanges().get(0), objectType);
+        }
+        
         // Execute the request, getting it as an InputStream
-        ReadObjectResponse<InputStream> rawResponse = null;
+        ReadObjectResponse<InputStream> rawResponse = delegate.readObjectStream(request.getIdentifier(), null);
+        boolean success = false;
         try {
-            rawResponse = delegate.readObjectStream(request.getIdentifier(), null);
-            
             // Process metadata.
             Map<String,String> rawMeta = metaToMap(rawResponse.getMetadata().getMetadata().values());
             
             // Look for transform mode(s)
             String transformModes = rawMeta.get(TransformConstants.META_TRANSFORM_MODE);
             
-            if(transformModes == null) {
+            if(transformModes == null || transformModes.length() == 0) {
                 // Object is not encoded.
-                return rewrap(rawResponse, objectType);
+                ReadObjectResponse<T> response = rewrap(rawResponse, objectType);
+                success = true;
+                return response;
             }
             
             // Split
             String[] modes = transformModes.split("\\|");
             
+            // The first transform applied recorded the size of the original content.
+            long decodedSize = getDecodedSize(modes[0], rawMeta);
+            long presize = getReadPresize(modes, decodedSize, rawResponse.getContentLength());
+            
             // During decode, we process transforms in reverse order.
             List<String> revModes = new ArrayList<String>();
             revModes.addAll(Arrays.asList(modes));
@@ -560,7 +616,7 @@ public class AtmosEncryptionClient implements AtmosApi {
                 for(TransformFactory<?, ?> f : factories) {
                     if(f.canDecode(mode, rawMeta)) {
                         try {
-                            InputTransform trans = f.getInputTransform(mode, streamToDecode, rawMeta);
+                            InputTransform trans = getInputTransform(f, mode, streamToDecode, rawMeta);
                             streamToDecode = trans.getDecodedInputStream();
                             rawMeta = trans.getDecodedMetadata();
                             found = true;
@@ -577,14 +633,277 @@ public class AtmosEncryptionClient implements AtmosApi {
             
             // Update response with decoded data
             rawResponse.setObject(streamToDecode);
+            rawResponse.setContentLength(decodedSize);
             updateMetadata(rawMeta, rawResponse.getMetadata().getMetadata().values());
             
             // If a non-InputStream was requested, refactor the response.
-            return rewrap(rawResponse, objectType);
+            ReadObjectResponse<T> response = rewrap(rawResponse, objectType, presize);
+            success = true;
+            return response;
+        } finally {
+            // rewrap closes the stream for byte[] and String; an InputStream belongs to
+            // the caller.
+            if(!success) {
+                rawResponse.getObject().close();
+            }
+        }
+
+    }
+
+    /**
+     * Returns the size of an object's content before it was encoded, as recorded by the
+     * first transform applied, or -1 if it is not known.
+     */
+    private long getDecodedSize(String firstMode, Map<String, String> rawMeta) {
+        String size = null;
+        if(firstMode.startsWith(TransformConstants.COMPRESSION_CLASS)) {
+            size = rawMeta.get(TransformConstants.META_COMPRESSION_UNCOMP_SIZE);
+        } else if(firstMode.startsWith(TransformConstants.ENCRYPTION_CLASS)) {
+            size = rawMeta.get(TransformConstants.META_ENCRYPTION_UNENC_SIZE);
+        }
+        try {
+            return (size == null) ? -1 : Long.parseLong(size);
+        } catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns how many bytes to allocate up front when decoded content is read into
+     * memory.  The decoded size comes from user metadata, which is not authenticated, so
+     * it is checked against the raw content length where possible: encryption never
+     * shrinks content, so an encrypted object's plaintext can be no longer than its
+     * ciphertext.  Compressed content can be much larger than the raw content, so its
+     * size is only trusted up to {@link #getReadPresizeLimit()}.
+     */
+    private long getReadPresize(String[] modes, long decodedSize, long rawLength) {
+        boolean compressed = false;
+        for(String mode : modes) {
+            if(mode.startsWith(TransformConstants.COMPRESSION_CLASS)) {
+                compressed = true;
+            }
+        }
+        if(!compressed && rawLength >= 0) {
+            if(decodedSize > rawLength) {
+                throw new AtmosException("Object metadata gives a decoded size of " + decodedSize
+                        + " bytes, but the object only has " + rawLength + " bytes of content");
+            }
+            return (decodedSize >= 0) ? decodedSize : rawLength;
+        }
+        return Math.min(decodedSize, readPresizeLimit);
+    }
+
+    /**
+     * Creates the input transform for one transform mode of an object.  If this is the
+     * configured encryption and a {@link ContentKeyCache} is set, the object key comes
+     * from the cache (or is unwrapped once and added to it) rather than being unwrapped
+     * by the factory on every read.
+     */
+    private InputTransform getInputTransform(TransformFactory<?, ?> f, String mode,
+            InputStream in, Map<String, String> rawMeta) throws IOException, TransformException {
+        ContentKeyCache cache = (encryptionConfig == null) ? null : encryptionConfig.getContentKeyCache();
+        String wrappedKey = rawMeta.get(TransformConstants.META_ENCRYPTION_OBJECT_KEY);
+        if(cache == null || f != encryptionConfig.getFactory() || wrappedKey == null) {
+            return f.getInputTransform(mode, in, rawMeta);
+        }
+        
+        SecretKey key = cache.get(wrappedKey);
+        if(key == null) {
+            String keyId = rawMeta.get(TransformConstants.META_ENCRYPTION_KEY_ID);
+            if(keyId == null) {
+                throw new TransformException("Could not decrypt object. No master key ID set on object.");
+            }
+            String algorithm = mode.substring(mode.indexOf(':') + 1).split("/")[0];
+            key = KeyUtils.decryptKey(wrappedKey, algorithm, encryptionConfig.getProvider(),
+                    encryptionConfig.getDecryptionKey(keyId));
+            cache.put(wrappedKey, key);
+        }
+        return new CachedKeyInputTransform(mode, in, rawMeta, key, encryptionConfig.getProvider());
+    }
+
+    /**
+     * Reads a range of an object's plaintext.  This is only possible for objects that
+     * are encrypted with AES in CBC mode and not compressed: each ciphertext block
+     * depends only on the key and the previous ciphertext block, so decryption can
+     * start at any block by using the previous block as the IV.  Only the ciphertext
+     * blocks covering the range (plus the preceding block and, unless the range ends
+     * in the last block, one following block so that the cipher does not hold back
+     * data for padding) are needed.  Objects with no transforms are read with a plain
+     * ranged read.
+     * <p>
+     * The transforms are not known until the object is read, so a single ranged read is
+     * sent first, widened by up to two AES blocks at each end to cover those blocks,
+     * and the metadata it returns decides how the content is decoded.  For an object
+     * with no transforms, the extra bytes are simply dropped.
+     * @param identifier the object to read.
+     * @param range the range of plaintext to read.
+     * @param objectType the desired response format.
+     * @return the plaintext of the range.
+     * @throws IOException if there is an error reading the object data.
+     */
+    private <T> ReadObjectResponse<T> readRange(ObjectIdentifier identifier, Range range,
+            Class<T> objectType) throws IOException {
+        long first = range.getFirst();
+        long firstBlock = first / AES_BLOCK_SIZE;
+        long readStart = (firstBlock == 0) ? 0 : (firstBlock - 1) * AES_BLOCK_SIZE;
+        long readEnd = range.getLast() + Math.min(2 * AES_BLOCK_SIZE - 1, Long.MAX_VALUE - range.getLast());
+        
+        ReadObjectResponse<InputStream> rawResponse = delegate.readObjectStream(identifier,
+                new Range(readStart, readEnd));
+        InputStream in = rawResponse.getObject();
+        boolean success = false;
+        try {
+            Map<String,String> rawMeta = metaToMap(rawResponse.getMetadata().getMetadata().values());
+            String transformModes = rawMeta.get(TransformConstants.META_TRANSFORM_MODE);
+            if(transformModes == null || transformModes.length() == 0) {
+                // Object is not encoded.
+                ReadObjectResponse<T> response = readPlainRange(identifier, range, objectType,
+                        rawResponse, first - readStart);
+                success = true;
+                return response;
+            }
+            
+            // A compressed object (or any combination of transforms) must be decoded from 
+            // the beginning.
+            String mode = transformModes;
+            if(mode.contains("|") || !mode.startsWith(TransformConstants.ENCRYPTION_CLASS)
+                    || !mode.contains("AES/CBC/")) {
+                throw new UnsupportedOperationException(PARTIAL_READ_MSG 
+                        + " unless the object is only encrypted with AES/CBC (object is " 
+                        + transformModes + ")");
+            }
+            
+            String sizeString = rawMeta.get(TransformConstants.META_ENCRYPTION_UNENC_SIZE);
+            if(sizeString == null) {
+                throw new AtmosException("Unencrypted size not found in object metadata");
+            }
+            long size = Long.parseLong(sizeString);
+            long last = Math.min(range.getLast(), size - 1);
+            if(first > last) {
+                throw new IllegalArgumentException("Range " + range + " is outside of the object (size " + size + ")");
+            }
+            
+            // PKCS5 padding always adds at least one byte, so the ciphertext is
+            // (size / block + 1) blocks long.  The read above already ends at or after
+            // cipherEnd, so the rest is ignored.
+            long lastBlock = last / AES_BLOCK_SIZE;
+            long finalBlock = size / AES_BLOCK_SIZE;
+            long cipherEnd = (Math.min(lastBlock + 1, finalBlock) + 1) * AES_BLOCK_SIZE - 1;
+            in = new RangeInputStream(in, cipherEnd - readStart + 1);
+            
+            if(firstBlock > 0) {
+                // the previous ciphertext block is the IV for the first block we need.
+                byte[] iv = new byte[AES_BLOCK_SIZE];
+                if(fillBuffer(iv, AES_BLOCK_SIZE, in) != AES_BLOCK_SIZE) {
+                    throw new AtmosException("Unexpected end of object data");
+                }
+                rawMeta.put(TransformConstants.META_ENCRYPTION_IV, KeyUtils.urlSafeEncodeBase64(iv));
+            }
+            
+            InputTransform trans = null;
+            for(TransformFactory<?, ?> f : factories) {
+                if(f.canDecode(mode, rawMeta)) {
+                    try {
+                        trans = getInputTransform(f, mode, in, rawMeta);
+                    } catch (TransformException e) {
+                        throw new AtmosException("Error transforming object data: " + e, e);
+                    }
+                    break;
+                }
+            }
+            if(trans == null) {
+                throw new AtmosException("No transformation found to handle '" + mode + "'");
+            }
+            
+            // skip to the start of the range and stop at the end, without reading to the
+            // end of the cipher stream (which would check the padding).
+            InputStream decoded = trans.getDecodedInputStream();
+            skipFully(decoded, first - firstBlock * AES_BLOCK_SIZE);
+            
+            Map<String,String> decodedMeta = trans.getDecodedMetadata();
+            decodedMeta.remove(TransformConstants.META_ENCRYPTION_IV);
+            updateMetadata(decodedMeta, rawResponse.getMetadata().getMetadata().values());
+            rawResponse.setObject(new RangeInputStream(decoded, last - first + 1));
+            rawResponse.setContentLength(last - first + 1);
+            
+            ReadObjectResponse<T> response = rewrap(rawResponse, objectType);
+            success = true;
+            return response;
         } finally {
+            if(!success || !InputStream.class.equals(objectType)) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Trims the widened read from {@link #readRange} down to the requested range of an
+     * object with no transforms.  If the object ends before the range starts, the
+     * range is read as requested so the server reports the error.
+     */
+    private <T> ReadObjectResponse<T> readPlainRange(ObjectIdentifier identifier, Range range,
+            Class<T> objectType, ReadObjectResponse<InputStream> rawResponse, long lead) throws IOException {
+        long length = range.getSize();
+        if(rawResponse.getContentLength() >= 0) {
+            length = Math.min(length, rawResponse.getContentLength() - lead);
+        }
+        if(length <= 0) {
             rawResponse.getObject().close();
+            return rewrap(delegate.readObjectStream(identifier, range), objectType);
+        }
+        skipFully(rawResponse.getObject(), lead);
+        rawResponse.setObject(new RangeInputStream(rawResponse.getObject(), length));
+        rawResponse.setContentLength(length);
+        return rewrap(rawResponse, objectType);
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        byte[] skipBuffer = new byte[AES_BLOCK_SIZE];
+        while(count > 0) {
+            int c = in.read(skipBuffer, 0, (int) Math.min(count, skipBuffer.length));
+            if(c == -1) throw new AtmosException("Unexpected end of object data");
+            count -= c;
+        }
+    }
+
+    /**
+     * Limits a stream to the requested number of bytes.
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(remaining <= 0) return -1;
+            int b = in.read();
+            if(b != -1) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(remaining <= 0) return -1;
+            int c = in.read(b, off, (int) Math.min(len, remaining));
+            if(c != -1) remaining -= c;
+            return c;
         }
 
+        @Override
+        public long skip(long n) throws IOException {
+            long c = in.skip(Math.min(n, remaining));
+            remaining -= c;
+            return c;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
     }
 
     /**
@@ -596,9 +915,18 @@ public class AtmosEncryptionClient implements AtmosApi {
      * @throws IOException if there is an error translating the response into the desired
      * format.
      */
-    @SuppressWarnings("unchecked")
     private <T> ReadObjectResponse<T> rewrap(ReadObjectResponse<InputStream> rawResponse,
             Class<T> objectType) throws IOException {
+        return rewrap(rawResponse, objectType, rawResponse.getContentLength());
+    }
+
+    /**
+     * Same as {@link #rewrap(ReadObjectResponse, Class)}, but allocates
+     * <code>presize</code> bytes up front (if known) when the content is read into memory.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> ReadObjectResponse<T> rewrap(ReadObjectResponse<InputStream> rawResponse,
+            Class<T> objectType, long presize) throws IOException {
         
         ReadObjectResponse<?> wrapped = null;
         
@@ -606,22 +934,19 @@ public class AtmosEncryptionClient implements AtmosApi {
             return (ReadObjectResponse<T>) rawResponse;
         } else if(byte[].class.equals(objectType) || String.class.equals(objectType)) {
             InputStream in = rawResponse.getObject();
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            byte[] buffer = new byte[4096];
-            int c = 0;
-            while((c = in.read(buffer)) != -1) {
-                out.write(buffer, 0, c);
+            byte[] content;
+            try {
+                content = readContent(in, presize);
+            } finally {
+                in.close();
             }
-            in.close();
-            out.close();
             
             if(byte[].class.equals(objectType)) {
                 wrapped = new ReadObjectResponse<byte[]>();
-                ((ReadObjectResponse<byte[]>)wrapped).setObject(out.toByteArray());
+                ((ReadObjectResponse<byte[]>)wrapped).setObject(content);
             } else {
                 wrapped = new ReadObjectResponse<String>();
-                ((ReadObjectResponse<String>)wrapped).setObject(
-                        new String(out.toByteArray()));
+                ((ReadObjectResponse<String>)wrapped).setObject(new String(content));
             }
        
         } else {
@@ -640,6 +965,67 @@ public class AtmosEncryptionClient implements AtmosApi {
 
         return (ReadObjectResponse<T>) wrapped;
     }
+
+    /**
+     * Reads a stream fully.  When the size is known, the content is read straight into
+     * an array of that size, so it is only held once.  If the size is unknown (or the
+     * stream turns out to be longer) the array grows by half as needed, and it is
+     * trimmed at the end if the stream was shorter.
+     */
+    private byte[] readContent(InputStream in, long size) throws IOException {
+        byte[] content = new byte[(size >= 0) ? (int) Math.min(size, MAX_ARRAY_LENGTH) : UNKNOWN_SIZE_BUFFER];
+        int length = 0;
+        while(true) {
+            if(length == content.length) {
+                // only grow if there is more to read
+                int next = in.read();
+                if(next == -1) {
+                    break;
+                }
+                if(length == MAX_ARRAY_LENGTH) {
+                    throw new IOException("Object is too large to read into an array");
+                }
+                content = Arrays.copyOf(content, (int) Math.min(length + (length >> 1) + 1L, MAX_ARRAY_LENGTH));
+                content[length++] = (byte) next;
+            }
+            int c = in.read(content, length, content.length - length);
+            if(c == -1) {
+                break;
+            }
+            length += c;
+        }
+        return (length == content.length) ? content : Arrays.copyOf(content, length);
+    }
+
+    /**
+     * Reads an object's decoded content and writes it to a stream, without holding the
+     * content in memory.  The output stream is not closed.
+     * @param identifier the object to read.
+     * @param out the stream to write the content to.
+     * @return the number of bytes written.
+     * @throws IOException if there is an error reading the object or writing the stream.
+     */
+    public long readObject(ObjectIdentifier identifier, OutputStream out) throws IOException {
+        InputStream in = readObjectStream(identifier, null).getObject();
+        try {
+            return StreamUtil.copy(in, out, Long.MAX_VALUE);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads an object's decoded content and writes it to a channel, without holding the
+     * content in memory.  The channel is not closed.
+     * @param identifier the object to read.
+     * @param channel the channel to write the content to.
+     * @return the number of bytes written.
+     * @throws IOException if there is an error reading the object or writing the channel.
+     */
+    public long readObject(ObjectIdentifier identifier, WritableByteChannel channel) throws IOException {
+        return readObject(identifier, Channels.newOutputStream(channel));
+    }
+
     /*
      * @see com.emc.atmos.api.AtmosApi#readObjectStream(com.emc.atmos.api.ObjectIdentifier, com.emc.atmos.api.Range)
      */
@@ -647,13 +1033,11 @@ public class AtmosEncryptionClient implements AtmosApi {
     public ReadObjectResponse<InputStream> readObjectStream(
             ObjectIdentifier identifier, Range range) {
         
-        // Partial reads not currently supported.
-        if(range != null) {
-            throw new UnsupportedOperationException(UNSUPPORTED_MSG);
-        }
-        
         ReadObjectRequest request = new ReadObjectRequest().identifier(identifier);
         try {
+            if(range != null) {
+                return readRange(identifier, range, InputStream.class);
+            }
             return readObject(request, InputStream.class);
         } catch (IOException e) {
             throw new AtmosException("Error getting response stream: " + e, e);
@@ -756,55 +1140,69 @@ public class AtmosEncryptionClient implements AtmosApi {
         // Overwrite the object
         int c = 0;
         int pos = 0;
-        byte[] buffer = new byte[bufferSize];
-        
-        // Read the first chunk and send it with the create request.
+        byte[] buffer = null;
+        BasicResponse resp;
         try {
-            c = fillBuffer(buffer, in);
-        } catch (IOException e) {
-            throw new AtmosException("Error reading input data: " + e, e);
-        }
-        if(c == -1) {
-            // EOF already
-            request.setContent(null);
+            if(uploadThreads > 1) {
+                // Transform the next chunk on this thread while the previous ones are written
+                try {
+                    resp = createUploader().updateObject(request, in);
+                } catch (IOException e) {
+                    throw new AtmosException("Error reading input data: " + e, e);
+                }
+            } else {
+                buffer = BufferPool.getDefault().lease(bufferSize);
+                // Read the first chunk and send it with the create request.
+                try {
+                    c = fillBuffer(buffer, bufferSize, in);
+                } catch (IOException e) {
+                    throw new AtmosException("Error reading input data: " + e, e);
+                }
+                if(c == -1) {
+                    // EOF already
+                    request.setContent(null);
             
-            // Optmization -- send metadata now with create request and return
-            try {
-                in.close();
-            } catch (IOException e) {
-                throw new AtmosException("Error closing input: " + e, e);
-            }
-            for(OutputTransform ot : appliedTransforms) {
-                mMeta.putAll(ot.getEncodedMetadata());
-            }
-            Set<Metadata> metadata = request.getUserMetadata();
-            if(metadata == null) {
-                metadata = new HashSet<Metadata>();
-            }
-            updateMetadata(mMeta, metadata);
-            request.setUserMetadata(metadata);
+                    // Optmization -- send metadata now with create request and return
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        throw new AtmosException("Error closing input: " + e, e);
+                    }
+                    for(OutputTransform ot : appliedTransforms) {
+                        mMeta.putAll(ot.getEncodedMetadata());
+                    }
+                    Set<Metadata> metadata = request.getUserMetadata();
+                    if(metadata == null) {
+                        metadata = new HashSet<Metadata>();
+                    }
+                    updateMetadata(mMeta, metadata);
+                    request.setUserMetadata(metadata);
             
-            return delegate.updateObject(request);
-        } else {
-            request.setContent(new BufferSegment(buffer, 0, c));
-        }
-        BasicResponse resp = delegate.updateObject(request);
+                    return delegate.updateObject(request);
+                } else {
+                    request.setContent(new BufferSegment(buffer, 0, c));
+                }
+                resp = delegate.updateObject(request);
         
-        pos = c;
+                pos = c;
         
-        // Append until EOF.
-        try {
-            while((c = fillBuffer(buffer, in)) != -1) {
-                UpdateObjectRequest uor = new UpdateObjectRequest();
-                uor.setIdentifier(request.getIdentifier());
-                uor.setContentType(request.getContentType());
-                uor.setRange(new Range(pos, pos+c-1));
-                uor.setContent(new BufferSegment(buffer, 0, c));
-                pos += c;
-                delegate.updateObject(uor);
+                // Append until EOF.
+                try {
+                    while((c = fillBuffer(buffer, bufferSize, in)) != -1) {
+                        UpdateObjectRequest uor = new UpdateObjectRequest();
+                        uor.setIdentifier(request.getIdentifier());
+                        uor.setContentType(request.getContentType());
+                        uor.setRange(new Range(pos, pos+c-1));
+                        uor.setContent(new BufferSegment(buffer, 0, c));
+                        pos += c;
+                        delegate.updateObject(uor);
+                    }
+                } catch (IOException e) {
+                    throw new AtmosException("Error reading input data: " + e, e);
+                }
             }
-        } catch (IOException e) {
-            throw new AtmosException("Error reading input data: " + e, e);
+        } finally {
+            BufferPool.getDefault().release(buffer);
         }
         
         try {
@@ -817,12 +1215,19 @@ public class AtmosEncryptionClient implements AtmosApi {
         // Update the object with the transformed metadata.
         for(OutputTransform ot : appliedTransforms) {
             mMeta.putAll(ot.getEncodedMetadata());
+            // A transform that decided not to encode the data (e.g. compression of
+            // incompressible data) has no config.
+            if(ot.getTransformConfig() == null) {
+                continue;
+            }
             if(transformConfig.length() != 0) {
                 transformConfig += "|";
             }
             transformConfig += ot.getTransformConfig();
         }
-        mMeta.put(TransformConstants.META_TRANSFORM_MODE, transformConfig);
+        if(transformConfig.length() != 0) {
+            mMeta.put(TransformConstants.META_TRANSFORM_MODE, transformConfig);
+        }
         
         Set<Metadata> metadata = request.getUserMetadata();
         if(metadata == null) {
@@ -1157,6 +1562,25 @@ public class AtmosEncryptionClient implements AtmosApi {
         delegate.deleteSubtenant( subtenantId );
     }
 
+    /**
+     * Creates an uploader that writes chunks of bufferSize with up to uploadThreads
+     * concurrent requests.
+     */
+    private ParallelUploader createUploader() {
+        ParallelUploader uploader = new ParallelUploader(delegate);
+        uploader.setPartSize(bufferSize);
+        uploader.setThreads(uploadThreads);
+        return uploader;
+    }
+
+    /**
+     * Returns the encryption configuration, or null if this client was created with a
+     * collection of transform factories.
+     */
+    EncryptionConfig getEncryptionConfig() {
+        return encryptionConfig;
+    }
+
     /**
      * @return the bufferSize
      */
@@ -1171,4 +1595,50 @@ public class AtmosEncryptionClient implements AtmosApi {
         this.bufferSize = bufferSize;
     }
 
+    /**
+     * @return the most that is allocated up front for the decoded size of a compressed
+     * object read into memory
+     */
+    public int getReadPresizeLimit() {
+        return readPresizeLimit;
+    }
+
+    /**
+     * Sets the most that is allocated up front when a compressed object is read as a
+     * byte[] or String.  Up to this size, the uncompressed size recorded in the object's
+     * metadata is used to allocate the whole array at once; a larger object is read
+     * into an array that grows as needed.  The size of an encrypted (and not compressed)
+     * object is checked against its content length instead, so this limit does not apply
+     * to it.  The default is 64MB.
+     * @param readPresizeLimit the limit in bytes
+     */
+    public void setReadPresizeLimit(int readPresizeLimit) {
+        if(readPresizeLimit < 0) throw new IllegalArgumentException("readPresizeLimit cannot be negative");
+        this.readPresizeLimit = readPresizeLimit;
+    }
+
+    /**
+     * @return the number of concurrent writes used when uploading an object
+     */
+    public int getUploadThreads() {
+        return uploadThreads;
+    }
+
+    /**
+     * Sets the number of concurrent writes used when uploading an object.  The default
+     * of 1 reads, transforms and writes each chunk in turn on the calling thread.  With
+     * a higher value, the calling thread reads and transforms the next chunk while up
+     * to this many previous chunks are being written.  Every chunk except the last is
+     * exactly bufferSize bytes of transformed content, so the offset of each chunk is
+     * known in advance and the chunks can be written in any order.  Up to this many
+     * chunks are held in memory at once, and the connection pool should allow this
+     * many connections per endpoint.
+     * @param uploadThreads the number of concurrent writes
+     * @see ParallelUploader
+     */
+    public void setUploadThreads(int uploadThreads) {
+        if(uploadThreads < 1) throw new IllegalArgumentException("uploadThreads must be at least 1");
+        this.uploadThreads = uploadThreads;
+    }
+
 }
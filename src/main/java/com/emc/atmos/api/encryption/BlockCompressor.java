@@ -0,0 +1,333 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.encryption;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import com.emc.util.BufferPool;
+import com.emc.vipr.transform.TransformConstants;
+import com.emc.vipr.transform.encryption.KeyUtils;
+
+/**
+ * Compresses a stream as a sequence of independent blocks on an executor and hands
+ * the encoded blocks back in order.  Each encoded block is a 9 byte header (block
+ * type, uncompressed length, payload length) followed by the payload; blocks that do
+ * not get smaller are stored as-is.
+ * <p>
+ * The first blocks are held back as a sample.  If compressing them does not save
+ * enough, compression is abandoned and the raw input is returned unframed instead, so
+ * the object can be stored without a compression transform.  Not thread-safe; each
+ * stream uses its own instance.
+ */
+class BlockCompressor {
+    static final int STORED = 0;
+    static final int DEFLATED = 1;
+    static final int HEADER_SIZE = 9;
+
+    private ExecutorService executor;
+    private int level;
+    private int strategy;
+    private int maxPending;
+    private int sampleBlocks;
+    private double minSavings;
+
+    private LinkedList<Future<Block>> pending = new LinkedList<Future<Block>>();
+    private Boolean compressing;
+    private boolean finished;
+    private MessageDigest sha1;
+    private long uncompressedSize;
+    private long compressedSize;
+
+    BlockCompressor(ExecutorService executor, int threads, int level, int strategy,
+            int sampleBlocks, double minSavings) {
+        this.executor = executor;
+        this.level = level;
+        this.strategy = strategy;
+        this.sampleBlocks = sampleBlocks;
+        this.minSavings = minSavings;
+        // enough blocks in flight to keep every thread busy and to hold the sample
+        this.maxPending = Math.max(threads * 2, sampleBlocks);
+        if(sampleBlocks == 0) {
+            compressing = Boolean.TRUE;
+        }
+        try {
+            sha1 = MessageDigest.getInstance("SHA1");
+        } catch(NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA1 is not available", e);
+        }
+    }
+
+    /**
+     * Returns true if more blocks should be submitted before the next one is taken.
+     */
+    boolean needsInput() {
+        return !finished && pending.size() < maxPending;
+    }
+
+    /**
+     * Queues a block of raw input.  The buffer must be leased from the default
+     * {@link BufferPool}; it is released once the block has been consumed.
+     */
+    void submit(final byte[] raw, final int length) {
+        sha1.update(raw, 0, length);
+        uncompressedSize += length;
+        if(Boolean.FALSE.equals(compressing)) {
+            pending.add(new CompletedBlock(new Block(raw, length, null, 0)));
+        } else {
+            pending.add(executor.submit(new Callable<Block>() {
+                @Override
+                public Block call() {
+                    return compress(raw, length);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Signals that no more input will be submitted.
+     */
+    void finish() {
+        finished = true;
+    }
+
+    /**
+     * Returns the next block of output, or null once all input has been returned.  The
+     * caller must {@link Block#release() release} each block after copying it.
+     */
+    Block next() throws IOException {
+        if(pending.isEmpty()) {
+            return null;
+        }
+        if(compressing == null) {
+            decide();
+        }
+        Block block = get(pending.removeFirst());
+        if(compressing) {
+            block.setOutput(block.encoded, 0, block.encodedLength);
+        } else {
+            block.setOutput(block.raw, 0, block.rawLength);
+        }
+        compressedSize += block.outputLength;
+        return block;
+    }
+
+    /**
+     * Returns true if the output is compressed, false if compression was abandoned.
+     * Only valid once output has been taken.
+     */
+    boolean isCompressing() {
+        return Boolean.TRUE.equals(compressing);
+    }
+
+    /**
+     * Returns the compression metadata for the stream, in the same form as the
+     * single-stream compression transforms.
+     */
+    Map<String, String> getStreamMetadata() {
+        Map<String, String> metadata = new HashMap<String, String>();
+        double ratio = uncompressedSize == 0 ? 0 : 100.0 - (compressedSize * 100.0 / uncompressedSize);
+        metadata.put(TransformConstants.META_COMPRESSION_UNCOMP_SIZE, "" + uncompressedSize);
+        metadata.put(TransformConstants.META_COMPRESSION_COMP_SIZE, "" + compressedSize);
+        metadata.put(TransformConstants.META_COMPRESSION_COMP_RATIO, String.format("%.1f%%", ratio));
+        metadata.put(TransformConstants.META_COMPRESSION_UNCOMP_SHA1, KeyUtils.toHexPadded(sha1.digest()));
+        return metadata;
+    }
+
+    /**
+     * Cancels any outstanding blocks and releases their buffers.
+     */
+    void close() {
+        finished = true;
+        while(!pending.isEmpty()) {
+            Future<Block> future = pending.removeFirst();
+            future.cancel(false);
+            try {
+                if(!future.isCancelled()) {
+                    future.get().release();
+                }
+            } catch(Exception e) {
+                // already failed; nothing to release
+            }
+        }
+    }
+
+    /**
+     * Decides from the sampled blocks whether compression is worthwhile.
+     */
+    private void decide() throws IOException {
+        long raw = 0, encoded = 0;
+        int sampled = 0;
+        for(Future<Block> future : pending) {
+            if(sampled++ == sampleBlocks) {
+                break;
+            }
+            Block block = get(future);
+            raw += block.rawLength;
+            encoded += block.encodedLength;
+        }
+        compressing = raw == 0 || encoded <= raw * (1.0 - minSavings);
+    }
+
+    private Block get(Future<Block> future) throws IOException {
+        try {
+            return future.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch(ExecutionException e) {
+            throw new IOException("Error compressing block: " + e.getCause(), e.getCause());
+        }
+    }
+
+    private Block compress(byte[] raw, int length) {
+        byte[] encoded = BufferPool.getDefault().lease(HEADER_SIZE + length);
+        Deflater deflater = new Deflater(level);
+        int payload = 0;
+        try {
+            deflater.setStrategy(strategy);
+            deflater.setInput(raw, 0, length);
+            deflater.finish();
+            while(!deflater.finished() && payload < length) {
+                payload += deflater.deflate(encoded, HEADER_SIZE + payload, length - payload);
+            }
+            if(!deflater.finished() || payload >= length) {
+                System.arraycopy(raw, 0, encoded, HEADER_SIZE, length);
+                payload = length;
+                writeHeader(encoded, STORED, length, payload);
+            } else {
+                writeHeader(encoded, DEFLATED, length, payload);
+            }
+        } finally {
+            deflater.end();
+        }
+        return new Block(raw, length, encoded, HEADER_SIZE + payload);
+    }
+
+    private static void writeHeader(byte[] buffer, int type, int length, int payload) {
+        buffer[0] = (byte) type;
+        writeInt(buffer, 1, length);
+        writeInt(buffer, 5, payload);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16)
+                | ((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
+    }
+
+    /**
+     * A block of input with its encoded form.
+     */
+    static class Block {
+        private byte[] raw;
+        private int rawLength;
+        private byte[] encoded;
+        private int encodedLength;
+        byte[] output;
+        int outputOffset;
+        int outputLength;
+
+        Block(byte[] raw, int rawLength, byte[] encoded, int encodedLength) {
+            this.raw = raw;
+            this.rawLength = rawLength;
+            this.encoded = encoded;
+            this.encodedLength = encodedLength;
+        }
+
+        private void setOutput(byte[] output, int offset, int length) {
+            this.output = output;
+            this.outputOffset = offset;
+            this.outputLength = length;
+        }
+
+        void release() {
+            BufferPool.getDefault().release(raw);
+            BufferPool.getDefault().release(encoded);
+            raw = encoded = output = null;
+        }
+    }
+
+    /**
+     * A block that did not need to go through the executor.
+     */
+    private static class CompletedBlock implements Future<Block> {
+        private Block block;
+
+        CompletedBlock(Block block) {
+            this.block = block;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+
+        @Override
+        public Block get() {
+            return block;
+        }
+
+        @Override
+        public Block get(long timeout, TimeUnit unit) {
+            return block;
+        }
+    }
+}
@@ -0,0 +1,576 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.encryption;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.DaemonThreadFactory;
+import com.emc.atmos.api.ObjectId;
+import com.emc.atmos.api.ObjectIdentifier;
+import com.emc.atmos.api.ObjectPath;
+import com.emc.atmos.api.bean.DirectoryEntry;
+import com.emc.atmos.api.bean.Metadata;
+import com.emc.atmos.api.bean.ObjectEntry;
+import com.emc.atmos.api.request.ListDirectoryRequest;
+import com.emc.atmos.api.request.ListObjectsRequest;
+import com.emc.vipr.transform.TransformConstants;
+import com.emc.vipr.transform.encryption.DoesNotNeedRekeyException;
+
+/**
+ * Rekeys many objects concurrently, i.e. to rotate a master key across a whole
+ * namespace.  Object IDs are read from a listable tag, a directory tree, a file or any
+ * iterator, and {@link AtmosEncryptionClient#rekey(ObjectIdentifier)} is called for each
+ * with up to {@link #getThreads()} calls in flight.
+ * <br>
+ * When listing a tag or directory, the master key ID of each object is requested with
+ * the listing, so objects that already use the current master key are skipped without
+ * any further requests.  Other objects that do not need a rekey cost one metadata read.
+ * Objects that fail are logged and counted, and the run continues.
+ * <br>
+ * If a {@link #setCheckpointFile(File) checkpoint file} is set, the run's position (the
+ * number of objects from the start of the source that have all been processed) is saved
+ * every {@link #getCheckpointInterval()} objects and when the run ends.  Running again
+ * with the same source and checkpoint file resumes from that position; the source must
+ * list the objects in the same order, which is true of files and, for an unchanged
+ * namespace, of listings.  Objects processed after the checkpoint but before an
+ * interruption are simply skipped on the next run because they no longer need a rekey.
+ * <br>
+ * Progress is logged every {@link #getProgressInterval()} milliseconds and is available
+ * from {@link #getProgress()} while the run is active.
+ */
+public class BulkRekeyer {
+    private static final Logger l4j = LoggerFactory.getLogger(BulkRekeyer.class);
+
+    public static final int DEFAULT_THREADS = 8;
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+    public static final long DEFAULT_PROGRESS_INTERVAL = 60000;
+
+    private static final int LIST_LIMIT = 1000;
+
+    private AtmosEncryptionClient client;
+    private int threads = DEFAULT_THREADS;
+    private File checkpointFile;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private volatile Run current;
+
+    public BulkRekeyer(AtmosEncryptionClient client) {
+        if(client == null) {
+            throw new IllegalArgumentException("client cannot be null");
+        }
+        this.client = client;
+    }
+
+    /**
+     * Rekeys all objects tagged with the given listable metadata name.
+     */
+    public RekeyProgress rekeyTag(String metadataName) {
+        return run("tag:" + metadataName, new TagSource(metadataName));
+    }
+
+    /**
+     * Rekeys all objects in a directory.
+     * @param directory the directory to list.
+     * @param recursive if true, objects in subdirectories are rekeyed as well.
+     */
+    public RekeyProgress rekeyDirectory(ObjectPath directory, boolean recursive) {
+        if(!directory.isDirectory()) {
+            throw new IllegalArgumentException(directory + " is not a directory");
+        }
+        return run("directory:" + directory + (recursive ? " (recursive)" : ""),
+                new DirectorySource(directory, recursive));
+    }
+
+    /**
+     * Rekeys the objects listed in a file, one per line.  Lines that start with a slash
+     * are object paths; other lines are object IDs.  Blank lines and lines starting with
+     * '#' are ignored.  The file is read as it is processed, so it may be arbitrarily
+     * large.
+     */
+    public RekeyProgress rekeyFile(File idFile) throws IOException {
+        return run("file:" + idFile.getAbsolutePath(), new FileSource(idFile));
+    }
+
+    /**
+     * Rekeys the objects returned by an iterator.  To resume from a checkpoint, the
+     * iterator must return the same objects in the same order.
+     */
+    public RekeyProgress rekey(final Iterator<? extends ObjectIdentifier> identifiers) {
+        return run("iterator", new Source() {
+            @Override
+            protected boolean fill(LinkedList<Candidate> queue) {
+                if(!identifiers.hasNext()) {
+                    return false;
+                }
+                queue.add(new Candidate(identifiers.next(), null));
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Returns the progress of the active run, or null if no run is active.
+     */
+    public RekeyProgress getProgress() {
+        Run run = current;
+        return (run == null) ? null : run.snapshot();
+    }
+
+    private RekeyProgress run(String source, Source candidates) {
+        EncryptionConfig encryptionConfig = client.getEncryptionConfig();
+        String masterKeyId = (encryptionConfig == null) ? null : encryptionConfig.getMasterKeyId();
+
+        Run run = new Run(source);
+        loadCheckpoint(run);
+        long resumeFrom = run.position;
+        if(resumeFrom > 0) {
+            l4j.info("Resuming {} at position {}", source, resumeFrom);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new DaemonThreadFactory("atmos-rekey"));
+        // bound the number of queued objects so the source is consumed as we go
+        Semaphore slots = new Semaphore(threads * 2);
+        current = run;
+        try {
+            long sequence = 0;
+            while(candidates.hasNext()) {
+                Candidate candidate = candidates.next();
+                if(sequence < resumeFrom) {
+                    sequence++;
+                    continue;
+                }
+                if(masterKeyId != null && masterKeyId.equals(candidate.keyId)) {
+                    run.complete(sequence++, Result.SKIPPED);
+                    continue;
+                }
+                slots.acquire();
+                executor.execute(new RekeyTask(run, sequence++, candidate.identifier, slots));
+            }
+            executor.shutdown();
+            while(!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                l4j.debug("waiting for rekeys to finish");
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            throw new AtmosException("Interrupted during bulk rekey (" + run.snapshot() + ")", e);
+        } finally {
+            executor.shutdownNow();
+            candidates.close();
+            current = null;
+            saveCheckpoint(run);
+        }
+
+        RekeyProgress progress = run.snapshot();
+        l4j.info("Finished {}", progress);
+        return progress;
+    }
+
+    private void loadCheckpoint(Run run) {
+        if(checkpointFile == null || !checkpointFile.exists()) {
+            return;
+        }
+        Properties props = new Properties();
+        try {
+            InputStream in = new FileInputStream(checkpointFile);
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+        } catch(IOException e) {
+            throw new AtmosException("Could not read checkpoint file " + checkpointFile, e);
+        }
+        if(!run.source.equals(props.getProperty("source"))) {
+            throw new IllegalStateException("Checkpoint file " + checkpointFile + " is for "
+                    + props.getProperty("source") + ", not " + run.source);
+        }
+        run.position = Long.parseLong(props.getProperty("position", "0"));
+        for(Result result : Result.values()) {
+            String name = result.name().toLowerCase(Locale.ENGLISH);
+            run.counts[result.ordinal()] = Long.parseLong(props.getProperty(name, "0"));
+            run.initialCount += run.counts[result.ordinal()];
+        }
+    }
+
+    /*
+     * Writes the checkpoint to a temporary file and renames it over the old one, so a
+     * crash while saving cannot leave a truncated checkpoint.
+     */
+    private synchronized void saveCheckpoint(Run run) {
+        if(checkpointFile == null) {
+            return;
+        }
+        Properties props = new Properties();
+        synchronized(run) {
+            props.setProperty("source", run.source);
+            props.setProperty("position", Long.toString(run.position));
+            for(Result result : Result.values()) {
+                String name = result.name().toLowerCase(Locale.ENGLISH);
+                props.setProperty(name, Long.toString(run.counts[result.ordinal()]));
+            }
+        }
+        File temp = new File(checkpointFile.getPath() + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                props.store(out, "BulkRekeyer checkpoint");
+            } finally {
+                out.close();
+            }
+            if(!temp.renameTo(checkpointFile)) {
+                // renameTo will not replace an existing file on some platforms
+                if(!checkpointFile.delete() || !temp.renameTo(checkpointFile)) {
+                    throw new IOException("Could not rename " + temp + " to " + checkpointFile);
+                }
+            }
+        } catch(IOException e) {
+            l4j.warn("Could not save checkpoint " + checkpointFile, e);
+        }
+    }
+
+    /**
+     * @return the maximum number of concurrent rekey calls.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the maximum number of concurrent rekey calls (default 8).  Make sure the
+     * connection pool allows at least this many connections per endpoint.
+     */
+    public void setThreads(int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Sets the file used to save and resume progress.  If null (the default), progress
+     * is not saved.
+     */
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Sets how many objects are processed between checkpoint saves (default 1000).
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        if(checkpointInterval < 1) {
+            throw new IllegalArgumentException("checkpointInterval must be at least 1");
+        }
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * Sets how often progress is logged, in milliseconds (default 60000).
+     */
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    private enum Result {
+        REKEYED, SKIPPED, FAILED
+    }
+
+    /**
+     * The state of one run.  Objects complete out of order, so the position only advances
+     * past an object once every object before it has completed.  Results beyond the
+     * position are held separately, so that the counts saved with a checkpoint match its
+     * position exactly and resuming does not count any object twice.
+     */
+    private class Run {
+        private String source;
+        private long startTime = System.currentTimeMillis();
+        private long lastLogTime = startTime;
+        private long position;
+        private long[] counts = new long[Result.values().length];
+        private long initialCount;
+        private TreeMap<Long, Result> completedAhead = new TreeMap<Long, Result>();
+
+        private Run(String source) {
+            this.source = source;
+        }
+
+        private void complete(long sequence, Result result) {
+            boolean checkpoint = false, log = false;
+            synchronized(this) {
+                long oldPosition = position;
+                completedAhead.put(sequence, result);
+                while(!completedAhead.isEmpty() && completedAhead.firstKey() == position) {
+                    counts[completedAhead.pollFirstEntry().getValue().ordinal()]++;
+                    position++;
+                }
+                checkpoint = position / checkpointInterval != oldPosition / checkpointInterval;
+
+                long now = System.currentTimeMillis();
+                if(now - lastLogTime >= progressInterval) {
+                    lastLogTime = now;
+                    log = true;
+                }
+            }
+            if(checkpoint) {
+                saveCheckpoint(this);
+            }
+            if(log) {
+                l4j.info("Rekey progress: {}", snapshot());
+            }
+        }
+
+        private synchronized RekeyProgress snapshot() {
+            long[] total = counts.clone();
+            for(Result result : completedAhead.values()) {
+                total[result.ordinal()]++;
+            }
+            long processed = total[0] + total[1] + total[2] - initialCount;
+            return new RekeyProgress(source, position, total[Result.REKEYED.ordinal()],
+                    total[Result.SKIPPED.ordinal()], total[Result.FAILED.ordinal()], processed,
+                    System.currentTimeMillis() - startTime);
+        }
+    }
+
+    private class RekeyTask implements Runnable {
+        private Run run;
+        private long sequence;
+        private ObjectIdentifier identifier;
+        private Semaphore slots;
+
+        private RekeyTask(Run run, long sequence, ObjectIdentifier identifier, Semaphore slots) {
+            this.run = run;
+            this.sequence = sequence;
+            this.identifier = identifier;
+            this.slots = slots;
+        }
+
+        @Override
+        public void run() {
+            Result result = Result.FAILED;
+            try {
+                client.rekey(identifier);
+                result = Result.REKEYED;
+            } catch(DoesNotNeedRekeyException e) {
+                result = Result.SKIPPED;
+            } catch(RuntimeException e) {
+                l4j.warn("Could not rekey " + identifier, e);
+            } finally {
+                slots.release();
+                run.complete(sequence, result);
+            }
+        }
+    }
+
+    private static class Candidate {
+        private ObjectIdentifier identifier;
+        private String keyId;
+
+        private Candidate(ObjectIdentifier identifier, String keyId) {
+            this.identifier = identifier;
+            this.keyId = keyId;
+        }
+    }
+
+    /**
+     * A lazily-read sequence of objects.  Subclasses add the next batch of objects to the
+     * queue, returning false when there are no more.
+     */
+    private abstract static class Source implements Iterator<Candidate> {
+        private LinkedList<Candidate> queue = new LinkedList<Candidate>();
+        private boolean done;
+
+        protected abstract boolean fill(LinkedList<Candidate> queue);
+
+        protected void close() {
+        }
+
+        @Override
+        public boolean hasNext() {
+            while(queue.isEmpty() && !done) {
+                done = !fill(queue);
+            }
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Candidate next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return queue.removeFirst();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static String keyId(Map<String, Metadata> userMetadata) {
+        if(userMetadata == null) {
+            return null;
+        }
+        Metadata keyId = userMetadata.get(TransformConstants.META_ENCRYPTION_KEY_ID);
+        return (keyId == null) ? null : keyId.getValue();
+    }
+
+    private class TagSource extends Source {
+        private ListObjectsRequest request;
+        private boolean first = true;
+
+        private TagSource(String metadataName) {
+            request = new ListObjectsRequest().metadataName(metadataName).limit(LIST_LIMIT)
+                    .includeMetadata(true).userMetadataNames(TransformConstants.META_ENCRYPTION_KEY_ID);
+        }
+
+        @Override
+        protected boolean fill(LinkedList<Candidate> queue) {
+            if(!first && request.getToken() == null) {
+                return false;
+            }
+            first = false;
+            // the client sets the token on the request for the next page
+            for(ObjectEntry entry : client.listObjects(request).getEntries()) {
+                queue.add(new Candidate(entry.getObjectId(), keyId(entry.getUserMetadataMap())));
+            }
+            return true;
+        }
+    }
+
+    private class DirectorySource extends Source {
+        private boolean recursive;
+        private LinkedList<ObjectPath> directories = new LinkedList<ObjectPath>();
+        private ListDirectoryRequest request;
+
+        private DirectorySource(ObjectPath directory, boolean recursive) {
+            this.recursive = recursive;
+            directories.add(directory);
+        }
+
+        @Override
+        protected boolean fill(LinkedList<Candidate> queue) {
+            if(request == null) {
+                if(directories.isEmpty()) {
+                    return false;
+                }
+                request = new ListDirectoryRequest().path(directories.removeFirst()).limit(LIST_LIMIT)
+                        .includeMetadata(true).userMetadataNames(TransformConstants.META_ENCRYPTION_KEY_ID);
+            }
+            ObjectPath directory = request.getPath();
+            for(DirectoryEntry entry : client.listDirectory(request).getEntries()) {
+                if(entry.isDirectory()) {
+                    if(recursive) {
+                        directories.add(new ObjectPath(directory, entry));
+                    }
+                } else {
+                    queue.add(new Candidate(new ObjectPath(directory, entry), keyId(entry.getUserMetadataMap())));
+                }
+            }
+            if(request.getToken() == null) {
+                request = null;
+            }
+            return true;
+        }
+    }
+
+    private static class FileSource extends Source {
+        private BufferedReader reader;
+
+        private FileSource(File file) throws IOException {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        }
+
+        @Override
+        protected boolean fill(LinkedList<Candidate> queue) {
+            try {
+                String line = reader.readLine();
+                if(line == null) {
+                    return false;
+                }
+                line = line.trim();
+                if(line.length() > 0 && !line.startsWith("#")) {
+                    ObjectIdentifier identifier = line.startsWith("/") ? new ObjectPath(line) : new ObjectId(line);
+                    queue.add(new Candidate(identifier, null));
+                }
+                return true;
+            } catch(IOException e) {
+                throw new AtmosException("Error reading object IDs", e);
+            }
+        }
+
+        @Override
+        protected void close() {
+            try {
+                reader.close();
+            } catch(IOException e) {
+                l4j.warn("Could not close object ID file", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.encryption;
+
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import com.emc.vipr.transform.TransformConstants;
+import com.emc.vipr.transform.TransformException;
+import com.emc.vipr.transform.encryption.EncryptionInputTransform;
+import com.emc.vipr.transform.encryption.KeyUtils;
+
+/**
+ * Decrypts an object the same way as BasicEncryptionInputTransform, but with an object
+ * key that has already been unwrapped (i.e. from the {@link ContentKeyCache}) instead
+ * of unwrapping it with the master key.
+ */
+class CachedKeyInputTransform extends EncryptionInputTransform {
+    private CipherInputStream decryptedInput;
+
+    /**
+     * @param mode the transform mode of the object, e.g. ENC:AES/CBC/PKCS5Padding.
+     * @param streamToDecode the encrypted object data.
+     * @param metadataToDecode the object's metadata.
+     * @param key the unwrapped object key.
+     * @param provider the security provider, or null to use the default.
+     * @throws TransformException if the cipher cannot be initialized.
+     */
+    CachedKeyInputTransform(String mode, InputStream streamToDecode,
+            Map<String, String> metadataToDecode, SecretKey key, Provider provider)
+                    throws TransformException {
+        super(streamToDecode, metadataToDecode, provider);
+
+        String transform = mode.substring(mode.indexOf(':') + 1);
+        String ivString = metadataToDecode.get(TransformConstants.META_ENCRYPTION_IV);
+        if(ivString == null) {
+            throw new TransformException("Initialization Vector (IV) not found in object metadata");
+        }
+
+        try {
+            Cipher cipher = (provider == null) ? Cipher.getInstance(transform)
+                    : Cipher.getInstance(transform, provider);
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(KeyUtils.urlSafeDecodeBase64(ivString)));
+            decryptedInput = new CipherInputStream(streamToDecode, cipher);
+        } catch(GeneralSecurityException e) {
+            throw new TransformException("Could not initialize cipher", e);
+        }
+    }
+
+    @Override
+    public InputStream getDecodedInputStream() {
+        return decryptedInput;
+    }
+
+    @Override
+    public Map<String, String> getDecodedMetadata() {
+        return new HashMap<String, String>(metadataToDecode);
+    }
+}
@@ -26,6 +26,7 @@
  */
 package com.emc.atmos.api.encryption;
 
+import com.emc.atmos.api.encryption.ParallelCompressionTransformFactory.BlockCodec;
 import com.emc.vipr.transform.TransformConstants;
 import com.emc.vipr.transform.TransformConstants.CompressionMode;
 import com.emc.vipr.transform.compression.CompressionTransformFactory;
@@ -36,6 +37,9 @@ import com.emc.vipr.transform.compression.CompressionTransformFactory;
  * amounts of RAM.  In particular, even level 5 can exceed the default Java heap size.
  * @see CompressionTransformFactory#memoryRequiredForLzma(int) to estimate the amount
  * of RAM required for LZMA.
+ * <p>
+ * To use all processors when compressing large objects, use a {@link BlockCodec}.
+ * Either way, the client can read objects written with any of the compression modes.
  * 
  */
 public class CompressionConfig {
@@ -55,10 +59,26 @@ public class CompressionConfig {
      * @param level the compression level 1-9.
      */
     public CompressionConfig(CompressionMode mode, int level) {
-        factory = new CompressionTransformFactory();
+        factory = new ParallelCompressionTransformFactory();
         factory.setCompressMode(mode);
         factory.setCompressionLevel(level);
     }
+
+    /**
+     * Creates a compression configuration that compresses independent blocks of each
+     * object in parallel.  Objects that do not compress well are stored uncompressed.
+     * @param codec the codec used for each block.
+     * @param level the compression level 1-9 (ignored by {@link BlockCodec#Huffman}).
+     * @param threads the number of threads that compress blocks.
+     * @see ParallelCompressionTransformFactory for more settings.
+     */
+    public CompressionConfig(BlockCodec codec, int level, int threads) {
+        ParallelCompressionTransformFactory parallelFactory = new ParallelCompressionTransformFactory();
+        parallelFactory.setCodec(codec);
+        parallelFactory.setCompressionLevel(level);
+        parallelFactory.setThreads(threads);
+        factory = parallelFactory;
+    }
     
     /**
      * Returns the {@link CompressionTransformFactory} with the current compression
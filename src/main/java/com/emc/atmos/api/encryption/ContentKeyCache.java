@@ -0,0 +1,231 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.encryption;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.emc.vipr.transform.encryption.KeyUtils;
+
+/**
+ * A bounded cache of unwrapped object (content) keys, for use with
+ * {@link EncryptionConfig#setContentKeyCache(ContentKeyCache)}.  Each encrypted object
+ * stores its AES key wrapped (encrypted) with the master RSA key, and unwrapping it is an
+ * RSA private key operation that dominates the cost of reading small objects.  With a
+ * cache, repeated reads of the same object only pay for the unwrap once per TTL.
+ * <br>
+ * Entries are keyed by a SHA-256 fingerprint of the wrapped key as stored in the
+ * object's metadata, so the cache never holds the wrapped keys themselves, and a rekeyed
+ * object (whose wrapped key changes) simply misses.  The least recently used entry is
+ * evicted when the cache is full and entries expire after the TTL.  By default the key
+ * bytes are overwritten with zeros when an entry is evicted, expires, or is invalidated,
+ * so they do not linger in the heap until garbage collection.
+ * <br>
+ * This class is thread-safe.
+ */
+public class ContentKeyCache {
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+
+    private int maxSize;
+    private long ttlMillis;
+    private boolean zeroizeOnEviction = true;
+    private Map<String, Entry> entries;
+    private long hits, misses;
+
+    /**
+     * Creates a cache with the default size (1000 keys) and TTL (5 minutes).
+     */
+    public ContentKeyCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * Creates a cache.
+     * @param maxSize the maximum number of keys to hold.
+     * @param ttlMillis how long a key may be used after it was unwrapped, in
+     * milliseconds.
+     */
+    public ContentKeyCache(int maxSize, long ttlMillis) {
+        if(maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        if(ttlMillis < 1) {
+            throw new IllegalArgumentException("ttlMillis must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if(size() > ContentKeyCache.this.maxSize) {
+                    evicted(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached key for the given wrapped key, or null if it is not cached or
+     * has expired.
+     * @param wrappedKey the wrapped key from the object's metadata.
+     * @return a new SecretKey instance, or null.
+     */
+    public synchronized SecretKey get(String wrappedKey) {
+        String fingerprint = fingerprint(wrappedKey);
+        Entry entry = entries.get(fingerprint);
+        if(entry != null && entry.expires < System.currentTimeMillis()) {
+            entries.remove(fingerprint);
+            evicted(entry);
+            entry = null;
+        }
+        if(entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new SecretKeySpec(entry.key, entry.algorithm);
+    }
+
+    /**
+     * Adds an unwrapped key to the cache.  The cache keeps its own copy of the key bytes.
+     * @param wrappedKey the wrapped key from the object's metadata.
+     * @param key the unwrapped key.
+     */
+    public synchronized void put(String wrappedKey, SecretKey key) {
+        Entry entry = new Entry();
+        entry.key = key.getEncoded();
+        entry.algorithm = key.getAlgorithm();
+        entry.expires = System.currentTimeMillis() + ttlMillis;
+        Entry old = entries.put(fingerprint(wrappedKey), entry);
+        if(old != null) {
+            evicted(old);
+        }
+    }
+
+    /**
+     * Removes the key for the given wrapped key, if it is cached.
+     * @param wrappedKey the wrapped key from the object's metadata.
+     */
+    public synchronized void invalidate(String wrappedKey) {
+        Entry entry = entries.remove(fingerprint(wrappedKey));
+        if(entry != null) {
+            evicted(entry);
+        }
+    }
+
+    /**
+     * Removes all keys from the cache, i.e. after a master key has been retired.
+     */
+    public synchronized void clear() {
+        for(Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+            evicted(i.next());
+            i.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups that found a cached key.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cached key (including expired
+     * keys).
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public synchronized boolean isZeroizeOnEviction() {
+        return zeroizeOnEviction;
+    }
+
+    /**
+     * Sets whether a key's bytes are overwritten with zeros when it leaves the cache.
+     * Defaults to true.  Note that SecretKey instances already handed out by
+     * {@link #get(String)} hold their own copy and are not affected.
+     */
+    public synchronized void setZeroizeOnEviction(boolean zeroizeOnEviction) {
+        this.zeroizeOnEviction = zeroizeOnEviction;
+    }
+
+    private void evicted(Entry entry) {
+        if(zeroizeOnEviction) {
+            Arrays.fill(entry.key, (byte) 0);
+        }
+    }
+
+    private static String fingerprint(String wrappedKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return KeyUtils.toHexPadded(digest.digest(wrappedKey.getBytes("US-ASCII")));
+        } catch(NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        } catch(UnsupportedEncodingException e) {
+            throw new RuntimeException("US-ASCII is not available", e);
+        }
+    }
+
+    private static class Entry {
+        private byte[] key;
+        private String algorithm;
+        private long expires;
+    }
+}
@@ -26,12 +26,20 @@
  */
 package com.emc.atmos.api.encryption;
 
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
 import java.security.Provider;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Enumeration;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.crypto.NoSuchPaddingException;
 
@@ -42,13 +50,21 @@ import com.emc.vipr.transform.encryption.BasicEncryptionOutputTransform;
 import com.emc.vipr.transform.encryption.BasicEncryptionTransformFactory;
 import com.emc.vipr.transform.encryption.EncryptionTransformFactory;
 import com.emc.vipr.transform.encryption.KeyStoreEncryptionFactory;
+import com.emc.vipr.transform.encryption.KeyUtils;
 
 /**
  * Creates an encryption configuration for use with the {@link AtmosEncryptionClient}.
  * Both keystore keys and bare RSA KeyPairs are supported.
  */
 public class EncryptionConfig {
+    private static final String SUBJECT_KEY_IDENTIFIER_OID = "2.5.29.14";
+
     private EncryptionTransformFactory<BasicEncryptionOutputTransform, BasicEncryptionInputTransform> factory;
+    private Provider provider;
+    private KeyStore keystore;
+    private char[] masterKeyPassword;
+    private Map<String, PrivateKey> decryptionKeys = new ConcurrentHashMap<String, PrivateKey>();
+    private ContentKeyCache contentKeyCache;
 
     /**
      * Creates a new EncryptionConfig object that will retrieve keys from a Keystore
@@ -79,6 +95,9 @@ public class EncryptionConfig {
             factory = new KeyStoreEncryptionFactory(keystore, masterKeyAlias, masterKeyPassword, provider);
         }
         factory.setEncryptionSettings(TransformConstants.DEFAULT_ENCRYPTION_TRANSFORM, keySize, provider);
+        this.provider = provider;
+        this.keystore = keystore;
+        this.masterKeyPassword = masterKeyPassword;
     }
     
     /**
@@ -108,6 +127,13 @@ public class EncryptionConfig {
             factory = new BasicEncryptionTransformFactory(masterEncryptionKey, decryptionKeys, provider);
         }
         factory.setEncryptionSettings(TransformConstants.DEFAULT_ENCRYPTION_TRANSFORM, keySize, provider);
+        this.provider = provider;
+        addDecryptionKey(masterEncryptionKey);
+        if(decryptionKeys != null) {
+            for(KeyPair key : decryptionKeys) {
+                addDecryptionKey(key);
+            }
+        }
     }
 
     /**
@@ -118,4 +144,100 @@ public class EncryptionConfig {
         return factory;
     }
 
+    /**
+     * Returns the cache of unwrapped object keys, or null if object keys are not cached.
+     * @return the content key cache.
+     */
+    public ContentKeyCache getContentKeyCache() {
+        return contentKeyCache;
+    }
+
+    /**
+     * Sets a cache for unwrapped object keys.  When set, the
+     * {@link AtmosEncryptionClient} only unwraps an object's key with the master key
+     * the first time the object is read (until the cached key expires), which saves an
+     * RSA private key operation per read.  The default is null (no caching).
+     * @param contentKeyCache the cache to use, or null to disable caching.
+     */
+    public void setContentKeyCache(ContentKeyCache contentKeyCache) {
+        this.contentKeyCache = contentKeyCache;
+    }
+
+    /**
+     * Returns the security provider for encryption operations, or null for the default.
+     */
+    Provider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Returns the private key of the master key with the given ID (fingerprint), as
+     * stored in an object's metadata.
+     * @param keyId the master key ID.
+     * @return the private key.
+     * @throws TransformException if no master key with that ID is available.
+     */
+    PrivateKey getDecryptionKey(String keyId) throws TransformException {
+        PrivateKey key = decryptionKeys.get(keyId);
+        if(key == null && keystore != null) {
+            try {
+                for(Enumeration<String> aliases = keystore.aliases(); aliases.hasMoreElements();) {
+                    String alias = aliases.nextElement();
+                    if(keystore.isKeyEntry(alias) && keyId.equals(getFingerprint(keystore.getCertificate(alias)))) {
+                        key = (PrivateKey) keystore.getKey(alias, masterKeyPassword);
+                        decryptionKeys.put(keyId, key);
+                        break;
+                    }
+                }
+            } catch(GeneralSecurityException e) {
+                throw new TransformException("Could not load master key " + keyId, e);
+            }
+        }
+        if(key == null) {
+            throw new TransformException("Master key with fingerprint " + keyId + " not found");
+        }
+        return key;
+    }
+
+    /**
+     * Returns the ID (fingerprint) of the current master encryption key, i.e. the key ID
+     * that objects will have after they are rekeyed, or null if it cannot be determined.
+     */
+    String getMasterKeyId() {
+        try {
+            if(factory instanceof BasicEncryptionTransformFactory) {
+                KeyPair masterKey = ((BasicEncryptionTransformFactory) factory).masterEncryptionKey;
+                return KeyUtils.getRsaPublicKeyFingerprint((RSAPublicKey) masterKey.getPublic(), provider);
+            } else if(factory instanceof KeyStoreEncryptionFactory) {
+                String alias = ((KeyStoreEncryptionFactory) factory).getMasterEncryptionKeyAlias();
+                return getFingerprint(keystore.getCertificate(alias));
+            }
+        } catch(GeneralSecurityException e) {
+            // callers fall back to asking the factory for each object
+        }
+        return null;
+    }
+
+    private void addDecryptionKey(KeyPair key) throws NoSuchAlgorithmException {
+        decryptionKeys.put(KeyUtils.getRsaPublicKeyFingerprint((RSAPublicKey) key.getPublic(), provider),
+                key.getPrivate());
+    }
+
+    /*
+     * Matches the master key IDs assigned by KeyStoreEncryptionFactory: the certificate's
+     * subject key identifier if it has one, otherwise the public key fingerprint.
+     */
+    private String getFingerprint(Certificate cert) throws NoSuchAlgorithmException {
+        if(cert == null || !(cert.getPublicKey() instanceof RSAPublicKey)) {
+            return null;
+        }
+        if(cert instanceof X509Certificate) {
+            byte[] ski = ((X509Certificate) cert).getExtensionValue(SUBJECT_KEY_IDENTIFIER_OID);
+            if(ski != null) {
+                return KeyUtils.toHexPadded(KeyUtils.extractSubjectKeyIdentifier(ski));
+            }
+        }
+        return KeyUtils.getRsaPublicKeyFingerprint((RSAPublicKey) cert.getPublicKey(), provider);
+    }
+
 }
@@ -0,0 +1,198 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.encryption;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.emc.util.BufferPool;
+import com.emc.vipr.transform.compression.CompressionInputTransform;
+
+/**
+ * Decodes an object written by {@link ParallelCompressionOutputTransform}.  Blocks
+ * are inflated in order as they are read.  A block larger than the block size recorded
+ * in the metadata is treated as corrupt, so a bad header cannot cause a huge allocation.
+ */
+class ParallelCompressionInputTransform extends CompressionInputTransform {
+    // leaves room for the spare byte and the array header
+    private static final int MAX_BLOCK_SIZE = Integer.MAX_VALUE - 16;
+
+    private InputStream decodedStream;
+
+    ParallelCompressionInputTransform(InputStream streamToDecode, Map<String, String> metadataToDecode)
+            throws IOException {
+        super(streamToDecode, metadataToDecode);
+        decodedStream = new DecompressingInputStream(streamToDecode, getBlockSize(metadataToDecode));
+    }
+
+    private static int getBlockSize(Map<String, String> metadata) throws IOException {
+        String value = metadata.get(ParallelCompressionTransformFactory.META_BLOCK_SIZE);
+        if(value == null) {
+            return ParallelCompressionTransformFactory.DEFAULT_BLOCK_SIZE;
+        }
+        try {
+            int blockSize = Integer.parseInt(value);
+            if(blockSize > 0 && blockSize <= MAX_BLOCK_SIZE) {
+                return blockSize;
+            }
+        } catch(NumberFormatException e) {
+            // fall through
+        }
+        throw new IOException("Invalid block size " + value);
+    }
+
+    @Override
+    public InputStream getDecodedInputStream() {
+        return decodedStream;
+    }
+
+    private static class DecompressingInputStream extends InputStream {
+        private DataInputStream in;
+        private int maxBlockLength;
+        private Inflater inflater = new Inflater();
+        private byte[] header = new byte[BlockCompressor.HEADER_SIZE];
+        private byte[] payload;
+        private byte[] block;
+        private int blockLength;
+        private int position;
+        private boolean closed;
+
+        DecompressingInputStream(InputStream in, int maxBlockLength) {
+            this.in = new DataInputStream(in);
+            this.maxBlockLength = maxBlockLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int c = read(b, 0, 1);
+            return c == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(closed) {
+                throw new IOException("Stream closed");
+            }
+            while(position == blockLength) {
+                if(!readBlock()) {
+                    return -1;
+                }
+            }
+            int count = Math.min(len, blockLength - position);
+            System.arraycopy(block, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return blockLength - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            inflater.end();
+            BufferPool.getDefault().release(payload);
+            BufferPool.getDefault().release(block);
+            payload = block = null;
+            in.close();
+        }
+
+        private boolean readBlock() throws IOException {
+            int c = in.read(header, 0, 1);
+            if(c == -1) {
+                return false;
+            }
+            in.readFully(header, 1, header.length - 1);
+            int type = header[0];
+            int length = BlockCompressor.readInt(header, 1);
+            int payloadLength = BlockCompressor.readInt(header, 5);
+            if(length < 0 || length > maxBlockLength || payloadLength < 0 || payloadLength > length
+                    || (type == BlockCompressor.STORED && payloadLength != length)) {
+                throw new IOException("Corrupt block header");
+            }
+
+            // one spare byte lets the inflater consume the stream trailer after the data
+            block = ensureCapacity(block, length + 1);
+            if(type == BlockCompressor.STORED) {
+                in.readFully(block, 0, length);
+            } else if(type == BlockCompressor.DEFLATED) {
+                payload = ensureCapacity(payload, payloadLength);
+                in.readFully(payload, 0, payloadLength);
+                inflate(payloadLength, length);
+            } else {
+                throw new IOException("Unknown block type " + type);
+            }
+            blockLength = length;
+            position = 0;
+            return true;
+        }
+
+        private void inflate(int payloadLength, int length) throws IOException {
+            inflater.reset();
+            inflater.setInput(payload, 0, payloadLength);
+            int total = 0;
+            try {
+                while(total <= length && !inflater.finished()) {
+                    int c = inflater.inflate(block, total, length + 1 - total);
+                    if(c == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    total += c;
+                }
+            } catch(DataFormatException e) {
+                throw new IOException("Corrupt compressed block: " + e.getMessage(), e);
+            }
+            if(total != length || !inflater.finished()) {
+                throw new IOException("Compressed block does not match its header");
+            }
+        }
+
+        private static byte[] ensureCapacity(byte[] buffer, int size) {
+            if(buffer != null && buffer.length >= size) {
+                return buffer;
+            }
+            BufferPool.getDefault().release(buffer);
+            return BufferPool.getDefault().lease(size);
+        }
+    }
+}
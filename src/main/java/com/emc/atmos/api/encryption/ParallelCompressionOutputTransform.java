@@ -0,0 +1,253 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.encryption;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.emc.util.BufferPool;
+import com.emc.vipr.transform.compression.CompressionOutputTransform;
+
+/**
+ * Compresses an object with a {@link BlockCompressor}.  If the compressor abandons
+ * compression, {@link #getTransformConfig()} returns null and no compression metadata
+ * is added, so the object is stored exactly as if it had not been compressed.
+ */
+class ParallelCompressionOutputTransform extends CompressionOutputTransform {
+    private BlockCompressor compressor;
+    private int blockSize;
+
+    ParallelCompressionOutputTransform(OutputStream streamToEncode, Map<String, String> metadataToEncode,
+            String transformConfig, BlockCompressor compressor, int blockSize) {
+        super(streamToEncode, metadataToEncode, transformConfig);
+        this.compressor = compressor;
+        this.blockSize = blockSize;
+        pushStream = new CompressingOutputStream(streamToEncode);
+    }
+
+    ParallelCompressionOutputTransform(InputStream streamToEncode, Map<String, String> metadataToEncode,
+            String transformConfig, BlockCompressor compressor, int blockSize) {
+        super(streamToEncode, metadataToEncode, transformConfig);
+        this.compressor = compressor;
+        this.blockSize = blockSize;
+        pullStream = new CompressingInputStream(streamToEncode);
+    }
+
+    @Override
+    public String getTransformConfig() {
+        return compressor.isCompressing() ? super.getTransformConfig() : null;
+    }
+
+    @Override
+    public Map<String, String> getEncodedMetadata() {
+        Map<String, String> metadata = new HashMap<String, String>();
+        if(compressor.isCompressing()) {
+            metadata.putAll(compressor.getStreamMetadata());
+            metadata.put(ParallelCompressionTransformFactory.META_BLOCK_SIZE, "" + blockSize);
+        }
+        metadata.putAll(metadataToEncode);
+        return metadata;
+    }
+
+    /**
+     * Reads blocks of input ahead of the caller so they are compressed in parallel.
+     */
+    private class CompressingInputStream extends InputStream {
+        private InputStream in;
+        private BlockCompressor.Block current;
+        private int position;
+        private boolean closed;
+
+        CompressingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int c = read(b, 0, 1);
+            return c == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(closed) {
+                throw new IOException("Stream closed");
+            }
+            while(current == null || position == current.outputLength) {
+                if(current != null) {
+                    current.release();
+                    current = null;
+                }
+                fill();
+                current = compressor.next();
+                position = 0;
+                if(current == null) {
+                    return -1;
+                }
+            }
+            int count = Math.min(len, current.outputLength - position);
+            System.arraycopy(current.output, current.outputOffset + position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            if(current != null) {
+                current.release();
+                current = null;
+            }
+            compressor.close();
+            in.close();
+        }
+
+        private void fill() throws IOException {
+            while(compressor.needsInput()) {
+                byte[] buffer = BufferPool.getDefault().lease(blockSize);
+                int c = fillBuffer(buffer);
+                if(c == 0) {
+                    BufferPool.getDefault().release(buffer);
+                    compressor.finish();
+                } else {
+                    compressor.submit(buffer, c);
+                }
+            }
+        }
+
+        private int fillBuffer(byte[] buffer) throws IOException {
+            int total = 0;
+            while(total < blockSize) {
+                int c = in.read(buffer, total, blockSize - total);
+                if(c == -1) {
+                    break;
+                }
+                total += c;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Collects writes into blocks and writes the compressed blocks in order.
+     */
+    private class CompressingOutputStream extends OutputStream {
+        private OutputStream out;
+        private byte[] buffer;
+        private int count;
+        private boolean closed;
+
+        CompressingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(closed) {
+                throw new IOException("Stream closed");
+            }
+            while(len > 0) {
+                if(buffer == null) {
+                    buffer = BufferPool.getDefault().lease(blockSize);
+                    count = 0;
+                }
+                int c = Math.min(len, blockSize - count);
+                System.arraycopy(b, off, buffer, count, c);
+                count += c;
+                off += c;
+                len -= c;
+                if(count == blockSize) {
+                    submit();
+                    while(!compressor.needsInput()) {
+                        writeNext();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if(buffer != null) {
+                    submit();
+                }
+                compressor.finish();
+                while(writeNext()) {
+                    // drain
+                }
+            } finally {
+                compressor.close();
+                out.close();
+            }
+        }
+
+        private void submit() {
+            compressor.submit(buffer, count);
+            buffer = null;
+        }
+
+        private boolean writeNext() throws IOException {
+            BlockCompressor.Block block = compressor.next();
+            if(block == null) {
+                return false;
+            }
+            try {
+                out.write(block.output, block.outputOffset, block.outputLength);
+            } finally {
+                block.release();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.encryption;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import com.emc.atmos.api.DaemonThreadFactory;
+import com.emc.vipr.transform.TransformException;
+import com.emc.vipr.transform.compression.CompressionInputTransform;
+import com.emc.vipr.transform.compression.CompressionOutputTransform;
+import com.emc.vipr.transform.compression.CompressionTransformFactory;
+
+/**
+ * A compression factory that, when a {@link BlockCodec} is set, splits objects into
+ * independent blocks and compresses them in parallel.  The transform mode of such
+ * objects is <code>COMP:Parallel&lt;codec&gt;/&lt;level&gt;</code>.  Objects written
+ * by the single-stream LZMA and Deflate transforms are still decoded, and with no
+ * codec set this factory writes them too.
+ * <p>
+ * The first blocks of each object are used as a sample.  If they do not compress by
+ * at least {@link #getMinSavings() minSavings}, the object is stored uncompressed and no
+ * compression transform is recorded in its metadata.
+ */
+public class ParallelCompressionTransformFactory extends CompressionTransformFactory {
+    public static final String MODE_PREFIX = "Parallel";
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_SAMPLE_BLOCKS = 4;
+    public static final double DEFAULT_MIN_SAVINGS = 0.05;
+    /**
+     * The metadata that records the block size an object was written with.  Readers
+     * reject any block that claims to be larger.
+     */
+    public static final String META_BLOCK_SIZE = "x-emc-comp-block-size";
+
+    private static final int THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * The codec used for each block.
+     */
+    public enum BlockCodec {
+        /**
+         * Deflate at the configured level.
+         */
+        Deflate,
+        /**
+         * Huffman coding only, without string matching.  Much faster than Deflate at
+         * any level, but only removes redundancy in the byte distribution (e.g. text).
+         */
+        Huffman
+    }
+
+    private BlockCodec codec;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private int sampleBlocks = DEFAULT_SAMPLE_BLOCKS;
+    private double minSavings = DEFAULT_MIN_SAVINGS;
+    private ExecutorService executor;
+    private boolean ownExecutor;
+
+    @Override
+    public CompressionOutputTransform getOutputTransform(OutputStream streamToEncode,
+            Map<String, String> metadataToEncode) throws IOException {
+        if(codec == null) {
+            return super.getOutputTransform(streamToEncode, metadataToEncode);
+        }
+        return new ParallelCompressionOutputTransform(streamToEncode, metadataToEncode,
+                getParallelTransformConfig(), newCompressor(), blockSize);
+    }
+
+    @Override
+    public CompressionOutputTransform getOutputTransform(InputStream streamToEncode,
+            Map<String, String> metadataToEncode) throws IOException, TransformException {
+        if(codec == null) {
+            return super.getOutputTransform(streamToEncode, metadataToEncode);
+        }
+        return new ParallelCompressionOutputTransform(streamToEncode, metadataToEncode,
+                getParallelTransformConfig(), newCompressor(), blockSize);
+    }
+
+    @Override
+    public CompressionInputTransform getInputTransform(String transformConfig,
+            InputStream streamToDecode, Map<String, String> metadataToDecode) throws IOException {
+        String[] parts = splitTransformConfig(transformConfig);
+        if(parts.length > 1 && parts[1].startsWith(MODE_PREFIX)) {
+            return new ParallelCompressionInputTransform(streamToDecode, metadataToDecode);
+        }
+        return super.getInputTransform(transformConfig, streamToDecode, metadataToDecode);
+    }
+
+    /**
+     * Shuts down the compression threads if they were created by this factory.  Objects
+     * still being written with this factory will fail, so only call this once they are
+     * complete.  Idle threads also exit on their own after a minute.
+     */
+    public synchronized void shutdown() {
+        if(executor != null && ownExecutor) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Returns the block codec, or null if objects are compressed as a single stream
+     * with the compression mode instead.
+     */
+    public BlockCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the block codec.  When set, it is used instead of the compression mode.
+     */
+    public void setCodec(BlockCodec codec) {
+        this.codec = codec;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads that compress blocks (defaults to the number of
+     * processors).  The threads are shared by all objects written with this factory.
+     * Ignored if an executor is set.  Objects already being written keep using the
+     * previous threads, which exit once they are idle.
+     */
+    public synchronized void setThreads(int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        releaseExecutor();
+        this.threads = threads;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the size of each independently compressed block (defaults to 1MB).  Larger
+     * blocks compress slightly better; up to two blocks per thread are held in memory
+     * per object.
+     */
+    public void setBlockSize(int blockSize) {
+        if(blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+        this.blockSize = blockSize;
+    }
+
+    public int getSampleBlocks() {
+        return sampleBlocks;
+    }
+
+    /**
+     * Sets the number of blocks compressed before deciding whether compression is
+     * worthwhile (defaults to 4).  Set to zero to always compress.
+     */
+    public void setSampleBlocks(int sampleBlocks) {
+        if(sampleBlocks < 0) {
+            throw new IllegalArgumentException("sampleBlocks cannot be negative");
+        }
+        this.sampleBlocks = sampleBlocks;
+    }
+
+    public double getMinSavings() {
+        return minSavings;
+    }
+
+    /**
+     * Sets the fraction of the sample that compression must save for the object to be
+     * compressed (defaults to 0.05).
+     */
+    public void setMinSavings(double minSavings) {
+        this.minSavings = minSavings;
+    }
+
+    /**
+     * Sets the executor that compresses blocks.  The caller is responsible for shutting
+     * it down.  Objects already being written keep using the previous executor.
+     */
+    public synchronized void setExecutor(ExecutorService executor) {
+        releaseExecutor();
+        this.executor = executor;
+        this.ownExecutor = false;
+    }
+
+    private String getParallelTransformConfig() {
+        return getTransformClass() + ":" + MODE_PREFIX + codec + "/" + getBlockLevel();
+    }
+
+    private int getBlockLevel() {
+        return codec == BlockCodec.Huffman ? Deflater.BEST_SPEED : getCompressionLevel();
+    }
+
+    /**
+     * Drops the current executor without shutting it down, since compressors that are
+     * still running submit to it.  The threads of an executor created by this factory
+     * time out once those compressors are done.
+     */
+    private void releaseExecutor() {
+        if(ownExecutor) {
+            executor = null;
+        }
+    }
+
+    private synchronized BlockCompressor newCompressor() {
+        if(executor == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                    THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new DaemonThreadFactory("atmos-compress"));
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+            ownExecutor = true;
+        }
+        int strategy = codec == BlockCodec.Huffman ? Deflater.HUFFMAN_ONLY : Deflater.DEFAULT_STRATEGY;
+        return new BlockCompressor(executor, threads, getBlockLevel(), strategy, sampleBlocks, minSavings);
+    }
+}
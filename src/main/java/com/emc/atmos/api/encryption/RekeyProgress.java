@@ -0,0 +1,113 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.encryption;
+
+/**
+ * A snapshot of the progress of a {@link BulkRekeyer} run.  Counts include objects
+ * processed before the run was resumed from a checkpoint.
+ */
+public class RekeyProgress {
+    private String source;
+    private long position;
+    private long rekeyed;
+    private long skipped;
+    private long failed;
+    private long processedThisRun;
+    private long elapsedMillis;
+
+    public RekeyProgress(String source, long position, long rekeyed, long skipped, long failed,
+            long processedThisRun, long elapsedMillis) {
+        this.source = source;
+        this.position = position;
+        this.rekeyed = rekeyed;
+        this.skipped = skipped;
+        this.failed = failed;
+        this.processedThisRun = processedThisRun;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Returns a description of where the object IDs come from.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the number of objects, from the start of the source, that have all been
+     * processed.  This is the position a resumed run would start from.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the number of objects that were rekeyed.
+     */
+    public long getRekeyed() {
+        return rekeyed;
+    }
+
+    /**
+     * Returns the number of objects that did not need to be rekeyed (already using the
+     * current master key, or not encrypted).
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Returns the number of objects that could not be rekeyed.  Each failure is logged
+     * with the object's ID.
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Returns the number of objects processed per second in this run.
+     */
+    public double getRate() {
+        return elapsedMillis == 0 ? 0 : processedThisRun * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: position %d, %d rekeyed, %d skipped, %d failed (%.1f objects/s)",
+                source, position, rekeyed, skipped, failed, getRate());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.jersey;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.AtmosConfig;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Limits the number of concurrent requests to each endpoint using additive-increase/multiplicative-decrease (AIMD).
+ * When an endpoint responds with Atmos error 1040 (server busy) or HTTP 503, its limit is cut by
+ * {@link #DECREASE_RATIO}; each successful response raises it by 1/limit (roughly +1 for every full window of
+ * successful requests), up to {@link AtmosConfig#getMaxConnectionsPerEndpoint()}. Requests over the limit wait for a
+ * slot for up to {@link AtmosConfig#getAdaptiveConcurrencyTimeoutMillis()} before failing.
+ * <p/>
+ * A slot is held until the response headers are received (or the request fails); streaming response content does not
+ * count against the limit.
+ */
+public class AdaptiveConcurrencyFilter extends ClientFilter {
+    private static final Logger log = LoggerFactory.getLogger( AdaptiveConcurrencyFilter.class );
+
+    public static final double DECREASE_RATIO = 0.5;
+    public static final int MIN_LIMIT = 1;
+
+    private AtmosConfig config;
+    private ConcurrentMap<String, EndpointLimit> limits = new ConcurrentHashMap<String, EndpointLimit>();
+
+    public AdaptiveConcurrencyFilter( AtmosConfig config ) {
+        this.config = config;
+    }
+
+    @Override
+    public ClientResponse handle( ClientRequest clientRequest ) throws ClientHandlerException {
+        EndpointLimit limit = getLimit( clientRequest.getURI() );
+        long startTime = limit.acquire( config.getAdaptiveConcurrencyTimeoutMillis() );
+        try {
+            ClientResponse response = getNext().handle( clientRequest );
+            if ( response.getStatus() == 503 ) limit.overloaded( startTime );
+            else limit.succeeded();
+            return response;
+        } catch ( RuntimeException e ) {
+            Throwable t = e;
+            if ( t instanceof ClientHandlerException && t.getCause() != null ) t = t.getCause();
+            if ( t instanceof AtmosException ) {
+                AtmosException ae = (AtmosException) t;
+                if ( ae.getErrorCode() == 1040 || ae.getHttpCode() == 503 ) limit.overloaded( startTime );
+            }
+            throw e;
+        } finally {
+            limit.release();
+        }
+    }
+
+    /**
+     * Returns the current concurrency limit for each endpoint that has been used.
+     */
+    public Map<URI, Integer> getLimits() {
+        Map<URI, Integer> result = new HashMap<URI, Integer>();
+        for ( Map.Entry<String, EndpointLimit> entry : limits.entrySet() ) {
+            result.put( URI.create( entry.getKey() ), entry.getValue().getLimit() );
+        }
+        return result;
+    }
+
+    private EndpointLimit getLimit( URI uri ) {
+        String key = uri.getScheme() + "://" + uri.getHost() + (uri.getPort() < 0 ? "" : ":" + uri.getPort());
+        EndpointLimit limit = limits.get( key );
+        if ( limit == null ) {
+            limit = new EndpointLimit( key, config.getMaxConnectionsPerEndpoint() );
+            EndpointLimit existing = limits.putIfAbsent( key, limit );
+            if ( existing != null ) limit = existing;
+        }
+        return limit;
+    }
+
+    private static class EndpointLimit {
+        private String endpoint;
+        private int maxLimit;
+        private double limit;
+        private int inFlight = 0;
+        private long lastDecrease = Long.MIN_VALUE;
+
+        EndpointLimit( String endpoint, int maxLimit ) {
+            this.endpoint = endpoint;
+            this.maxLimit = Math.max( MIN_LIMIT, maxLimit );
+            this.limit = this.maxLimit;
+        }
+
+        /**
+         * Waits for a slot and returns the time it was acquired.
+         */
+        synchronized long acquire( long timeoutMillis ) {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while ( inFlight >= (int) limit ) {
+                long remaining = timeoutMillis > 0 ? deadline - System.currentTimeMillis() : 0;
+                if ( timeoutMillis > 0 && remaining <= 0 )
+                    throw new AtmosException( "Timed out waiting for a request slot on " + endpoint
+                                              + " (limit is " + (int) limit + ")" );
+                try {
+                    wait( remaining );
+                } catch ( InterruptedException e ) {
+                    throw new AtmosException( "Interrupted while waiting for a request slot on " + endpoint, e );
+                }
+            }
+            inFlight++;
+            return System.nanoTime();
+        }
+
+        synchronized void release() {
+            inFlight--;
+            notifyAll();
+        }
+
+        synchronized void succeeded() {
+            if ( limit < maxLimit ) {
+                limit = Math.min( maxLimit, limit + 1 / limit );
+                notifyAll();
+            }
+        }
+
+        synchronized void overloaded( long startTime ) {
+            // requests sent before the last decrease were sent at the old limit; don't cut again for those
+            if ( startTime < lastDecrease ) return;
+            limit = Math.max( MIN_LIMIT, limit * DECREASE_RATIO );
+            lastDecrease = System.nanoTime();
+            log.info( endpoint + " is busy; reducing concurrency limit to " + (int) limit );
+        }
+
+        synchronized int getLimit() {
+            return (int) limit;
+        }
+    }
+}
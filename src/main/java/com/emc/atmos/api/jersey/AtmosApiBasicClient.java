@@ -27,6 +27,7 @@
 package com.emc.atmos.api.jersey;
 
 import com.emc.atmos.api.AtmosConfig;
+import com.emc.atmos.api.request.Request;
 
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
@@ -44,6 +45,11 @@ public class AtmosApiBasicClient extends AtmosApiClient {
     public AtmosApiBasicClient( AtmosConfig config,
                                 List<Class<MessageBodyReader<?>>> readers,
                                 List<Class<MessageBodyWriter<?>>> writers ) {
-        super( config, JerseyUtil.createClient( config, readers, writers ), null );
+        super( config, JerseyUtil.createClient( config, readers, writers ) );
+    }
+
+    @Override
+    protected boolean useExpect100Continue( Request request ) {
+        return false;
     }
 }
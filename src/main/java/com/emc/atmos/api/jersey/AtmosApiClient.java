@@ -36,6 +36,7 @@ import com.emc.atmos.AtmosException;
 import com.emc.atmos.api.*;
 import com.emc.atmos.api.bean.*;
 import com.emc.atmos.api.multipart.MultipartEntity;
+import com.emc.atmos.api.multipart.MultipartStream;
 import com.emc.atmos.api.request.*;
 import com.emc.util.BasicResponse;
 import com.emc.util.HttpUtil;
@@ -48,12 +49,15 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Reference implementation of AtmosApi.
@@ -74,6 +78,7 @@ import java.util.*;
  * <tr><td>com.emc.atmos.api.BufferSegment (send-only)</td><td>*any*</td></tr>
  * <tr><td>any annotated JAXB root element bean</td><td>text/xml, application/xml</td></tr>
  * <tr><td>com.emc.atmos.api.multipart.MultipartEntity (receive-only)</td><td>multipart/*</td></tr>
+ * <tr><td>com.emc.atmos.api.multipart.MultipartStream (receive-only, must be closed)</td><td>multipart/*</td></tr>
  * </table>
  * <p/>
  * Also keep in mind that you can always send/receive byte[] and do your own conversion as that has always been
@@ -126,8 +131,16 @@ public class AtmosApiClient extends AbstractAtmosApi {
     private static final Logger l4j = LoggerFactory.getLogger( AtmosApiClient.class );
 
     protected Client client;
+
+    /**
+     * @deprecated Expect: 100-continue is now decided per request on the shared {@link #client}; this field is only
+     * set (and used for filters and cleanup) when a subclass passes a second client to the deprecated constructor
+     */
+    @Deprecated
     protected Client client100;
 
+    private ExecutorService chunkReadExecutor;
+
     public AtmosApiClient( AtmosConfig config ) {
         this( config, (List<Class<MessageBodyReader<?>>>) null, null );
     }
@@ -135,17 +148,24 @@ public class AtmosApiClient extends AbstractAtmosApi {
     public AtmosApiClient( AtmosConfig config,
                            List<Class<MessageBodyReader<?>>> readers,
                            List<Class<MessageBodyWriter<?>>> writers ) {
-        this( config,
-              JerseyApacheUtil.createApacheClient( config, false, readers, writers ),
-              JerseyApacheUtil.createApacheClient( config, true, readers, writers ) );
+        this( config, JerseyApacheUtil.createApacheClient( config, readers, writers ) );
     }
 
-    protected AtmosApiClient( AtmosConfig config, Client client, Client client100 ) {
+    protected AtmosApiClient( AtmosConfig config, Client client ) {
         super( config );
+
+        // a single client (and connection pool) serves all requests. Expect: 100-continue is enabled per request by
+        // adding the header in build(); the Apache request executor honors the header regardless of client params
         this.client = client;
+    }
 
-        // without writing our own client implementation, the only way to discriminate requests that enable
-        // Expect: 100-continue behavior is to have two clients; one with the feature enabled and one without.
+    /**
+     * @deprecated Use {@link #AtmosApiClient(AtmosConfig, Client)} instead. A separate Expect: 100-continue client is
+     * no longer necessary.
+     */
+    @Deprecated
+    protected AtmosApiClient( AtmosConfig config, Client client, Client client100 ) {
+        this( config, client );
         this.client100 = client100;
     }
 
@@ -160,7 +180,56 @@ public class AtmosApiClient extends AbstractAtmosApi {
      */
     public void addClientFilter( ClientFilter filter ) {
         client.addFilter( filter );
-        client100.addFilter( filter );
+        if ( client100 != null ) client100.addFilter( filter );
+    }
+
+    /**
+     * Returns a snapshot of connection pool usage (leased, available and pending connections) for each configured
+     * endpoint. Useful to size {@link AtmosConfig#setMaxConnections(int)} and
+     * {@link AtmosConfig#setMaxConnectionsPerEndpoint(int)} for the load.
+     */
+    public Map<URI, ConnectionPoolStats> getConnectionPoolStats() {
+        return JerseyApacheUtil.getConnectionPoolStats( client, config.getEndpoints() );
+    }
+
+    /**
+     * Returns a snapshot of connection pool usage across all endpoints.
+     */
+    public ConnectionPoolStats getTotalConnectionPoolStats() {
+        return JerseyApacheUtil.getTotalConnectionPoolStats( client );
+    }
+
+    /**
+     * Returns cumulative retry statistics (requests, retries and time spent backing off) for this client, or null if
+     * retries are disabled.
+     */
+    public RetryStats getRetryStats() {
+        RetryFilter retryFilter = (RetryFilter) client.getProperties().get( JerseyUtil.PROPERTY_RETRY_FILTER );
+        return retryFilter == null ? null : retryFilter.getStats();
+    }
+
+    /**
+     * Returns the current concurrency limit for each endpoint that has been used, or null if adaptive concurrency is
+     * disabled.
+     *
+     * @see AtmosConfig#setEnableAdaptiveConcurrency(boolean)
+     */
+    public Map<URI, Integer> getConcurrencyLimits() {
+        AdaptiveConcurrencyFilter filter =
+                (AdaptiveConcurrencyFilter) client.getProperties().get( JerseyUtil.PROPERTY_CONCURRENCY_FILTER );
+        return filter == null ? null : filter.getLimits();
+    }
+
+    /**
+     * Shuts down the connection pool and any background threads used by this client. The client cannot be used after
+     * this method is called.
+     */
+    public void destroy() {
+        JerseyApacheUtil.destroyClient( client );
+        if ( client100 != null ) JerseyApacheUtil.destroyClient( client100 );
+        synchronized ( this ) {
+            if ( chunkReadExecutor != null ) chunkReadExecutor.shutdownNow();
+        }
     }
 
     @Override
@@ -202,6 +271,8 @@ public class AtmosApiClient extends AbstractAtmosApi {
 
     @Override
     public CreateObjectResponse createObject( CreateObjectRequest request ) {
+        if ( isUnknownLengthStream( request ) ) return createChunkedUploader().createObject( request );
+
         ClientResponse response = build( request ).post( ClientResponse.class, getContent( request ) );
 
         response.close();
@@ -212,14 +283,16 @@ public class AtmosApiClient extends AbstractAtmosApi {
     @Override
     public <T> ReadObjectResponse<T> readObject( ReadObjectRequest request, Class<T> objectType ) throws IOException {
         if ( request.getRanges() != null && request.getRanges().size() > 1
-             && !MultipartEntity.class.isAssignableFrom( objectType ) )
-            l4j.warn( "multiple ranges imply a multi-part response. you should ask for MultipartEntity instead of " +
-                      objectType.getSimpleName() );
+             && !MultipartEntity.class.isAssignableFrom( objectType )
+             && !MultipartStream.class.isAssignableFrom( objectType ) )
+            l4j.warn( "multiple ranges imply a multi-part response. you should ask for MultipartEntity or " +
+                      "MultipartStream instead of " + objectType.getSimpleName() );
 
         ClientResponse response = build( request ).get( ClientResponse.class );
         ReadObjectResponse<T> ret = new ReadObjectResponse<T>( response.getEntity( objectType ) );
 
-        response.close();
+        // a MultipartStream reads from the open response; closing it closes the response
+        if ( !(ret.getObject() instanceof MultipartStream) ) response.close();
 
         return fillResponse( ret, response );
     }
@@ -233,6 +306,8 @@ public class AtmosApiClient extends AbstractAtmosApi {
 
     @Override
     public BasicResponse updateObject( UpdateObjectRequest request ) {
+        if ( isUnknownLengthStream( request ) ) return createChunkedUploader().updateObject( request );
+
         ClientResponse response = build( request ).put( ClientResponse.class, getContent( request ) );
 
         response.close();
@@ -695,15 +770,12 @@ public class AtmosApiClient extends AbstractAtmosApi {
     }
 
     protected WebResource.Builder build( Request request ) {
-        WebResource resource;
-        if ( request.supports100Continue() && config.isEnableExpect100Continue() && client100 != null ) {
-            // use client with Expect: 100-continue
-            l4j.debug( "Expect: 100-continue is enabled for this request" );
-            resource = client100.resource( config.resolveHostAndPath( request.getServiceRelativePath(), request.getQuery() ) );
-        } else {
-            resource = client.resource( config.resolveHostAndPath( request.getServiceRelativePath(), request.getQuery() ) );
-        }
+        Client requestClient = client;
+        boolean useExpect100Continue = useExpect100Continue( request );
+        if ( useExpect100Continue && client100 != null ) requestClient = client100; // legacy two-client subclasses
 
+        WebResource resource = requestClient.resource( config.resolveHostAndPath( request.getServiceRelativePath(),
+                                                                                  request.getQuery() ) );
         WebResource.Builder builder = resource.getRequestBuilder();
 
         if ( request instanceof ContentRequest ) {
@@ -715,9 +787,38 @@ public class AtmosApiClient extends AbstractAtmosApi {
             builder.type( RestUtil.TYPE_DEFAULT );
         }
 
+        if ( useExpect100Continue && requestClient == client ) {
+            l4j.debug( "Expect: 100-continue is enabled for this request" );
+            builder.header( HttpUtil.HEADER_EXPECT, "100-continue" );
+        }
+
         return addHeaders( builder, request.generateHeaders( config.isEncodeUtf8() ) );
     }
 
+    /**
+     * Expect: 100-continue is only worth the extra round-trip for writes with a payload at least as large as the
+     * configured threshold. Writes of unknown size are assumed to be large.
+     */
+    protected boolean useExpect100Continue( Request request ) {
+        if ( !request.supports100Continue() || !config.isEnableExpect100Continue() ) return false;
+        if ( !(request instanceof ContentRequest) ) return true;
+        long size = getContentSize( (ContentRequest) request );
+        return size < 0 || size >= config.getExpect100ContinueThreshold();
+    }
+
+    /**
+     * Returns the byte size of the request content if it can be determined cheaply, otherwise -1.
+     */
+    protected long getContentSize( ContentRequest request ) {
+        Object content = request.getContent();
+        if ( content == null ) return 0;
+        else if ( content instanceof byte[] ) return ((byte[]) content).length;
+        else if ( content instanceof BufferSegment ) return ((BufferSegment) content).getSize();
+        else if ( content instanceof File ) return ((File) content).length();
+        else if ( content instanceof InputStream ) return request.getContentLength();
+        return -1;
+    }
+
     protected WebResource.Builder addHeaders( WebResource.Builder builder, Map<String, List<Object>> headers ) {
         for ( String name : headers.keySet() ) {
             for ( Object value : headers.get( name ) ) {
@@ -727,6 +828,26 @@ public class AtmosApiClient extends AbstractAtmosApi {
         return builder;
     }
 
+    /**
+     * Returns true if the request content is an InputStream without a content-length. These are sent in chunks (see
+     * {@link AtmosConfig#setChunkedUploadSize(int)}).
+     */
+    protected boolean isUnknownLengthStream( ContentRequest request ) {
+        return request.getContent() instanceof InputStream && request.getContentLength() < 0;
+    }
+
+    private ChunkedUploader createChunkedUploader() {
+        ExecutorService readExecutor = null;
+        if ( config.isPipelineChunkedUploads() ) {
+            synchronized ( this ) {
+                if ( chunkReadExecutor == null ) chunkReadExecutor =
+                        Executors.newCachedThreadPool( new DaemonThreadFactory( "atmos-chunk-reader" ) );
+                readExecutor = chunkReadExecutor;
+            }
+        }
+        return new ChunkedUploader( this, config.getChunkedUploadSize(), readExecutor );
+    }
+
     protected Object getContent( ContentRequest request ) {
         Object content = request.getContent();
         if ( content == null ) return new byte[0]; // need this to provide Content-Length: 0
@@ -26,14 +26,30 @@
  */
 package com.emc.atmos.api.jersey;
 
+import com.emc.atmos.AtmosException;
 import com.emc.atmos.api.AtmosConfig;
 import com.emc.atmos.api.RestUtil;
 import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientRequest;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.filter.ClientFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 public class AuthFilter extends ClientFilter {
+    private static final Logger log = LoggerFactory.getLogger( AuthFilter.class );
+
+    /**
+     * How far (in ms) the server clock skew estimate must move before a signature/time error is re-signed and retried.
+     */
+    public static final long SKEW_RETRY_THRESHOLD_MS = 1000;
+
+    private static final int ATMOS_TIMESTAMP_OUT_OF_RANGE = 1031;
+    private static final int ATMOS_SIGNATURE_MISMATCH = 1032;
+
     private AtmosConfig config;
 
     public AuthFilter( AtmosConfig config ) {
@@ -42,6 +58,51 @@ public class AuthFilter extends ClientFilter {
 
     @Override
     public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+        long signedSkew = config.getServerClockSkew();
+        signRequest( request, config );
+
+        if ( !config.isEnableClockSkewTracking() ) return getNext().handle( request );
+
+        InputStream entityStream = null;
+        if ( request.getEntity() instanceof InputStream ) {
+            entityStream = (InputStream) request.getEntity();
+            if ( entityStream.markSupported() ) entityStream.mark( config.getRetryBufferSize() );
+        }
+
+        try {
+            return getNext().handle( request );
+        } catch ( RuntimeException e ) {
+            // if the request was rejected because our clock is off, and the error response told us by how much,
+            // re-sign with the new skew and try once more
+            if ( !isTimeError( e ) || Math.abs( config.getServerClockSkew() - signedSkew ) < SKEW_RETRY_THRESHOLD_MS )
+                throw e;
+            if ( entityStream != null ) {
+                try {
+                    if ( !entityStream.markSupported() ) throw new IOException( "Mark is not supported" );
+                    entityStream.reset();
+                } catch ( IOException ioe ) {
+                    log.warn( "Could not reset entity stream to re-sign request: " + ioe.getMessage() );
+                    throw e;
+                }
+            }
+
+            log.info( "Request failed with a signature/time error after server clock skew changed from " + signedSkew
+                      + "ms to " + config.getServerClockSkew() + "ms; re-signing and retrying" );
+            request.getHeaders().remove( RestUtil.XHEADER_SIGNATURE );
+            signRequest( request, config );
+            return getNext().handle( request );
+        }
+    }
+
+    private boolean isTimeError( RuntimeException e ) {
+        Throwable t = e;
+        if ( t instanceof ClientHandlerException ) t = t.getCause();
+        if ( !(t instanceof AtmosException) ) return false;
+        int code = ((AtmosException) t).getErrorCode();
+        return code == ATMOS_TIMESTAMP_OUT_OF_RANGE || code == ATMOS_SIGNATURE_MISMATCH;
+    }
+
+    static void signRequest( ClientRequest request, AtmosConfig config ) {
         RestUtil.signRequest( request.getMethod(),
                               request.getURI().getPath(),
                               request.getURI().getQuery(),
@@ -49,7 +110,5 @@ public class AuthFilter extends ClientFilter {
                               config.getTokenId(),
                               config.getSecretKey(),
                               config.getServerClockSkew() );
-
-        return getNext().handle( request );
     }
 }
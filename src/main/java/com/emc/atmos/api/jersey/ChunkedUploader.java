@@ -0,0 +1,211 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.jersey;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.*;
+import com.emc.atmos.api.bean.CreateObjectResponse;
+import com.emc.atmos.api.bean.Metadata;
+import com.emc.atmos.api.request.CreateObjectRequest;
+import com.emc.atmos.api.request.PutObjectRequest;
+import com.emc.atmos.api.request.UpdateObjectRequest;
+import com.emc.util.BasicResponse;
+import com.emc.util.BufferPool;
+import com.emc.util.StreamUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Sends an InputStream of unknown length as a series of fixed-size chunks. The first chunk goes with the original
+ * request (carrying its metadata, ACL, etc.) and each following chunk is appended with a ranged update. Only one or two
+ * chunk buffers are leased (from the {@link BufferPool}) per upload and they are reused for every chunk.
+ * <p/>
+ * If a ws-checksum is set on the request, only its algorithm is used; the checksum sent with each chunk is computed as
+ * the content is read.
+ *
+ * @see AtmosConfig#setChunkedUploadSize(int)
+ * @see AtmosConfig#setPipelineChunkedUploads(boolean)
+ */
+class ChunkedUploader {
+    private AtmosApi api;
+    private int chunkSize;
+    private ExecutorService readExecutor;
+
+    /**
+     * @param readExecutor if not null, the next chunk is read on this executor while the previous one is sent
+     */
+    ChunkedUploader( AtmosApi api, int chunkSize, ExecutorService readExecutor ) {
+        if ( chunkSize < 1 ) throw new IllegalArgumentException( "chunkSize must be at least 1" );
+        this.api = api;
+        this.chunkSize = chunkSize;
+        this.readExecutor = readExecutor;
+    }
+
+    CreateObjectResponse createObject( CreateObjectRequest request ) {
+        return (CreateObjectResponse) upload( request, null );
+    }
+
+    BasicResponse updateObject( UpdateObjectRequest request ) {
+        return upload( request, request.getRange() );
+    }
+
+    private BasicResponse upload( PutObjectRequest<?> request, Range range ) {
+        InputStream stream = (InputStream) request.getContent();
+        ChecksumValue originalChecksum = request.getWsChecksum();
+        RunningChecksum checksum = null;
+        try {
+            if ( originalChecksum != null ) checksum = new RunningChecksum( originalChecksum.getAlgorithm() );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new RuntimeException( e );
+        }
+
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.lease( chunkSize ), nextBuffer = null;
+        Future<Integer> nextRead = null;
+        try {
+            int length = read( stream, buffer );
+            if ( range != null && length == 0 ) return updateWithoutContent( (UpdateObjectRequest) request );
+
+            // the first chunk is sent with the original request
+            if ( checksum != null ) {
+                checksum.update( buffer, 0, length );
+                request.setWsChecksum( snapshot( checksum ) );
+            }
+            if ( range != null ) ((UpdateObjectRequest) request).setRange( range( range.getFirst(), length ) );
+            if ( length == chunkSize ) nextRead = readAhead( stream, nextBuffer = pool.lease( chunkSize ) );
+            request.setContent( new BufferSegment( buffer, 0, length ) );
+            request.setContentLength( length );
+
+            BasicResponse response = (request instanceof CreateObjectRequest)
+                                     ? api.createObject( (CreateObjectRequest) request )
+                                     : api.updateObject( (UpdateObjectRequest) request );
+
+            // append the rest
+            ObjectIdentifier identifier = (request instanceof CreateObjectRequest)
+                                          ? ((CreateObjectResponse) response).getObjectId()
+                                          : request.getIdentifier();
+            long offset = (range == null ? 0 : range.getFirst()) + length;
+            while ( length == chunkSize ) {
+                if ( nextRead != null ) {
+                    length = nextRead.get();
+                    nextRead = null;
+                    byte[] temp = buffer;
+                    buffer = nextBuffer;
+                    nextBuffer = temp;
+                } else {
+                    length = read( stream, buffer );
+                }
+                if ( length == 0 ) break;
+                if ( length == chunkSize && nextBuffer != null ) nextRead = readAhead( stream, nextBuffer );
+
+                UpdateObjectRequest append = new UpdateObjectRequest().identifier( identifier );
+                append.contentType( request.getContentType() ).range( range( offset, length ) );
+                append.content( new BufferSegment( buffer, 0, length ) ).contentLength( length );
+                if ( checksum != null ) {
+                    checksum.update( buffer, 0, length );
+                    append.setWsChecksum( snapshot( checksum ) );
+                }
+                api.updateObject( append );
+                offset += length;
+            }
+
+            return response;
+        } catch ( IOException e ) {
+            throw new AtmosException( "Error reading input data: " + e, e );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new AtmosException( "Interrupted while reading input data", e );
+        } catch ( ExecutionException e ) {
+            throw new AtmosException( "Error reading input data: " + e.getCause(), e.getCause() );
+        } finally {
+            // don't return while the stream is still being read
+            if ( nextRead != null ) {
+                try {
+                    nextRead.get();
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    nextBuffer = null; // may still be filling; leave it to the garbage collector
+                } catch ( Exception e ) {
+                    // ignore; we're already failing
+                }
+            }
+            request.setContent( stream );
+            request.setContentLength( -1 );
+            request.setWsChecksum( originalChecksum );
+            if ( range != null ) ((UpdateObjectRequest) request).setRange( range );
+            pool.release( buffer );
+            pool.release( nextBuffer );
+        }
+    }
+
+    /**
+     * An empty stream written at an offset changes no content. The update can't be sent as-is (a range can't be empty
+     * and dropping it would replace the whole object), so only its metadata and ACL are applied.
+     */
+    private BasicResponse updateWithoutContent( UpdateObjectRequest request ) {
+        Set<Metadata> metadata = request.getUserMetadata();
+        if ( metadata != null && !metadata.isEmpty() )
+            api.setUserMetadata( request.getIdentifier(), metadata.toArray( new Metadata[metadata.size()] ) );
+        if ( request.getAcl() != null ) api.setAcl( request.getIdentifier(), request.getAcl() );
+        return new BasicResponse();
+    }
+
+    private Future<Integer> readAhead( final InputStream stream, final byte[] buffer ) {
+        if ( readExecutor == null ) return null;
+        return readExecutor.submit( new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return read( stream, buffer );
+            }
+        } );
+    }
+
+    private int read( InputStream stream, byte[] buffer ) throws IOException {
+        return StreamUtil.readFully( stream, buffer, 0, chunkSize );
+    }
+
+    private Range range( long offset, int length ) {
+        return new Range( offset, offset + length - 1 );
+    }
+
+    private ChecksumValue snapshot( RunningChecksum checksum ) {
+        return new ChecksumValueImpl( checksum.getAlgorithm(), checksum.getOffset(), checksum.getValue() );
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.jersey;
+
+import com.emc.atmos.api.AtmosConfig;
+import com.emc.util.HttpUtil;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+
+/**
+ * Keeps {@link AtmosConfig#getServerClockSkew()} up to date using the Date header of every response (including error
+ * responses), so the explicit {@link AtmosApiClient#calculateServerClockSkew()} probe is not needed. Small changes are
+ * smoothed (the Date header only has one-second resolution); a change of more than {@link #JUMP_THRESHOLD_MS} is
+ * adopted immediately, since it means the local clock was stepped.
+ */
+public class ClockSkewFilter extends ClientFilter {
+    private static final Logger log = LoggerFactory.getLogger( ClockSkewFilter.class );
+
+    public static final long JUMP_THRESHOLD_MS = 60000;
+    public static final double SMOOTHING = 0.2;
+
+    private AtmosConfig config;
+    private double estimate;
+
+    public ClockSkewFilter( AtmosConfig config ) {
+        this.config = config;
+        this.estimate = config.getServerClockSkew();
+    }
+
+    @Override
+    public ClientResponse handle( ClientRequest clientRequest ) throws ClientHandlerException {
+        ClientResponse response = getNext().handle( clientRequest );
+
+        Date serverDate = HttpUtil.safeHeaderParse( response.getHeaders().getFirst( HttpUtil.HEADER_DATE ) );
+        if ( serverDate != null ) update( System.currentTimeMillis() - serverDate.getTime() );
+
+        return response;
+    }
+
+    protected synchronized void update( long sample ) {
+        if ( Math.abs( sample - estimate ) > JUMP_THRESHOLD_MS ) {
+            log.info( "server clock skew changed from " + Math.round( estimate ) + "ms to " + sample + "ms" );
+            estimate = sample;
+        } else {
+            estimate += SMOOTHING * (sample - estimate);
+        }
+        config.setServerClockSkew( Math.round( estimate ) );
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.jersey;
+
+import java.net.URI;
+
+/**
+ * A point-in-time snapshot of connection pool usage, either for a single endpoint or for the entire pool.
+ *
+ * @see AtmosApiClient#getConnectionPoolStats()
+ * @see AtmosApiClient#getTotalConnectionPoolStats()
+ */
+public class ConnectionPoolStats {
+    private URI endpoint;
+    private int leased;
+    private int available;
+    private int pending;
+    private int max;
+
+    public ConnectionPoolStats( URI endpoint, int leased, int available, int pending, int max ) {
+        this.endpoint = endpoint;
+        this.leased = leased;
+        this.available = available;
+        this.pending = pending;
+        this.max = max;
+    }
+
+    /**
+     * Returns the endpoint these statistics apply to, or null if they apply to the entire pool.
+     */
+    public URI getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Returns the number of connections currently in use by requests.
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * Returns the number of idle connections available for reuse.
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * Returns the number of requests waiting to lease a connection. A non-zero value here means the pool is
+     * undersized for the current load.
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * Returns the maximum number of connections allowed.
+     */
+    public int getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolStats{" +
+               "endpoint=" + endpoint +
+               ", leased=" + leased +
+               ", available=" + available +
+               ", pending=" + pending +
+               ", max=" + max +
+               '}';
+    }
+}
@@ -27,6 +27,9 @@
 package com.emc.atmos.api.jersey;
 
 import com.emc.atmos.AtmosException;
+import com.emc.atmos.EndpointHealthListener;
+import com.emc.atmos.EndpointRequestListener;
+import com.emc.atmos.api.AtmosConfig;
 import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientRequest;
 import com.sun.jersey.api.client.ClientResponse;
@@ -37,15 +40,55 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
 
 public class ErrorFilter extends ClientFilter {
     private static final Logger log = LoggerFactory.getLogger( ErrorFilter.class );
 
     public static final String NO_EXCEPTIONS = "ErrorFilter.noExceptions";
 
+    private AtmosConfig config;
+
+    public ErrorFilter() {
+    }
+
+    /**
+     * If the config's load balancing algorithm is an {@link EndpointHealthListener} or an
+     * {@link EndpointRequestListener}, it will be notified of every request that passes through this filter.
+     */
+    public ErrorFilter( AtmosConfig config ) {
+        this.config = config;
+    }
+
     @Override
     public ClientResponse handle( ClientRequest clientRequest ) throws ClientHandlerException {
-        ClientResponse response = getNext().handle( clientRequest );
+        Object algorithm = config == null ? null : config.getLoadBalancingAlgorithm();
+        URI endpoint = null;
+        if ( algorithm instanceof EndpointHealthListener || algorithm instanceof EndpointRequestListener )
+            endpoint = getEndpoint( clientRequest.getURI() );
+
+        if ( endpoint != null && algorithm instanceof EndpointRequestListener )
+            ((EndpointRequestListener) algorithm).requestStarted( endpoint );
+        long start = System.nanoTime();
+        ClientResponse response = null;
+        boolean failed = true;
+        try {
+            response = getNext().handle( clientRequest );
+            failed = response.getStatus() >= 500;
+        } catch ( ClientHandlerException e ) {
+            if ( endpoint != null && algorithm instanceof EndpointHealthListener )
+                ((EndpointHealthListener) algorithm).endpointFailed( endpoint );
+            throw e;
+        } finally {
+            if ( endpoint != null && algorithm instanceof EndpointRequestListener )
+                ((EndpointRequestListener) algorithm).requestFinished( endpoint, System.nanoTime() - start, failed );
+        }
+
+        if ( endpoint != null && algorithm instanceof EndpointHealthListener ) {
+            if ( failed ) ((EndpointHealthListener) algorithm).endpointFailed( endpoint );
+            else ((EndpointHealthListener) algorithm).endpointSucceeded( endpoint );
+        }
 
         if ( response.getStatus() > 299 && shouldThrowExceptions( clientRequest ) ) {
 
@@ -76,6 +119,15 @@ public class ErrorFilter extends ClientFilter {
         return response;
     }
 
+    private URI getEndpoint( URI uri ) {
+        try {
+            return new URI( uri.getScheme(), null, uri.getHost(), uri.getPort(), null, null, null );
+        } catch ( URISyntaxException e ) {
+            log.warn( "could not determine endpoint of " + uri + ": " + e.getMessage() );
+            return null;
+        }
+    }
+
     private boolean shouldThrowExceptions( ClientRequest request ) {
         Boolean noExceptions = (Boolean) request.getProperties().get( NO_EXCEPTIONS );
         return !( noExceptions != null && noExceptions );
@@ -0,0 +1,109 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.jersey;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background daemon that periodically evicts expired and idle connections from a connection pool. Only a weak
+ * reference is held to the connection manager, so the reaper will exit on its own if the client is discarded without
+ * being destroyed.
+ */
+public class IdleConnectionReaper implements Runnable {
+    private static final Logger l4j = LoggerFactory.getLogger( IdleConnectionReaper.class );
+
+    private WeakReference<ClientConnectionManager> connectionManagerRef;
+    private long idleTimeout;
+    private long interval;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    /**
+     * @param connectionManager the connection manager to reap
+     * @param idleTimeout       connections idle longer than this (in ms) are closed. 0 means only expired connections
+     *                          are closed
+     * @param interval          how often (in ms) to check the pool
+     */
+    public IdleConnectionReaper( ClientConnectionManager connectionManager, long idleTimeout, long interval ) {
+        this.connectionManagerRef = new WeakReference<ClientConnectionManager>( connectionManager );
+        this.idleTimeout = idleTimeout;
+        this.interval = interval;
+    }
+
+    /**
+     * Starts the reaper thread and returns this instance.
+     */
+    public synchronized IdleConnectionReaper start() {
+        if ( thread == null ) {
+            thread = new Thread( this, "atmos-connection-reaper" );
+            thread.setDaemon( true );
+            thread.start();
+        }
+        return this;
+    }
+
+    /**
+     * Stops the reaper thread. The connection manager is not shut down.
+     */
+    public synchronized void shutdown() {
+        running = false;
+        if ( thread != null ) thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        while ( running ) {
+            try {
+                Thread.sleep( interval );
+            } catch ( InterruptedException e ) {
+                if ( !running ) break;
+            }
+
+            ClientConnectionManager connectionManager = connectionManagerRef.get();
+            if ( connectionManager == null ) break; // client was garbage collected
+
+            try {
+                connectionManager.closeExpiredConnections();
+                if ( idleTimeout > 0 ) connectionManager.closeIdleConnections( idleTimeout, TimeUnit.MILLISECONDS );
+            } catch ( Throwable t ) {
+                l4j.warn( "Error while evicting pooled connections: " + t.getMessage() );
+            }
+        }
+        l4j.debug( "connection reaper exiting" );
+    }
+}
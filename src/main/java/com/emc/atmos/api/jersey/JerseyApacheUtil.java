@@ -34,34 +34,54 @@ import com.sun.jersey.api.client.config.ClientConfig;
 import com.sun.jersey.client.apache4.ApacheHttpClient4;
 import com.sun.jersey.client.apache4.config.ApacheHttpClient4Config;
 import com.sun.jersey.client.apache4.config.DefaultApacheHttpClient4Config;
+import org.apache.http.HttpHost;
 import org.apache.http.client.params.AllClientPNames;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.impl.conn.ProxySelectorRoutePlanner;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.SyncBasicHttpParams;
+import org.apache.http.pool.PoolStats;
 
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 import java.net.ProxySelector;
 import java.net.URI;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 public class JerseyApacheUtil {
+    /**
+     * Client property holding the {@link IdleConnectionReaper} for the client's connection pool (if one was started).
+     */
+    public static final String PROPERTY_CONNECTION_REAPER = "com.emc.atmos.api.jersey.connectionReaper";
+
     private static Pattern BOOLEAN_PATTERN = Pattern.compile("([tT][rR][uU][eE]|[fF][aA][lL][sS][eE])");
     private static Pattern DOUBLE_PATTERN = Pattern.compile("[0-9]*\\.[0-9]+");
     private static Pattern INT_PATTERN = Pattern.compile("[0-9]+");
     private static Set<String> LONG_PARAMETERS = new TreeSet<String>(Collections.singletonList(
             "http.conn-manager.timeout"));
 
+    /**
+     * Creates a client that shares one connection pool for all requests. Expect: 100-continue is disabled at the
+     * client level; callers enable it per request by sending the Expect header (see
+     * {@link AtmosApiClient#build(com.emc.atmos.api.request.Request)}).
+     */
+    public static Client createApacheClient(AtmosConfig config,
+                                            List<Class<MessageBodyReader<?>>> readers,
+                                            List<Class<MessageBodyWriter<?>>> writers) {
+        return createApacheClient(config, false, readers, writers);
+    }
+
     public static Client createApacheClient(AtmosConfig config,
                                             boolean useExpect100Continue,
                                             List<Class<MessageBodyReader<?>>> readers,
@@ -72,11 +92,10 @@ public class JerseyApacheUtil {
             // make sure the apache client is thread-safe
             // TODO: find a non-deprecated connection manager that works (swapping out with
             //       PoolingHttpClientConnectionManager will break threading)
-            org.apache.http.impl.conn.PoolingClientConnectionManager connectionManager = new org.apache.http.impl.conn.PoolingClientConnectionManager();
-            // Increase max total connection to 200
-            connectionManager.setMaxTotal(200);
-            // Increase default max connection per route to 200
-            connectionManager.setDefaultMaxPerRoute(200);
+            PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(
+                    SchemeRegistryFactory.createDefault(), config.getConnectionTimeToLive(), TimeUnit.MILLISECONDS);
+            connectionManager.setMaxTotal(config.getMaxConnections());
+            connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerEndpoint());
             clientConfig.getProperties().put(DefaultApacheHttpClient4Config.PROPERTY_CONNECTION_MANAGER,
                     connectionManager);
 
@@ -127,6 +146,7 @@ public class JerseyApacheUtil {
             HttpParams httpParams = new SyncBasicHttpParams();
             DefaultHttpClient.setDefaultHttpParams(httpParams);
             httpParams.setBooleanParameter(AllClientPNames.USE_EXPECT_CONTINUE, useExpect100Continue);
+            httpParams.setBooleanParameter(AllClientPNames.STALE_CONNECTION_CHECK, config.isStaleConnectionCheck());
             clientConfig.getProperties().put(DefaultApacheHttpClient4Config.PROPERTY_HTTP_PARAMS, httpParams);
 
             // pick up other configuration from system props
@@ -149,6 +169,10 @@ public class JerseyApacheUtil {
                 }
             }
 
+            // an explicitly configured lease timeout takes precedence over system props
+            if (config.getConnectionLeaseTimeout() > 0)
+                httpParams.setLongParameter(AllClientPNames.CONN_MANAGER_TIMEOUT, config.getConnectionLeaseTimeout());
+
             JerseyUtil.addHandlers(clientConfig, readers, writers);
 
             // create the client
@@ -164,10 +188,71 @@ public class JerseyApacheUtil {
 
             JerseyUtil.addFilters(client, config);
 
+            // evict idle and expired connections in the background
+            if (config.getConnectionIdleTimeout() > 0 || config.getConnectionTimeToLive() > 0) {
+                IdleConnectionReaper reaper = new IdleConnectionReaper(connectionManager,
+                        config.getConnectionIdleTimeout(), config.getConnectionReaperInterval());
+                client.getProperties().put(PROPERTY_CONNECTION_REAPER, reaper.start());
+            }
+
             return client;
         } catch (Exception e) {
             throw new AtmosException("Error configuring REST client", e);
         }
     }
 
+    /**
+     * Returns a snapshot of connection pool usage for each of the specified endpoints. Only direct (non-proxied)
+     * routes are reported.
+     *
+     * @throws UnsupportedOperationException if the client was not created by this class
+     */
+    public static Map<URI, ConnectionPoolStats> getConnectionPoolStats(Client client, URI... endpoints) {
+        PoolingClientConnectionManager connectionManager = getPoolingConnectionManager(client);
+        Map<URI, ConnectionPoolStats> statsMap = new LinkedHashMap<URI, ConnectionPoolStats>();
+        SchemeRegistry schemeRegistry = connectionManager.getSchemeRegistry();
+        for (URI endpoint : endpoints) {
+            // pooled routes always have a port, so resolve the scheme's default if the endpoint doesn't specify one
+            int port = schemeRegistry.getScheme(endpoint.getScheme()).resolvePort(endpoint.getPort());
+            HttpHost host = new HttpHost(endpoint.getHost(), port, endpoint.getScheme());
+            HttpRoute route = new HttpRoute(host, null, "https".equalsIgnoreCase(endpoint.getScheme()));
+            statsMap.put(endpoint, toStats(endpoint, connectionManager.getStats(route)));
+        }
+        return statsMap;
+    }
+
+    /**
+     * Returns a snapshot of connection pool usage across all routes.
+     *
+     * @throws UnsupportedOperationException if the client was not created by this class
+     */
+    public static ConnectionPoolStats getTotalConnectionPoolStats(Client client) {
+        return toStats(null, getPoolingConnectionManager(client).getTotalStats());
+    }
+
+    /**
+     * Stops the connection reaper (if any) and shuts down the connection pool of the specified client. The client
+     * cannot be used after this method is called.
+     */
+    public static void destroyClient(Client client) {
+        IdleConnectionReaper reaper = (IdleConnectionReaper) client.getProperties().get(PROPERTY_CONNECTION_REAPER);
+        if (reaper != null) reaper.shutdown();
+        client.destroy();
+    }
+
+    private static PoolingClientConnectionManager getPoolingConnectionManager(Client client) {
+        if (client instanceof ApacheHttpClient4) {
+            ClientConnectionManager connectionManager =
+                    ((ApacheHttpClient4) client).getClientHandler().getHttpClient().getConnectionManager();
+            if (connectionManager instanceof PoolingClientConnectionManager)
+                return (PoolingClientConnectionManager) connectionManager;
+        }
+        throw new UnsupportedOperationException("Client does not use a pooling connection manager");
+    }
+
+    private static ConnectionPoolStats toStats(URI endpoint, PoolStats poolStats) {
+        return new ConnectionPoolStats(endpoint, poolStats.getLeased(), poolStats.getAvailable(),
+                poolStats.getPending(), poolStats.getMax());
+    }
+
 }
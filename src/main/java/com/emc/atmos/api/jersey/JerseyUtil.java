@@ -46,6 +46,16 @@ import javax.ws.rs.ext.MessageBodyWriter;
 import java.util.List;
 
 public class JerseyUtil {
+    /**
+     * Client property holding the {@link RetryFilter} (if retries are enabled).
+     */
+    public static final String PROPERTY_RETRY_FILTER = "com.emc.atmos.api.jersey.retryFilter";
+
+    /**
+     * Client property holding the {@link AdaptiveConcurrencyFilter} (if adaptive concurrency is enabled).
+     */
+    public static final String PROPERTY_CONCURRENCY_FILTER = "com.emc.atmos.api.jersey.concurrencyFilter";
+
     public static Client createClient( AtmosConfig config,
                                        List<Class<MessageBodyReader<?>>> readers,
                                        List<Class<MessageBodyWriter<?>>> writers ) {
@@ -106,6 +116,7 @@ public class JerseyUtil {
         clientConfig.getClasses().add( MeasuredInputStreamWriter.class );
         clientConfig.getClasses().add( BufferSegmentWriter.class );
         clientConfig.getClasses().add( MultipartReader.class );
+        clientConfig.getClasses().add( MultipartStreamReader.class );
 
         // Jersey providers for types we support
         clientConfig.getClasses().add( ByteArrayProvider.class );
@@ -131,9 +142,21 @@ public class JerseyUtil {
     static void addFilters( Client client, AtmosConfig config ) {
         // add filters
         client.addFilter( new ChecksumFilter() );
-        client.addFilter( new ErrorFilter() );
-        if ( config.isEnableRetry() ) client.addFilter( new RetryFilter( config ) );
+        if ( config.isEnableClockSkewTracking() ) client.addFilter( new ClockSkewFilter( config ) );
+        client.addFilter( new ErrorFilter( config ) );
+        if ( config.isEnableAdaptiveConcurrency() ) {
+            AdaptiveConcurrencyFilter concurrencyFilter = new AdaptiveConcurrencyFilter( config );
+            client.addFilter( concurrencyFilter );
+            client.getProperties().put( PROPERTY_CONCURRENCY_FILTER, concurrencyFilter );
+        }
+        if ( config.isEnableRetry() ) {
+            RetryFilter retryFilter = new RetryFilter( config );
+            client.addFilter( retryFilter );
+            client.getProperties().put( PROPERTY_RETRY_FILTER, retryFilter );
+        }
         client.addFilter( new AuthFilter( config ) );
+        // outermost, so each request is measured once with all of its retries
+        if ( config.getMetricsRegistry() != null ) client.addFilter( new MetricsFilter( config.getMetricsRegistry() ) );
     }
 
     private JerseyUtil() {
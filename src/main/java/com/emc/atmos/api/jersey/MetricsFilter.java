@@ -0,0 +1,156 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.jersey;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.BufferSegment;
+import com.emc.atmos.api.metrics.MetricsRegistry;
+import com.emc.atmos.api.metrics.Operation;
+import com.emc.atmos.api.metrics.RequestMetric;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+
+/**
+ * Measures each request and reports it to a {@link MetricsRegistry}. This filter is installed outside of the retry
+ * filter, so one request (with all of its retries) is one measurement; the retry count comes from
+ * {@link RetryFilter#PROPERTY_RETRY_COUNT} and Atmos error codes from the exceptions thrown by {@link ErrorFilter}.
+ */
+public class MetricsFilter extends ClientFilter {
+    private static final Logger log = LoggerFactory.getLogger( MetricsFilter.class );
+
+    private MetricsRegistry registry;
+
+    public MetricsFilter( MetricsRegistry registry ) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ClientResponse handle( ClientRequest clientRequest ) throws ClientHandlerException {
+        // the retry filter may replace the entity, so keep the original to measure it
+        Object entity = clientRequest.getEntity();
+        long start = System.nanoTime();
+        ClientResponse response = null;
+        RuntimeException failure = null;
+        try {
+            response = getNext().handle( clientRequest );
+            return response;
+        } catch ( RuntimeException e ) {
+            failure = e;
+            throw e;
+        } finally {
+            record( clientRequest, entity, response, failure, System.nanoTime() - start );
+        }
+    }
+
+    /**
+     * Determines the type of operation from the method, path and query of the request.
+     */
+    protected Operation getOperation( String method, URI uri ) {
+        String path = uri.getPath() == null ? "" : uri.getPath();
+        String query = uri.getQuery() == null ? "" : uri.getQuery();
+
+        if ( "HEAD".equals( method ) || query.startsWith( "metadata" ) || query.startsWith( "info" )
+             || query.startsWith( "acl" ) || query.startsWith( "listabletags" ) ) return Operation.METADATA;
+
+        boolean objects = path.contains( "/objects" ), namespace = path.contains( "/namespace" );
+        if ( !objects && !namespace ) return Operation.OTHER;
+
+        if ( "GET".equals( method ) ) {
+            // list versions, objects by tag (no object ID) or a directory
+            if ( query.startsWith( "versions" ) || path.endsWith( "/objects" ) || (namespace && path.endsWith( "/" )) )
+                return Operation.LIST;
+            return Operation.READ;
+        }
+        if ( "POST".equals( method ) ) return query.startsWith( "rename" ) ? Operation.UPDATE : Operation.CREATE;
+        if ( "PUT".equals( method ) ) return Operation.UPDATE;
+        if ( "DELETE".equals( method ) ) return Operation.DELETE;
+        return Operation.OTHER;
+    }
+
+    private void record( ClientRequest request, Object entity, ClientResponse response, RuntimeException failure,
+                         long durationNanos ) {
+        try {
+            URI uri = request.getURI(); // after any failover
+            String method = request.getMethod();
+            String endpoint = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+
+            Integer retries = (Integer) request.getProperties().get( RetryFilter.PROPERTY_RETRY_COUNT );
+
+            int httpStatus = 0, errorCode = 0;
+            long bytesReceived = -1;
+            if ( response != null ) {
+                httpStatus = response.getStatus();
+                // a HEAD response has the object's length, but no content
+                bytesReceived = "HEAD".equals( method ) ? 0 : response.getLength();
+            } else {
+                Throwable t = failure;
+                if ( t instanceof ClientHandlerException && t.getCause() != null ) t = t.getCause();
+                if ( t instanceof AtmosException ) {
+                    httpStatus = ((AtmosException) t).getHttpCode();
+                    errorCode = ((AtmosException) t).getErrorCode();
+                }
+            }
+
+            registry.record( new RequestMetric( getOperation( method, uri ), endpoint, durationNanos,
+                                                getBytesSent( request, entity ), bytesReceived,
+                                                retries == null ? 0 : retries, httpStatus, errorCode,
+                                                response == null || httpStatus > 299 ) );
+        } catch ( RuntimeException e ) {
+            log.warn( "could not record request metrics: " + e, e );
+        }
+    }
+
+    private long getBytesSent( ClientRequest request, Object entity ) {
+        if ( entity == null ) return 0;
+        if ( entity instanceof MeasuredInputStream ) return ((MeasuredInputStream) entity).getRead();
+        if ( entity instanceof BufferSegment ) return ((BufferSegment) entity).getSize();
+        if ( entity instanceof byte[] ) return ((byte[]) entity).length;
+
+        // otherwise, use the content length if the caller set it
+        Object length = request.getHeaders().getFirst( "Content-Length" );
+        if ( length != null ) {
+            try {
+                return Long.parseLong( length.toString() );
+            } catch ( NumberFormatException e ) {
+                // fall through
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.jersey;
+
+/**
+ * Limits retries to a fraction of recent requests. Requests and retries are counted in a sliding window (made up of
+ * a fixed number of buckets); a retry is allowed only while the retries in the window are fewer than
+ * <code>minRetries + ratio * requests</code>. This class is thread-safe.
+ */
+public class RetryBudget {
+    private static final int BUCKETS = 10;
+
+    private double ratio;
+    private int minRetries;
+    private long bucketMillis;
+
+    private long[] bucketEpochs = new long[BUCKETS];
+    private int[] requests = new int[BUCKETS];
+    private int[] retries = new int[BUCKETS];
+
+    /**
+     * @param ratio        retries allowed per request
+     * @param minRetries   retries always allowed within the window, regardless of request volume
+     * @param windowMillis the length of the sliding window in milliseconds
+     */
+    public RetryBudget( double ratio, int minRetries, long windowMillis ) {
+        this.ratio = ratio;
+        this.minRetries = minRetries;
+        this.bucketMillis = Math.max( 1, windowMillis / BUCKETS );
+    }
+
+    /**
+     * Records a new request (not a retry).
+     */
+    public synchronized void requestStarted() {
+        requests[currentBucket( System.currentTimeMillis() / bucketMillis )]++;
+    }
+
+    /**
+     * Returns true and records a retry if the budget allows one; otherwise returns false.
+     */
+    public synchronized boolean tryRetry() {
+        long epoch = System.currentTimeMillis() / bucketMillis;
+        int bucket = currentBucket( epoch );
+        long totalRequests = 0, totalRetries = 0;
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            if ( epoch - bucketEpochs[i] >= BUCKETS ) continue; // fell out of the window
+            totalRequests += requests[i];
+            totalRetries += retries[i];
+        }
+        if ( totalRetries >= minRetries + ratio * totalRequests ) return false;
+        retries[bucket]++;
+        return true;
+    }
+
+    private int currentBucket( long epoch ) {
+        int bucket = (int) (epoch % BUCKETS);
+        if ( bucketEpochs[bucket] != epoch ) {
+            bucketEpochs[bucket] = epoch;
+            requests[bucket] = 0;
+            retries[bucket] = 0;
+        }
+        return bucket;
+    }
+}
@@ -38,24 +38,80 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RetryFilter extends ClientFilter {
-    private static final int ATMOS_1040_DELAY_MS = 300;
+    /**
+     * Request property holding the number of times the request has been retried (absent if it was not retried).
+     */
+    public static final String PROPERTY_RETRY_COUNT = "com.emc.atmos.api.jersey.retryCount";
+
+    /**
+     * Minimum base delay for retries of Atmos code 1040 (server busy).
+     */
+    public static final int ATMOS_1040_DELAY_MS = 300;
+
+    /**
+     * Base delay used for exponential backoff when no retry delay is configured.
+     */
+    public static final int DEFAULT_BACKOFF_BASE_MS = 100;
 
     private static final Logger log = LoggerFactory.getLogger( RetryFilter.class );
 
     private AtmosConfig config;
+    private RetryBudget budget;
+    private Random random = new Random();
+
+    private AtomicLong requests = new AtomicLong();
+    private AtomicLong retries = new AtomicLong();
+    private AtomicLong budgetExhausted = new AtomicLong();
+    private AtomicLong backoffMillis = new AtomicLong();
 
     public RetryFilter( AtmosConfig config ) {
         this.config = config;
+        if ( config.getRetryBudgetRatio() > 0 )
+            budget = new RetryBudget( config.getRetryBudgetRatio(), config.getRetryBudgetMinRetries(),
+                                      config.getRetryBudgetWindowMillis() );
     }
 
     @Override
     public ClientResponse handle( ClientRequest clientRequest ) throws ClientHandlerException {
-        int retryCount = 0;
+        requests.incrementAndGet();
+        if ( budget != null ) budget.requestStarted();
+
         InputStream entityStream = null;
         if ( clientRequest.getEntity() instanceof InputStream ) entityStream = (InputStream) clientRequest.getEntity();
+
+        // record the stream as it is sent so it can be replayed regardless of size or mark support
+        SpillingInputStream spillStream = null;
+        if ( entityStream != null && config.isEnableRetrySpill() && config.getMaxRetries() > 0 ) {
+            spillStream = new SpillingInputStream( entityStream, config.getRetryBufferSize(),
+                                                   config.getRetrySpillLimit(), config.getRetrySpillDirectory() );
+            if ( entityStream instanceof MeasuredInputStream )
+                entityStream = new MeasuredInputStream( spillStream, ((MeasuredInputStream) entityStream).getSize() );
+            else entityStream = spillStream;
+            clientRequest.setEntity( entityStream );
+        }
+
+        try {
+            return handle( clientRequest, entityStream );
+        } finally {
+            if ( spillStream != null ) spillStream.release();
+        }
+    }
+
+    private ClientResponse handle( ClientRequest clientRequest, InputStream entityStream ) {
+        int retryCount = 0;
+        Set<String> triedEndpoints = new HashSet<String>();
         while ( true ) {
+            long baseDelay = config.getRetryDelayMillis();
             try {
                 // if using an InputStream, mark the stream so we can rewind it in case of an error
                 if ( entityStream != null && entityStream.markSupported() )
@@ -74,14 +130,8 @@ public class RetryFilter extends ClientFilter {
                     // retry all 50x errors
                     if ( ae.getHttpCode() < 500 ) throw orig;
 
-                    // add small delay to Atmos code 1040 (server busy)
-                    if ( ae.getErrorCode() == 1040 ) {
-                        try {
-                            Thread.sleep( ATMOS_1040_DELAY_MS );
-                        } catch ( InterruptedException e ) {
-                            log.warn( "Interrupted while waiting after a 1040 response: " + e.getMessage() );
-                        }
-                    }
+                    // back off for longer on Atmos code 1040 (server busy)
+                    if ( ae.getErrorCode() == 1040 ) baseDelay = Math.max( baseDelay, ATMOS_1040_DELAY_MS );
 
                     // retry all IO exceptions unless wschecksum is enabled (can't overwrite data in this case)
                 } else if ( !(t instanceof IOException)
@@ -90,6 +140,13 @@ public class RetryFilter extends ClientFilter {
                 // only retry maxRetries times
                 if ( ++retryCount > config.getMaxRetries() ) throw orig;
 
+                // don't pile on retries if too many requests are failing
+                if ( budget != null && !budget.tryRetry() ) {
+                    budgetExhausted.incrementAndGet();
+                    log.warn( "Retry budget exhausted; not retrying (" + t + ")" );
+                    throw orig;
+                }
+
                 // attempt to reset InputStream if it has been read from
                 if ( entityStream != null ) {
                     if ( !(entityStream instanceof MeasuredInputStream)
@@ -105,16 +162,106 @@ public class RetryFilter extends ClientFilter {
                 }
 
                 log.info( "Error received in response (" + t + "), retrying..." );
+                retries.incrementAndGet();
+                clientRequest.getProperties().put( PROPERTY_RETRY_COUNT, retryCount );
 
                 // wait for retry delay
-                if ( config.getRetryDelayMillis() > 0 ) {
-                    try {
-                        Thread.sleep( config.getRetryDelayMillis() );
-                    } catch ( InterruptedException e ) {
-                        log.warn( "Interrupted while waiting to retry: " + e.getMessage() );
-                    }
-                }
+                backoff( getRetryDelay( retryCount, baseDelay ) );
+
+                if ( config.isEnableFailover() ) failover( clientRequest, triedEndpoints );
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the retry statistics for all requests that have passed through this filter.
+     */
+    public RetryStats getStats() {
+        return new RetryStats( requests.get(), retries.get(), budgetExhausted.get(), backoffMillis.get() );
+    }
+
+    /**
+     * Points the request at an endpoint that has not been tried yet and re-signs it.
+     */
+    protected void failover( ClientRequest clientRequest, Set<String> triedEndpoints ) {
+        URI[] endpoints = config.getEndpoints();
+        if ( endpoints == null || endpoints.length < 2 ) return;
+
+        URI uri = clientRequest.getURI();
+        triedEndpoints.add( endpointKey( uri ) );
+
+        List<URI> candidates = getUntriedEndpoints( endpoints, triedEndpoints );
+        if ( candidates.isEmpty() ) { // every endpoint has failed; start over
+            triedEndpoints.clear();
+            triedEndpoints.add( endpointKey( uri ) );
+            candidates = getUntriedEndpoints( endpoints, triedEndpoints );
+        }
+
+        URI[] candidateArray = candidates.toArray( new URI[candidates.size()] );
+        URI endpoint = config.getLoadBalancingAlgorithm().getNextEndpoint( candidateArray );
+        // some algorithms (i.e. sticky) may ignore the candidates
+        if ( triedEndpoints.contains( endpointKey( endpoint ) ) ) endpoint = candidates.get( 0 );
+
+        try {
+            clientRequest.setURI( new URI( endpoint.getScheme(), null, endpoint.getHost(), endpoint.getPort(),
+                                           uri.getPath(), uri.getQuery(), null ) );
+        } catch ( URISyntaxException e ) {
+            log.warn( "Could not fail over to " + endpoint + ": " + e.getMessage() );
+            return;
+        }
+        log.info( "Failing over from " + endpointKey( uri ) + " to " + endpointKey( endpoint ) );
+
+        // re-sign so the date is current after the backoff (the old signature must not be included in the new one)
+        clientRequest.getHeaders().remove( RestUtil.XHEADER_SIGNATURE );
+        AuthFilter.signRequest( clientRequest, config );
+    }
+
+    private List<URI> getUntriedEndpoints( URI[] endpoints, Set<String> triedEndpoints ) {
+        List<URI> untried = new ArrayList<URI>();
+        for ( URI endpoint : endpoints ) {
+            if ( !triedEndpoints.contains( endpointKey( endpoint ) ) ) untried.add( endpoint );
+        }
+        return untried;
+    }
+
+    private String endpointKey( URI uri ) {
+        return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    }
+
+    /**
+     * Returns the delay in milliseconds before the specified retry attempt (starting at 1).
+     */
+    protected long getRetryDelay( int retryCount ) {
+        return getRetryDelay( retryCount, config.getRetryDelayMillis() );
+    }
+
+    /**
+     * Returns the delay in milliseconds before the specified retry attempt (starting at 1), starting from
+     * <code>baseDelay</code>. With exponential backoff, a base delay of 0 is replaced by
+     * {@link #DEFAULT_BACKOFF_BASE_MS}.
+     */
+    protected long getRetryDelay( int retryCount, long baseDelay ) {
+        long delay = baseDelay;
+        if ( config.isExponentialBackoff() ) {
+            if ( delay <= 0 ) delay = DEFAULT_BACKOFF_BASE_MS;
+            delay <<= Math.min( retryCount - 1, 30 );
+            delay = Math.min( delay, config.getMaxRetryDelayMillis() );
+        }
+        if ( config.isRetryJitter() && delay > 0 ) {
+            synchronized ( random ) {
+                delay = (long) (random.nextDouble() * delay);
             }
         }
+        return delay;
+    }
+
+    private void backoff( long millis ) {
+        if ( millis <= 0 ) return;
+        try {
+            Thread.sleep( millis );
+        } catch ( InterruptedException e ) {
+            log.warn( "Interrupted while waiting to retry: " + e.getMessage() );
+        }
+        backoffMillis.addAndGet( millis );
     }
 }
@@ -0,0 +1,91 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.jersey;
+
+/**
+ * Cumulative retry statistics for a client, since it was created.
+ *
+ * @see AtmosApiClient#getRetryStats()
+ */
+public class RetryStats {
+    private long requests;
+    private long retries;
+    private long budgetExhausted;
+    private long backoffMillis;
+
+    public RetryStats( long requests, long retries, long budgetExhausted, long backoffMillis ) {
+        this.requests = requests;
+        this.retries = retries;
+        this.budgetExhausted = budgetExhausted;
+        this.backoffMillis = backoffMillis;
+    }
+
+    /**
+     * Returns the number of requests sent (not including retries).
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Returns the number of retry attempts made.
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * Returns the number of failed requests that would have been retried, but were not because the retry budget was
+     * spent.
+     */
+    public long getBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    /**
+     * Returns the total time in milliseconds spent waiting between retry attempts (across all threads).
+     */
+    public long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryStats{" +
+               "requests=" + requests +
+               ", retries=" + retries +
+               ", budgetExhausted=" + budgetExhausted +
+               ", backoffMillis=" + backoffMillis +
+               '}';
+    }
+}
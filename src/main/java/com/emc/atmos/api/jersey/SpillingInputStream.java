@@ -0,0 +1,214 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.jersey;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Makes any input stream replayable by recording everything read after {@link #mark(int)} is called. The first
+ * <code>memoryLimit</code> bytes are kept in memory; anything beyond that is spilled to a temp file (up to
+ * <code>spillLimit</code> bytes, or without limit if that is 0). {@link #reset()} replays the recorded data and then
+ * continues reading from the source. If the limits are exceeded, the recording is dropped and {@link #reset()} will
+ * throw an IOException, as with {@link java.io.BufferedInputStream}.
+ * <p/>
+ * The readlimit passed to {@link #mark(int)} is ignored in favor of the limits given to the constructor. Call
+ * {@link #release()} (or {@link #close()}) to delete the temp file when the stream is no longer needed.
+ */
+public class SpillingInputStream extends InputStream {
+    private InputStream source;
+    private int memoryLimit;
+    private long spillLimit;
+    private File spillDirectory;
+
+    private byte[] memory = new byte[0];
+    private int memorySize = 0;
+    private File spillFile;
+    private RandomAccessFile spill;
+    private long spillSize = 0;
+
+    private boolean marked = false;
+    private boolean overflowed = false;
+    private long position = 0; // offset of the next byte relative to the start of the recording
+    private long markPosition = 0;
+
+    /**
+     * @param source         the stream to read from
+     * @param memoryLimit    the number of bytes to keep in memory before spilling to disk
+     * @param spillLimit     the maximum number of bytes to spill to disk. 0 means no limit
+     * @param spillDirectory the directory in which to create the temp file. If null, the system temp directory is used
+     */
+    public SpillingInputStream( InputStream source, int memoryLimit, long spillLimit, File spillDirectory ) {
+        this.source = source;
+        this.memoryLimit = memoryLimit;
+        this.spillLimit = spillLimit;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int count = read( b, 0, 1 );
+        return count == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+        if ( len == 0 ) return 0;
+
+        long recorded = memorySize + spillSize;
+        if ( position < recorded ) { // replaying
+            int count;
+            if ( position < memorySize ) {
+                count = (int) Math.min( len, memorySize - position );
+                System.arraycopy( memory, (int) position, b, off, count );
+            } else {
+                count = (int) Math.min( len, recorded - position );
+                spill.seek( position - memorySize );
+                spill.readFully( b, off, count );
+            }
+            position += count;
+            return count;
+        }
+
+        int count = source.read( b, off, len );
+        if ( count > 0 ) {
+            if ( marked && !overflowed ) record( b, off, count );
+            position += count;
+        }
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        long recorded = memorySize + spillSize;
+        if ( position < recorded ) return (int) Math.min( Integer.MAX_VALUE, recorded - position );
+        return source.available();
+    }
+
+    /**
+     * Starts recording from the current position. If the stream is replaying recorded data, the recording is kept and
+     * only the mark is moved.
+     */
+    @Override
+    public synchronized void mark( int readlimit ) {
+        if ( position >= memorySize + spillSize ) {
+            // not replaying; start a new recording
+            memorySize = 0;
+            spillSize = 0;
+            position = 0;
+            overflowed = false;
+        }
+        markPosition = position;
+        marked = true;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if ( overflowed ) throw new IOException( "Stream exceeded the retry buffer limits and cannot be reset" );
+        if ( !marked ) throw new IOException( "Mark not set" );
+        position = markPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    /**
+     * Releases the recording (deleting the temp file, if any) without closing the source stream. The stream can no
+     * longer be reset.
+     */
+    public void release() {
+        memory = new byte[0];
+        memorySize = 0;
+        spillSize = 0;
+        marked = false;
+        deleteSpillFile();
+    }
+
+    @Override
+    public void close() throws IOException {
+        release();
+        source.close();
+    }
+
+    private void record( byte[] b, int off, int len ) throws IOException {
+        // memory first
+        int toMemory = Math.min( len, memoryLimit - memorySize );
+        if ( toMemory > 0 ) {
+            if ( memorySize + toMemory > memory.length ) {
+                int newLength = Math.min( memoryLimit, Math.max( memorySize + toMemory, memory.length * 2 ) );
+                byte[] newMemory = new byte[newLength];
+                System.arraycopy( memory, 0, newMemory, 0, memorySize );
+                memory = newMemory;
+            }
+            System.arraycopy( b, off, memory, memorySize, toMemory );
+            memorySize += toMemory;
+        }
+
+        // then disk
+        int toDisk = len - toMemory;
+        if ( toDisk > 0 ) {
+            if ( spillLimit > 0 && spillSize + toDisk > spillLimit ) {
+                overflowed = true;
+                release();
+                return;
+            }
+            if ( spill == null ) {
+                spillFile = File.createTempFile( "atmos-retry", ".tmp", spillDirectory );
+                spill = new RandomAccessFile( spillFile, "rw" );
+            }
+            spill.seek( spillSize );
+            spill.write( b, off + toMemory, toDisk );
+            spillSize += toDisk;
+        }
+    }
+
+    private void deleteSpillFile() {
+        if ( spill != null ) {
+            try {
+                spill.close();
+            } catch ( IOException e ) {
+                // ignore
+            }
+            spill = null;
+        }
+        if ( spillFile != null ) {
+            spillFile.delete();
+            spillFile = null;
+        }
+    }
+}
@@ -41,15 +41,20 @@ import java.lang.reflect.Type;
  * Subclasses should provide a default constructor, which calls super() with an instance of the underlying writer
  * implementation to be wrapped.
  * <p/>
- * XXX: this is inefficient and should be replaced by a different mechanism.  However, it is the simplest solution to
- * the apache client's insistence on using chunked encoding for all requests with a size of -1 and Jersey's insistence
- * on returning -1 from all message body providers (as well as not allowing users to override the content-length
- * header).
+ * The apache client insists on using chunked encoding for all requests with a size of -1 and Jersey insists on
+ * returning -1 from all message body providers (as well as not allowing users to override the content-length header),
+ * so the entity is serialized in getSize() to measure it. Jersey calls getSize() and then writeTo() for a request on
+ * the same thread, so the serialized bytes are kept for that thread and written directly in writeTo() rather than
+ * serializing the entity a second time. Nothing is shared between threads, so no locking is necessary.
+ * <p/>
+ * If writeTo() never runs for a measured entity (i.e. the connection fails or a filter aborts the request), its
+ * serialized form stays attached to the thread until the next call to getSize() or writeTo() on that thread. At most
+ * one entity per thread is retained this way.
  */
 public class MeasuredMessageBodyWriter<T> implements MessageBodyWriter<T> {
+    private final ThreadLocal<Measured> measured = new ThreadLocal<Measured>();
+
     protected MessageBodyWriter<T> wrapped;
-    private IOException delayedIOException;
-    private WebApplicationException delayedWebAppException;
 
     public MeasuredMessageBodyWriter( MessageBodyWriter<T> wrapped ) {
         this.wrapped = wrapped;
@@ -68,32 +73,66 @@ public class MeasuredMessageBodyWriter<T> implements MessageBodyWriter<T> {
                          MediaType mediaType,
                          MultivaluedMap<String, Object> httpHeaders,
                          OutputStream entityStream ) throws IOException, WebApplicationException {
-        if ( delayedIOException != null ) throw delayedIOException;
-        if ( delayedWebAppException != null ) throw delayedWebAppException;
-        entityStream.write( getBuffer( t, type, genericType, annotations, mediaType, httpHeaders ) );
+        Measured m = measured.get();
+        measured.remove();
+
+        // not measured on this thread (or measured for a different entity); serialize now
+        if ( m == null || m.entity != t ) m = measure( t, type, genericType, annotations, mediaType, httpHeaders );
+
+        if ( m.ioException != null ) throw m.ioException;
+        if ( m.webAppException != null ) throw m.webAppException;
+        entityStream.write( m.buffer );
     }
 
     @Override
     public long getSize( T t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType ) {
-        try {
-            return getBuffer( t, type, genericType, annotations, mediaType, null ).length;
-        } catch ( IOException e ) {
-            delayedIOException = e;
-        } catch ( WebApplicationException e ) {
-            delayedWebAppException = e;
-        }
-        return -1;
+        // drop anything left by a request that was never written, so it can be collected while this one is serialized
+        measured.remove();
+        Measured m = measure( t, type, genericType, annotations, mediaType, null );
+        measured.set( m );
+        return m.buffer == null ? -1 : m.buffer.length;
     }
 
-    protected synchronized byte[] getBuffer( T t,
-                                             Class<?> type,
-                                             Type genericType,
-                                             Annotation[] annotations,
-                                             MediaType mediaType,
-                                             MultivaluedMap<String, Object> httpHeaders )
+    protected byte[] getBuffer( T t,
+                                Class<?> type,
+                                Type genericType,
+                                Annotation[] annotations,
+                                MediaType mediaType,
+                                MultivaluedMap<String, Object> httpHeaders )
             throws IOException, WebApplicationException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         wrapped.writeTo( t, type, genericType, annotations, mediaType, httpHeaders, baos );
         return baos.toByteArray();
     }
+
+    private Measured measure( T t,
+                              Class<?> type,
+                              Type genericType,
+                              Annotation[] annotations,
+                              MediaType mediaType,
+                              MultivaluedMap<String, Object> httpHeaders ) {
+        Measured m = new Measured( t );
+        try {
+            m.buffer = getBuffer( t, type, genericType, annotations, mediaType, httpHeaders );
+        } catch ( IOException e ) {
+            m.ioException = e; // thrown from writeTo(), where Jersey expects it
+        } catch ( WebApplicationException e ) {
+            m.webAppException = e;
+        }
+        return m;
+    }
+
+    /**
+     * The serialized form of an entity (or the error raised while serializing it).
+     */
+    private static class Measured {
+        Object entity;
+        byte[] buffer;
+        IOException ioException;
+        WebApplicationException webAppException;
+
+        Measured( Object entity ) {
+            this.entity = entity;
+        }
+    }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2013-2016, EMC Corporation.
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * + Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ * + Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * + The name of EMC Corporation may not be used to endorse or promote
+ *   products derived from this software without specific prior written
+ *   permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.atmos.api.jersey.provider;
+
+import com.emc.atmos.api.RestUtil;
+import com.emc.atmos.api.multipart.MultipartStream;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Reads multipart responses as a {@link MultipartStream}. The entity stream is left open until the MultipartStream is
+ * closed.
+ */
+@Consumes({"multipart/byteranges", "multipart/mixed"})
+public class MultipartStreamReader implements MessageBodyReader<MultipartStream> {
+    @Override
+    public boolean isReadable( Class<?> type, Type genericType, Annotation annotations[], MediaType mediaType ) {
+        return MultipartStream.class.isAssignableFrom( type )
+               && RestUtil.TYPE_MULTIPART.equals( mediaType.getType() );
+    }
+
+    @Override
+    public MultipartStream readFrom( Class<MultipartStream> type,
+                                     Type genericType,
+                                     Annotation annotations[],
+                                     MediaType mediaType,
+                                     MultivaluedMap<String, String> httpHeaders,
+                                     InputStream entityStream ) throws IOException, WebApplicationException {
+        return new MultipartStream( entityStream, mediaType.getParameters().get( RestUtil.TYPE_PARAM_BOUNDARY ) );
+    }
+}
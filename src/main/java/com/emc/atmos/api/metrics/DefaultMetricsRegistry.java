@@ -0,0 +1,237 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.metrics;
+
+import com.emc.atmos.AtmosException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps request metrics in memory: latency histograms, error and retry counts and bytes transferred, in total, per
+ * {@link Operation} and per endpoint, plus failure counts per error code. Call {@link #registerMBean(String)} to
+ * expose them over JMX.
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry, DefaultMetricsRegistryMBean {
+    public static final String JMX_DOMAIN = "com.emc.atmos";
+
+    private final OperationMetrics total = new OperationMetrics();
+    private final Map<Operation, OperationMetrics> operations =
+            new EnumMap<Operation, OperationMetrics>( Operation.class );
+    private final ConcurrentMap<String, OperationMetrics> endpoints = new ConcurrentHashMap<String, OperationMetrics>();
+    private final ConcurrentMap<String, AtomicLong> errorCounts = new ConcurrentHashMap<String, AtomicLong>();
+    private ObjectName objectName;
+
+    public DefaultMetricsRegistry() {
+        // never modified after this, so safe to read concurrently
+        for ( Operation operation : Operation.values() ) {
+            operations.put( operation, new OperationMetrics() );
+        }
+    }
+
+    @Override
+    public void record( RequestMetric metric ) {
+        total.record( metric );
+        operations.get( metric.getOperation() ).record( metric );
+        if ( metric.getEndpoint() != null ) getEndpointMetrics( metric.getEndpoint() ).record( metric );
+        if ( metric.isFailed() ) increment( errorCounts, getErrorKey( metric ) );
+    }
+
+    /**
+     * Registers this registry with the platform MBean server as
+     * <code>com.emc.atmos:type=ClientMetrics,name=&lt;name&gt;</code> and returns the name it was registered under.
+     */
+    public synchronized ObjectName registerMBean( String name ) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName =
+                    new ObjectName( JMX_DOMAIN + ":type=ClientMetrics,name=" + ObjectName.quote( name ) );
+            server.registerMBean( this, objectName );
+            this.objectName = objectName;
+            return objectName;
+        } catch ( JMException e ) {
+            throw new AtmosException( "Could not register metrics MBean", e );
+        }
+    }
+
+    /**
+     * Removes this registry from the platform MBean server, if it was registered.
+     */
+    public synchronized void unregisterMBean() {
+        if ( objectName == null ) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
+        } catch ( JMException e ) {
+            throw new AtmosException( "Could not unregister metrics MBean", e );
+        } finally {
+            objectName = null;
+        }
+    }
+
+    /**
+     * Returns the metrics of all requests.
+     */
+    public OperationMetrics getTotal() {
+        return total;
+    }
+
+    public OperationMetrics getOperationMetrics( Operation operation ) {
+        return operations.get( operation );
+    }
+
+    /**
+     * Returns the metrics of each endpoint (scheme://host:port) that has been used.
+     */
+    public Map<String, OperationMetrics> getEndpointMetrics() {
+        return new TreeMap<String, OperationMetrics>( endpoints );
+    }
+
+    /**
+     * Returns the number of failures per Atmos error code, or per "HTTP &lt;status&gt;" for errors without an Atmos
+     * code, or "IO" for requests that received no response.
+     */
+    public Map<String, Long> getErrorCodeCounts() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for ( Map.Entry<String, AtomicLong> entry : errorCounts.entrySet() ) {
+            counts.put( entry.getKey(), entry.getValue().get() );
+        }
+        return counts;
+    }
+
+    @Override
+    public long getRequests() {
+        return total.getRequests();
+    }
+
+    @Override
+    public long getErrors() {
+        return total.getErrors();
+    }
+
+    @Override
+    public long getRetries() {
+        return total.getRetries();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return total.getBytesSent();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return total.getBytesReceived();
+    }
+
+    @Override
+    public String[] getOperationSummaries() {
+        List<String> summaries = new ArrayList<String>();
+        for ( Map.Entry<Operation, OperationMetrics> entry : operations.entrySet() ) {
+            if ( entry.getValue().getRequests() > 0 ) summaries.add( entry.getKey() + ": " + entry.getValue() );
+        }
+        return summaries.toArray( new String[summaries.size()] );
+    }
+
+    @Override
+    public String[] getEndpointSummaries() {
+        List<String> summaries = new ArrayList<String>();
+        for ( Map.Entry<String, OperationMetrics> entry : getEndpointMetrics().entrySet() ) {
+            summaries.add( entry.getKey() + ": " + entry.getValue() );
+        }
+        return summaries.toArray( new String[summaries.size()] );
+    }
+
+    @Override
+    public String[] getErrorCounts() {
+        List<String> counts = new ArrayList<String>();
+        for ( Map.Entry<String, Long> entry : getErrorCodeCounts().entrySet() ) {
+            counts.add( entry.getKey() + "=" + entry.getValue() );
+        }
+        return counts.toArray( new String[counts.size()] );
+    }
+
+    @Override
+    public double getLatencyMillis( String operation, double percentile ) {
+        OperationMetrics metrics = total;
+        if ( operation != null && operation.trim().length() > 0 )
+            metrics = operations.get( Operation.valueOf( operation.trim().toUpperCase( Locale.ENGLISH ) ) );
+        return metrics.getLatency().getValueAtPercentile( percentile ) / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        total.reset();
+        for ( OperationMetrics metrics : operations.values() ) {
+            metrics.reset();
+        }
+        endpoints.clear();
+        errorCounts.clear();
+    }
+
+    private OperationMetrics getEndpointMetrics( String endpoint ) {
+        OperationMetrics metrics = endpoints.get( endpoint );
+        if ( metrics == null ) {
+            OperationMetrics newMetrics = new OperationMetrics();
+            metrics = endpoints.putIfAbsent( endpoint, newMetrics );
+            if ( metrics == null ) metrics = newMetrics;
+        }
+        return metrics;
+    }
+
+    private String getErrorKey( RequestMetric metric ) {
+        if ( metric.getErrorCode() != 0 ) return "" + metric.getErrorCode();
+        if ( metric.getHttpStatus() != 0 ) return "HTTP " + metric.getHttpStatus();
+        return "IO";
+    }
+
+    private static void increment( ConcurrentMap<String, AtomicLong> counts, String key ) {
+        AtomicLong count = counts.get( key );
+        if ( count == null ) {
+            AtomicLong newCount = new AtomicLong();
+            count = counts.putIfAbsent( key, newCount );
+            if ( count == null ) count = newCount;
+        }
+        count.incrementAndGet();
+    }
+}
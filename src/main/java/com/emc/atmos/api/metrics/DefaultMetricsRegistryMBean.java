@@ -0,0 +1,75 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.metrics;
+
+/**
+ * JMX interface of {@link DefaultMetricsRegistry}. Latencies are in milliseconds.
+ */
+public interface DefaultMetricsRegistryMBean {
+    long getRequests();
+
+    long getErrors();
+
+    long getRetries();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    /**
+     * Returns a one-line summary (request count, latency percentiles, errors, retries and bytes) per operation type.
+     */
+    String[] getOperationSummaries();
+
+    /**
+     * Returns a one-line summary per endpoint.
+     */
+    String[] getEndpointSummaries();
+
+    /**
+     * Returns the number of failures per Atmos error code (or HTTP status, for errors without an Atmos code) as
+     * <code>code=count</code>.
+     */
+    String[] getErrorCounts();
+
+    /**
+     * Returns the latency at the given percentile (0-100) for an operation type (i.e. READ), or across all operations
+     * if the operation is null or empty.
+     */
+    double getLatencyMillis( String operation, double percentile );
+
+    /**
+     * Clears all metrics.
+     */
+    void reset();
+}
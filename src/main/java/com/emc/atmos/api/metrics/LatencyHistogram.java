@@ -0,0 +1,147 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with microsecond resolution and a bounded relative error, in the style of
+ * HdrHistogram. Values below 128us are counted exactly; above that, each power of two is split into 64 buckets, so a
+ * recorded value is accurate to within 1/64 (about 1.6%). Values up to {@link #MAX_TRACKABLE_MICROS} (one hour) are
+ * tracked in about 14KB; larger values are counted in the highest bucket.
+ */
+public class LatencyHistogram {
+    public static final long MAX_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros( 1 );
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray( indexOf( MAX_TRACKABLE_MICROS ) + 1 );
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records a latency in nanoseconds.
+     */
+    public void recordNanos( long nanos ) {
+        recordMicros( TimeUnit.NANOSECONDS.toMicros( nanos ) );
+    }
+
+    public void recordMicros( long micros ) {
+        if ( micros < 0 ) micros = 0;
+        counts.incrementAndGet( indexOf( Math.min( micros, MAX_TRACKABLE_MICROS ) ) );
+        count.incrementAndGet();
+        totalMicros.addAndGet( micros );
+        long max;
+        do {
+            max = maxMicros.get();
+        } while ( micros > max && !maxMicros.compareAndSet( max, micros ) );
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    public double getMeanMicros() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) totalMicros.get() / n;
+    }
+
+    /**
+     * Returns the value (in microseconds) at or below which the given percentage (0-100) of recorded values fall. The
+     * result is the upper bound of the bucket holding that value, capped at the maximum recorded value.
+     */
+    public long getValueAtPercentile( double percentile ) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for ( int i = 0; i < snapshot.length; i++ ) {
+            snapshot[i] = counts.get( i );
+            total += snapshot[i];
+        }
+        if ( total == 0 ) return 0;
+
+        long target = Math.max( 1, (long) Math.ceil( Math.min( percentile, 100 ) / 100 * total ) );
+        long seen = 0;
+        for ( int i = 0; i < snapshot.length; i++ ) {
+            seen += snapshot[i];
+            if ( seen >= target ) return Math.min( highestValueAt( i ), getMaxMicros() );
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently may be partially cleared.
+     */
+    public void reset() {
+        for ( int i = 0; i < counts.length(); i++ ) {
+            counts.set( i, 0 );
+        }
+        count.set( 0 );
+        totalMicros.set( 0 );
+        maxMicros.set( 0 );
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "count=%d, mean=%.1fms, p50=%.1fms, p90=%.1fms, p99=%.1fms, max=%.1fms", getCount(),
+                              getMeanMicros() / 1000, getValueAtPercentile( 50 ) / 1000.0,
+                              getValueAtPercentile( 90 ) / 1000.0, getValueAtPercentile( 99 ) / 1000.0,
+                              getMaxMicros() / 1000.0 );
+    }
+
+    static int indexOf( long value ) {
+        if ( value < SUB_BUCKET_COUNT ) return (int) value;
+        // shift the value so its top bits fall in [SUB_BUCKET_HALF, SUB_BUCKET_COUNT)
+        int shift = 63 - Long.numberOfLeadingZeros( value ) - (SUB_BUCKET_BITS - 1);
+        return (int) (shift * SUB_BUCKET_HALF + (value >>> shift));
+    }
+
+    static long lowestValueAt( int index ) {
+        if ( index < SUB_BUCKET_COUNT ) return index;
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return subBucket << shift;
+    }
+
+    static long highestValueAt( int index ) {
+        return lowestValueAt( index + 1 ) - 1;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.metrics;
+
+/**
+ * The measurements of a single request (including any retries), as passed to a {@link MetricsRegistry}.
+ */
+public class RequestMetric {
+    private Operation operation;
+    private String endpoint;
+    private long durationNanos;
+    private long bytesSent;
+    private long bytesReceived;
+    private int retries;
+    private int httpStatus;
+    private int errorCode;
+    private boolean failed;
+
+    public RequestMetric( Operation operation, String endpoint, long durationNanos, long bytesSent, long bytesReceived,
+                          int retries, int httpStatus, int errorCode, boolean failed ) {
+        this.operation = operation;
+        this.endpoint = endpoint;
+        this.durationNanos = durationNanos;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.retries = retries;
+        this.httpStatus = httpStatus;
+        this.errorCode = errorCode;
+        this.failed = failed;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Returns the endpoint (scheme://host:port) of the last attempt.
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Returns the time in nanoseconds from sending the request to receiving the response headers, including retries
+     * and the delays between them.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Returns the number of content bytes sent, or -1 if unknown.
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Returns the content length of the response, or -1 if unknown (i.e. a chunked response).
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Returns the HTTP status of the response, or 0 if no response was received.
+     */
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+
+    /**
+     * Returns the Atmos error code of a failed request, or 0 if there was none.
+     */
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Returns true if the request failed (an error response or no response at all).
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestMetric{" +
+               "operation=" + operation +
+               ", endpoint='" + endpoint + '\'' +
+               ", durationNanos=" + durationNanos +
+               ", bytesSent=" + bytesSent +
+               ", bytesReceived=" + bytesReceived +
+               ", retries=" + retries +
+               ", httpStatus=" + httpStatus +
+               ", errorCode=" + errorCode +
+               ", failed=" + failed +
+               '}';
+    }
+}
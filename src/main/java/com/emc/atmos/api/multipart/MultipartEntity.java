@@ -26,16 +26,12 @@
  */
 package com.emc.atmos.api.multipart;
 
-import com.emc.atmos.api.Range;
 import com.emc.util.StreamUtil;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Represents a multipart response entity.
@@ -43,75 +39,30 @@ import java.util.regex.Pattern;
 public class MultipartEntity extends ArrayList<MultipartPart> {
     private static final long serialVersionUID = -4788353053749563899L;
 
-    private static final Pattern PATTERN_CONTENT_TYPE = Pattern.compile( "^Content-Type: (.+)$" );
-    private static final Pattern PATTERN_CONTENT_RANGE = Pattern.compile( "^Content-Range: bytes (\\d+)-(\\d+)/(\\d+)$" );
-
     /**
      * Parses a multipart response body provided by an InputStream. Returns an instance of this class that represents
-     * the response. boundary may start with "--" or omit it.
+     * the response. boundary may start with "--" or omit it. Every part is read into memory; to process large parts,
+     * use {@link MultipartStream} instead.
      */
     public static MultipartEntity fromStream( InputStream is, String boundary ) throws IOException {
-        if ( boundary.startsWith( "--" ) ) boundary = boundary.substring( 2 );
-
         List<MultipartPart> parts = new ArrayList<MultipartPart>();
 
+        MultipartStream multipartStream = new MultipartStream( is, boundary );
         try {
-            while ( true ) {
-                String line = StreamUtil.readLine( is );
-
-                // there *may* be an additional CRLF before the first boundary
-                if ( "".equals( line ) ) line = StreamUtil.readLine( is );
-
-                // two dashes after the boundary means EOS
-                if ( ("--" + boundary + "--").equals( line ) ) break;
-
-                if ( !("--" + boundary).equals( line ) ) throw new MultipartException(
-                        "Parse error: expected [--" + boundary + "], instead got [" + line + "]" );
-
-                Matcher matcher;
-                String contentType = null;
-                int start = -1, end = 0, length = 0;
-                while ( !"".equals( line = StreamUtil.readLine( is ) ) ) {
-                    matcher = PATTERN_CONTENT_TYPE.matcher( line );
-                    if ( matcher.find() ) {
-                        contentType = matcher.group( 1 );
-                        continue;
-                    }
-
-                    matcher = PATTERN_CONTENT_RANGE.matcher( line );
-                    if ( matcher.find() ) {
-                        start = Integer.parseInt( matcher.group( 1 ) );
-                        end = Integer.parseInt( matcher.group( 2 ) );
-                        length = end - start + 1;
-                        // total = Integer.parseInt( matcher.group( 3 ) );
-                        continue;
-                    }
-
-                    throw new MultipartException( "Unrecognized header line: " + line );
-                }
+            MultipartStreamPart part;
+            while ( (part = multipartStream.nextPart()) != null ) {
+                if ( part.getLength() > Integer.MAX_VALUE )
+                    throw new MultipartException( "Part " + part.getContentRange() + " is too large to buffer; "
+                                                  + "use MultipartStream instead" );
 
-                if ( contentType == null )
-                    throw new MultipartException( "Parse error: No content-type specified in part" );
+                byte[] data = new byte[(int) part.getLength()];
+                if ( StreamUtil.readFully( part.getInputStream(), data, 0, data.length ) < data.length )
+                    throw new MultipartException( "Parse error: unexpected end of stream in part content" );
 
-                if ( start == -1 )
-                    throw new MultipartException( "Parse error: No content-range specified in part" );
-
-                // then the data of the part
-                byte[] data = new byte[length];
-                int read, count = 0;
-                while ( count < length ) {
-                    read = is.read( data, 0, length - count );
-                    count += read;
-                }
-
-                parts.add( new MultipartPart( contentType, new Range( start, end ), data ) );
-
-                // after each data block there should be a CRLF
-                if ( !"".equals( StreamUtil.readLine( is ) ) )
-                    throw new MultipartException( "Parse error: expected EOL before boundary" );
+                parts.add( new MultipartPart( part.getContentType(), part.getContentRange(), data ) );
             }
         } finally {
-            is.close();
+            multipartStream.close();
         }
 
         return new MultipartEntity( parts );
@@ -125,14 +76,18 @@ public class MultipartEntity extends ArrayList<MultipartPart> {
      * Convenience method that aggregates the bytes of all parts into one contiguous byte array.
      */
     public byte[] aggregateBytes() {
-        try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            for ( MultipartPart part : this ) {
-                baos.write( part.getData() );
-            }
-            return baos.toByteArray();
-        } catch ( IOException e ) {
-            throw new RuntimeException( "Unexpected error", e ); // unrecoverable
+        long total = 0;
+        for ( MultipartPart part : this ) {
+            total += part.getData().length;
+        }
+        if ( total > Integer.MAX_VALUE ) throw new MultipartException( "Parts are too large to aggregate" );
+
+        byte[] bytes = new byte[(int) total];
+        int offset = 0;
+        for ( MultipartPart part : this ) {
+            System.arraycopy( part.getData(), 0, bytes, offset, part.getData().length );
+            offset += part.getData().length;
         }
+        return bytes;
     }
 }
@@ -0,0 +1,280 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.multipart;
+
+import com.emc.atmos.api.Range;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pull-style reader for a multipart response body that does not buffer parts in memory. Call {@link #nextPart()} to
+ * advance to each part and read its content from {@link MultipartStreamPart#getInputStream()}; any content not read
+ * is skipped when the next part is requested. Ranges are 64-bit, so parts may be larger than 2GB.
+ * <p/>
+ * The underlying stream is read through a fixed-size window, so headers and boundaries are parsed without a read()
+ * call per byte and large reads of part content go straight to the underlying stream.
+ * <p/>
+ * Request this type from {@link com.emc.atmos.api.AtmosApi#readObject(com.emc.atmos.api.request.ReadObjectRequest,
+ * Class)} to stream a multi-range read. The response stays open until this object is closed, so always close it.
+ * <pre>
+ * MultipartStream multipart = atmos.readObject( request, MultipartStream.class ).getObject();
+ * try {
+ *     MultipartStreamPart part;
+ *     while ( (part = multipart.nextPart()) != null ) {
+ *         process( part.getContentRange(), part.getInputStream() );
+ *     }
+ * } finally {
+ *     multipart.close();
+ * }
+ * </pre>
+ */
+public class MultipartStream implements Closeable {
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final Pattern PATTERN_CONTENT_TYPE = Pattern.compile( "^Content-Type: (.+)$",
+                                                                         Pattern.CASE_INSENSITIVE );
+    private static final Pattern PATTERN_CONTENT_RANGE = Pattern.compile( "^Content-Range: bytes (\\d+)-(\\d+)/(\\d+)$",
+                                                                          Pattern.CASE_INSENSITIVE );
+
+    private InputStream in;
+    private String boundaryLine;
+    private String endLine;
+    private byte[] buffer;
+    private int position, limit;
+    private MultipartStreamPart currentPart;
+    private boolean finished;
+
+    /**
+     * @param in       the multipart body
+     * @param boundary the multipart boundary. may start with "--" or omit it
+     */
+    public MultipartStream( InputStream in, String boundary ) {
+        this( in, boundary, DEFAULT_BUFFER_SIZE );
+    }
+
+    public MultipartStream( InputStream in, String boundary, int bufferSize ) {
+        if ( boundary.startsWith( "--" ) ) boundary = boundary.substring( 2 );
+        this.in = in;
+        this.boundaryLine = "--" + boundary;
+        this.endLine = "--" + boundary + "--";
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Advances to the next part, skipping any unread content of the current part. Returns null when there are no more
+     * parts. The previous part's stream is no longer valid after this is called.
+     */
+    public MultipartStreamPart nextPart() throws IOException {
+        if ( finished ) return null;
+
+        if ( currentPart != null ) {
+            currentPart.getInputStream().skip( Long.MAX_VALUE );
+            currentPart = null;
+
+            // after each data block there should be a CRLF
+            if ( !"".equals( readLine() ) ) throw new MultipartException( "Parse error: expected EOL before boundary" );
+        }
+
+        String line = readLine();
+
+        // there *may* be an additional CRLF before the first boundary
+        if ( "".equals( line ) ) line = readLine();
+
+        // two dashes after the boundary means EOS
+        if ( endLine.equals( line ) ) {
+            finished = true;
+            return null;
+        }
+
+        if ( !boundaryLine.equals( line ) ) throw new MultipartException(
+                "Parse error: expected [" + boundaryLine + "], instead got [" + line + "]" );
+
+        Matcher matcher;
+        String contentType = null;
+        long start = -1, end = 0;
+        while ( !"".equals( line = readLine() ) ) {
+            if ( line == null ) throw new MultipartException( "Parse error: unexpected end of stream in part headers" );
+
+            matcher = PATTERN_CONTENT_TYPE.matcher( line );
+            if ( matcher.find() ) {
+                contentType = matcher.group( 1 );
+                continue;
+            }
+
+            matcher = PATTERN_CONTENT_RANGE.matcher( line );
+            if ( matcher.find() ) {
+                start = Long.parseLong( matcher.group( 1 ) );
+                end = Long.parseLong( matcher.group( 2 ) );
+                continue;
+            }
+
+            throw new MultipartException( "Unrecognized header line: " + line );
+        }
+
+        if ( contentType == null )
+            throw new MultipartException( "Parse error: No content-type specified in part" );
+
+        if ( start == -1 )
+            throw new MultipartException( "Parse error: No content-range specified in part" );
+
+        currentPart = new MultipartStreamPart( contentType, new Range( start, end ),
+                                               new PartInputStream( end - start + 1 ) );
+        return currentPart;
+    }
+
+    /**
+     * Closes the underlying stream (and the response it belongs to).
+     */
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        in.close();
+    }
+
+    /**
+     * Reads a line from the window, without the trailing LF (or CRLF). Returns null at the end of the stream.
+     */
+    private String readLine() throws IOException {
+        ByteArrayOutputStream spill = null;
+        while ( true ) {
+            if ( position == limit && !fill() ) {
+                if ( spill == null ) return null;
+                return toLine( spill.toByteArray(), spill.size() );
+            }
+
+            for ( int i = position; i < limit; i++ ) {
+                if ( buffer[i] == '\n' ) {
+                    String line;
+                    if ( spill == null ) {
+                        line = toLine( buffer, position, i - position );
+                    } else {
+                        spill.write( buffer, position, i - position );
+                        line = toLine( spill.toByteArray(), spill.size() );
+                    }
+                    position = i + 1;
+                    return line;
+                }
+            }
+
+            // line spans the window
+            if ( spill == null ) spill = new ByteArrayOutputStream();
+            spill.write( buffer, position, limit - position );
+            position = limit;
+            if ( spill.size() > MAX_LINE_LENGTH ) throw new MultipartException( "Parse error: line too long" );
+        }
+    }
+
+    private String toLine( byte[] bytes, int length ) throws IOException {
+        return toLine( bytes, 0, length );
+    }
+
+    private String toLine( byte[] bytes, int offset, int length ) throws IOException {
+        if ( length > 0 && bytes[offset + length - 1] == '\r' ) length--;
+        return new String( bytes, offset, length, "UTF-8" );
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read( buffer, 0, buffer.length );
+        if ( read <= 0 ) return false;
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    /**
+     * Bounded view of the current part's content. Closing it has no effect on the multipart stream.
+     */
+    private class PartInputStream extends InputStream {
+        private long remaining;
+
+        PartInputStream( long length ) {
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read( b, 0, 1 );
+            return (read < 0) ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len ) throws IOException {
+            if ( len == 0 ) return 0;
+            if ( remaining <= 0 ) return -1;
+            len = (int) Math.min( len, remaining );
+
+            int read;
+            if ( position < limit ) {
+                read = Math.min( len, limit - position );
+                System.arraycopy( buffer, position, b, off, read );
+                position += read;
+            } else if ( len >= buffer.length ) {
+                // large read; skip the window
+                read = in.read( b, off, len );
+            } else {
+                if ( !fill() ) throw new MultipartException( "Parse error: unexpected end of stream in part content" );
+                return read( b, off, len );
+            }
+
+            if ( read < 0 ) throw new MultipartException( "Parse error: unexpected end of stream in part content" );
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip( long n ) throws IOException {
+            long toSkip = Math.min( n, remaining ), skipped = 0;
+            while ( skipped < toSkip ) {
+                if ( position == limit && !fill() )
+                    throw new MultipartException( "Parse error: unexpected end of stream in part content" );
+                int count = (int) Math.min( toSkip - skipped, limit - position );
+                position += count;
+                skipped += count;
+            }
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min( remaining, limit - position );
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of reusable byte arrays, used for the transfer and chunk buffers in this library so that sustained uploads do
+ * not allocate a new large array for every request. Buffers are pooled in power-of-two size classes from 4KB up to
+ * {@link #getMaxPooledSize()}; a leased buffer may be larger than requested, so always track the length you asked for
+ * rather than using <code>buffer.length</code>. Requests larger than the max pooled size are simply allocated.
+ * <p/>
+ * Every leased buffer should be released in a finally block once nothing refers to it any more. A buffer that is never
+ * released is not a problem for the pool (it is just garbage collected), but a buffer that is released while still in
+ * use will be handed to someone else. To find either of these, enable {@link #setLeakDetection(boolean) leak
+ * detection}, which records where each outstanding buffer was leased and rejects buffers released twice.
+ * <p/>
+ * Outside of leak detection, the pool is lock-free. It is safe for use by any number of threads. Most code uses the
+ * shared {@link #getDefault() default pool}.
+ */
+public class BufferPool {
+    private static final Logger l4j = LoggerFactory.getLogger( BufferPool.class );
+
+    public static final int MIN_CLASS_SIZE = 4 * 1024;
+    public static final int DEFAULT_MAX_POOLED_SIZE = 16 * 1024 * 1024;
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 64 * 1024 * 1024;
+
+    private static volatile BufferPool defaultPool = new BufferPool();
+
+    /**
+     * Returns the pool shared by all clients in this JVM.
+     */
+    public static BufferPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * Replaces the shared pool (i.e. to change its limits or enable leak detection).
+     */
+    public static void setDefault( BufferPool pool ) {
+        if ( pool == null ) throw new IllegalArgumentException( "pool cannot be null" );
+        defaultPool = pool;
+    }
+
+    private int maxPooledSize;
+    private long maxRetainedBytes;
+    private Queue<byte[]>[] classes;
+    private AtomicLong retainedBytes = new AtomicLong();
+    private AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+    private AtomicLong releases = new AtomicLong(), discards = new AtomicLong();
+    private volatile boolean leakDetection;
+    private Map<byte[], Throwable> outstanding =
+            Collections.synchronizedMap( new IdentityHashMap<byte[], Throwable>() );
+
+    public BufferPool() {
+        this( DEFAULT_MAX_POOLED_SIZE, DEFAULT_MAX_RETAINED_BYTES );
+    }
+
+    /**
+     * @param maxPooledSize    the largest buffer size to pool (rounded up to a power of two)
+     * @param maxRetainedBytes the total size of idle buffers the pool will hold on to; buffers released beyond this are
+     *                         left for the garbage collector
+     */
+    @SuppressWarnings( {"unchecked", "rawtypes"} )
+    public BufferPool( int maxPooledSize, long maxRetainedBytes ) {
+        if ( maxPooledSize < MIN_CLASS_SIZE )
+            throw new IllegalArgumentException( "maxPooledSize must be at least " + MIN_CLASS_SIZE );
+        this.maxPooledSize = classSize( maxPooledSize );
+        this.maxRetainedBytes = maxRetainedBytes;
+        classes = new Queue[classIndex( this.maxPooledSize ) + 1];
+        for ( int i = 0; i < classes.length; i++ ) {
+            classes[i] = new ConcurrentLinkedQueue<byte[]>();
+        }
+    }
+
+    /**
+     * Returns a buffer of at least <code>minSize</code> bytes. The contents of the buffer are undefined.
+     */
+    public byte[] lease( int minSize ) {
+        byte[] buffer = null;
+        if ( minSize <= maxPooledSize ) {
+            int size = classSize( minSize );
+            buffer = classes[classIndex( size )].poll();
+            if ( buffer != null ) {
+                retainedBytes.addAndGet( -buffer.length );
+                hits.incrementAndGet();
+            } else {
+                buffer = new byte[size];
+                misses.incrementAndGet();
+            }
+        } else {
+            buffer = new byte[minSize];
+            misses.incrementAndGet();
+        }
+        if ( leakDetection ) outstanding.put( buffer, new Throwable( "buffer of " + buffer.length + " bytes leased" ) );
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The caller must not use the buffer (or any BufferSegment wrapping it) afterward.
+     * Buffers that were not leased from a pool are accepted if they are a pooled size, and ignored otherwise.
+     */
+    public void release( byte[] buffer ) {
+        if ( buffer == null ) return;
+        if ( leakDetection && outstanding.remove( buffer ) == null ) {
+            l4j.warn( "buffer released that is not leased (released twice?)", new Throwable( "released here" ) );
+            return;
+        }
+        releases.incrementAndGet();
+
+        int length = buffer.length;
+        if ( length < MIN_CLASS_SIZE || length > maxPooledSize || Integer.bitCount( length ) != 1 ) {
+            discards.incrementAndGet(); // not a pooled size
+            return;
+        }
+        if ( retainedBytes.addAndGet( length ) > maxRetainedBytes ) {
+            retainedBytes.addAndGet( -length );
+            discards.incrementAndGet();
+            return;
+        }
+        classes[classIndex( length )].offer( buffer );
+    }
+
+    /**
+     * Enables or disables leak detection. When enabled, the stack trace of each lease is kept until the buffer is
+     * released (see {@link #reportLeaks()}) and double releases are logged and ignored. This is expensive and intended
+     * for debugging only. Only buffers leased after this is enabled are tracked.
+     */
+    public void setLeakDetection( boolean leakDetection ) {
+        this.leakDetection = leakDetection;
+        if ( !leakDetection ) outstanding.clear();
+    }
+
+    public boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    /**
+     * Logs a warning, with the stack trace of the lease, for each buffer that is currently leased and returns the
+     * number of such buffers. Only meaningful when leak detection is enabled.
+     */
+    public int reportLeaks() {
+        List<Throwable> leases;
+        synchronized ( outstanding ) {
+            leases = new ArrayList<Throwable>( outstanding.values() );
+        }
+        for ( Throwable lease : leases ) {
+            l4j.warn( "buffer was not released", lease );
+        }
+        return leases.size();
+    }
+
+    public BufferPoolStats getStats() {
+        return new BufferPoolStats( hits.get(), misses.get(), releases.get(), discards.get(), retainedBytes.get(),
+                                    leakDetection ? outstanding.size() : -1 );
+    }
+
+    public int getMaxPooledSize() {
+        return maxPooledSize;
+    }
+
+    public long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    private static int classSize( int size ) {
+        if ( size <= MIN_CLASS_SIZE ) return MIN_CLASS_SIZE;
+        return Integer.highestOneBit( size - 1 ) << 1;
+    }
+
+    private static int classIndex( int classSize ) {
+        return Integer.numberOfTrailingZeros( classSize ) - Integer.numberOfTrailingZeros( MIN_CLASS_SIZE );
+    }
+}
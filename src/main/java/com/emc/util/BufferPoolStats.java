@@ -0,0 +1,112 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.util;
+
+/**
+ * Cumulative statistics for a {@link BufferPool}, since it was created.
+ *
+ * @see BufferPool#getStats()
+ */
+public class BufferPoolStats {
+    private long hits;
+    private long misses;
+    private long releases;
+    private long discards;
+    private long retainedBytes;
+    private int outstanding;
+
+    public BufferPoolStats( long hits, long misses, long releases, long discards, long retainedBytes,
+                            int outstanding ) {
+        this.hits = hits;
+        this.misses = misses;
+        this.releases = releases;
+        this.discards = discards;
+        this.retainedBytes = retainedBytes;
+        this.outstanding = outstanding;
+    }
+
+    /**
+     * Returns the number of leases served from an idle pooled buffer.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of leases that had to allocate a new buffer.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of buffers released.
+     */
+    public long getReleases() {
+        return releases;
+    }
+
+    /**
+     * Returns the number of released buffers that were not kept, either because they were not a pooled size or because
+     * the pool already retained its maximum.
+     */
+    public long getDiscards() {
+        return discards;
+    }
+
+    /**
+     * Returns the total size of the idle buffers currently held by the pool.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * Returns the number of buffers currently leased, or -1 if leak detection is not enabled.
+     */
+    public int getOutstanding() {
+        return outstanding;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPoolStats{" +
+               "hits=" + hits +
+               ", misses=" + misses +
+               ", releases=" + releases +
+               ", discards=" + discards +
+               ", retainedBytes=" + retainedBytes +
+               ", outstanding=" + outstanding +
+               '}';
+    }
+}
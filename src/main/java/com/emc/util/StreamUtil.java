@@ -42,18 +42,18 @@ public class StreamUtil {
     }
 
     public static byte[] readAsBytes( InputStream in ) throws IOException {
+        byte[] buffer = BufferPool.getDefault().lease( 4096 );
         try {
-            byte[] buffer = new byte[4096];
-
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
             int c = 0;
-            while ( (c = in.read( buffer )) != -1 ) {
+            while ( (c = in.read( buffer, 0, 4096 )) != -1 ) {
                 baos.write( buffer, 0, c );
             }
             baos.close();
 
             return baos.toByteArray();
         } finally {
+            BufferPool.getDefault().release( buffer );
             if ( in != null ) {
                 in.close();
             }
@@ -84,19 +84,37 @@ public class StreamUtil {
     }
 
     public static long copy( InputStream is, OutputStream os, long maxBytes ) throws IOException {
-        byte[] buffer = new byte[1024 * 64]; // 64k buffer
+        int bufferSize = 1024 * 64; // 64k buffer
+        byte[] buffer = BufferPool.getDefault().lease( bufferSize );
         long count = 0;
         int read = 0, maxRead;
 
-        while ( count < maxBytes ) {
-            maxRead = (int) Math.min( (long) buffer.length, maxBytes - count );
-            if ( -1 == (read = is.read( buffer, 0, maxRead )) ) break;
-            os.write( buffer, 0, read );
-            count += read;
+        try {
+            while ( count < maxBytes ) {
+                maxRead = (int) Math.min( (long) bufferSize, maxBytes - count );
+                if ( -1 == (read = is.read( buffer, 0, maxRead )) ) break;
+                os.write( buffer, 0, read );
+                count += read;
+            }
+        } finally {
+            BufferPool.getDefault().release( buffer );
         }
         return count;
     }
 
+    /**
+     * Reads from the input stream until <code>length</code> bytes have been read or the end of the stream is reached.
+     * Returns the number of bytes read, which is less than <code>length</code> only at the end of the stream.
+     */
+    public static int readFully( InputStream in, byte[] buffer, int offset, int length ) throws IOException {
+        int total = 0, read;
+        while ( total < length ) {
+            if ( -1 == (read = in.read( buffer, offset + total, length - total )) ) break;
+            total += read;
+        }
+        return total;
+    }
+
     private StreamUtil() {
     }
 }
@@ -0,0 +1,151 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.AtmosConfig;
+import com.emc.atmos.api.jersey.AdaptiveConcurrencyFilter;
+import com.sun.jersey.api.client.*;
+import com.sun.jersey.core.header.InBoundHeaders;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AdaptiveConcurrencyFilterTest {
+    private static final URI ENDPOINT = URI.create( "http://node1:9022" );
+
+    private AtmosConfig config;
+    private AdaptiveConcurrencyFilter filter;
+    private Client client;
+    private volatile RuntimeException nextError;
+    private volatile CountDownLatch block;
+
+    @Before
+    public void setUp() {
+        config = new AtmosConfig();
+        config.setMaxConnectionsPerEndpoint( 8 );
+        config.setAdaptiveConcurrencyTimeoutMillis( 200 );
+        filter = new AdaptiveConcurrencyFilter( config );
+        client = new Client( new ClientHandler() {
+            @Override
+            public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+                try {
+                    if ( block != null ) block.await( 5, TimeUnit.SECONDS );
+                } catch ( InterruptedException e ) {
+                    throw new ClientHandlerException( e );
+                }
+                RuntimeException error = nextError;
+                nextError = null;
+                if ( error != null ) throw error;
+                return new ClientResponse( 200, new InBoundHeaders(), new ByteArrayInputStream( new byte[0] ),
+                                           client.getMessageBodyWorkers() );
+            }
+        } );
+        client.addFilter( filter );
+    }
+
+    @Test
+    public void testDecreaseAndRecover() {
+        send( null );
+        Assert.assertEquals( 8, (int) filter.getLimits().get( ENDPOINT ) );
+
+        send( new AtmosException( "busy", 500, 1040 ) );
+        Assert.assertEquals( 4, (int) filter.getLimits().get( ENDPOINT ) );
+        send( new AtmosException( "unavailable", 503 ) );
+        Assert.assertEquals( 2, (int) filter.getLimits().get( ENDPOINT ) );
+
+        // other errors don't affect the limit
+        send( new AtmosException( "not found", 404, 1003 ) );
+        Assert.assertEquals( 2, (int) filter.getLimits().get( ENDPOINT ) );
+
+        // additive increase: +1/limit per success
+        for ( int i = 0; i < 3; i++ ) send( null ); // 2.5, 2.9, 3.24
+        Assert.assertEquals( 3, (int) filter.getLimits().get( ENDPOINT ) );
+        for ( int i = 0; i < 100; i++ ) send( null );
+        Assert.assertEquals( 8, (int) filter.getLimits().get( ENDPOINT ) );
+    }
+
+    @Test
+    public void testQueueTimeout() throws Exception {
+        for ( int i = 0; i < 3; i++ ) send( new AtmosException( "busy", 500, 1040 ) );
+        Assert.assertEquals( 1, (int) filter.getLimits().get( ENDPOINT ) );
+
+        // occupy the only slot
+        block = new CountDownLatch( 1 );
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                send( null );
+            }
+        };
+        thread.start();
+        Thread.sleep( 50 );
+
+        try {
+            send( null );
+            Assert.fail( "request should have timed out waiting for a slot" );
+        } catch ( AtmosException e ) {
+            Assert.assertTrue( e.getMessage().contains( "Timed out" ) );
+        }
+
+        // a queued request proceeds as soon as the slot is released
+        final CountDownLatch release = block;
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep( 50 );
+                } catch ( InterruptedException e ) {
+                    // ignore
+                }
+                release.countDown();
+            }
+        }.start();
+        send( null );
+        thread.join();
+    }
+
+    private void send( RuntimeException error ) {
+        nextError = error;
+        try {
+            client.resource( ENDPOINT + "/rest/objects" ).get( ClientResponse.class );
+        } catch ( AtmosException e ) {
+            if ( error == null ) throw e;
+        }
+    }
+}
@@ -33,6 +33,7 @@ import com.emc.atmos.api.bean.*;
 import com.emc.atmos.api.bean.adapter.Iso8601Adapter;
 import com.emc.atmos.api.jersey.AtmosApiBasicClient;
 import com.emc.atmos.api.jersey.AtmosApiClient;
+import com.emc.atmos.api.jersey.ConnectionPoolStats;
 import com.emc.atmos.api.multipart.MultipartEntity;
 import com.emc.atmos.api.request.*;
 import com.emc.atmos.util.AtmosClientFactory;
@@ -3116,6 +3117,28 @@ public class AtmosApiClientTest {
         }
     }
 
+    @Test
+    public void testSharedConnectionPool() throws Exception {
+        config.setEnableExpect100Continue( true );
+        AtmosApiClient client = new AtmosApiClient( config );
+        try {
+            // alternate Expect: 100-continue writes with plain reads; both should reuse the same pooled connection
+            for ( int i = 0; i < 10; i++ ) {
+                CreateObjectRequest request = new CreateObjectRequest().content( new RandomInputStream( 5 ) )
+                                                                       .contentLength( 5 );
+                ObjectId oid = client.createObject( request ).getObjectId();
+                cleanup.add( oid );
+                client.readObject( oid, byte[].class );
+            }
+
+            ConnectionPoolStats stats = client.getTotalConnectionPoolStats();
+            Assert.assertEquals( "connections were not released", 0, stats.getLeased() );
+            Assert.assertTrue( "connections were not shared between request types", stats.getAvailable() <= 1 );
+        } finally {
+            client.destroy();
+        }
+    }
+
     @Test
     public void testMultiThreadedBufferedWriter() throws Exception {
         int threadCount = 20;
@@ -0,0 +1,117 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.AtmosApi;
+import com.emc.atmos.api.AtmosAsyncApiClient;
+import com.emc.atmos.api.ObjectId;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class AtmosAsyncApiClientTest {
+    private static final ObjectId OBJECT_ID = new ObjectId( "4ef49feaa106904c04ef4a41de08a804f4e97d70e7ac" );
+
+    private CountDownLatch latch;
+    private AtmosAsyncApiClient async;
+
+    @Before
+    public void setUp() {
+        latch = new CountDownLatch( 0 );
+        async = new AtmosAsyncApiClient( stubApi(), 4 );
+    }
+
+    @After
+    public void tearDown() {
+        async.shutdown();
+    }
+
+    @Test
+    public void testResult() throws Exception {
+        Assert.assertEquals( OBJECT_ID, async.createObject( "hello", "text/plain" ).get( 5, TimeUnit.SECONDS ) );
+        Assert.assertNull( async.delete( OBJECT_ID ).get( 5, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void testException() throws Exception {
+        try {
+            async.getObjectInfo( OBJECT_ID ).get( 5, TimeUnit.SECONDS );
+            Assert.fail( "exception not propagated" );
+        } catch ( ExecutionException e ) {
+            Assert.assertTrue( e.getCause() instanceof AtmosException );
+            Assert.assertEquals( 1003, ((AtmosException) e.getCause()).getErrorCode() );
+        }
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        // each call blocks until all 4 are running, so this only completes if they run in parallel
+        latch = new CountDownLatch( 4 );
+        List<Future<ObjectId>> futures = new ArrayList<Future<ObjectId>>();
+        for ( int i = 0; i < 4; i++ ) {
+            futures.add( async.createObject( "hello", "text/plain" ) );
+        }
+        for ( Future<ObjectId> future : futures ) {
+            Assert.assertEquals( OBJECT_ID, future.get( 5, TimeUnit.SECONDS ) );
+        }
+    }
+
+    private AtmosApi stubApi() {
+        return (AtmosApi) Proxy.newProxyInstance( AtmosApi.class.getClassLoader(), new Class[]{AtmosApi.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+                        if ( "createObject".equals( method.getName() ) ) {
+                            latch.countDown();
+                            if ( !latch.await( 5, TimeUnit.SECONDS ) ) throw new RuntimeException( "timed out" );
+                            return OBJECT_ID;
+                        }
+                        if ( "getObjectInfo".equals( method.getName() ) )
+                            throw new AtmosException( "not found", 404, 1003 );
+                        return null;
+                    }
+                } );
+    }
+}
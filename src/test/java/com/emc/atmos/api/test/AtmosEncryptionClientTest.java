@@ -354,6 +354,44 @@ public class AtmosEncryptionClientTest {
                 objectData.get(TransformConstants.META_ENCRYPTION_META_SIG).getValue());
     }
     
+    @Test
+    public void testCreateEncryptStreamPipelined() throws Exception {
+        AtmosEncryptionClient eclient = getBasicEncryptionClient();
+        eclient.setBufferSize(256*1024);
+        eclient.setUploadThreads(4);
+
+        // Get some data to encrypt.
+        InputStream classin = this.getClass().getClassLoader()
+                .getResourceAsStream("uncompressed.txt");
+
+        ObjectId id = eclient.createObject(classin, "text/plain");
+        cleanup.add(id);
+
+        classin.close();
+
+        // Read back and test
+        ReadObjectRequest ror = new ReadObjectRequest();
+        ror.setIdentifier(id);
+        ReadObjectResponse<byte[]> resp = eclient.readObject(ror, byte[].class);
+        Map<String, Metadata> objectData = resp.getMetadata().getMetadata();
+
+        assertEquals("Uncompressed digest incorrect",
+                "027e997e6b1dfc97b93eb28dc9a6804096d85873",
+                objectData.get(TransformConstants.META_ENCRYPTION_UNENC_SHA1).getValue());
+        assertEquals("Uncompressed size incorrect", 2516125, resp.getObject().length);
+
+        // Overwrite with a pipelined update
+        classin = this.getClass().getClassLoader().getResourceAsStream("uncompressed.txt");
+        eclient.updateObject(id, classin);
+        classin.close();
+
+        resp = eclient.readObject(ror, byte[].class);
+        assertEquals("Uncompressed digest incorrect",
+                "027e997e6b1dfc97b93eb28dc9a6804096d85873",
+                resp.getMetadata().getMetadata().get(TransformConstants.META_ENCRYPTION_UNENC_SHA1).getValue());
+        assertEquals("Uncompressed size incorrect", 2516125, resp.getObject().length);
+    }
+
     // Test creating a compressed and encrypted object
     @Test
     public void testCreateEncryptCompress() throws Exception {
@@ -557,8 +595,8 @@ public class AtmosEncryptionClientTest {
     }
 
     
-    // Test partial read (should fail)
-    @Test(expected=UnsupportedOperationException.class)
+    // Test partial read
+    @Test
     public void testPartialRead() throws Exception {
         AtmosEncryptionClient eclient = getKeystoreEncryptionClient(oldKeyAlias);
         
@@ -567,6 +605,20 @@ public class AtmosEncryptionClientTest {
         ObjectId id = eclient.createObject(content, "text/plain");
         cleanup.add(id);
         
+        // Partial read
+        assertEquals("Wrong content", "e", new String(eclient.readObject(id, new Range(1, 1), byte[].class), "UTF-8"));
+    }
+    
+    // Test partial read of a compressed object (should fail)
+    @Test(expected=UnsupportedOperationException.class)
+    public void testPartialReadCompressed() throws Exception {
+        AtmosEncryptionClient eclient = getCompressionClient();
+        
+        String content = "Hello World!";
+        
+        ObjectId id = eclient.createObject(content, "text/plain");
+        cleanup.add(id);
+        
         // Partial read
         eclient.readObject(id, new Range(1, 1), byte[].class);
     }
@@ -0,0 +1,102 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.util.BufferPool;
+import com.emc.util.BufferPoolStats;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferPoolTest {
+    @Test
+    public void testSizeClasses() {
+        BufferPool pool = new BufferPool();
+        Assert.assertEquals( 4096, pool.lease( 1 ).length );
+        Assert.assertEquals( 4096, pool.lease( 4096 ).length );
+        Assert.assertEquals( 8192, pool.lease( 4097 ).length );
+        Assert.assertEquals( 4 * 1024 * 1024, pool.lease( 4 * 1024 * 1024 ).length );
+
+        // larger than the max pooled size is allocated exactly
+        int large = pool.getMaxPooledSize() + 1;
+        Assert.assertEquals( large, pool.lease( large ).length );
+    }
+
+    @Test
+    public void testReuse() {
+        BufferPool pool = new BufferPool();
+        byte[] buffer = pool.lease( 64 * 1024 );
+        pool.release( buffer );
+        Assert.assertSame( buffer, pool.lease( 64 * 1024 ) );
+        Assert.assertNotSame( buffer, pool.lease( 64 * 1024 - 100 ) ); // still leased
+
+        BufferPoolStats stats = pool.getStats();
+        Assert.assertEquals( 1, stats.getHits() );
+        Assert.assertEquals( 2, stats.getMisses() );
+        Assert.assertEquals( 1, stats.getReleases() );
+        Assert.assertEquals( 0, stats.getRetainedBytes() );
+        Assert.assertEquals( -1, stats.getOutstanding() );
+    }
+
+    @Test
+    public void testRetainedLimit() {
+        BufferPool pool = new BufferPool( 64 * 1024, 100 * 1024 );
+        byte[] b1 = pool.lease( 64 * 1024 ), b2 = pool.lease( 64 * 1024 );
+        pool.release( b1 );
+        pool.release( b2 ); // over the limit
+        pool.release( new byte[1000] ); // not a pooled size
+
+        BufferPoolStats stats = pool.getStats();
+        Assert.assertEquals( 64 * 1024, stats.getRetainedBytes() );
+        Assert.assertEquals( 2, stats.getDiscards() );
+        Assert.assertSame( b1, pool.lease( 64 * 1024 ) );
+        Assert.assertNotSame( b2, pool.lease( 64 * 1024 ) );
+    }
+
+    @Test
+    public void testLeakDetection() {
+        BufferPool pool = new BufferPool();
+        pool.setLeakDetection( true );
+        byte[] b1 = pool.lease( 10000 );
+        pool.lease( 10000 );
+        Assert.assertEquals( 2, pool.getStats().getOutstanding() );
+
+        pool.release( b1 );
+        Assert.assertEquals( 1, pool.reportLeaks() );
+
+        // a second release is ignored, so the buffer can't be handed out twice
+        pool.release( b1 );
+        Assert.assertEquals( 1, pool.getStats().getReleases() );
+        Assert.assertSame( b1, pool.lease( 10000 ) );
+        Assert.assertNotSame( b1, pool.lease( 10000 ) );
+    }
+}
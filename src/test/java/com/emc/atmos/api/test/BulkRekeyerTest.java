@@ -0,0 +1,204 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.api.ObjectId;
+import com.emc.atmos.api.ObjectIdentifier;
+import com.emc.atmos.api.bean.Metadata;
+import com.emc.atmos.api.encryption.AtmosEncryptionClient;
+import com.emc.atmos.api.encryption.BulkRekeyer;
+import com.emc.atmos.api.encryption.EncryptionConfig;
+import com.emc.atmos.api.encryption.RekeyProgress;
+import com.emc.atmos.api.request.CreateObjectRequest;
+import com.emc.atmos.util.MemoryAtmosApi;
+import com.emc.vipr.transform.TransformConstants;
+import com.emc.vipr.transform.encryption.KeyUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+public class BulkRekeyerTest {
+    private static final String TAG = "rekeytest";
+    private static final int OBJECT_COUNT = 50;
+
+    private KeyPair masterKey;
+    private MemoryAtmosApi memory;
+    private AtmosEncryptionClient eclient;
+    private List<ObjectId> ids = new ArrayList<ObjectId>();
+    private File checkpointFile;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties keyprops = new Properties();
+        keyprops.load( getClass().getClassLoader().getResourceAsStream( "keys.properties" ) );
+        masterKey = KeyUtils.rsaKeyPairFromBase64( keyprops.getProperty( "masterkey.public" ),
+                                                   keyprops.getProperty( "masterkey.private" ) );
+        KeyPair oldKey = KeyUtils.rsaKeyPairFromBase64( keyprops.getProperty( "oldkey.public" ),
+                                                        keyprops.getProperty( "oldkey.private" ) );
+
+        memory = new MemoryAtmosApi();
+        AtmosEncryptionClient oldClient = new AtmosEncryptionClient(
+                memory.getApi(), new EncryptionConfig( oldKey, new HashSet<KeyPair>(), null, 128 ), null );
+        for ( int i = 0; i < OBJECT_COUNT; i++ ) {
+            CreateObjectRequest request = new CreateObjectRequest().content( "object " + i )
+                                                                   .userMetadata( new Metadata( TAG, "", true ) );
+            ids.add( oldClient.createObject( request ).getObjectId() );
+        }
+
+        eclient = new AtmosEncryptionClient(
+                memory.getApi(), new EncryptionConfig( masterKey, Collections.singleton( oldKey ), null, 128 ), null );
+        checkpointFile = File.createTempFile( "rekey", ".checkpoint" );
+        checkpointFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        checkpointFile.delete();
+    }
+
+    @Test
+    public void testRekeyTag() throws Exception {
+        // an unencrypted object is skipped
+        memory.getApi().createObject( new CreateObjectRequest().content( "plain" )
+                                                               .userMetadata( new Metadata( TAG, "", true ) ) );
+
+        BulkRekeyer rekeyer = new BulkRekeyer( eclient );
+        rekeyer.setThreads( 4 );
+        RekeyProgress progress = rekeyer.rekeyTag( TAG );
+        Assert.assertEquals( OBJECT_COUNT + 1, progress.getPosition() );
+        Assert.assertEquals( OBJECT_COUNT, progress.getRekeyed() );
+        Assert.assertEquals( 1, progress.getSkipped() );
+        Assert.assertEquals( 0, progress.getFailed() );
+        Assert.assertNull( rekeyer.getProgress() );
+
+        String masterKeyId = KeyUtils.getRsaPublicKeyFingerprint( (RSAPublicKey) masterKey.getPublic(), null );
+        for ( ObjectId id : ids ) {
+            Assert.assertEquals( masterKeyId, memory.getMetadata( id ).get( TransformConstants.META_ENCRYPTION_KEY_ID )
+                                                    .getValue() );
+            Assert.assertTrue( eclient.readObject( id, String.class ).startsWith( "object " ) );
+        }
+
+        // second run skips objects using the current key without reading their metadata
+        int metadataReads = memory.getCalls( "getUserMetadata" );
+        progress = rekeyer.rekeyTag( TAG );
+        Assert.assertEquals( 0, progress.getRekeyed() );
+        Assert.assertEquals( OBJECT_COUNT + 1, progress.getSkipped() );
+        Assert.assertEquals( metadataReads + 1, memory.getCalls( "getUserMetadata" ) ); // only the plain object
+    }
+
+    @Test
+    public void testRekeyFile() throws Exception {
+        File idFile = File.createTempFile( "rekey", ".ids" );
+        try {
+            Writer writer = new OutputStreamWriter( new FileOutputStream( idFile ), "UTF-8" );
+            writer.write( "# objects to rekey\n\n" );
+            for ( ObjectId id : ids ) {
+                writer.write( id + "\n" );
+            }
+            writer.write( new ObjectId( "doesnotexist" ) + "\n" );
+            writer.close();
+
+            RekeyProgress progress = new BulkRekeyer( eclient ).rekeyFile( idFile );
+            Assert.assertEquals( OBJECT_COUNT, progress.getRekeyed() );
+            Assert.assertEquals( 1, progress.getFailed() );
+        } finally {
+            idFile.delete();
+        }
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        BulkRekeyer rekeyer = new BulkRekeyer( eclient );
+        rekeyer.setThreads( 1 );
+        rekeyer.setCheckpointFile( checkpointFile );
+        rekeyer.setCheckpointInterval( 10 );
+
+        // the source fails partway through
+        final Iterator<ObjectId> failing = ids.subList( 0, 25 ).iterator();
+        try {
+            rekeyer.rekey( new Iterator<ObjectIdentifier>() {
+                @Override
+                public boolean hasNext() {
+                    if ( !failing.hasNext() ) throw new RuntimeException( "source failed" );
+                    return true;
+                }
+
+                @Override
+                public ObjectIdentifier next() {
+                    return failing.next();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            } );
+            Assert.fail( "source failure not thrown" );
+        } catch ( RuntimeException e ) {
+            Assert.assertEquals( "source failed", e.getMessage() );
+        }
+        Assert.assertTrue( checkpointFile.exists() );
+
+        int metadataReads = memory.getCalls( "getUserMetadata" );
+        RekeyProgress progress = rekeyer.rekey( ids.iterator() );
+        Assert.assertEquals( OBJECT_COUNT, progress.getPosition() );
+        Assert.assertEquals( OBJECT_COUNT, progress.getRekeyed() + progress.getSkipped() );
+        Assert.assertEquals( 0, progress.getFailed() );
+
+        // objects before the checkpoint were not touched again
+        int resumed = OBJECT_COUNT - (memory.getCalls( "getUserMetadata" ) - metadataReads);
+        Assert.assertTrue( "resumed at " + resumed, resumed > 0 && resumed <= 25 );
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCheckpointForOtherSource() throws Exception {
+        BulkRekeyer rekeyer = new BulkRekeyer( eclient );
+        rekeyer.setCheckpointFile( checkpointFile );
+        rekeyer.rekey( ids.iterator() );
+        rekeyer.rekeyTag( TAG );
+    }
+}
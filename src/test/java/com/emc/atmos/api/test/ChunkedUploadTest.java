@@ -0,0 +1,202 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.api.*;
+import com.emc.atmos.api.bean.Metadata;
+import com.emc.atmos.api.jersey.AtmosApiClient;
+import com.emc.atmos.api.request.CreateObjectRequest;
+import com.emc.atmos.api.request.UpdateObjectRequest;
+import com.emc.util.HttpUtil;
+import com.sun.jersey.api.client.*;
+import com.sun.jersey.core.header.InBoundHeaders;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ChunkedUploadTest {
+    private static final String OBJECT_ID = "4ef49feaa106904c04ef4a41de08a804f4e97d70e7ac";
+
+    private AtmosConfig config;
+    private AtmosApi api;
+    private ByteArrayOutputStream stored = new ByteArrayOutputStream();
+    private List<String> methods = new ArrayList<String>();
+    private List<URI> uris = new ArrayList<URI>();
+    private List<String> ranges = new ArrayList<String>();
+    private List<String> checksums = new ArrayList<String>();
+
+    @Before
+    public void setUp() throws Exception {
+        config = new AtmosConfig( "uid", "c2VjcmV0", new URI( "http://node1:9022" ) );
+        config.setChunkedUploadSize( 1000 );
+        final Client client = new Client( new ClientHandler() {
+            @Override
+            public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+                methods.add( request.getMethod() );
+                ranges.add( (String) request.getHeaders().getFirst( HttpUtil.HEADER_RANGE ) );
+                checksums.add( String.valueOf( request.getHeaders().getFirst( RestUtil.XHEADER_WSCHECKSUM ) ) );
+                uris.add( request.getURI() );
+                BufferSegment segment = (BufferSegment) request.getEntity();
+                if ( segment != null ) stored.write( segment.getBuffer(), segment.getOffset(), segment.getSize() );
+
+                InBoundHeaders headers = new InBoundHeaders();
+                headers.add( "Location", "/rest/objects/" + OBJECT_ID );
+                return new ClientResponse( 200, headers, new ByteArrayInputStream( new byte[0] ), null );
+            }
+        } );
+        api = new AtmosApiClient( config, client ) {
+        };
+    }
+
+    @Test
+    public void testCreate() throws Exception {
+        byte[] content = randomContent( 3500 );
+        CreateObjectRequest request = new CreateObjectRequest().content( new ByteArrayInputStream( content ) );
+        request.contentLength( -1 ).userMetadata( new Metadata( "foo", "bar", false ) );
+
+        Assert.assertEquals( new ObjectId( OBJECT_ID ), api.createObject( request ).getObjectId() );
+        Assert.assertArrayEquals( content, stored.toByteArray() );
+
+        Assert.assertEquals( 4, methods.size() );
+        Assert.assertEquals( "POST", methods.get( 0 ) );
+        Assert.assertNull( ranges.get( 0 ) );
+        for ( int i = 1; i < 4; i++ ) {
+            Assert.assertEquals( "PUT", methods.get( i ) );
+        }
+        Assert.assertEquals( "bytes=1000-1999", ranges.get( 1 ) );
+        Assert.assertEquals( "bytes=2000-2999", ranges.get( 2 ) );
+        Assert.assertEquals( "bytes=3000-3499", ranges.get( 3 ) );
+
+        // the request is left as it was
+        Assert.assertEquals( -1, request.getContentLength() );
+        Assert.assertTrue( request.getContent() instanceof InputStream );
+    }
+
+    @Test
+    public void testExactMultiple() throws Exception {
+        byte[] content = randomContent( 2000 );
+        api.createObject( new CreateObjectRequest().content( new ByteArrayInputStream( content ) )
+                                                   .contentLength( -1 ) );
+        Assert.assertArrayEquals( content, stored.toByteArray() );
+        Assert.assertEquals( 2, methods.size() );
+    }
+
+    @Test
+    public void testEmptyStream() throws Exception {
+        api.createObject( new CreateObjectRequest().content( new ByteArrayInputStream( new byte[0] ) )
+                                                   .contentLength( -1 ) );
+        Assert.assertEquals( 1, methods.size() );
+        Assert.assertEquals( 0, stored.size() );
+    }
+
+    @Test
+    public void testRangedUpdate() throws Exception {
+        byte[] content = randomContent( 1500 );
+        UpdateObjectRequest request = new UpdateObjectRequest().identifier( new ObjectId( OBJECT_ID ) );
+        request.range( new Range( 5000, 9999 ) ).content( new ByteArrayInputStream( content ) ).contentLength( -1 );
+        api.updateObject( request );
+
+        Assert.assertArrayEquals( content, stored.toByteArray() );
+        Assert.assertEquals( "bytes=5000-5999", ranges.get( 0 ) );
+        Assert.assertEquals( "bytes=6000-6499", ranges.get( 1 ) );
+        Assert.assertEquals( new Range( 5000, 9999 ), request.getRange() );
+    }
+
+    @Test
+    public void testEmptyRangedUpdate() throws Exception {
+        UpdateObjectRequest request = new UpdateObjectRequest().identifier( new ObjectId( OBJECT_ID ) );
+        request.range( new Range( 5000, 9999 ) ).content( new ByteArrayInputStream( new byte[0] ) ).contentLength( -1 );
+        api.updateObject( request );
+        Assert.assertEquals( 0, methods.size() );
+
+        // only the metadata is sent; without a range, an update would replace the content
+        request.content( new ByteArrayInputStream( new byte[0] ) ).userMetadata( new Metadata( "foo", "bar", false ) );
+        api.updateObject( request );
+        Assert.assertEquals( 1, methods.size() );
+        Assert.assertEquals( "metadata/user", uris.get( 0 ).getQuery() );
+        Assert.assertNull( ranges.get( 0 ) );
+        Assert.assertEquals( 0, stored.size() );
+        Assert.assertEquals( new Range( 5000, 9999 ), request.getRange() );
+    }
+
+    @Test
+    public void testWsChecksum() throws Exception {
+        byte[] content = randomContent( 2500 );
+        CreateObjectRequest request = new CreateObjectRequest().content( new ByteArrayInputStream( content ) );
+        request.contentLength( -1 ).wsChecksum( new RunningChecksum( ChecksumAlgorithm.SHA1 ) );
+        api.createObject( request );
+
+        RunningChecksum expected = new RunningChecksum( ChecksumAlgorithm.SHA1 );
+        expected.update( content, 0, 1000 );
+        Assert.assertEquals( expected.toString(), checksums.get( 0 ) );
+        expected.update( content, 1000, 1500 );
+        Assert.assertEquals( expected.toString(), checksums.get( 2 ) );
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        config.setPipelineChunkedUploads( true );
+        byte[] content = randomContent( 10 * 1000 + 1 );
+        api.createObject( new CreateObjectRequest().content( new SlowInputStream( content ) ).contentLength( -1 ) );
+
+        Assert.assertArrayEquals( content, stored.toByteArray() );
+        Assert.assertEquals( 11, methods.size() );
+        ((AtmosApiClient) api).destroy();
+    }
+
+    private byte[] randomContent( int size ) {
+        byte[] content = new byte[size];
+        new Random().nextBytes( content );
+        return content;
+    }
+
+    // returns a few bytes at a time so chunks take several reads to fill
+    private static class SlowInputStream extends ByteArrayInputStream {
+        SlowInputStream( byte[] buf ) {
+            super( buf );
+        }
+
+        @Override
+        public synchronized int read( byte[] b, int off, int len ) {
+            return super.read( b, off, Math.min( len, 97 ) );
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.CircuitBreakerAlgorithm;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+
+public class CircuitBreakerAlgorithmTest {
+    private static final URI[] ENDPOINTS = {
+            URI.create( "http://node1:8080" ), URI.create( "http://node2:8080" ), URI.create( "http://node3:8080" )
+    };
+
+    @Test
+    public void testRoundRobin() {
+        CircuitBreakerAlgorithm algorithm = new CircuitBreakerAlgorithm();
+        Set<URI> used = new HashSet<URI>();
+        for ( int i = 0; i < ENDPOINTS.length; i++ ) {
+            used.add( algorithm.getNextEndpoint( ENDPOINTS ) );
+        }
+        Assert.assertEquals( ENDPOINTS.length, used.size() );
+    }
+
+    @Test
+    public void testEjectAndRestore() throws Exception {
+        CircuitBreakerAlgorithm algorithm = new CircuitBreakerAlgorithm( 2, 200 );
+        URI bad = ENDPOINTS[1];
+
+        algorithm.endpointFailed( URI.create( "http://node2:8080/rest/objects" ) );
+        Assert.assertFalse( algorithm.isEjected( bad ) );
+        algorithm.endpointFailed( bad );
+        Assert.assertTrue( algorithm.isEjected( bad ) );
+
+        for ( int i = 0; i < 10; i++ ) {
+            Assert.assertNotEquals( bad, algorithm.getNextEndpoint( ENDPOINTS ) );
+        }
+
+        // after the cool-down, exactly one probe should be let through
+        Thread.sleep( 250 );
+        int probes = 0;
+        for ( int i = 0; i < 10; i++ ) {
+            if ( bad.equals( algorithm.getNextEndpoint( ENDPOINTS ) ) ) probes++;
+        }
+        Assert.assertEquals( 1, probes );
+
+        algorithm.endpointSucceeded( bad );
+        Assert.assertFalse( algorithm.isEjected( bad ) );
+    }
+
+    @Test
+    public void testFailedProbe() throws Exception {
+        CircuitBreakerAlgorithm algorithm = new CircuitBreakerAlgorithm( 1, 200 );
+        URI bad = ENDPOINTS[0];
+        algorithm.endpointFailed( bad );
+        Thread.sleep( 250 );
+        algorithm.endpointFailed( bad ); // probe failed
+
+        for ( int i = 0; i < 10; i++ ) {
+            Assert.assertNotEquals( bad, algorithm.getNextEndpoint( ENDPOINTS ) );
+        }
+    }
+
+    @Test
+    public void testAllEjected() {
+        CircuitBreakerAlgorithm algorithm = new CircuitBreakerAlgorithm( 1, 60000 );
+        for ( URI endpoint : ENDPOINTS ) algorithm.endpointFailed( endpoint );
+        Assert.assertNotNull( algorithm.getNextEndpoint( ENDPOINTS ) );
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.AtmosConfig;
+import com.emc.atmos.api.RestUtil;
+import com.emc.atmos.api.jersey.AuthFilter;
+import com.emc.atmos.api.jersey.ClockSkewFilter;
+import com.emc.atmos.api.jersey.ErrorFilter;
+import com.emc.util.HttpUtil;
+import com.sun.jersey.api.client.*;
+import com.sun.jersey.core.header.InBoundHeaders;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class ClockSkewFilterTest {
+    private static final long SKEW = 10 * 60 * 1000; // local clock is 10 minutes fast
+    private static final String TIME_ERROR = "<?xml version='1.0' encoding='UTF-8'?><Error><Code>1031</Code>"
+                                             + "<Message>The request timestamp was outside the valid time window."
+                                             + "</Message></Error>";
+
+    private AtmosConfig config;
+    private Client client;
+    private List<String> sentDates = new ArrayList<String>();
+    private int timeErrors;
+
+    @Before
+    public void setUp() throws Exception {
+        config = new AtmosConfig( "uid", "c2VjcmV0", new URI( "http://node1:9022" ) );
+        config.setEnableClockSkewTracking( true );
+        client = new Client( new ClientHandler() {
+            @Override
+            public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+                sentDates.add( (String) request.getHeaders().getFirst( RestUtil.XHEADER_DATE ) );
+                InBoundHeaders headers = new InBoundHeaders();
+                headers.add( HttpUtil.HEADER_DATE,
+                             HttpUtil.headerFormat( new Date( System.currentTimeMillis() - SKEW ) ) );
+                if ( timeErrors-- > 0 )
+                    return new ClientResponse( 403, headers, new ByteArrayInputStream( TIME_ERROR.getBytes() ),
+                                               client.getMessageBodyWorkers() );
+                return new ClientResponse( 200, headers, new ByteArrayInputStream( new byte[0] ),
+                                           client.getMessageBodyWorkers() );
+            }
+        } );
+        // same order as the real client
+        client.addFilter( new ClockSkewFilter( config ) );
+        client.addFilter( new ErrorFilter( config ) );
+        client.addFilter( new AuthFilter( config ) );
+    }
+
+    @Test
+    public void testPassiveTracking() {
+        send();
+        Assert.assertEquals( SKEW, config.getServerClockSkew(), 2000 );
+
+        // small changes are smoothed
+        config.setServerClockSkew( SKEW + 5000 );
+        setUpFilterEstimate();
+        send();
+        Assert.assertEquals( SKEW + 4000, config.getServerClockSkew(), 1500 );
+    }
+
+    @Test
+    public void testResignAfterTimeError() {
+        timeErrors = 1;
+        send();
+
+        Assert.assertEquals( 2, sentDates.size() );
+        long firstDate = HttpUtil.safeHeaderParse( sentDates.get( 0 ) ).getTime();
+        long secondDate = HttpUtil.safeHeaderParse( sentDates.get( 1 ) ).getTime();
+        Assert.assertEquals( SKEW, firstDate - secondDate, 2000 );
+    }
+
+    @Test
+    public void testRetryOnlyOnce() {
+        config.setServerClockSkew( SKEW ); // already accurate, so a time error is not our clock's fault
+        setUpFilterEstimate();
+        timeErrors = 2;
+        try {
+            send();
+            Assert.fail( "time error should not be retried when the skew did not change" );
+        } catch ( AtmosException e ) {
+            Assert.assertEquals( 1031, e.getErrorCode() );
+        }
+        Assert.assertEquals( 1, sentDates.size() );
+    }
+
+    // rebuilds the filters so the skew estimate starts from the current config value
+    private void setUpFilterEstimate() {
+        client.removeAllFilters();
+        client.addFilter( new ClockSkewFilter( config ) );
+        client.addFilter( new ErrorFilter( config ) );
+        client.addFilter( new AuthFilter( config ) );
+    }
+
+    private void send() {
+        client.resource( "http://node1:9022/rest/objects" ).get( ClientResponse.class );
+    }
+}
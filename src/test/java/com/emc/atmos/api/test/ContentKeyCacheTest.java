@@ -0,0 +1,150 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.api.ObjectId;
+import com.emc.atmos.api.encryption.AtmosEncryptionClient;
+import com.emc.atmos.api.encryption.ContentKeyCache;
+import com.emc.atmos.api.encryption.EncryptionConfig;
+import com.emc.atmos.util.MemoryAtmosApi;
+import com.emc.vipr.transform.encryption.KeyUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+
+public class ContentKeyCacheTest {
+    private KeyPair masterKey, oldKey;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties keyprops = new Properties();
+        keyprops.load( getClass().getClassLoader().getResourceAsStream( "keys.properties" ) );
+        masterKey = KeyUtils.rsaKeyPairFromBase64( keyprops.getProperty( "masterkey.public" ),
+                                                   keyprops.getProperty( "masterkey.private" ) );
+        oldKey = KeyUtils.rsaKeyPairFromBase64( keyprops.getProperty( "oldkey.public" ),
+                                                keyprops.getProperty( "oldkey.private" ) );
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ContentKeyCache cache = new ContentKeyCache( 2, 60000 );
+        byte[] bytes = new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+        cache.put( "a", new SecretKeySpec( bytes, "AES" ) );
+        cache.put( "b", new SecretKeySpec( bytes, "AES" ) );
+        Assert.assertArrayEquals( bytes, cache.get( "a" ).getEncoded() ); // a is now most recently used
+        SecretKey b = cache.get( "b" );
+
+        cache.put( "c", new SecretKeySpec( bytes, "AES" ) ); // evicts a
+        Assert.assertNull( cache.get( "a" ) );
+        Assert.assertNotNull( cache.get( "c" ) );
+        Assert.assertEquals( 2, cache.size() );
+        Assert.assertEquals( 3, cache.getHits() );
+        Assert.assertEquals( 1, cache.getMisses() );
+
+        // keys handed out are copies
+        cache.invalidate( "b" );
+        Assert.assertNull( cache.get( "b" ) );
+        Assert.assertArrayEquals( bytes, b.getEncoded() );
+
+        cache.clear();
+        Assert.assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        ContentKeyCache cache = new ContentKeyCache( 10, 1 );
+        cache.put( "a", new SecretKeySpec( new byte[16], "AES" ) );
+        Thread.sleep( 10 );
+        Assert.assertNull( cache.get( "a" ) );
+        Assert.assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void testReadUsesCache() throws Exception {
+        ContentKeyCache cache = new ContentKeyCache();
+        EncryptionConfig ec = new EncryptionConfig( masterKey, new HashSet<KeyPair>(), null, 128 );
+        ec.setContentKeyCache( cache );
+        AtmosEncryptionClient eclient = new AtmosEncryptionClient( new MemoryAtmosApi().getApi(), ec, null );
+
+        ObjectId id = eclient.createObject( "Hello World!", "text/plain" );
+        Assert.assertEquals( "Hello World!", eclient.readObject( id, String.class ) );
+        Assert.assertEquals( 0, cache.getHits() );
+        Assert.assertEquals( 1, cache.size() );
+        Assert.assertEquals( "Hello World!", eclient.readObject( id, String.class ) );
+        Assert.assertEquals( 1, cache.getHits() );
+    }
+
+    @Test
+    public void testRekeyInvalidates() throws Exception {
+        MemoryAtmosApi memory = new MemoryAtmosApi();
+        EncryptionConfig oldConfig = new EncryptionConfig( oldKey, new HashSet<KeyPair>(), null, 128 );
+        ObjectId id = new AtmosEncryptionClient( memory.getApi(), oldConfig, null )
+                .createObject( "Hello World!", "text/plain" );
+
+        ContentKeyCache cache = new ContentKeyCache();
+        EncryptionConfig ec = new EncryptionConfig( masterKey, Collections.singleton( oldKey ), null, 128 );
+        ec.setContentKeyCache( cache );
+        AtmosEncryptionClient eclient = new AtmosEncryptionClient( memory.getApi(), ec, null );
+        Assert.assertEquals( "Hello World!", eclient.readObject( id, String.class ) );
+        Assert.assertEquals( 1, cache.size() );
+
+        eclient.rekey( id );
+        Assert.assertEquals( 0, cache.size() );
+        Assert.assertEquals( "Hello World!", eclient.readObject( id, String.class ) );
+        Assert.assertEquals( 1, cache.size() );
+    }
+
+    @Test
+    public void testKeystoreKeys() throws Exception {
+        KeyStore keystore = KeyStore.getInstance( "jks" );
+        keystore.load( getClass().getClassLoader().getResourceAsStream( "keystore.jks" ),
+                       "viprviprvipr".toCharArray() );
+        ContentKeyCache cache = new ContentKeyCache();
+        EncryptionConfig ec = new EncryptionConfig( keystore, "viprviprvipr".toCharArray(), "masterkey", null, 128 );
+        ec.setContentKeyCache( cache );
+        AtmosEncryptionClient eclient = new AtmosEncryptionClient( new MemoryAtmosApi().getApi(), ec, null );
+
+        ObjectId id = eclient.createObject( "Hello World!", "text/plain" );
+        Assert.assertEquals( "Hello World!", eclient.readObject( id, String.class ) );
+        Assert.assertEquals( "Hello World!", eclient.readObject( id, String.class ) );
+        Assert.assertEquals( 1, cache.getHits() );
+    }
+}
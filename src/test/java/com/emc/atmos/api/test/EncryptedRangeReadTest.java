@@ -0,0 +1,171 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.ObjectId;
+import com.emc.atmos.api.Range;
+import com.emc.atmos.api.encryption.AtmosEncryptionClient;
+import com.emc.atmos.api.encryption.CompressionConfig;
+import com.emc.atmos.api.encryption.EncryptionConfig;
+import com.emc.atmos.api.request.CreateObjectRequest;
+import com.emc.atmos.api.request.ReadObjectRequest;
+import com.emc.atmos.util.MemoryAtmosApi;
+import com.emc.util.StreamUtil;
+import com.emc.vipr.transform.TransformConstants;
+import com.emc.vipr.transform.encryption.KeyUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Random;
+
+public class EncryptedRangeReadTest {
+    private MemoryAtmosApi memory;
+    private AtmosEncryptionClient eclient;
+    private byte[] content;
+    private ObjectId id;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties keyprops = new Properties();
+        keyprops.load( getClass().getClassLoader().getResourceAsStream( "keys.properties" ) );
+        KeyPair masterKey = KeyUtils.rsaKeyPairFromBase64( keyprops.getProperty( "masterkey.public" ),
+                                                           keyprops.getProperty( "masterkey.private" ) );
+
+        memory = new MemoryAtmosApi();
+        eclient = new AtmosEncryptionClient( memory.getApi(),
+                                             new EncryptionConfig( masterKey, new HashSet<KeyPair>(), null, 128 ),
+                                             null );
+        eclient.setBufferSize( 64 * 1024 );
+
+        content = new byte[300 * 1000 + 5]; // not a multiple of the block size
+        new Random( 42 ).nextBytes( content );
+        id = eclient.createObject( content, "application/octet-stream" );
+    }
+
+    @Test
+    public void testRanges() throws Exception {
+        long[][] ranges = {{0, 0}, {0, 15}, {1, 1}, {15, 16}, {16, 31}, {1000, 1999}, {12345, 200000},
+                           {content.length - 1, content.length - 1}, {content.length - 20, content.length - 1},
+                           {content.length - 6, content.length - 5}, {0, content.length - 1}};
+        for ( long[] range : ranges ) {
+            byte[] expected = Arrays.copyOfRange( content, (int) range[0], (int) range[1] + 1 );
+            byte[] actual = eclient.readObject( id, new Range( range[0], range[1] ), byte[].class );
+            Assert.assertArrayEquals( "range " + range[0] + "-" + range[1], expected, actual );
+        }
+    }
+
+    @Test
+    public void testReadsOnlyNeededBlocks() throws Exception {
+        byte[] actual = eclient.readObject( id, new Range( 100000, 100099 ), byte[].class );
+        Assert.assertArrayEquals( Arrays.copyOfRange( content, 100000, 100100 ), actual );
+        Assert.assertTrue( "read " + memory.getBytesRead() + " bytes", memory.getBytesRead() <= 100 + 4 * 16 );
+    }
+
+    @Test
+    public void testSingleRequest() throws Exception {
+        eclient.readObject( id, new Range( 1000, 1999 ), byte[].class );
+        Assert.assertEquals( 0, memory.getCalls( "getUserMetadata" ) );
+        Assert.assertEquals( 1, memory.getCalls( "readObjectStream" ) );
+    }
+
+    @Test
+    public void testBlockMultiple() throws Exception {
+        byte[] blocks = Arrays.copyOf( content, 4096 ); // the padding is a whole block
+        ObjectId bid = eclient.createObject( blocks, "application/octet-stream" );
+        long[][] ranges = {{0, 15}, {0, 4095}, {16, 4079}, {4000, 4095}, {4080, 4095}, {4095, 4095}, {4090, 5000}};
+        for ( long[] range : ranges ) {
+            byte[] expected = Arrays.copyOfRange( blocks, (int) range[0], (int) Math.min( range[1] + 1, 4096 ) );
+            byte[] actual = eclient.readObject( bid, new Range( range[0], range[1] ), byte[].class );
+            Assert.assertArrayEquals( "range " + range[0] + "-" + range[1], expected, actual );
+        }
+    }
+
+    @Test
+    public void testUnencoded() throws Exception {
+        ObjectId pid = memory.getApi().createObject( new CreateObjectRequest().content( content ) ).getObjectId();
+        long[][] ranges = {{0, 0}, {5, 20}, {40, 40}, {12345, 200000}, {content.length - 3, content.length + 100}};
+        for ( long[] range : ranges ) {
+            byte[] expected = Arrays.copyOfRange( content, (int) range[0],
+                                                  (int) Math.min( range[1] + 1, content.length ) );
+            byte[] actual = eclient.readObject( pid, new Range( range[0], range[1] ), byte[].class );
+            Assert.assertArrayEquals( "range " + range[0] + "-" + range[1], expected, actual );
+        }
+        Assert.assertEquals( 0, memory.getCalls( "getUserMetadata" ) );
+        Assert.assertEquals( ranges.length, memory.getCalls( "readObjectStream" ) );
+
+        // a range that starts past the end is left to the server
+        try {
+            eclient.readObject( pid, new Range( content.length + 1, content.length + 5 ), byte[].class );
+            Assert.fail( "range past the end was read" );
+        } catch ( AtmosException e ) {
+            Assert.assertEquals( 416, e.getHttpCode() );
+        }
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        InputStream in = eclient.readObjectStream( id, new Range( 5000, 5999 ) ).getObject();
+        Assert.assertArrayEquals( Arrays.copyOfRange( content, 5000, 6000 ), StreamUtil.readAsBytes( in ) );
+    }
+
+    @Test
+    public void testRangePastEnd() throws Exception {
+        byte[] actual = eclient.readObject( new ReadObjectRequest().identifier( id )
+                                                                   .ranges( new Range( content.length - 10,
+                                                                                       content.length + 100 ) ),
+                                            byte[].class ).getObject();
+        Assert.assertArrayEquals( Arrays.copyOfRange( content, content.length - 10, content.length ), actual );
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCompressedNotSupported() throws Exception {
+        AtmosEncryptionClient cclient = new AtmosEncryptionClient(
+                memory.getApi(), null, new CompressionConfig( TransformConstants.CompressionMode.Deflate, 5 ) );
+        ObjectId cid = cclient.createObject( new ByteArrayInputStream( content ), "application/octet-stream" );
+        cclient.readObject( cid, new Range( 10, 20 ), byte[].class );
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMultipleRangesNotSupported() throws Exception {
+        eclient.readObject( new ReadObjectRequest().identifier( id ).ranges( new Range( 1, 1 ), new Range( 3, 3 ) ),
+                            byte[].class );
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.ObjectId;
+import com.emc.atmos.api.bean.Metadata;
+import com.emc.atmos.api.bean.ReadObjectResponse;
+import com.emc.atmos.api.encryption.AtmosEncryptionClient;
+import com.emc.atmos.api.encryption.CompressionConfig;
+import com.emc.atmos.api.encryption.EncryptionConfig;
+import com.emc.atmos.api.request.CreateObjectRequest;
+import com.emc.atmos.util.MemoryAtmosApi;
+import com.emc.util.StreamUtil;
+import com.emc.vipr.transform.TransformConstants;
+import com.emc.vipr.transform.encryption.KeyUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.security.KeyPair;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Random;
+
+public class EncryptionClientReadTest {
+    private MemoryAtmosApi memory;
+    private EncryptionConfig encryptionConfig;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties keyprops = new Properties();
+        keyprops.load( getClass().getClassLoader().getResourceAsStream( "keys.properties" ) );
+        KeyPair masterKey = KeyUtils.rsaKeyPairFromBase64( keyprops.getProperty( "masterkey.public" ),
+                                                           keyprops.getProperty( "masterkey.private" ) );
+        encryptionConfig = new EncryptionConfig( masterKey, new HashSet<KeyPair>(), null, 128 );
+        memory = new MemoryAtmosApi();
+
+        content = new byte[100 * 1000 + 7];
+        new Random( 7 ).nextBytes( content );
+    }
+
+    @Test
+    public void testEncrypted() throws Exception {
+        verifyReads( new AtmosEncryptionClient( memory.getApi(), encryptionConfig, null ) );
+    }
+
+    @Test
+    public void testCompressedAndEncrypted() throws Exception {
+        verifyReads( new AtmosEncryptionClient( memory.getApi(), encryptionConfig, new CompressionConfig(
+                TransformConstants.CompressionMode.Deflate, 5 ) ) );
+    }
+
+    @Test
+    public void testNotEncoded() throws Exception {
+        ObjectId id = memory.getApi().createObject( new CreateObjectRequest().content( content ) ).getObjectId();
+        verifyReads( new AtmosEncryptionClient( memory.getApi(), encryptionConfig, null ), id );
+    }
+
+    @Test
+    public void testWrongSizeMetadata() throws Exception {
+        AtmosEncryptionClient eclient = new AtmosEncryptionClient( memory.getApi(), encryptionConfig, null );
+        ObjectId id = eclient.createObject( content, "application/octet-stream" );
+
+        // a smaller (or unreadable) size is only a hint for the read buffer
+        for ( String size : new String[]{"10", "0", "garbage"} ) {
+            setSize( id, TransformConstants.META_ENCRYPTION_UNENC_SIZE, size );
+            Assert.assertArrayEquals( content, eclient.readObject( id, byte[].class ) );
+        }
+
+        // plaintext cannot be longer than its ciphertext
+        setSize( id, TransformConstants.META_ENCRYPTION_UNENC_SIZE, "" + (Integer.MAX_VALUE - 8) );
+        try {
+            eclient.readObject( id, byte[].class );
+            Assert.fail( "size larger than the content was accepted" );
+        } catch ( AtmosException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLargerThanPresizeLimit() throws Exception {
+        CompressionConfig compressionConfig = new CompressionConfig( TransformConstants.CompressionMode.Deflate, 5 );
+        AtmosEncryptionClient eclient =
+                new AtmosEncryptionClient( memory.getApi(), encryptionConfig, compressionConfig );
+        eclient.setReadPresizeLimit( 1000 );
+        ObjectId id = eclient.createObject( content, "application/octet-stream" );
+        Assert.assertArrayEquals( content, eclient.readObject( id, byte[].class ) );
+
+        // a huge uncompressed size is only trusted up to the limit
+        setSize( id, TransformConstants.META_COMPRESSION_UNCOMP_SIZE, "" + (Integer.MAX_VALUE - 8) );
+        Assert.assertArrayEquals( content, eclient.readObject( id, byte[].class ) );
+    }
+
+    @Test
+    public void testString() throws Exception {
+        AtmosEncryptionClient eclient = new AtmosEncryptionClient( memory.getApi(), encryptionConfig, null );
+        ObjectId id = eclient.createObject( "Hello World!", "text/plain" );
+        Assert.assertEquals( "Hello World!", eclient.readObject( id, String.class ) );
+    }
+
+    private void setSize( ObjectId id, String name, String size ) {
+        memory.getApi().setUserMetadata( id, new Metadata( name, size, false ) );
+    }
+
+    private void verifyReads( AtmosEncryptionClient eclient ) throws Exception {
+        verifyReads( eclient, eclient.createObject( content, "application/octet-stream" ) );
+    }
+
+    private void verifyReads( AtmosEncryptionClient eclient, ObjectId id ) throws Exception {
+        Assert.assertArrayEquals( content, eclient.readObject( id, byte[].class ) );
+
+        ReadObjectResponse<InputStream> response = eclient.readObjectStream( id, null );
+        Assert.assertEquals( content.length, response.getContentLength() );
+        Assert.assertArrayEquals( content, StreamUtil.readAsBytes( response.getObject() ) );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals( content.length, eclient.readObject( id, out ) );
+        Assert.assertArrayEquals( content, out.toByteArray() );
+
+        out = new ByteArrayOutputStream();
+        Assert.assertEquals( content.length, eclient.readObject( id, Channels.newChannel( out ) ) );
+        Assert.assertArrayEquals( content, out.toByteArray() );
+    }
+}
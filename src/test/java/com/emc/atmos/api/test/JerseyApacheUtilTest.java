@@ -0,0 +1,149 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.api.AtmosConfig;
+import com.emc.atmos.api.jersey.ConnectionPoolStats;
+import com.emc.atmos.api.jersey.IdleConnectionReaper;
+import com.emc.atmos.api.jersey.JerseyApacheUtil;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.client.apache4.ApacheHttpClient4;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+public class JerseyApacheUtilTest {
+    private HttpServer server;
+    private URI endpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+        server.createContext( "/", new HttpHandler() {
+            @Override
+            public void handle( HttpExchange exchange ) throws IOException {
+                byte[] body = "Hello".getBytes( "UTF-8" );
+                exchange.sendResponseHeaders( 200, body.length );
+                OutputStream out = exchange.getResponseBody();
+                out.write( body );
+                out.close();
+            }
+        } );
+        server.start();
+        endpoint = new URI( "http://localhost:" + server.getAddress().getPort() );
+    }
+
+    @After
+    public void tearDown() {
+        server.stop( 0 );
+    }
+
+    @Test
+    public void testPoolSettings() throws Exception {
+        AtmosConfig config = new AtmosConfig( "uid", "c2VjcmV0", endpoint );
+        config.setMaxConnections( 20 );
+        config.setMaxConnectionsPerEndpoint( 5 );
+        Client client = JerseyApacheUtil.createApacheClient( config, null, null );
+        try {
+            Assert.assertEquals( 20, JerseyApacheUtil.getTotalConnectionPoolStats( client ).getMax() );
+            ConnectionPoolStats stats = JerseyApacheUtil.getConnectionPoolStats( client, endpoint ).get( endpoint );
+            Assert.assertEquals( endpoint, stats.getEndpoint() );
+            Assert.assertEquals( 5, stats.getMax() );
+
+            // without an idle timeout or TTL, no reaper is started
+            Assert.assertNull( client.getProperties().get( JerseyApacheUtil.PROPERTY_CONNECTION_REAPER ) );
+        } finally {
+            JerseyApacheUtil.destroyClient( client );
+        }
+    }
+
+    @Test
+    public void testDefaultPort() throws Exception {
+        Client client = JerseyApacheUtil.createApacheClient( new AtmosConfig( "uid", "c2VjcmV0", endpoint ), null,
+                                                             null );
+        try {
+            PoolingClientConnectionManager connectionManager = (PoolingClientConnectionManager)
+                    ((ApacheHttpClient4) client).getClientHandler().getHttpClient().getConnectionManager();
+            connectionManager.setMaxPerRoute( new HttpRoute( new HttpHost( "node1", 80, "http" ) ), 7 );
+            connectionManager.setMaxPerRoute( new HttpRoute( new HttpHost( "node1", 443, "https" ), null, true ), 9 );
+
+            URI http = new URI( "http://node1" ), https = new URI( "https://node1/rest" );
+            Assert.assertEquals( 7, JerseyApacheUtil.getConnectionPoolStats( client, http ).get( http ).getMax() );
+            Assert.assertEquals( 9, JerseyApacheUtil.getConnectionPoolStats( client, https ).get( https ).getMax() );
+        } finally {
+            JerseyApacheUtil.destroyClient( client );
+        }
+    }
+
+    @Test
+    public void testIdleConnectionsReaped() throws Exception {
+        AtmosConfig config = new AtmosConfig( "uid", "c2VjcmV0", endpoint );
+        config.setConnectionIdleTimeout( 200 );
+        config.setConnectionReaperInterval( 50 );
+        Client client = JerseyApacheUtil.createApacheClient( config, null, null );
+        try {
+            Assert.assertTrue( client.getProperties().get( JerseyApacheUtil.PROPERTY_CONNECTION_REAPER )
+                                       instanceof IdleConnectionReaper );
+
+            ClientResponse response = client.resource( endpoint.resolve( "/hello" ) ).get( ClientResponse.class );
+            Assert.assertEquals( "Hello", response.getEntity( String.class ) );
+
+            ConnectionPoolStats stats = JerseyApacheUtil.getConnectionPoolStats( client, endpoint ).get( endpoint );
+            Assert.assertEquals( 0, stats.getLeased() );
+            Assert.assertEquals( 1, stats.getAvailable() );
+
+            // the reaper should close the connection once it has been idle for 200ms
+            long deadline = System.currentTimeMillis() + 5000;
+            while ( JerseyApacheUtil.getTotalConnectionPoolStats( client ).getAvailable() > 0
+                    && System.currentTimeMillis() < deadline ) {
+                Thread.sleep( 50 );
+            }
+            Assert.assertEquals( 0, JerseyApacheUtil.getTotalConnectionPoolStats( client ).getAvailable() );
+        } finally {
+            JerseyApacheUtil.destroyClient( client );
+        }
+    }
+}
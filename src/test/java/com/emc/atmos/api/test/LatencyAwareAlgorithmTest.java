@@ -0,0 +1,103 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.LatencyAwareAlgorithm;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+
+public class LatencyAwareAlgorithmTest {
+    private static final URI FAST = URI.create( "http://fast:8080" );
+    private static final URI SLOW = URI.create( "http://slow:8080" );
+    private static final URI[] ENDPOINTS = {FAST, SLOW};
+
+    @Test
+    public void testPrefersFasterEndpoint() {
+        LatencyAwareAlgorithm algorithm = new LatencyAwareAlgorithm();
+        record( algorithm, FAST, 10, false );
+        record( algorithm, SLOW, 50, false );
+
+        for ( int i = 0; i < 20; i++ ) {
+            Assert.assertEquals( FAST, algorithm.getNextEndpoint( ENDPOINTS ) );
+        }
+    }
+
+    @Test
+    public void testInFlightRequests() {
+        LatencyAwareAlgorithm algorithm = new LatencyAwareAlgorithm();
+        record( algorithm, FAST, 10, false );
+        record( algorithm, SLOW, 50, false );
+
+        // 5 outstanding requests at 10ms cost more than none at 50ms
+        for ( int i = 0; i < 5; i++ ) algorithm.requestStarted( FAST );
+        Assert.assertEquals( 5, algorithm.getInFlight( FAST ) );
+        Assert.assertEquals( SLOW, algorithm.getNextEndpoint( ENDPOINTS ) );
+    }
+
+    @Test
+    public void testFailurePenalty() {
+        LatencyAwareAlgorithm algorithm = new LatencyAwareAlgorithm();
+        algorithm.setPowerOfTwoChoices( false );
+        record( algorithm, FAST, 1, true ); // fails fast (i.e. connection refused)
+        record( algorithm, SLOW, 50, false );
+
+        Assert.assertEquals( SLOW, algorithm.getNextEndpoint( ENDPOINTS ) );
+    }
+
+    @Test
+    public void testEwma() {
+        LatencyAwareAlgorithm algorithm = new LatencyAwareAlgorithm();
+        algorithm.setSmoothing( 0.5 );
+        record( algorithm, FAST, 100, false );
+        record( algorithm, FAST, 200, false );
+        Assert.assertEquals( 150, algorithm.getAverageLatencyMillis( FAST ), 0.001 );
+    }
+
+    @Test
+    public void testUnsampledEndpoint() {
+        LatencyAwareAlgorithm algorithm = new LatencyAwareAlgorithm();
+        record( algorithm, FAST, 10, false );
+
+        // the slow endpoint has no history yet, so it should be tried once
+        Assert.assertEquals( SLOW, algorithm.getNextEndpoint( ENDPOINTS ) );
+        algorithm.requestStarted( SLOW );
+        Assert.assertEquals( FAST, algorithm.getNextEndpoint( ENDPOINTS ) );
+    }
+
+    private void record( LatencyAwareAlgorithm algorithm, URI endpoint, long latencyMillis, boolean failed ) {
+        algorithm.requestStarted( endpoint );
+        algorithm.requestFinished( endpoint, latencyMillis * 1000000L, failed );
+    }
+}
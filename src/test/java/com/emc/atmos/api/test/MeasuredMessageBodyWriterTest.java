@@ -0,0 +1,156 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.api.jersey.provider.MeasuredMessageBodyWriter;
+import com.sun.jersey.core.impl.provider.entity.StringProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MeasuredMessageBodyWriterTest {
+    private AtomicInteger serializations = new AtomicInteger();
+    private MeasuredMessageBodyWriter<String> writer = new MeasuredMessageBodyWriter<String>( new CountingWriter() );
+
+    @Test
+    public void testSerializeOnce() throws Exception {
+        Assert.assertEquals( "Hello World!", send( "Hello World!" ) );
+        Assert.assertEquals( 1, serializations.get() );
+
+        // writeTo() without getSize() still works
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo( "foo", String.class, String.class, null, MediaType.TEXT_PLAIN_TYPE, null, out );
+        Assert.assertEquals( "foo", out.toString( "UTF-8" ) );
+        Assert.assertEquals( 2, serializations.get() );
+    }
+
+    @Test
+    public void testDelayedException() throws Exception {
+        long size = writer.getSize( "fail", String.class, String.class, null, MediaType.TEXT_PLAIN_TYPE );
+        Assert.assertEquals( -1, size );
+        try {
+            writer.writeTo( "fail", String.class, String.class, null, MediaType.TEXT_PLAIN_TYPE, null,
+                            new ByteArrayOutputStream() );
+            Assert.fail( "serialization error was not thrown" );
+        } catch ( IOException e ) {
+            Assert.assertEquals( "fail", e.getMessage() );
+        }
+
+        // the error does not leak into the next request
+        Assert.assertEquals( "ok", send( "ok" ) );
+    }
+
+    @Test
+    public void testAbortedRequest() throws Exception {
+        // measured, but never written (i.e. the connection failed)
+        writer.getSize( "aborted", String.class, String.class, null, MediaType.TEXT_PLAIN_TYPE );
+
+        Assert.assertEquals( "next", send( "next" ) );
+        Assert.assertEquals( 2, serializations.get() );
+
+        // a late write of the aborted entity is serialized again rather than getting the wrong content
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo( "aborted", String.class, String.class, null, MediaType.TEXT_PLAIN_TYPE, null, out );
+        Assert.assertEquals( "aborted", out.toString( "UTF-8" ) );
+        Assert.assertEquals( 3, serializations.get() );
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            for ( int i = 0; i < 1000; i++ ) {
+                final String entity = "entity-" + i;
+                futures.add( executor.submit( new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return entity.equals( send( entity ) );
+                    }
+                } ) );
+            }
+            for ( Future<Boolean> future : futures ) {
+                Assert.assertTrue( future.get() );
+            }
+            Assert.assertEquals( 1000, serializations.get() );
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // mimics Jersey: getSize() then writeTo() on the same thread
+    private String send( String entity ) throws IOException, WebApplicationException {
+        long size = writer.getSize( entity, String.class, String.class, null, MediaType.TEXT_PLAIN_TYPE );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo( entity, String.class, String.class, null, MediaType.TEXT_PLAIN_TYPE, null, out );
+        Assert.assertEquals( size, out.size() );
+        return out.toString( "UTF-8" );
+    }
+
+    private class CountingWriter implements MessageBodyWriter<String> {
+        private StringProvider provider = new StringProvider();
+
+        @Override
+        public boolean isWriteable( Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType ) {
+            return true;
+        }
+
+        @Override
+        public long getSize( String s, Class<?> type, Type genericType, Annotation[] annotations,
+                             MediaType mediaType ) {
+            return -1;
+        }
+
+        @Override
+        public void writeTo( String s, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                             MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream )
+                throws IOException {
+            serializations.incrementAndGet();
+            if ( s.startsWith( "fail" ) ) throw new IOException( s );
+            provider.writeTo( s, type, genericType, annotations, mediaType, httpHeaders, entityStream );
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.AtmosConfig;
+import com.emc.atmos.api.jersey.ErrorFilter;
+import com.emc.atmos.api.jersey.MeasuredInputStream;
+import com.emc.atmos.api.jersey.MetricsFilter;
+import com.emc.atmos.api.jersey.RetryFilter;
+import com.emc.atmos.api.metrics.DefaultMetricsRegistry;
+import com.emc.atmos.api.metrics.LatencyHistogram;
+import com.emc.atmos.api.metrics.Operation;
+import com.emc.atmos.api.metrics.OperationMetrics;
+import com.emc.util.StreamUtil;
+import com.sun.jersey.api.client.*;
+import com.sun.jersey.core.header.InBoundHeaders;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+
+public class MetricsFilterTest {
+    private static final String ERROR_1040 = "<Error><Code>1040</Code><Message>The server is busy</Message></Error>";
+
+    private DefaultMetricsRegistry registry;
+    private Client client;
+    private int failures;
+
+    @Before
+    public void setUp() {
+        AtmosConfig config = new AtmosConfig();
+        config.setRetryDelayMillis( 0 );
+        config.setMaxRetries( 2 );
+
+        registry = new DefaultMetricsRegistry();
+        client = new Client( new ClientHandler() {
+            @Override
+            public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+                if ( request.getEntity() instanceof InputStream ) {
+                    try {
+                        StreamUtil.readAsBytes( (InputStream) request.getEntity() ); // like the writer
+                    } catch ( IOException e ) {
+                        throw new ClientHandlerException( e );
+                    }
+                }
+                if ( failures-- > 0 ) return response( 500, ERROR_1040 );
+                return response( 200, "Hello" );
+            }
+        } );
+        // same order as JerseyUtil.addFilters
+        client.addFilter( new ErrorFilter() );
+        client.addFilter( new RetryFilter( config ) );
+        client.addFilter( new MetricsFilter( registry ) );
+    }
+
+    @Test
+    public void testOperations() throws Exception {
+        client.resource( "http://node1:9022/rest/objects" ).post( ClientResponse.class, new byte[10] );
+        client.resource( "http://node1:9022/rest/namespace/dir/file" ).post( ClientResponse.class,
+                new MeasuredInputStream( new ByteArrayInputStream( new byte[20] ), 20 ) );
+        client.resource( "http://node1:9022/rest/objects/abc" ).get( ClientResponse.class );
+        client.resource( "http://node1:9022/rest/objects/abc" ).put( ClientResponse.class, new byte[5] );
+        client.resource( "http://node1:9022/rest/objects/abc?metadata/user" ).get( ClientResponse.class );
+        client.resource( "http://node1:9022/rest/objects/abc" ).head();
+        client.resource( "http://node2:9022/rest/namespace/dir/" ).get( ClientResponse.class );
+        client.resource( "http://node2:9022/rest/objects" ).get( ClientResponse.class );
+        client.resource( "http://node2:9022/rest/objects/abc" ).delete( ClientResponse.class );
+        client.resource( "http://node2:9022/rest/service" ).get( ClientResponse.class );
+
+        Assert.assertEquals( 2, registry.getOperationMetrics( Operation.CREATE ).getRequests() );
+        Assert.assertEquals( 1, registry.getOperationMetrics( Operation.READ ).getRequests() );
+        Assert.assertEquals( 1, registry.getOperationMetrics( Operation.UPDATE ).getRequests() );
+        Assert.assertEquals( 2, registry.getOperationMetrics( Operation.METADATA ).getRequests() );
+        Assert.assertEquals( 2, registry.getOperationMetrics( Operation.LIST ).getRequests() );
+        Assert.assertEquals( 1, registry.getOperationMetrics( Operation.DELETE ).getRequests() );
+        Assert.assertEquals( 1, registry.getOperationMetrics( Operation.OTHER ).getRequests() );
+
+        Assert.assertEquals( 30, registry.getOperationMetrics( Operation.CREATE ).getBytesSent() );
+        Assert.assertEquals( 35, registry.getBytesSent() );
+        Assert.assertEquals( 5, registry.getOperationMetrics( Operation.READ ).getBytesReceived() );
+        Assert.assertEquals( 5, registry.getOperationMetrics( Operation.METADATA ).getBytesReceived() );
+        Assert.assertEquals( 6, registry.getEndpointMetrics().get( "http://node1:9022" ).getRequests() );
+        Assert.assertEquals( 4, registry.getEndpointMetrics().get( "http://node2:9022" ).getRequests() );
+        Assert.assertEquals( 0, registry.getErrors() );
+    }
+
+    @Test
+    public void testRetriesAndErrors() throws Exception {
+        failures = 2;
+        client.resource( "http://node1:9022/rest/objects/abc" ).get( ClientResponse.class );
+        OperationMetrics read = registry.getOperationMetrics( Operation.READ );
+        Assert.assertEquals( 1, read.getRequests() );
+        Assert.assertEquals( 2, read.getRetries() );
+        Assert.assertEquals( 0, read.getErrors() );
+
+        failures = 3;
+        try {
+            client.resource( "http://node1:9022/rest/objects/abc" ).get( ClientResponse.class );
+            Assert.fail( "error was not thrown" );
+        } catch ( AtmosException e ) {
+            Assert.assertEquals( 1040, e.getErrorCode() );
+        }
+        Assert.assertEquals( 2, read.getRequests() );
+        Assert.assertEquals( 4, read.getRetries() );
+        Assert.assertEquals( 1, read.getErrors() );
+        Assert.assertEquals( Long.valueOf( 1 ), registry.getErrorCodeCounts().get( "1040" ) );
+        Assert.assertArrayEquals( new String[]{"1040=1"}, registry.getErrorCounts() );
+    }
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for ( int i = 1; i <= 1000; i++ ) {
+            histogram.recordMicros( i * 1000 ); // 1ms to 1s
+        }
+        Assert.assertEquals( 1000, histogram.getCount() );
+        Assert.assertEquals( 1000000, histogram.getMaxMicros() );
+        Assert.assertEquals( 500500, histogram.getMeanMicros(), 0.1 );
+        assertWithin( 500000, histogram.getValueAtPercentile( 50 ) );
+        assertWithin( 990000, histogram.getValueAtPercentile( 99 ) );
+        Assert.assertEquals( 1000000, histogram.getValueAtPercentile( 100 ) );
+
+        // small values are exact
+        histogram.reset();
+        histogram.recordMicros( 7 );
+        Assert.assertEquals( 7, histogram.getValueAtPercentile( 50 ) );
+
+        // values beyond the trackable range are counted in the last bucket
+        histogram.recordNanos( Long.MAX_VALUE );
+        Assert.assertEquals( 2, histogram.getCount() );
+        Assert.assertTrue( histogram.getValueAtPercentile( 100 ) >= LatencyHistogram.MAX_TRACKABLE_MICROS );
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        client.resource( "http://node1:9022/rest/objects/abc" ).get( ClientResponse.class );
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = registry.registerMBean( "test" );
+        try {
+            Assert.assertEquals( 1L, server.getAttribute( name, "Requests" ) );
+            String[] summaries = (String[]) server.getAttribute( name, "OperationSummaries" );
+            Assert.assertEquals( 1, summaries.length );
+            Assert.assertTrue( summaries[0], summaries[0].startsWith( "READ: count=1" ) );
+            server.invoke( name, "reset", null, null );
+            Assert.assertEquals( 0L, server.getAttribute( name, "Requests" ) );
+        } finally {
+            registry.unregisterMBean();
+        }
+        Assert.assertFalse( server.isRegistered( name ) );
+    }
+
+    private void assertWithin( long expected, long actual ) {
+        Assert.assertTrue( "expected ~" + expected + " but was " + actual,
+                           Math.abs( actual - expected ) <= expected / 50 );
+    }
+
+    private ClientResponse response( int status, String content ) {
+        InBoundHeaders headers = new InBoundHeaders();
+        headers.putSingle( "Content-Length", "" + content.length() );
+        return new ClientResponse( status, headers, new ByteArrayInputStream( content.getBytes() ),
+                                   client.getMessageBodyWorkers() );
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.api.Range;
+import com.emc.atmos.api.multipart.MultipartException;
+import com.emc.atmos.api.multipart.MultipartStream;
+import com.emc.atmos.api.multipart.MultipartStreamPart;
+import com.emc.util.StreamUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class MultipartStreamTest {
+    private static final String BOUNDARY = "--bound0508812b8a8ad7";
+
+    @Test
+    public void testLargeParts() throws Exception {
+        byte[] part1 = randomBytes( 100000 ), part2 = randomBytes( 33333 );
+        byte[] body = multipart( "\r\n", new Range( 0, part1.length - 1 ), part1,
+                                 new Range( 200000, 200000 + part2.length - 1 ), part2 );
+
+        // a small window forces headers, boundaries and content to span refills
+        for ( int bufferSize : new int[]{7, 64, 8192} ) {
+            MultipartStream stream = new MultipartStream( new ByteArrayInputStream( body ), BOUNDARY, bufferSize );
+
+            MultipartStreamPart part = stream.nextPart();
+            Assert.assertEquals( "application/octet-stream", part.getContentType() );
+            Assert.assertEquals( new Range( 0, part1.length - 1 ), part.getContentRange() );
+            Assert.assertArrayEquals( part1, readAll( part ) );
+
+            part = stream.nextPart();
+            Assert.assertEquals( new Range( 200000, 200000 + part2.length - 1 ), part.getContentRange() );
+            Assert.assertEquals( part2.length, part.getLength() );
+            Assert.assertArrayEquals( part2, readAll( part ) );
+
+            Assert.assertNull( stream.nextPart() );
+            Assert.assertNull( stream.nextPart() );
+            stream.close();
+        }
+    }
+
+    @Test
+    public void testUnreadContentSkipped() throws Exception {
+        byte[] part1 = randomBytes( 5000 ), part2 = randomBytes( 10 );
+        byte[] body = multipart( "\n", new Range( 0, part1.length - 1 ), part1, new Range( 9000, 9009 ), part2 );
+        MultipartStream stream = new MultipartStream( new ByteArrayInputStream( body ), BOUNDARY, 100 );
+
+        MultipartStreamPart part = stream.nextPart();
+        Assert.assertEquals( part1[0], (byte) part.getInputStream().read() );
+
+        part = stream.nextPart();
+        Assert.assertEquals( new Range( 9000, 9009 ), part.getContentRange() );
+        ByteBuffer buffer = ByteBuffer.allocate( 20 );
+        Assert.assertEquals( 10, part.getChannel().read( buffer ) );
+        Assert.assertEquals( -1, part.getInputStream().read() );
+
+        Assert.assertNull( stream.nextPart() );
+    }
+
+    @Test
+    public void testRangeOver2GB() throws Exception {
+        long start = 5L * 1024 * 1024 * 1024; // 5GB
+        byte[] data = randomBytes( 3 );
+        byte[] body = multipart( "\r\n", new Range( start, start + 2 ), data );
+        MultipartStream stream = new MultipartStream( new ByteArrayInputStream( body ), BOUNDARY );
+
+        MultipartStreamPart part = stream.nextPart();
+        Assert.assertEquals( new Range( start, start + 2 ), part.getContentRange() );
+        Assert.assertArrayEquals( data, readAll( part ) );
+    }
+
+    @Test
+    public void testTruncatedContent() throws Exception {
+        byte[] data = randomBytes( 1000 );
+        byte[] body = multipart( "\r\n", new Range( 0, 1999 ), data ); // claims twice the content
+        MultipartStream stream = new MultipartStream( new ByteArrayInputStream( body ), BOUNDARY, 64 );
+        try {
+            readAll( stream.nextPart() );
+            stream.nextPart();
+            Assert.fail( "truncated part should fail" );
+        } catch ( MultipartException e ) {
+            // expected
+        }
+    }
+
+    private byte[] readAll( MultipartStreamPart part ) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamUtil.copy( part.getInputStream(), out, Long.MAX_VALUE );
+        return out.toByteArray();
+    }
+
+    private byte[] multipart( String eol, Object... rangesAndData ) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write( eol.getBytes( "UTF-8" ) );
+        for ( int i = 0; i < rangesAndData.length; i += 2 ) {
+            Range range = (Range) rangesAndData[i];
+            String headers = BOUNDARY + eol
+                             + "Content-Type: application/octet-stream" + eol
+                             + "Content-Range: bytes " + range.getFirst() + "-" + range.getLast() + "/99999999999" + eol
+                             + eol;
+            out.write( headers.getBytes( "UTF-8" ) );
+            out.write( (byte[]) rangesAndData[i + 1] );
+            out.write( eol.getBytes( "UTF-8" ) );
+        }
+        out.write( (BOUNDARY + "--" + eol).getBytes( "UTF-8" ) );
+        return out.toByteArray();
+    }
+
+    private byte[] randomBytes( int size ) {
+        byte[] bytes = new byte[size];
+        new Random( size ).nextBytes( bytes );
+        return bytes;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.api.ObjectId;
+import com.emc.atmos.api.bean.Metadata;
+import com.emc.atmos.api.encryption.AtmosEncryptionClient;
+import com.emc.atmos.api.encryption.CompressionConfig;
+import com.emc.atmos.api.encryption.EncryptionConfig;
+import com.emc.atmos.api.encryption.ParallelCompressionTransformFactory;
+import com.emc.atmos.api.encryption.ParallelCompressionTransformFactory.BlockCodec;
+import com.emc.atmos.util.MemoryAtmosApi;
+import com.emc.util.StreamUtil;
+import com.emc.vipr.transform.OutputTransform;
+import com.emc.vipr.transform.TransformConstants;
+import com.emc.vipr.transform.encryption.KeyUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ParallelCompressionTest {
+    private static final int BLOCK_SIZE = 16 * 1024;
+
+    private MemoryAtmosApi memory;
+    private EncryptionConfig encryptionConfig;
+    private byte[] text;
+    private byte[] random;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties keyprops = new Properties();
+        keyprops.load( getClass().getClassLoader().getResourceAsStream( "keys.properties" ) );
+        KeyPair masterKey = KeyUtils.rsaKeyPairFromBase64( keyprops.getProperty( "masterkey.public" ),
+                                                           keyprops.getProperty( "masterkey.private" ) );
+        encryptionConfig = new EncryptionConfig( masterKey, new HashSet<KeyPair>(), null, 128 );
+        memory = new MemoryAtmosApi();
+
+        Random rand = new Random( 11 );
+        StringBuilder sb = new StringBuilder();
+        while ( sb.length() < 10 * BLOCK_SIZE + 123 ) {
+            sb.append( "line " ).append( rand.nextInt( 1000 ) ).append( " of some compressible text\n" );
+        }
+        text = sb.toString().getBytes( "UTF-8" );
+        random = new byte[10 * BLOCK_SIZE + 123];
+        rand.nextBytes( random );
+    }
+
+    @Test
+    public void testDeflate() throws Exception {
+        AtmosEncryptionClient eclient = newClient( BlockCodec.Deflate );
+        ObjectId id = eclient.createObject( text, "text/plain" );
+
+        Map<String, Metadata> meta = memory.getMetadata( id );
+        Assert.assertTrue( meta.get( TransformConstants.META_TRANSFORM_MODE ).getValue()
+                                   .startsWith( "COMP:ParallelDeflate/5|ENC:" ) );
+        Assert.assertEquals( "" + text.length, meta.get( TransformConstants.META_COMPRESSION_UNCOMP_SIZE ).getValue() );
+        long compressed = Long.parseLong( meta.get( TransformConstants.META_COMPRESSION_COMP_SIZE ).getValue() );
+        Assert.assertTrue( compressed < text.length / 2 );
+
+        Assert.assertArrayEquals( text, eclient.readObject( id, byte[].class ) );
+        // a client configured for single-stream compression reads it too
+        AtmosEncryptionClient legacy = new AtmosEncryptionClient( memory.getApi(), encryptionConfig,
+                                                                  new CompressionConfig() );
+        Assert.assertArrayEquals( text, legacy.readObject( id, byte[].class ) );
+    }
+
+    @Test
+    public void testHuffman() throws Exception {
+        AtmosEncryptionClient eclient = newClient( BlockCodec.Huffman );
+        ObjectId id = eclient.createObject( text, "text/plain" );
+        Assert.assertTrue( memory.getMetadata( id ).get( TransformConstants.META_TRANSFORM_MODE ).getValue()
+                                 .startsWith( "COMP:ParallelHuffman/1|ENC:" ) );
+        Assert.assertArrayEquals( text, eclient.readObject( id, byte[].class ) );
+    }
+
+    @Test
+    public void testIncompressibleSkipped() throws Exception {
+        AtmosEncryptionClient eclient = newClient( BlockCodec.Deflate );
+        ObjectId id = eclient.createObject( random, "application/octet-stream" );
+
+        Map<String, Metadata> meta = memory.getMetadata( id );
+        Assert.assertTrue( meta.get( TransformConstants.META_TRANSFORM_MODE ).getValue().startsWith( "ENC:" ) );
+        Assert.assertNull( meta.get( TransformConstants.META_COMPRESSION_UNCOMP_SIZE ) );
+        Assert.assertArrayEquals( random, eclient.readObject( id, byte[].class ) );
+
+        // without encryption, the object is stored as-is
+        CompressionConfig cc = new CompressionConfig( BlockCodec.Deflate, 5, 4 );
+        ( (ParallelCompressionTransformFactory) cc.getFactory() ).setBlockSize( BLOCK_SIZE );
+        eclient = new AtmosEncryptionClient( memory.getApi(), null, cc );
+        id = eclient.createObject( random, "application/octet-stream" );
+        Assert.assertNull( memory.getMetadata( id ).get( TransformConstants.META_TRANSFORM_MODE ) );
+        Assert.assertArrayEquals( random, memory.getData( id ) );
+        Assert.assertArrayEquals( random, eclient.readObject( id, byte[].class ) );
+    }
+
+    @Test
+    public void testReadsSingleStream() throws Exception {
+        AtmosEncryptionClient legacy = new AtmosEncryptionClient( memory.getApi(), encryptionConfig,
+                                                                  new CompressionConfig() );
+        ObjectId id = legacy.createObject( text, "text/plain" );
+        Assert.assertArrayEquals( text, newClient( BlockCodec.Deflate ).readObject( id, byte[].class ) );
+    }
+
+    @Test
+    public void testPushStream() throws Exception {
+        ParallelCompressionTransformFactory factory = new ParallelCompressionTransformFactory();
+        factory.setCodec( BlockCodec.Deflate );
+        factory.setBlockSize( BLOCK_SIZE );
+        factory.setSampleBlocks( 0 );
+        factory.setThreads( 3 );
+
+        // mostly text with one random block, which is stored
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.write( text, 0, 3 * BLOCK_SIZE );
+        content.write( random, 0, BLOCK_SIZE );
+        content.write( text );
+        byte[] data = content.toByteArray();
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        OutputTransform transform = factory.getOutputTransform( encoded, new HashMap<String, String>() );
+        for ( int i = 0; i < data.length; i += 1000 ) {
+            transform.getEncodedOutputStream().write( data, i, Math.min( 1000, data.length - i ) );
+        }
+        transform.getEncodedOutputStream().close();
+        Assert.assertEquals( "COMP:ParallelDeflate/5", transform.getTransformConfig() );
+        Assert.assertEquals( "" + encoded.size(), transform.getEncodedMetadata()
+                                                           .get( TransformConstants.META_COMPRESSION_COMP_SIZE ) );
+        Assert.assertEquals( "" + BLOCK_SIZE, transform.getEncodedMetadata()
+                                                      .get( ParallelCompressionTransformFactory.META_BLOCK_SIZE ) );
+
+        byte[] decoded = StreamUtil.readAsBytes(
+                factory.getInputTransform( transform.getTransformConfig(),
+                                           new ByteArrayInputStream( encoded.toByteArray() ),
+                                           transform.getEncodedMetadata() ).getDecodedInputStream() );
+        Assert.assertArrayEquals( data, decoded );
+        factory.shutdown();
+    }
+
+    @Test
+    public void testSettingsChangedWhileWriting() throws Exception {
+        ParallelCompressionTransformFactory factory = new ParallelCompressionTransformFactory();
+        factory.setCodec( BlockCodec.Deflate );
+        factory.setBlockSize( BLOCK_SIZE );
+        factory.setSampleBlocks( 0 );
+        factory.setThreads( 2 );
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        OutputTransform transform = factory.getOutputTransform( encoded, new HashMap<String, String>() );
+        transform.getEncodedOutputStream().write( text, 0, 3 * BLOCK_SIZE );
+
+        // the stream in progress keeps using the threads it started with
+        factory.setThreads( 4 );
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        factory.setExecutor( executor );
+        transform.getEncodedOutputStream().write( text, 3 * BLOCK_SIZE, text.length - 3 * BLOCK_SIZE );
+        transform.getEncodedOutputStream().close();
+
+        byte[] decoded = StreamUtil.readAsBytes(
+                factory.getInputTransform( transform.getTransformConfig(),
+                                           new ByteArrayInputStream( encoded.toByteArray() ),
+                                           transform.getEncodedMetadata() ).getDecodedInputStream() );
+        Assert.assertArrayEquals( text, decoded );
+        executor.shutdown();
+    }
+
+    @Test
+    public void testBlockLargerThanBlockSize() throws Exception {
+        ParallelCompressionTransformFactory factory = new ParallelCompressionTransformFactory();
+        Map<String, String> metadata = new HashMap<String, String>();
+        metadata.put( ParallelCompressionTransformFactory.META_BLOCK_SIZE, "" + BLOCK_SIZE );
+
+        // a stored block whose header claims Integer.MAX_VALUE bytes
+        byte[] header = {0, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+        try {
+            StreamUtil.readAsBytes( factory.getInputTransform( "COMP:ParallelDeflate/5",
+                                                               new ByteArrayInputStream( header ),
+                                                               metadata ).getDecodedInputStream() );
+            Assert.fail( "corrupt header was accepted" );
+        } catch ( IOException e ) {
+            Assert.assertEquals( "Corrupt block header", e.getMessage() );
+        }
+
+        metadata.put( ParallelCompressionTransformFactory.META_BLOCK_SIZE, "" + Integer.MAX_VALUE );
+        try {
+            factory.getInputTransform( "COMP:ParallelDeflate/5", new ByteArrayInputStream( header ), metadata );
+            Assert.fail( "invalid block size was accepted" );
+        } catch ( IOException e ) {
+            // expected
+        }
+    }
+
+    private AtmosEncryptionClient newClient( BlockCodec codec ) {
+        CompressionConfig cc = new CompressionConfig( codec, 5, 4 );
+        ( (ParallelCompressionTransformFactory) cc.getFactory() ).setBlockSize( BLOCK_SIZE );
+        return new AtmosEncryptionClient( memory.getApi(), encryptionConfig, cc );
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.ChecksumError;
+import com.emc.atmos.api.*;
+import com.emc.atmos.api.bean.Metadata;
+import com.emc.atmos.api.bean.ObjectMetadata;
+import com.emc.atmos.api.bean.ReadObjectResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.channels.Channels;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelDownloaderTest {
+    private static final ObjectId OBJECT_ID = new ObjectId( "4ef49feaa106904c04ef4a41de08a804f4e97d70e7ac" );
+
+    private byte[] content;
+    private ChecksumValue wsChecksum;
+    private Set<Long> failOnce = Collections.synchronizedSet( new HashSet<Long>() );
+    private boolean truncate;
+    private AtomicInteger reads = new AtomicInteger();
+    private AtomicInteger maxConcurrent = new AtomicInteger(), concurrent = new AtomicInteger();
+    private File file;
+
+    @After
+    public void tearDown() {
+        if ( file != null ) file.delete();
+    }
+
+    @Test
+    public void testDownloadToFile() throws Exception {
+        setContent( 10 * 1000 + 7, true );
+        file = File.createTempFile( "atmos-download", ".tmp" );
+
+        Assert.assertEquals( content.length, createDownloader().download( OBJECT_ID, file ) );
+        Assert.assertArrayEquals( content, readFile( file ) );
+        Assert.assertEquals( 11, reads.get() );
+        Assert.assertTrue( "ranges were not read concurrently", maxConcurrent.get() > 1 );
+        Assert.assertTrue( maxConcurrent.get() <= 4 );
+    }
+
+    @Test
+    public void testDownloadToChannel() throws Exception {
+        setContent( 10 * 1000 + 7, true );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ParallelDownloader downloader = createDownloader();
+        downloader.setMaxBufferedBytes( 2000 ); // only two ranges in flight
+        Assert.assertEquals( content.length, downloader.download( OBJECT_ID, Channels.newChannel( out ) ) );
+        Assert.assertArrayEquals( content, out.toByteArray() );
+        Assert.assertTrue( maxConcurrent.get() <= 2 );
+    }
+
+    @Test
+    public void testEmptyObject() throws Exception {
+        setContent( 0, false );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals( 0, createDownloader().download( OBJECT_ID, Channels.newChannel( out ) ) );
+        Assert.assertEquals( 0, out.size() );
+        Assert.assertEquals( 0, reads.get() );
+    }
+
+    @Test
+    public void testRangeRetry() throws Exception {
+        setContent( 5000, true );
+        failOnce.add( 1000L );
+        failOnce.add( 4000L );
+        file = File.createTempFile( "atmos-download", ".tmp" );
+
+        createDownloader().download( OBJECT_ID, file );
+        Assert.assertArrayEquals( content, readFile( file ) );
+        Assert.assertEquals( 7, reads.get() );
+    }
+
+    @Test
+    public void testShortRangeRetried() throws Exception {
+        setContent( 3000, false );
+        truncate = true;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createDownloader().download( OBJECT_ID, Channels.newChannel( out ) );
+        Assert.assertArrayEquals( content, out.toByteArray() );
+    }
+
+    @Test
+    public void testChecksumMismatch() throws Exception {
+        setContent( 3500, true );
+        content[1234]++; // stored content no longer matches the ws-checksum
+        file = File.createTempFile( "atmos-download", ".tmp" );
+        try {
+            createDownloader().download( OBJECT_ID, file );
+            Assert.fail( "corrupt content not detected" );
+        } catch ( ChecksumError e ) {
+            // expected
+        }
+        try {
+            createDownloader().download( OBJECT_ID, Channels.newChannel( new ByteArrayOutputStream() ) );
+            Assert.fail( "corrupt content not detected" );
+        } catch ( ChecksumError e ) {
+            // expected
+        }
+
+        ParallelDownloader downloader = createDownloader();
+        downloader.setVerifyChecksum( false );
+        downloader.download( OBJECT_ID, file );
+    }
+
+    private ParallelDownloader createDownloader() {
+        ParallelDownloader downloader = new ParallelDownloader( stubApi() );
+        downloader.setPartSize( 1000 );
+        downloader.setThreads( 4 );
+        downloader.setPartRetryDelay( 1 );
+        return downloader;
+    }
+
+    private void setContent( int size, boolean checksum ) throws Exception {
+        content = new byte[size];
+        new Random( size ).nextBytes( content );
+        if ( checksum ) {
+            RunningChecksum running = new RunningChecksum( ChecksumAlgorithm.SHA1 );
+            running.update( content, 0, size );
+            wsChecksum = new ChecksumValueImpl( running.toString() );
+        }
+    }
+
+    private byte[] readFile( File file ) throws Exception {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream( file );
+        try {
+            Assert.assertEquals( data.length, com.emc.util.StreamUtil.readFully( in, data, 0, data.length ) );
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    private AtmosApi stubApi() {
+        return (AtmosApi) Proxy.newProxyInstance( AtmosApi.class.getClassLoader(), new Class[]{AtmosApi.class},
+                                                  new InvocationHandler() {
+            @Override
+            public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+                if ( "getObjectMetadata".equals( method.getName() ) ) {
+                    Map<String, Metadata> metadata = new HashMap<String, Metadata>();
+                    metadata.put( "size", new Metadata( "size", "" + content.length, false ) );
+                    return new ObjectMetadata( metadata, null, "application/octet-stream", wsChecksum, null );
+                } else if ( "readObjectStream".equals( method.getName() ) ) {
+                    Range range = (Range) args[1];
+                    int running = concurrent.incrementAndGet();
+                    try {
+                        synchronized ( maxConcurrent ) {
+                            if ( running > maxConcurrent.get() ) maxConcurrent.set( running );
+                        }
+                        reads.incrementAndGet();
+                        Thread.sleep( 20 );
+                        if ( failOnce.remove( range.getFirst() ) ) throw new AtmosException( "Server busy", 500, 1040 );
+                        int length = (int) (range.getLast() - range.getFirst() + 1);
+                        if ( truncate ) {
+                            truncate = false;
+                            length--;
+                        }
+                        return new ReadObjectResponse<Object>(
+                                new ByteArrayInputStream( content, (int) range.getFirst(), length ) );
+                    } finally {
+                        concurrent.decrementAndGet();
+                    }
+                }
+                throw new UnsupportedOperationException( method.getName() );
+            }
+        } );
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.*;
+import com.emc.atmos.api.bean.CreateObjectResponse;
+import com.emc.atmos.api.request.CreateObjectRequest;
+import com.emc.atmos.api.request.PutObjectRequest;
+import com.emc.atmos.api.request.UpdateObjectRequest;
+import com.emc.util.BasicResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelUploaderTest {
+    private static final ObjectId OBJECT_ID = new ObjectId( "4ef49feaa106904c04ef4a41de08a804f4e97d70e7ac" );
+
+    private byte[] stored = new byte[0];
+    private Set<Long> failOnce = Collections.synchronizedSet( new HashSet<Long>() );
+    private Set<Long> failAlways = Collections.synchronizedSet( new HashSet<Long>() );
+    private AtomicInteger writes = new AtomicInteger();
+    private AtomicInteger maxConcurrent = new AtomicInteger(), concurrent = new AtomicInteger();
+    private boolean corrupt, deleted;
+    private Long errorAt;
+
+    @Test
+    public void testUpload() throws Exception {
+        byte[] content = randomContent( 10 * 1000 + 7 );
+        ParallelUploader uploader = createUploader();
+
+        Assert.assertEquals( OBJECT_ID, uploader.upload( new CreateObjectRequest(), new ByteArrayInputStream( content ) ) );
+        Assert.assertArrayEquals( content, stored );
+        Assert.assertEquals( 11, writes.get() );
+        Assert.assertTrue( "parts were not written concurrently", maxConcurrent.get() > 1 );
+        Assert.assertTrue( maxConcurrent.get() <= 4 );
+    }
+
+    @Test
+    public void testSinglePart() throws Exception {
+        byte[] content = randomContent( 999 );
+        createUploader().upload( new CreateObjectRequest(), new ByteArrayInputStream( content ) );
+        Assert.assertArrayEquals( content, stored );
+        Assert.assertEquals( 1, writes.get() );
+    }
+
+    @Test
+    public void testExactMultiple() throws Exception {
+        byte[] content = randomContent( 3000 );
+        createUploader().upload( new CreateObjectRequest(), new ByteArrayInputStream( content ) );
+        Assert.assertArrayEquals( content, stored );
+        Assert.assertEquals( 3, writes.get() );
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        stored = randomContent( 20000 );
+        byte[] content = randomContent( 4321 );
+        UpdateObjectRequest request = new UpdateObjectRequest().identifier( OBJECT_ID );
+        createUploader().updateObject( request, new ByteArrayInputStream( content ) );
+        Assert.assertArrayEquals( content, stored );
+        Assert.assertEquals( 5, writes.get() );
+    }
+
+    @Test
+    public void testPartRetry() throws Exception {
+        byte[] content = randomContent( 5000 );
+        failOnce.add( 2000L );
+        failOnce.add( 4000L );
+        createUploader().upload( new CreateObjectRequest(), new ByteArrayInputStream( content ) );
+        Assert.assertArrayEquals( content, stored );
+        Assert.assertEquals( 7, writes.get() );
+        Assert.assertFalse( deleted );
+    }
+
+    @Test
+    public void testPartFailure() throws Exception {
+        failAlways.add( 3000L );
+        try {
+            createUploader().upload( new CreateObjectRequest(), new ByteArrayInputStream( randomContent( 8000 ) ) );
+            Assert.fail( "failed part should fail the upload" );
+        } catch ( AtmosException e ) {
+            Assert.assertEquals( 1040, e.getErrorCode() );
+        }
+        Assert.assertTrue( "partial object was not deleted", deleted );
+    }
+
+    @Test
+    public void testPartError() throws Exception {
+        errorAt = 2000L;
+        try {
+            createUploader().upload( new CreateObjectRequest(), new ByteArrayInputStream( randomContent( 5000 ) ) );
+            Assert.fail( "part that threw an error should fail the upload" );
+        } catch ( AtmosException e ) {
+            Assert.assertTrue( e.getCause() instanceof StackOverflowError );
+        }
+        Assert.assertTrue( "partial object was not deleted", deleted );
+    }
+
+    @Test
+    public void testExecutorShutdown() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        ParallelUploader uploader = new ParallelUploader( stubApi(), executor );
+        uploader.setPartSize( 1000 );
+        uploader.setThreads( 4 );
+        uploader.setPartRetryDelay( 10000 );
+
+        // the part at 1000 fails once and waits to retry; shut down the executor while it waits
+        failOnce.add( 1000L );
+        new Timer( true ).schedule( new TimerTask() {
+            @Override
+            public void run() {
+                executor.shutdownNow();
+            }
+        }, 500 );
+        try {
+            uploader.upload( new CreateObjectRequest(), new ByteArrayInputStream( randomContent( 3000 ) ) );
+            Assert.fail( "interrupted part should fail the upload" );
+        } catch ( AtmosException e ) {
+            Assert.assertTrue( e.getCause() instanceof InterruptedException );
+        }
+        Assert.assertTrue( "partial object was not deleted", deleted );
+    }
+
+    @Test
+    public void testVerifyChecksum() throws Exception {
+        byte[] content = randomContent( 4500 );
+        ParallelUploader uploader = createUploader();
+        uploader.setVerifyChecksum( ChecksumAlgorithm.MD5 );
+        uploader.upload( new CreateObjectRequest(), new ByteArrayInputStream( content ) );
+        Assert.assertArrayEquals( content, stored );
+
+        corrupt = true;
+        uploader.setPartRetries( 0 );
+        try {
+            uploader.upload( new CreateObjectRequest(), new ByteArrayInputStream( content ) );
+            Assert.fail( "checksum mismatch not detected" );
+        } catch ( com.emc.atmos.ChecksumError e ) {
+            // expected
+        }
+    }
+
+    private ParallelUploader createUploader() {
+        ParallelUploader uploader = new ParallelUploader( stubApi() );
+        uploader.setPartSize( 1000 );
+        uploader.setThreads( 4 );
+        uploader.setPartRetryDelay( 1 );
+        return uploader;
+    }
+
+    private byte[] randomContent( int size ) {
+        byte[] content = new byte[size];
+        new Random( size ).nextBytes( content );
+        return content;
+    }
+
+    private synchronized void write( long offset, BufferSegment segment ) {
+        long end = offset + segment.getSize();
+        if ( end > stored.length ) stored = Arrays.copyOf( stored, (int) end );
+        System.arraycopy( segment.getBuffer(), segment.getOffset(), stored, (int) offset, segment.getSize() );
+    }
+
+    private <T extends BasicResponse> T respond( T response, PutObjectRequest<?> request ) throws Exception {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        if ( request.getServerGeneratedChecksumAlgorithm() != null ) {
+            BufferSegment segment = (BufferSegment) request.getContent();
+            RunningChecksum checksum = new RunningChecksum( request.getServerGeneratedChecksumAlgorithm() );
+            checksum.update( segment );
+            String value = corrupt ? "00" + checksum.getValue().substring( 2 ) : checksum.getValue();
+            headers.put( RestUtil.XHEADER_CONTENT_CHECKSUM,
+                         Arrays.asList( checksum.getAlgorithm() + "/" + segment.getSize() + "/" + value ) );
+        }
+        response.setHeaders( headers );
+        return response;
+    }
+
+    private AtmosApi stubApi() {
+        return (AtmosApi) Proxy.newProxyInstance( AtmosApi.class.getClassLoader(), new Class[]{AtmosApi.class},
+                                                  new InvocationHandler() {
+            @Override
+            public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+                if ( "createObject".equals( method.getName() ) ) {
+                    CreateObjectRequest request = (CreateObjectRequest) args[0];
+                    stored = new byte[0];
+                    write( 0, (BufferSegment) request.getContent() );
+                    writes.incrementAndGet();
+                    CreateObjectResponse response = respond( new CreateObjectResponse(), request );
+                    response.setLocation( "/rest/objects/" + OBJECT_ID );
+                    return response;
+                } else if ( "updateObject".equals( method.getName() ) ) {
+                    UpdateObjectRequest request = (UpdateObjectRequest) args[0];
+                    Assert.assertEquals( OBJECT_ID, request.getIdentifier() );
+                    long offset = 0;
+                    if ( request.getRange() == null ) stored = new byte[0]; // full replace
+                    else offset = request.getRange().getFirst();
+                    int running = concurrent.incrementAndGet();
+                    try {
+                        synchronized ( maxConcurrent ) {
+                            if ( running > maxConcurrent.get() ) maxConcurrent.set( running );
+                        }
+                        writes.incrementAndGet();
+                        Thread.sleep( 20 );
+                        if ( errorAt != null && errorAt == offset ) throw new StackOverflowError();
+                        if ( failAlways.contains( offset ) || failOnce.remove( offset ) )
+                            throw new AtmosException( "Server busy", 500, 1040 );
+                        write( offset, (BufferSegment) request.getContent() );
+                        return respond( new BasicResponse(), request );
+                    } finally {
+                        concurrent.decrementAndGet();
+                    }
+                } else if ( "delete".equals( method.getName() ) ) {
+                    deleted = true;
+                    return null;
+                }
+                throw new UnsupportedOperationException( method.getName() );
+            }
+        } );
+    }
+}
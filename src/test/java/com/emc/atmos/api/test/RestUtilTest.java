@@ -0,0 +1,95 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.api.RestUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+import java.util.*;
+
+public class RestUtilTest {
+    private static final byte[] KEY = DatatypeConverter.parseBase64Binary( "LJLuryj6zs8ste6Y3jTGQp71xq0=" );
+    private static final byte[] KEY2 = DatatypeConverter.parseBase64Binary( "c2VjcmV0" );
+
+    @Test
+    public void testSignRequest() throws Exception {
+        Map<String, List<Object>> headers = new LinkedHashMap<String, List<Object>>();
+        headers.put( "Content-Type", Arrays.asList( (Object) "application/octet-stream" ) );
+        headers.put( "Range", Arrays.asList( (Object) "bytes=0-9" ) );
+        headers.put( "x-emc-meta", Arrays.asList( (Object) "  part1=buy  , part2  =  sell \n", "x=\ty" ) );
+        headers.put( "X-EMC-Listable-Meta", Arrays.asList( (Object) "a \n b" ) );
+        headers.put( "x-emc-useracl", Arrays.asList( (Object) "john=FULL_CONTROL,mary=WRITE" ) );
+        headers.put( "x-emc-zdup", Arrays.asList( (Object) "first" ) );
+        headers.put( "X-EMC-ZDUP", Arrays.asList( (Object) "second" ) );
+
+        RestUtil.signRequest( "POST", "/rest/Objects/ABC", "metadata/user", headers, "uid", KEY, 0 );
+
+        String date = (String) headers.get( "Date" ).get( 0 );
+        String expected = "POST\napplication/octet-stream\nbytes=0-9\n" + date + "\n"
+                          + "/rest/objects/abc?metadata/user\n"
+                          + "x-emc-date:" + date + "\n"
+                          + "x-emc-listable-meta:a  b\n"
+                          + "x-emc-meta:part1=buy , part2 = sell ,x=\ty\n"
+                          + "x-emc-uid:uid\n"
+                          + "x-emc-useracl:john=FULL_CONTROL,mary=WRITE\n"
+                          + "x-emc-zdup:second";
+        Assert.assertEquals( hmac( expected, KEY ), headers.get( RestUtil.XHEADER_SIGNATURE ).get( 0 ) );
+    }
+
+    @Test
+    public void testSignWithDifferentKeys() throws Exception {
+        String string = "GET\n/rest/objects\nuid\n1300000000";
+        for ( int i = 0; i < 3; i++ ) {
+            Assert.assertEquals( hmac( string, KEY ), RestUtil.sign( string, KEY ) );
+            Assert.assertEquals( hmac( string, KEY2 ), RestUtil.sign( string, KEY2 ) );
+        }
+    }
+
+    @Test
+    public void testNormalizeSpace() {
+        Assert.assertEquals( "a b", RestUtil.normalizeSpace( "a     b" ) );
+        Assert.assertEquals( "a  b", RestUtil.normalizeSpace( "a \n b" ) );
+        Assert.assertEquals( "a\tb", RestUtil.normalizeSpace( " \n\t a\tb \r\n " ) );
+        Assert.assertEquals( "", RestUtil.normalizeSpace( "  \n " ) );
+    }
+
+    private String hmac( String string, byte[] key ) throws Exception {
+        Mac mac = Mac.getInstance( "HmacSHA1" );
+        mac.init( new SecretKeySpec( key, "HmacSHA1" ) );
+        return DatatypeConverter.printBase64Binary( mac.doFinal( string.getBytes( "UTF-8" ) ) );
+    }
+}
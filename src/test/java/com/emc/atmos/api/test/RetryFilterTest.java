@@ -0,0 +1,270 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.AtmosConfig;
+import com.emc.atmos.api.RestUtil;
+import com.emc.atmos.api.jersey.MeasuredInputStream;
+import com.emc.atmos.api.jersey.RetryBudget;
+import com.emc.atmos.api.jersey.RetryFilter;
+import com.emc.atmos.api.jersey.RetryStats;
+import com.emc.util.StreamUtil;
+import com.sun.jersey.api.client.*;
+import com.sun.jersey.core.header.InBoundHeaders;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+public class RetryFilterTest {
+    private AtmosConfig config;
+    private int failures;
+    private Client client;
+    private List<ClientRequest> attempts = new ArrayList<ClientRequest>();
+
+    @Before
+    public void setUp() {
+        config = new AtmosConfig();
+        config.setRetryDelayMillis( 50 );
+        config.setMaxRetries( 3 );
+    }
+
+    @Test
+    public void testFixedDelay() {
+        RetryFilter filter = new RetryFilter( config );
+        execute( filter, 3 );
+
+        RetryStats stats = filter.getStats();
+        Assert.assertEquals( 1, stats.getRequests() );
+        Assert.assertEquals( 3, stats.getRetries() );
+        Assert.assertEquals( 150, stats.getBackoffMillis() );
+    }
+
+    @Test
+    public void testExponentialBackoff() {
+        config.setExponentialBackoff( true );
+        config.setMaxRetryDelayMillis( 150 );
+        RetryFilter filter = new RetryFilter( config );
+        execute( filter, 3 );
+
+        // 50 + 100 + 150 (capped)
+        Assert.assertEquals( 300, filter.getStats().getBackoffMillis() );
+    }
+
+    @Test
+    public void testJitter() {
+        config.setRetryJitter( true );
+        RetryFilter filter = new RetryFilter( config );
+        for ( int i = 0; i < 5; i++ ) execute( filter, 1 );
+
+        // each delay is random between 0 and 50ms
+        Assert.assertEquals( 5, filter.getStats().getRetries() );
+        Assert.assertTrue( filter.getStats().getBackoffMillis() < 250 );
+    }
+
+    @Test
+    public void testExponentialBackoffWithoutDelay() {
+        config.setRetryDelayMillis( 0 );
+        config.setExponentialBackoff( true );
+        RetryFilter filter = new RetryFilter( config );
+        execute( filter, 2 );
+
+        // 100 + 200
+        Assert.assertEquals( 3 * RetryFilter.DEFAULT_BACKOFF_BASE_MS,
+                             filter.getStats().getBackoffMillis() );
+    }
+
+    @Test
+    public void testServerBusy() {
+        RetryFilter filter = new RetryFilter( config );
+        executeBusy( filter, 2 );
+
+        // the 1040 delay replaces the (shorter) configured delay rather than adding to it
+        Assert.assertEquals( 2 * RetryFilter.ATMOS_1040_DELAY_MS, filter.getStats().getBackoffMillis() );
+
+        // and backs off and is jittered like any other delay
+        config.setExponentialBackoff( true );
+        config.setRetryJitter( true );
+        filter = new RetryFilter( config );
+        for ( int i = 0; i < 5; i++ ) executeBusy( filter, 2 );
+        Assert.assertEquals( 10, filter.getStats().getRetries() );
+        Assert.assertTrue( filter.getStats().getBackoffMillis() < 5 * 3 * RetryFilter.ATMOS_1040_DELAY_MS );
+    }
+
+    @Test
+    public void testRetryBudget() {
+        config.setRetryDelayMillis( 0 );
+        config.setRetryBudgetRatio( 0.5 );
+        config.setRetryBudgetMinRetries( 0 );
+        RetryFilter filter = new RetryFilter( config );
+
+        // one request allows half a retry, so the second retry should be refused
+        try {
+            execute( filter, 2 );
+            Assert.fail( "retry budget was not enforced" );
+        } catch ( ClientHandlerException e ) {
+            Assert.assertTrue( e.getCause() instanceof IOException );
+        }
+
+        // 3 more requests raise the budget to 2 retries
+        execute( filter, 0 );
+        execute( filter, 0 );
+        execute( filter, 1 );
+
+        RetryStats stats = filter.getStats();
+        Assert.assertEquals( 4, stats.getRequests() );
+        Assert.assertEquals( 2, stats.getRetries() );
+        Assert.assertEquals( 1, stats.getBudgetExhausted() );
+    }
+
+    @Test
+    public void testRetryBudgetWindow() throws Exception {
+        RetryBudget budget = new RetryBudget( 0, 2, 200 );
+        Assert.assertTrue( budget.tryRetry() );
+        Assert.assertTrue( budget.tryRetry() );
+        Assert.assertFalse( budget.tryRetry() );
+
+        // retries expire with the window
+        Thread.sleep( 250 );
+        Assert.assertTrue( budget.tryRetry() );
+    }
+
+    @Test
+    public void testFailover() throws Exception {
+        config = new AtmosConfig( "uid", "c2VjcmV0", new URI( "http://node1:9022" ), new URI( "http://node2:9022" ),
+                                  new URI( "http://node3:9022" ) );
+        config.setEnableFailover( true );
+        config.setMaxRetries( 3 );
+        RetryFilter filter = new RetryFilter( config );
+        execute( filter, 2 );
+
+        // each attempt should go to a different node
+        Assert.assertEquals( 3, attempts.size() );
+        HashSet<String> hosts = new HashSet<String>();
+        for ( ClientRequest attempt : attempts ) {
+            hosts.add( attempt.getURI().getHost() );
+            Assert.assertEquals( "/rest/objects", attempt.getURI().getPath() );
+        }
+        Assert.assertEquals( 3, hosts.size() );
+
+        // retries should be signed (the first attempt is signed by AuthFilter, which is not installed here)
+        Assert.assertNull( attempts.get( 0 ).getHeaders().getFirst( RestUtil.XHEADER_SIGNATURE ) );
+        Assert.assertNotNull( attempts.get( 1 ).getHeaders().getFirst( RestUtil.XHEADER_SIGNATURE ) );
+
+        // once all nodes have been tried, any node can be tried again
+        attempts.clear();
+        execute( filter, 3 );
+        Assert.assertEquals( 4, attempts.size() );
+        Assert.assertFalse( attempts.get( 3 ).getURI().getHost().equals( attempts.get( 2 ).getURI().getHost() ) );
+    }
+
+    @Test
+    public void testRetrySpill() throws Exception {
+        config.setRetryDelayMillis( 0 );
+        config.setRetryBufferSize( 10 );
+        config.setEnableRetrySpill( true );
+        RetryFilter filter = new RetryFilter( config );
+
+        final byte[] content = "Hello, this stream cannot be marked.".getBytes( "UTF-8" );
+        final InputStream unmarkable = new FilterInputStream( new ByteArrayInputStream( content ) ) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+        final List<byte[]> sent = new ArrayList<byte[]>();
+        failures = 2;
+        client = new Client( new ClientHandler() {
+            @Override
+            public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+                try {
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                    StreamUtil.copy( (InputStream) request.getEntity(), baos, Long.MAX_VALUE ); // like the writer
+                    sent.add( baos.toByteArray() );
+                } catch ( IOException e ) {
+                    throw new ClientHandlerException( e );
+                }
+                if ( failures-- > 0 ) throw new ClientHandlerException( new IOException( "connection reset" ) );
+                return new ClientResponse( 200, new InBoundHeaders(), new ByteArrayInputStream( new byte[0] ),
+                                           client.getMessageBodyWorkers() );
+            }
+        } );
+        client.addFilter( filter );
+        client.resource( "http://node1:9022/rest/objects" ).post( ClientResponse.class,
+                                                                  new MeasuredInputStream( unmarkable, content.length ) );
+
+        Assert.assertEquals( 3, sent.size() );
+        for ( byte[] attempt : sent ) Assert.assertArrayEquals( content, attempt );
+    }
+
+    // sends a request that fails with Atmos code 1040 (server busy) the specified number of times before succeeding
+    private void executeBusy( RetryFilter filter, int failCount ) {
+        failures = failCount;
+        client = new Client( new ClientHandler() {
+            @Override
+            public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+                if ( failures-- > 0 ) throw new AtmosException( "Server busy", 500, 1040 );
+                return new ClientResponse( 200, new InBoundHeaders(), new ByteArrayInputStream( new byte[0] ),
+                                           client.getMessageBodyWorkers() );
+            }
+        } );
+        client.addFilter( filter );
+        client.resource( "http://node1:9022/rest/objects" ).get( ClientResponse.class );
+    }
+
+    // sends a request that fails with an IOException the specified number of times before succeeding
+    private void execute( RetryFilter filter, int failCount ) {
+        failures = failCount;
+        client = new Client( new ClientHandler() {
+            @Override
+            public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+                attempts.add( request.clone() );
+                if ( failures-- > 0 ) throw new ClientHandlerException( new IOException( "connection reset" ) );
+                return new ClientResponse( 200, new InBoundHeaders(), new ByteArrayInputStream( new byte[0] ),
+                                           client.getMessageBodyWorkers() );
+            }
+        } );
+        client.addFilter( filter );
+        client.resource( "http://node1:9022/rest/objects" ).get( ClientResponse.class );
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.api.jersey.SpillingInputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+public class SpillingInputStreamTest {
+    private File spillDir;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws Exception {
+        spillDir = File.createTempFile( "spill-test", "" );
+        spillDir.delete();
+        spillDir.mkdir();
+        data = new byte[10000];
+        new Random().nextBytes( data );
+    }
+
+    @After
+    public void tearDown() {
+        spillDir.delete();
+    }
+
+    @Test
+    public void testReplayFromMemory() throws Exception {
+        SpillingInputStream stream = new SpillingInputStream( new ByteArrayInputStream( data ), 100000, 0, spillDir );
+        replay( stream, 5000 );
+        Assert.assertEquals( 0, spillDir.list().length );
+    }
+
+    @Test
+    public void testReplayFromDisk() throws Exception {
+        SpillingInputStream stream = new SpillingInputStream( new ByteArrayInputStream( data ), 1000, 0, spillDir );
+        replay( stream, 7000 );
+        Assert.assertEquals( 1, spillDir.list().length );
+
+        stream.release();
+        Assert.assertEquals( 0, spillDir.list().length );
+    }
+
+    @Test
+    public void testMultipleResets() throws Exception {
+        SpillingInputStream stream = new SpillingInputStream( new ByteArrayInputStream( data ), 1000, 0, spillDir );
+        stream.mark( 0 );
+        for ( int i = 0; i < 3; i++ ) {
+            readFully( stream, 3000 + i * 1000 );
+            stream.reset();
+            stream.mark( 0 ); // RetryFilter marks again before each attempt
+        }
+        Assert.assertArrayEquals( data, readFully( stream, data.length ) );
+        stream.close();
+        Assert.assertEquals( 0, spillDir.list().length );
+    }
+
+    @Test
+    public void testSpillLimit() throws Exception {
+        SpillingInputStream stream = new SpillingInputStream( new ByteArrayInputStream( data ), 1000, 2000, spillDir );
+        stream.mark( 0 );
+        readFully( stream, 5000 );
+        Assert.assertEquals( 0, spillDir.list().length );
+        try {
+            stream.reset();
+            Assert.fail( "reset beyond the spill limit should fail" );
+        } catch ( IOException e ) {
+            // expected
+        }
+    }
+
+    private void replay( SpillingInputStream stream, int firstRead ) throws IOException {
+        stream.mark( 0 );
+        byte[] first = readFully( stream, firstRead );
+        for ( int i = 0; i < firstRead; i++ ) Assert.assertEquals( data[i], first[i] );
+        stream.reset();
+        Assert.assertArrayEquals( data, readFully( stream, data.length ) );
+    }
+
+    private byte[] readFully( SpillingInputStream stream, int size ) throws IOException {
+        byte[] buffer = new byte[size];
+        int read = 0;
+        while ( read < size ) {
+            // odd-sized reads to cross the memory/disk boundary mid-read
+            int count = stream.read( buffer, read, Math.min( 333, size - read ) );
+            if ( count < 0 ) break;
+            read += count;
+        }
+        return buffer;
+    }
+}
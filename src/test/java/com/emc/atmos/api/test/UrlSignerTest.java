@@ -0,0 +1,149 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.api.test;
+
+import com.emc.atmos.api.*;
+import com.emc.atmos.api.request.PreSignedRequest;
+import com.emc.atmos.api.request.ReadObjectRequest;
+import com.emc.atmos.api.request.Request;
+import com.emc.util.HttpUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class UrlSignerTest {
+    private static final String DISPOSITION = "attachment; filename=\"foo bar.txt\"";
+
+    private AtmosConfig config = createConfig();
+
+    @Test
+    public void testMatchesSingleUrlAlgorithm() throws Exception {
+        Date expires = new Date( 1500000000000L );
+        List<ObjectIdentifier> identifiers = createIdentifiers( 50 );
+
+        List<URL> urls = new UrlSigner( config ).getShareableUrls( identifiers, expires, DISPOSITION );
+        Assert.assertEquals( identifiers.size(), urls.size() );
+        for ( int i = 0; i < identifiers.size(); i++ ) {
+            Assert.assertEquals( referenceUrl( identifiers.get( i ), expires, DISPOSITION ), urls.get( i ).toString() );
+        }
+
+        urls = new UrlSigner( config ).getShareableUrls( identifiers, expires, null );
+        for ( int i = 0; i < identifiers.size(); i++ ) {
+            Assert.assertEquals( referenceUrl( identifiers.get( i ), expires, null ), urls.get( i ).toString() );
+        }
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        Date expires = new Date( 1500000000000L );
+        List<ObjectIdentifier> identifiers = createIdentifiers( 1037 );
+
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try {
+            UrlSigner signer = new UrlSigner( config, executor );
+            signer.setBatchSize( 100 );
+            List<URL> parallel = signer.getShareableUrls( identifiers, expires, DISPOSITION );
+            List<URL> serial = new UrlSigner( config ).getShareableUrls( identifiers, expires, DISPOSITION );
+
+            Assert.assertEquals( identifiers.size(), parallel.size() );
+            for ( int i = 0; i < serial.size(); i++ ) {
+                Assert.assertEquals( serial.get( i ).toString(), parallel.get( i ).toString() );
+            }
+
+            List<Request> requests = new ArrayList<Request>();
+            for ( ObjectIdentifier identifier : identifiers ) {
+                requests.add( new ReadObjectRequest().identifier( identifier ) );
+            }
+            List<PreSignedRequest> preSigned = signer.preSignRequests( requests, expires );
+            Assert.assertEquals( requests.size(), preSigned.size() );
+            for ( int i = 0; i < requests.size(); i++ ) {
+                String path = preSigned.get( i ).getUrl().toURI().getPath();
+                Assert.assertTrue( path.endsWith( identifiers.get( i ).getRelativeResourcePath() ) );
+                Assert.assertNotNull( preSigned.get( i ).getHeaders().get( RestUtil.XHEADER_SIGNATURE ) );
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testObjectKeyRejected() throws Exception {
+        List<ObjectIdentifier> identifiers = createIdentifiers( 2 );
+        identifiers.add( new ObjectKey( "bucket", "key" ) );
+        new UrlSigner( config ).getShareableUrls( identifiers, new Date(), null );
+    }
+
+    private String referenceUrl( ObjectIdentifier identifier, Date expirationDate, String disposition )
+            throws Exception {
+        URI uri = config.resolveHostAndPath( identifier.getRelativeResourcePath(), null );
+        long expiresTime = expirationDate.getTime() / 1000;
+        String hashString = "GET\n" + uri.getPath().toLowerCase() + '\n' + config.getTokenId() + '\n' + expiresTime;
+        if ( disposition != null ) hashString += '\n' + disposition;
+
+        Mac mac = Mac.getInstance( "HmacSHA1" );
+        mac.init( new SecretKeySpec( config.getSecretKey(), "HmacSHA1" ) );
+        String hash = DatatypeConverter.printBase64Binary( mac.doFinal( hashString.getBytes( "UTF-8" ) ) );
+
+        String query = "uid=" + HttpUtil.encodeUtf8( config.getTokenId() ) + "&expires=" + expiresTime
+                       + "&signature=" + HttpUtil.encodeUtf8( hash );
+        if ( disposition != null ) query += "&disposition=" + HttpUtil.encodeUtf8( disposition );
+        return uri + "?" + query;
+    }
+
+    private List<ObjectIdentifier> createIdentifiers( int count ) {
+        List<ObjectIdentifier> identifiers = new ArrayList<ObjectIdentifier>();
+        for ( int i = 0; i < count; i++ ) {
+            if ( i % 2 == 0 ) identifiers.add( new ObjectId( String.format( "4ee696e4a11f549604f0b753%016x", i ) ) );
+            else identifiers.add( new ObjectPath( "/Dir " + i + "/File+Name_" + i + ".txt" ) );
+        }
+        return identifiers;
+    }
+
+    private static AtmosConfig createConfig() {
+        try {
+            return new AtmosConfig( "ab12cd34/user1", "LJLuryj6zs8ste6Y3jTGQp71xq0=", new URI( "http://10.0.0.1:8080" ) );
+        } catch ( Exception e ) {
+            throw new RuntimeException( e );
+        }
+    }
+}
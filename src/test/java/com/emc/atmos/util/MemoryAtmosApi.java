@@ -0,0 +1,230 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2013-2018, Dell EMC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.emc.atmos.util;
+
+import com.emc.atmos.AtmosException;
+import com.emc.atmos.api.AtmosApi;
+import com.emc.atmos.api.BufferSegment;
+import com.emc.atmos.api.ObjectId;
+import com.emc.atmos.api.ObjectIdentifier;
+import com.emc.atmos.api.Range;
+import com.emc.atmos.api.bean.*;
+import com.emc.atmos.api.request.CreateObjectRequest;
+import com.emc.atmos.api.request.ListObjectsRequest;
+import com.emc.atmos.api.request.UpdateObjectRequest;
+import com.emc.util.BasicResponse;
+import com.emc.util.StreamUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory stand-in for the object calls of AtmosApi, for tests that don't need a real server. Supports creating,
+ * updating (whole or ranged), reading (whole or a single range), user metadata, listing by tag and delete. Any other
+ * call throws UnsupportedOperationException.
+ */
+public class MemoryAtmosApi implements InvocationHandler {
+    private Map<ObjectIdentifier, byte[]> data = new ConcurrentHashMap<ObjectIdentifier, byte[]>();
+    private Map<ObjectIdentifier, Map<String, Metadata>> metadata =
+            new ConcurrentHashMap<ObjectIdentifier, Map<String, Metadata>>();
+    private Map<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+    private AtomicLong bytesRead = new AtomicLong();
+    private AtomicInteger nextId = new AtomicInteger();
+
+    public AtmosApi getApi() {
+        return (AtmosApi) Proxy.newProxyInstance( AtmosApi.class.getClassLoader(), new Class[]{AtmosApi.class}, this );
+    }
+
+    /**
+     * Returns the number of times the named method was called.
+     */
+    public int getCalls( String method ) {
+        AtomicInteger count = calls.get( method );
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Returns the number of content bytes returned by all reads.
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public byte[] getData( ObjectIdentifier identifier ) {
+        return data.get( identifier );
+    }
+
+    public Map<String, Metadata> getMetadata( ObjectIdentifier identifier ) {
+        return metadata.get( identifier );
+    }
+
+    @Override
+    public synchronized Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+        String name = method.getName();
+        if ( !calls.containsKey( name ) ) calls.put( name, new AtomicInteger() );
+        calls.get( name ).incrementAndGet();
+
+        if ( "createObject".equals( name ) && args.length == 1 ) {
+            CreateObjectRequest request = (CreateObjectRequest) args[0];
+            ObjectIdentifier id = request.getIdentifier();
+            if ( id == null ) id = new ObjectId( String.format( "%044x", nextId.incrementAndGet() ) );
+            data.put( id, content( request.getContent() ) );
+            metadata.put( id, new TreeMap<String, Metadata>() );
+            if ( request.getUserMetadata() != null ) putMetadata( id, request.getUserMetadata() );
+            CreateObjectResponse response = new CreateObjectResponse();
+            response.setLocation( "/rest/objects/" + id );
+            return response;
+        } else if ( "updateObject".equals( name ) && args.length == 1 ) {
+            UpdateObjectRequest request = (UpdateObjectRequest) args[0];
+            byte[] content = content( request.getContent() );
+            Range range = request.getRange();
+            if ( range == null ) {
+                data.put( request.getIdentifier(), content );
+            } else {
+                byte[] current = data.get( request.getIdentifier() );
+                int end = (int) range.getFirst() + content.length;
+                if ( end > current.length ) current = Arrays.copyOf( current, end );
+                System.arraycopy( content, 0, current, (int) range.getFirst(), content.length );
+                data.put( request.getIdentifier(), current );
+            }
+            if ( request.getUserMetadata() != null ) putMetadata( request.getIdentifier(), request.getUserMetadata() );
+            return new BasicResponse();
+        } else if ( "setUserMetadata".equals( name ) ) {
+            putMetadata( (ObjectIdentifier) args[0], Arrays.asList( (Metadata[]) args[1] ) );
+            return null;
+        } else if ( "deleteUserMetadata".equals( name ) ) {
+            for ( String key : (String[]) args[1] ) {
+                metadata.get( args[0] ).remove( key );
+            }
+            return null;
+        } else if ( "getUserMetadata".equals( name ) ) {
+            return new TreeMap<String, Metadata>( metadata.get( args[0] ) );
+        } else if ( "readObjectStream".equals( name ) ) {
+            ObjectIdentifier id = (ObjectIdentifier) args[0];
+            Range range = (Range) args[1];
+            byte[] content = data.get( id );
+            if ( range != null ) {
+                // like HTTP, a range that ends past the content is cut short
+                if ( range.getFirst() >= content.length )
+                    throw new AtmosException( "The specified range cannot be satisfied", 416, 1004 );
+                int end = (int) Math.min( range.getLast() + 1, content.length );
+                content = Arrays.copyOfRange( content, (int) range.getFirst(), end );
+            }
+            bytesRead.addAndGet( content.length );
+            final ObjectMetadata objectMetadata =
+                    new ObjectMetadata( new TreeMap<String, Metadata>( metadata.get( id ) ), null, null, null, null );
+            ReadObjectResponse<InputStream> response = new ReadObjectResponse<InputStream>() {
+                @Override
+                public synchronized ObjectMetadata getMetadata( boolean decodeUtf8 ) {
+                    return objectMetadata;
+                }
+            };
+            response.setObject( new ByteArrayInputStream( content ) );
+            response.setContentLength( content.length );
+            return response;
+        } else if ( "listObjects".equals( name ) ) {
+            return listObjects( (ListObjectsRequest) args[0] );
+        } else if ( "delete".equals( name ) ) {
+            data.remove( args[0] );
+            metadata.remove( args[0] );
+            return null;
+        }
+        throw new UnsupportedOperationException( name );
+    }
+
+    /**
+     * Lists objects tagged with the metadata name in ID order, paging by limit. The token is the index of the next
+     * object.
+     */
+    private ListObjectsResponse listObjects( ListObjectsRequest request ) {
+        List<ObjectIdentifier> tagged = new ArrayList<ObjectIdentifier>();
+        for ( Map.Entry<ObjectIdentifier, Map<String, Metadata>> entry : metadata.entrySet() ) {
+            if ( entry.getValue().containsKey( request.getMetadataName() ) ) tagged.add( entry.getKey() );
+        }
+        Collections.sort( tagged, new Comparator<ObjectIdentifier>() {
+            @Override
+            public int compare( ObjectIdentifier o1, ObjectIdentifier o2 ) {
+                return o1.toString().compareTo( o2.toString() );
+            }
+        } );
+
+        int start = request.getToken() == null ? 0 : Integer.parseInt( request.getToken() );
+        int end = request.getLimit() > 0 ? Math.min( tagged.size(), start + request.getLimit() ) : tagged.size();
+        List<ObjectEntry> entries = new ArrayList<ObjectEntry>();
+        for ( ObjectIdentifier id : tagged.subList( start, end ) ) {
+            ObjectEntry entry = new ObjectEntry();
+            entry.setObjectId( (ObjectId) id );
+            if ( request.isIncludeMetadata() ) {
+                List<Metadata> userMetadata = new ArrayList<Metadata>();
+                List<String> names = request.getUserMetadataNames();
+                for ( Metadata m : metadata.get( id ).values() ) {
+                    if ( names == null || names.contains( m.getName() ) ) userMetadata.add( m );
+                }
+                entry.setUserMetadata( userMetadata );
+            }
+            entries.add( entry );
+        }
+        request.setToken( end < tagged.size() ? String.valueOf( end ) : null );
+
+        ListObjectsResponse response = new ListObjectsResponse();
+        response.setEntries( entries );
+        return response;
+    }
+
+    private void putMetadata( ObjectIdentifier id, Collection<Metadata> values ) {
+        for ( Metadata m : values ) {
+            metadata.get( id ).put( m.getName(), m );
+        }
+    }
+
+    private byte[] content( Object content ) throws IOException {
+        if ( content == null ) return new byte[0];
+        if ( content instanceof byte[] ) return (byte[]) content;
+        if ( content instanceof String ) return ((String) content).getBytes( "UTF-8" );
+        if ( content instanceof BufferSegment ) {
+            BufferSegment segment = (BufferSegment) content;
+            return Arrays.copyOfRange( segment.getBuffer(), segment.getOffset(),
+                                       segment.getOffset() + segment.getSize() );
+        }
+        if ( content instanceof InputStream ) return StreamUtil.readAsBytes( (InputStream) content );
+        throw new UnsupportedOperationException( content.getClass().getName() );
+    }
+}